@@ -0,0 +1,47 @@
+package health.ere.ps.benchmark;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * The test resources of the app that the benchmarks run on. The directory is given with
+ * -Dere.benchmark.resources, the pom sets it to ../src/test/resources.
+ */
+public final class BenchmarkResources {
+
+    public static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+    private BenchmarkResources() {
+    }
+
+    public static Path resolve(String resource) {
+        return Paths.get(System.getProperty("ere.benchmark.resources", "../src/test/resources"), resource);
+    }
+
+    public static byte[] readBytes(String resource) {
+        try {
+            return Files.readAllBytes(resolve(resource));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String read(String resource) {
+        return new String(readBytes(resource), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A KBV sample bundle from src/test/resources/benchmark, e.g. Beispiel_01_PZN.xml.
+     */
+    public static Bundle bundle(String sample) {
+        return FHIR_CONTEXT.newXmlParser().parseResource(Bundle.class, read("benchmark/" + sample));
+    }
+}
@@ -0,0 +1,73 @@
+package health.ere.ps.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.context.FhirContext;
+import health.ere.ps.service.gematik.ERezeptWorkflowService;
+
+/**
+ * Parsing and encoding of the KBV samples, a PZN, an ingredient and a compounding
+ * prescription. A new parser is created per call like in the services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FhirParserBenchmark {
+
+    @Param({"Beispiel_01_PZN.xml", "Beispiel_16_Ingredient.xml", "Beispiel_23_Compounding.xml"})
+    String sample;
+
+    private final FhirContext fhirContext = BenchmarkResources.FHIR_CONTEXT;
+
+    private String xml;
+    private String json;
+    private Bundle bundle;
+
+    @Setup
+    public void setUp() {
+        xml = BenchmarkResources.read("benchmark/" + sample);
+        bundle = fhirContext.newXmlParser().parseResource(Bundle.class, xml);
+        json = fhirContext.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    @Benchmark
+    public Bundle parseXml() {
+        return fhirContext.newXmlParser().parseResource(Bundle.class, xml);
+    }
+
+    @Benchmark
+    public Bundle parseJson() {
+        return fhirContext.newJsonParser().parseResource(Bundle.class, json);
+    }
+
+    @Benchmark
+    public String encodeXml() {
+        return fhirContext.newXmlParser().encodeResourceToString(bundle);
+    }
+
+    @Benchmark
+    public String encodeJson() {
+        return fhirContext.newJsonParser().encodeResourceToString(bundle);
+    }
+
+    @Benchmark
+    public byte[] canonicalXmlBytes() throws Exception {
+        return ERezeptWorkflowService.getCanonicalXmlBytes(bundle);
+    }
+}
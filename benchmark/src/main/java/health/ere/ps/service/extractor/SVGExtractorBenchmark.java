@@ -0,0 +1,52 @@
+package health.ere.ps.service.extractor;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.benchmark.BenchmarkResources;
+
+/**
+ * Extraction of the Muster 16 fields from a printed CGM Z1 form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SVGExtractorBenchmark {
+
+    private final SVGExtractor svgExtractor = new SVGExtractor(TemplateProfile.CGM_Z1.configuration, false);
+
+    private PDDocument document;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = PDDocument.load(BenchmarkResources.readBytes(
+            "muster-16-print-samples/cgm-z1-manuel-blechschmidt.pdf"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        document.close();
+    }
+
+    @Benchmark
+    public Map<String, String> extract() throws Exception {
+        return svgExtractor.extract(document);
+    }
+}
@@ -0,0 +1,75 @@
+package health.ere.ps.service.fhir.bundle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rendering of FEbundleTemplate.json with a value for every slot, like EreBundle does for
+ * every prescription of the extraction workflow.
+ *
+ * encodeToJsonBaseline runs the implementation before the template was precompiled: the
+ * template is read for every bundle and every value is put in with String.replace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonTemplateBenchmark {
+
+    private static final String TEMPLATE = "/bundle-samples/FEbundleTemplate.json";
+
+    private Map<String, String> values;
+
+    @Setup
+    public void setUp() {
+        values = new HashMap<>();
+        for (String slot : JsonTemplate.fromResource(TEMPLATE).getSlotNames()) {
+            values.put(slot, UUID.randomUUID().toString());
+        }
+        values.put("$DOSAGE_TEXT", "");
+        values.put("$PATIENT_NAME_PREFIX", "");
+        values.put("$PRACTITIONER_NAME_PREFIX", "");
+        values.put("$LAST_UPDATED", "2021-04-06T08:30:00Z");
+        values.put("$AUTHORED_ON", "2021-04-06T00:00:00.000Z");
+    }
+
+    @Benchmark
+    public String encodeToJsonBaseline() throws IOException {
+        Map<String, String> templateMap = new HashMap<>(values);
+        templateMap.put("$TIMESTAMP", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(0)) + "Z");
+        try (InputStream is = JsonTemplateBenchmark.class.getResourceAsStream(TEMPLATE)) {
+            String json = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            for (String key : templateMap.keySet()) {
+                json = json.replace(key, templateMap.get(key));
+            }
+            return json;
+        }
+    }
+
+    @Benchmark
+    public String encodeToJson() {
+        EreBundle bundle = new EreBundle(new HashMap<>(values));
+        bundle.setTimestampOnField("$TIMESTAMP", new Date(0));
+        return bundle.encodeToJson();
+    }
+}
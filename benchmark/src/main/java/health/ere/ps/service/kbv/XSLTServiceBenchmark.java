@@ -0,0 +1,44 @@
+package health.ere.ps.service.kbv;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.benchmark.BenchmarkResources;
+
+/**
+ * Rendering of the html preview of a bundle with the KBV stylesheet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class XSLTServiceBenchmark {
+
+    private final XSLTService xsltService = new XSLTService();
+
+    private Bundle bundle;
+
+    @Setup
+    public void setUp() {
+        xsltService.init();
+        bundle = BenchmarkResources.bundle("Beispiel_01_PZN.xml");
+    }
+
+    @Benchmark
+    public String generateHtmlForBundle() throws Exception {
+        return xsltService.generateHtmlForBundle(bundle);
+    }
+}
@@ -0,0 +1,38 @@
+package health.ere.ps.service.muster16.parser.rgxer.matcher;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.service.muster16.parser.rgxer.model.MedicationRecord;
+
+/**
+ * Matching of a medication line of a Muster 16 against the medication data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MedicationMatcherBenchmark {
+
+    @Param({"Ibuprofen 600mg 1-1-1", "Amoxicillin 1000mg N2", "Omeprazol  40 mg  0-0-1"})
+    String entry;
+
+    private final MedicationMatcher medicationMatcher = new MedicationMatcher();
+
+    @Benchmark
+    public MedicationRecord bestMatch() {
+        return medicationMatcher.bestMatch(entry);
+    }
+}
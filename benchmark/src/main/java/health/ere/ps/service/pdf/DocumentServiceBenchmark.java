@@ -0,0 +1,57 @@
+package health.ere.ps.service.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.benchmark.BenchmarkResources;
+import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
+
+/**
+ * Generation of the prescription pdf with FOP, for one bundle and for a full page of
+ * bundles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentServiceBenchmark {
+
+    @Param({"1", "3"})
+    int bundles;
+
+    private final DocumentService documentService = new DocumentService();
+
+    private List<BundleWithAccessCodeOrThrowable> bundlesWithAccessCode;
+
+    @Setup
+    public void setUp() {
+        documentService.init();
+        bundlesWithAccessCode = new ArrayList<>();
+        for (int i = 0; i < bundles; i++) {
+            bundlesWithAccessCode.add(new BundleWithAccessCodeOrThrowable(
+                BenchmarkResources.bundle("Beispiel_01_PZN.xml"),
+                "777bea0e13cc9c42ceec14aec3ddee2263325dc2c6c699db115f58fe423607ea"));
+        }
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream generateERezeptPdf() throws Exception {
+        return documentService.generateERezeptPdf(bundlesWithAccessCode);
+    }
+}
@@ -0,0 +1,49 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uhn.fhir.validation.ValidationResult;
+import health.ere.ps.benchmark.BenchmarkResources;
+
+/**
+ * Validation of a KBV sample against the KBV profiles. validateResource does not use the
+ * cache of the validator, so every call validates the bundle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PrescriptionBundleValidatorBenchmark {
+
+    @Param({"Beispiel_01_PZN.xml", "Beispiel_23_Compounding.xml"})
+    String sample;
+
+    private final PrescriptionBundleValidator validator = new PrescriptionBundleValidator();
+
+    private String bundleXml;
+
+    @Setup
+    public void setUp() {
+        validator.init();
+        bundleXml = BenchmarkResources.read("benchmark/" + sample);
+    }
+
+    @Benchmark
+    public ValidationResult validateResource() {
+        return validator.validateResource(bundleXml, false);
+    }
+}
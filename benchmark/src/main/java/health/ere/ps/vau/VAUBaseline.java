@@ -0,0 +1,96 @@
+package health.ere.ps.vau;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.BasicAgreement;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.math.ec.ECPoint;
+
+import health.ere.ps.vau.VAU.KeyCoords;
+
+/**
+ * The VAU encryption and decryption as it was before the cached domain and the pooled ciphers,
+ * kept to compare the numbers of {@link VAUBenchmark} against. Do not use it in the app.
+ */
+class VAUBaseline {
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private VAUBaseline() {
+    }
+
+    static KeyPair generateNewECDHKey() throws Exception {
+        KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance("ECDH", BouncyCastleProvider.PROVIDER_NAME);
+        keyGenerator.initialize(ECNamedCurveTable.getParameterSpec("brainpoolp256r1"), secureRandom);
+        return keyGenerator.generateKeyPair();
+    }
+
+    static byte[] encrypt(String message, KeyPair myECDHKey, KeyCoords vauPublicKeyXY, byte[] iv) throws Exception {
+        X9ECParameters x9EC = VAU.x9EC;
+        ECDomainParameters ecDomain = new ECDomainParameters(x9EC.getCurve(), x9EC.getG(), x9EC.getN(), x9EC.getH(),
+            x9EC.getSeed());
+        BCECPrivateKey myPrivate = (BCECPrivateKey) myECDHKey.getPrivate();
+        BCECPublicKey myPublic = (BCECPublicKey) myECDHKey.getPublic();
+
+        ECPoint point = x9EC.getCurve().createPoint(vauPublicKeyXY.X, vauPublicKeyXY.Y);
+        ECPublicKeyParameters vauPublicKey = new ECPublicKeyParameters(point, ecDomain);
+        BasicAgreement aKeyAgree = new ECDHBasicAgreement();
+        aKeyAgree.init(new ECPrivateKeyParameters(myPrivate.getD(), ecDomain));
+        BigInteger sharedSecret = aKeyAgree.calculateAgreement(vauPublicKey);
+        byte[] sharedSecretBytes = VAU.make32ByteLong(sharedSecret.toByteArray());
+
+        HKDFBytesGenerator hkdfBytesGenerator = new HKDFBytesGenerator(new SHA256Digest());
+        hkdfBytesGenerator.init(new HKDFParameters(sharedSecretBytes, new byte[0], "ecies-vau-transport".getBytes()));
+        byte[] aes128Key_CEK = new byte[16];
+        hkdfBytesGenerator.generateBytes(aes128Key_CEK, 0, aes128Key_CEK.length);
+
+        byte[] input = message.getBytes();
+        byte[] outputAESCGM = new byte[input.length + 16];
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, new AEADParameters(new KeyParameter(aes128Key_CEK), 128, iv));
+        int len = cipher.processBytes(input, 0, input.length, outputAESCGM, 0);
+        cipher.doFinal(outputAESCGM, len);
+
+        ByteArrayOutputStream mem = new ByteArrayOutputStream();
+        mem.write(0x01);
+        mem.write(myPublic.getQ().getXCoord().getEncoded(), 0, myPublic.getQ().getXCoord().getEncoded().length);
+        mem.write(myPublic.getQ().getYCoord().getEncoded(), 0, myPublic.getQ().getYCoord().getEncoded().length);
+        mem.write(iv, 0, iv.length);
+        mem.write(outputAESCGM, 0, outputAESCGM.length);
+        return mem.toByteArray();
+    }
+
+    static byte[] decryptWithKey(byte[] message, byte[] key) throws Exception {
+        var cipherStream = new ByteArrayInputStream(message);
+        byte[] nonce = new byte[96 / 8];
+        cipherStream.read(nonce, 0, nonce.length);
+        var cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(false, new AEADParameters(new KeyParameter(key), 128, nonce, new byte[0]));
+        byte[] cipherText = new byte[message.length - nonce.length];
+        cipherStream.read(cipherText, 0, cipherText.length);
+        var plainText = new byte[cipher.getOutputSize(cipherText.length)];
+        var len = cipher.processBytes(cipherText, 0, cipherText.length, plainText, 0);
+        cipher.doFinal(plainText, len);
+        return plainText;
+    }
+}
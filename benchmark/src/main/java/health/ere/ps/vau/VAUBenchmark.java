@@ -0,0 +1,152 @@
+package health.ere.ps.vau;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.math.ec.ECPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import health.ere.ps.benchmark.BenchmarkResources;
+import health.ere.ps.vau.VAU.KeyCoords;
+
+/**
+ * Encryption of a prescription service request and decryption of its response with the keys
+ * of gemSpec_Krypt that VAUTest uses. The request is the inner http request with a bundle.
+ *
+ * The *Baseline benchmarks run the implementation before the cached domain and the pooled
+ * ciphers, see {@link VAUBaseline}. encrypt and encryptBaseline create a new ephemeral key per
+ * request like the app, the FixedKey variants use the key of gemSpec_Krypt. The iv is changed
+ * for every call, AES/GCM of the JDK refuses to encrypt twice with the same key and iv.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VAUBenchmark {
+
+    private static final String CERT_PUBLIC_KEY_X = "8634212830dad457ca05305e6687134166b9c21a65ffebf555f4e75dfb048888";
+    private static final String CERT_PUBLIC_KEY_Y = "66e4b6843624cbda43c97ea89968bc41fd53576f82c03efa7d601b9facac2b29";
+    private static final String ECC_PRIVATE_KEY = "5bbba34d47502bd588ed680dfa2309ca375eb7a35ddbbd67cc7f8b6b687a1c1d";
+    private static final String EPHEMERAL_PUBLIC_KEY_X = "754e548941e5cd073fed6d734578a484be9f0bbfa1b6fa3168ed7ffb22878f0f";
+    private static final String EPHEMERAL_PUBLIC_KEY_Y = "9aef9bbd932a020d8828367bd080a3e72b36c41ee40c87253f9b1b0beb8371bf";
+    private static final String IV = "257db4604af8ae0dfced37ce";
+    private static final String RESPONSE_KEY = "42d731ad33d8bf6046caf42b4d25ef0f";
+
+    private final VAU vau = new VAU();
+
+    private String request;
+    private byte[] requestBytes;
+    private KeyPair keyPair;
+    private KeyCoords vauPublicKey;
+    private byte[] iv;
+    private long ivCounter;
+    private byte[] responseKey;
+    private byte[] encryptedResponse;
+
+    @Setup
+    public void setUp() throws Exception {
+        String bundle = BenchmarkResources.read("benchmark/Beispiel_01_PZN.xml");
+        request = "1 eyJhbGciOiJCUDI1NlIxIn0 " + RESPONSE_KEY + " " + RESPONSE_KEY + " POST /Task/$create HTTP/1.1\r\n"
+            + "Content-Type: application/fhir+xml\r\nContent-Length: " + bundle.length() + "\r\n\r\n" + bundle;
+        requestBytes = request.getBytes(StandardCharsets.UTF_8);
+        keyPair = keyPair();
+        vauPublicKey = new KeyCoords(new BigInteger(CERT_PUBLIC_KEY_X, 16), new BigInteger(CERT_PUBLIC_KEY_Y, 16));
+        // instead of the key of the VAU certificate of the prescription service
+        vau.useVauPublicKey(vauPublicKey);
+        iv = DatatypeConverter.parseHexBinary(IV);
+        responseKey = DatatypeConverter.parseHexBinary(RESPONSE_KEY);
+        encryptedResponse = encryptResponse(("1 " + RESPONSE_KEY + " HTTP/1.1 200 OK\r\n\r\n" + bundle)
+            .getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] encryptBaseline() throws Exception {
+        return VAUBaseline.encrypt(request, VAUBaseline.generateNewECDHKey(), vauPublicKey, nextIv());
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return vau.encrypt(requestBytes);
+    }
+
+    @Benchmark
+    public byte[] encryptFixedKeyBaseline() throws Exception {
+        return VAUBaseline.encrypt(request, keyPair, vauPublicKey, nextIv());
+    }
+
+    @Benchmark
+    public byte[] encryptFixedKey() throws Exception {
+        return vau.encrypt(request, keyPair, vauPublicKey, nextIv());
+    }
+
+    @Benchmark
+    public byte[] decryptWithKeyBaseline() throws Exception {
+        return VAUBaseline.decryptWithKey(encryptedResponse, responseKey);
+    }
+
+    @Benchmark
+    public byte[] decryptWithKey() throws Exception {
+        return VAU.decryptWithKey(encryptedResponse, responseKey);
+    }
+
+    private byte[] nextIv() {
+        byte[] nextIv = iv.clone();
+        long counter = ++ivCounter;
+        for (int i = nextIv.length - 1; i >= nextIv.length - 8; i--) {
+            nextIv[i] ^= (byte) counter;
+            counter >>>= 8;
+        }
+        return nextIv;
+    }
+
+    private KeyPair keyPair() {
+        ECDomainParameters ecDomain = VAU.getECDomain();
+        ECPoint q = VAU.x9EC.getCurve().createPoint(new BigInteger(EPHEMERAL_PUBLIC_KEY_X, 16),
+            new BigInteger(EPHEMERAL_PUBLIC_KEY_Y, 16));
+        ECPublicKeyParameters pub = new ECPublicKeyParameters(q, ecDomain);
+        ECPrivateKeyParameters priv = new ECPrivateKeyParameters(new BigInteger(ECC_PRIVATE_KEY, 16), ecDomain);
+        return new KeyPair(new BCECPublicKey("EC", pub, BouncyCastleProvider.CONFIGURATION),
+            new BCECPrivateKey("EC", priv, BouncyCastleProvider.CONFIGURATION));
+    }
+
+    /**
+     * Encrypts a response like the VAU of the prescription service: nonce followed by the
+     * AES/GCM cipher text with tag.
+     */
+    private byte[] encryptResponse(byte[] plainText) throws Exception {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(true, new AEADParameters(new KeyParameter(responseKey), 128, iv));
+        byte[] cipherText = new byte[cipher.getOutputSize(plainText.length)];
+        int length = cipher.processBytes(plainText, 0, plainText.length, cipherText, 0);
+        cipher.doFinal(cipherText, length);
+        byte[] message = new byte[iv.length + cipherText.length];
+        System.arraycopy(iv, 0, message, 0, iv.length);
+        System.arraycopy(cipherText, 0, message, iv.length, cipherText.length);
+        return message;
+    }
+}
@@ -0,0 +1,21 @@
+package health.ere.ps.event;
+
+import javax.websocket.Session;
+
+/**
+ * Status of one task of an AbortTasksEvent, sent as soon as the task is aborted.
+ */
+public class AbortTaskStatusEvent extends AbstractEvent {
+
+    private final AbortTaskStatus abortTaskStatus;
+
+    public AbortTaskStatusEvent(AbortTaskStatus abortTaskStatus, Session replyTo, String replyToMessageId) {
+        this.abortTaskStatus = abortTaskStatus;
+        this.replyTo = replyTo;
+        this.replyToMessageId = replyToMessageId;
+    }
+
+    public AbortTaskStatus getAbortTaskStatus() {
+        return this.abortTaskStatus;
+    }
+}
@@ -18,6 +18,7 @@ public final class BundlesEvent extends AbstractEvent {
         this(bundles);
         this.replyTo = replyTo;
         this.id = id;
+        this.replyToMessageId = id;
     }
 
     public List<Bundle> getBundles() {
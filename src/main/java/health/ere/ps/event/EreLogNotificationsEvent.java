@@ -0,0 +1,20 @@
+package health.ere.ps.event;
+
+import java.util.List;
+
+/**
+ * Log notifications of the {@link health.ere.ps.service.logging.EreLogger} that are sent
+ * together, oldest first.
+ */
+public class EreLogNotificationsEvent {
+
+    private final List<EreLogNotificationEvent> notifications;
+
+    public EreLogNotificationsEvent(List<EreLogNotificationEvent> notifications) {
+        this.notifications = notifications;
+    }
+
+    public List<EreLogNotificationEvent> getNotifications() {
+        return notifications;
+    }
+}
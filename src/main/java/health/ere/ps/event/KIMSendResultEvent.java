@@ -0,0 +1,32 @@
+package health.ere.ps.event;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.Session;
+
+public class KIMSendResultEvent extends AbstractEvent implements ReplyableEvent {
+
+    private final ArrayList<KIMSendStatus> results;
+
+    public KIMSendResultEvent(List<KIMSendStatus> results, Session replyTo, String replyToMessageId) {
+        this.results = new ArrayList<>(results);
+        this.replyTo = replyTo;
+        this.replyToMessageId = replyToMessageId;
+    }
+
+    public List<KIMSendStatus> getResults() {
+        return this.results;
+    }
+
+    @Override
+    public String getType() {
+        return "KIMSendResult";
+    }
+
+    @Override
+    public Serializable getPayload() {
+        return results;
+    }
+}
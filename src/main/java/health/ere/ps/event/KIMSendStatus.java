@@ -0,0 +1,67 @@
+package health.ere.ps.event;
+
+import java.io.Serializable;
+
+public class KIMSendStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        OK, ERROR
+    }
+
+    private String prescriptionId;
+    private String toKimAddress;
+    private Status status;
+    private int attempts;
+    private String errorMessage;
+
+    public KIMSendStatus() {
+
+    }
+
+    public KIMSendStatus(String prescriptionId, String toKimAddress) {
+        this.prescriptionId = prescriptionId;
+        this.toKimAddress = toKimAddress;
+    }
+
+    public String getPrescriptionId() {
+        return this.prescriptionId;
+    }
+
+    public void setPrescriptionId(String prescriptionId) {
+        this.prescriptionId = prescriptionId;
+    }
+
+    public String getToKimAddress() {
+        return this.toKimAddress;
+    }
+
+    public void setToKimAddress(String toKimAddress) {
+        this.toKimAddress = toKimAddress;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return this.attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getErrorMessage() {
+        return this.errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
@@ -75,9 +75,13 @@ public class SignAndUploadBundlesEvent extends AbstractEvent {
     }
 
     public SignAndUploadBundlesEvent(Bundle[] bundles, Session senderSession, String id) {
+        this(Arrays.asList(bundles), senderSession, id);
+    }
+
+    public SignAndUploadBundlesEvent(List<Bundle> bundles, Session senderSession, String id) {
         this.replyTo = senderSession;
         this.id = id;
-        listOfListOfBundles.add(Arrays.asList(bundles));
+        listOfListOfBundles.add(bundles);
     }
 
     public List<List<Bundle>> getListOfListOfBundles() {
@@ -0,0 +1,82 @@
+package health.ere.ps.event.erixa;
+
+import java.io.Serializable;
+
+/**
+ * Result of the upload of one prescription to eRiXa.
+ */
+public class ErixaUploadStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        OK, ERROR
+    }
+
+    private int index;
+    private String fileName;
+    private Status status;
+    private int attempts;
+    private int httpStatusCode;
+    private String errorMessage;
+
+    public ErixaUploadStatus() {
+
+    }
+
+    public ErixaUploadStatus(int index, String fileName) {
+        this.index = index;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Position of the prescription in the SendToPharmacy request, starting with 0.
+     */
+    public int getIndex() {
+        return this.index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getAttempts() {
+        return this.attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public int getHttpStatusCode() {
+        return this.httpStatusCode;
+    }
+
+    public void setHttpStatusCode(int httpStatusCode) {
+        this.httpStatusCode = httpStatusCode;
+    }
+
+    public String getErrorMessage() {
+        return this.errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
@@ -0,0 +1,56 @@
+package health.ere.ps.event.erixa;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+import javax.websocket.Session;
+
+import health.ere.ps.event.AbstractEvent;
+import health.ere.ps.event.ReplyableEvent;
+
+/**
+ * Sent for every prescription of a SendToPharmacy request as soon as its upload is finished.
+ */
+public class ErixaUploadStatusEvent extends AbstractEvent implements ReplyableEvent {
+
+    private final ErixaUploadStatus status;
+    private final int completed;
+    private final int total;
+
+    public ErixaUploadStatusEvent(ErixaUploadStatus status, int completed, int total, Session replyTo, String replyToMessageId) {
+        this.status = status;
+        this.completed = completed;
+        this.total = total;
+        this.replyTo = replyTo;
+        this.replyToMessageId = replyToMessageId;
+    }
+
+    public ErixaUploadStatus getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Number of finished uploads of the request including this one.
+     */
+    public int getCompleted() {
+        return this.completed;
+    }
+
+    public int getTotal() {
+        return this.total;
+    }
+
+    @Override
+    public String getType() {
+        return "ErixaUploadStatus";
+    }
+
+    @Override
+    public Serializable getPayload() {
+        HashMap<String, Object> payload = new HashMap<>();
+        payload.put("status", status);
+        payload.put("completed", completed);
+        payload.put("total", total);
+        return payload;
+    }
+}
@@ -0,0 +1,17 @@
+package health.ere.ps.exception.connector;
+
+/**
+ * Thrown when all calls that are allowed to run against one connector at the same time
+ * are in use. The call is not sent to the connector.
+ *
+ * This is a runtime exception because it is thrown from the generated port types, whose
+ * methods only declare the faults of the connector.
+ */
+public class ConnectorBulkheadFullException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConnectorBulkheadFullException(String message) {
+        super(message);
+    }
+}
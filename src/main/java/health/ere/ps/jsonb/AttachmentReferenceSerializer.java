@@ -0,0 +1,64 @@
+package health.ere.ps.jsonb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.json.bind.serializer.JsonbSerializer;
+import javax.json.bind.serializer.SerializationContext;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Replaces byte arrays with a reference to an attachment that is transferred
+ * separately, e.g. as binary websocket frames.
+ *
+ * The attachments are collected for the current thread between
+ * {@link #startCollecting()} and {@link #stopCollecting()}. The references are only written,
+ * so this is a serializer: a Jsonb that reads json never tries to resolve them.
+ */
+public class AttachmentReferenceSerializer implements JsonbSerializer<byte[]> {
+
+    private static final ThreadLocal<List<Attachment>> attachments = new ThreadLocal<>();
+
+    public static void startCollecting() {
+        attachments.set(new ArrayList<>());
+    }
+
+    public static List<Attachment> stopCollecting() {
+        List<Attachment> collected = attachments.get();
+        attachments.remove();
+        return collected != null ? collected : List.of();
+    }
+
+    @Override
+    public void serialize(byte[] bytes, JsonGenerator generator, SerializationContext ctx) {
+        List<Attachment> collected = attachments.get();
+        if (collected == null) {
+            throw new IllegalStateException("AttachmentReferenceSerializer used without collecting attachments");
+        }
+        Attachment attachment = new Attachment(UUID.randomUUID(), bytes);
+        collected.add(attachment);
+        generator.writeStartObject();
+        generator.write("attachmentId", attachment.getId().toString());
+        generator.write("size", bytes.length);
+        generator.writeEnd();
+    }
+
+    public static class Attachment {
+        private final UUID id;
+        private final byte[] content;
+
+        public Attachment(UUID id, byte[] content) {
+            this.id = id;
+            this.content = content;
+        }
+
+        public UUID getId() {
+            return id;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.io.Serializable;
 public class Status implements Serializable{
     private boolean connectorReachable;
     private String connectorInformation;
+    private boolean connectorBulkheadAvailable;
+    private String connectorBulkheadInformation;
     private boolean idpReachable;
     private String idpInformation;
     private String bearerToken;
@@ -26,6 +28,11 @@ public class Status implements Serializable{
         this.connectorInformation = statusDescription;
     }
 
+    public void setConnectorBulkheadAvailable(boolean isOK, String statusDescription) {
+        this.connectorBulkheadAvailable = isOK;
+        this.connectorBulkheadInformation = statusDescription;
+    }
+
     public void setIdpReachable(boolean isOK, String statusDescription) {
         this.idpReachable = isOK;
         this.idpInformation = statusDescription;
@@ -75,6 +82,13 @@ public class Status implements Serializable{
         return this.connectorInformation;
     }
 
+    public boolean getConnectorBulkheadAvailable() {
+        return this.connectorBulkheadAvailable;
+    }
+    public String getConnectorBulkheadInformation() {
+        return this.connectorBulkheadInformation;
+    }
+
     public boolean getIdpReachable() {
         return this.idpReachable;
     }
@@ -1,5 +1,6 @@
 package health.ere.ps.resource.gematik;
 
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
@@ -17,6 +18,7 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Task;
@@ -29,6 +31,7 @@ import de.gematik.ws.conn.eventservice.wsdl.v7.FaultMessage;
 import de.gematik.ws.conn.signatureservice.v7.SignResponse;
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
+import health.ere.ps.service.gematik.BatchSignService;
 import health.ere.ps.service.gematik.ERezeptWorkflowService;
 
 @Path("/workflow")
@@ -37,6 +40,9 @@ public class ERezeptWorkflowResource {
     @Inject
     ERezeptWorkflowService eRezeptWorkflowService;
 
+    @Inject
+    BatchSignService batchSignService;
+
     IParser jsonParser = FhirContext.forR4().newJsonParser();
     IParser xmlParser = FhirContext.forR4().newXmlParser();
 
@@ -90,6 +96,19 @@ public class ERezeptWorkflowResource {
         return Response.ok().entity(responses).type(MediaType.TEXT_PLAIN).build();
     }
 
+    /**
+     * Signs one bundle per line and streams one JSON object per line back, either
+     * {"line":1,"signature":"..."} or {"line":1,"error":"..."}. Results are sent as soon as
+     * their chunk is signed by the connector.
+     */
+    @POST
+    @Path("/batch-sign-stream")
+    public Response signBundlesStream(InputStream bundles) {
+        RuntimeConfig runtimeConfig = extractRuntimeConfigFromHeaders();
+        StreamingOutput output = out -> batchSignService.signBundles(bundles, out, runtimeConfig);
+        return Response.ok(output).type("application/x-ndjson").build();
+    }
+
     @GET
     @Path("/cards")
     public GetCardsResponse cards() {
@@ -3,6 +3,8 @@ package health.ere.ps.resource.status;
 import io.smallrye.common.annotation.Blocking;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
@@ -14,13 +16,20 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.connector.provider.ConnectorBulkheadStatistics;
+import health.ere.ps.service.pipeline.PipelineStageStatistics;
+import health.ere.ps.service.pipeline.PrescriptionPipeline;
 import health.ere.ps.service.status.StatusService;
+import health.ere.ps.websocket.Websocket;
 
 @Path("/status")
 public class StatusResource {
     @Inject
     StatusService statusService;
 
+    @Inject
+    PrescriptionPipeline prescriptionPipeline;
+
     @Context
     HttpServletRequest httpServletRequest;
   
@@ -31,6 +40,36 @@ public class StatusResource {
         return Response.ok(statusService.getStatus(extractRuntimeConfigFromHeaders())).build();
     }
 
+    /**
+     * Returns the number of pending outgoing messages per websocket session.
+     */
+    @GET
+    @Path("/websocket-sessions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Integer> websocketSessions() {
+        return Websocket.getOutboxQueueDepths();
+    }
+
+    /**
+     * Returns queue depth, wait and service time of the stages of the prescription pipeline.
+     */
+    @GET
+    @Path("/pipeline")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, PipelineStageStatistics> pipeline() {
+        return prescriptionPipeline.getStatistics();
+    }
+
+    /**
+     * Returns running and rejected calls of the bulkhead of every connector.
+     */
+    @GET
+    @Path("/connector-bulkheads")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ConnectorBulkheadStatistics> connectorBulkheads() {
+        return statusService.getConnectorBulkheadStatistics();
+    }
+
     RuntimeConfig extractRuntimeConfigFromHeaders() {
         for(Object name : Collections.list(httpServletRequest.getHeaderNames())) {
             if(name.toString().startsWith("X-")) {
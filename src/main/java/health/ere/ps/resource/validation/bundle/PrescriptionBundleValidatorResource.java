@@ -8,8 +8,10 @@ import javax.inject.Inject;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -41,6 +43,13 @@ public class PrescriptionBundleValidatorResource {
         }
     }
 
+    @GET
+    @Path("/statistics")
+    @Produces("application/json")
+    public JsonObject statistics() {
+        return prescriptionBundleValidator.getValidationStatistics();
+    }
+
     private String getXmlForErrorsList(List<String> errorsList) {
         return "<errors>\n    <error>"+errorsList.stream().collect(Collectors.joining("</error>\n    <error>"))+"</error>\n</errors>";
     }
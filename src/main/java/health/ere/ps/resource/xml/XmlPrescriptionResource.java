@@ -4,13 +4,17 @@ import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 import org.hl7.fhir.r4.model.Bundle;
 
 import health.ere.ps.event.BundlesEvent;
+import health.ere.ps.service.fhir.XmlBundleSplitter;
 import health.ere.ps.service.fhir.XmlPrescriptionProcessor;
 
-import java.util.Arrays;
+import java.io.InputStream;
+import java.util.List;
 
 @Path("xmlPrescription")
 public class XmlPrescriptionResource {
@@ -19,9 +23,15 @@ public class XmlPrescriptionResource {
     Event<BundlesEvent> bundleEvent;
 
     @POST
-    public Response post(String xml) {
-        Bundle[] bundle = XmlPrescriptionProcessor.parseFromString(xml);
-        bundleEvent.fireAsync(new BundlesEvent(Arrays.asList(bundle)));
+    public Response post(InputStream xml) {
+        // the upload is split into bundles while it is read, it is never held as one string
+        List<Bundle> bundles;
+        try {
+            bundles = XmlPrescriptionProcessor.parse(xml);
+        } catch (XmlBundleSplitter.MalformedXmlException e) {
+            throw new WebApplicationException(e.getMessage(), Status.BAD_REQUEST);
+        }
+        bundleEvent.fireAsync(new BundlesEvent(bundles));
         return Response.ok().build();
     }
 }
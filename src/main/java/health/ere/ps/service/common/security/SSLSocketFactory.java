@@ -7,53 +7,98 @@ import java.net.UnknownHostException;
 
 import javax.net.SocketFactory;
 
-
+/**
+ * Socket factory that can be configured for JNDI LDAP connections by class name.
+ *
+ * JNDI calls {@link #getDefault()} on the thread that creates the context. The returned
+ * instance keeps the delegate that was set for this thread with {@link #setThreadDelegate},
+ * so concurrent connections with different TLS configurations do not interfere.
+ * The static {@link #delegate} is only used if no thread delegate is set.
+ */
 public class SSLSocketFactory  extends javax.net.ssl.SSLSocketFactory {
 
-    public static javax.net.ssl.SSLSocketFactory delegate;
+    public static volatile javax.net.ssl.SSLSocketFactory delegate;
+
+    private static final ThreadLocal<javax.net.ssl.SSLSocketFactory> threadDelegate = new ThreadLocal<>();
+
+    private final javax.net.ssl.SSLSocketFactory instanceDelegate;
 
     public SSLSocketFactory() {
+        this(currentDelegate());
+    }
+
+    private SSLSocketFactory(javax.net.ssl.SSLSocketFactory instanceDelegate) {
         super();
+        this.instanceDelegate = instanceDelegate;
+    }
+
+    /**
+     * Sets the delegate for the sockets that are created by JNDI on the current thread.
+     * Must be removed with {@link #clearThreadDelegate()} after the context was created.
+     */
+    public static void setThreadDelegate(javax.net.ssl.SSLSocketFactory factory) {
+        threadDelegate.set(factory);
+    }
+
+    public static void clearThreadDelegate() {
+        threadDelegate.remove();
+    }
+
+    private static javax.net.ssl.SSLSocketFactory currentDelegate() {
+        javax.net.ssl.SSLSocketFactory factory = threadDelegate.get();
+        if (factory == null) {
+            factory = delegate;
+        }
+        if (factory == null) {
+            factory = (javax.net.ssl.SSLSocketFactory) javax.net.ssl.SSLSocketFactory.getDefault();
+        }
+        return factory;
+    }
+
+    // used by JNDI when a connect timeout is set
+    @Override
+    public Socket createSocket() throws IOException {
+        return instanceDelegate.createSocket();
     }
 
     @Override
     public Socket createSocket(String arg0, int arg1) throws IOException, UnknownHostException {
-        return delegate.createSocket(arg0, arg1);
+        return instanceDelegate.createSocket(arg0, arg1);
     }
 
     @Override
     public Socket createSocket(InetAddress arg0, int arg1) throws IOException {
-        return delegate.createSocket(arg0, arg1);
+        return instanceDelegate.createSocket(arg0, arg1);
     }
 
     @Override
     public Socket createSocket(String arg0, int arg1, InetAddress arg2, int arg3)
             throws IOException, UnknownHostException {
-        return delegate.createSocket(arg0, arg1);
+        return instanceDelegate.createSocket(arg0, arg1);
     }
 
     @Override
     public Socket createSocket(InetAddress arg0, int arg1, InetAddress arg2, int arg3) throws IOException {
-        return delegate.createSocket(arg0, arg1);
+        return instanceDelegate.createSocket(arg0, arg1);
     }
 
     @Override
     public Socket createSocket(Socket arg0, String arg1, int arg2, boolean arg3) throws IOException {
-        return delegate.createSocket(arg0, arg1, arg2, arg3);
+        return instanceDelegate.createSocket(arg0, arg1, arg2, arg3);
     }
 
     @Override
     public String[] getDefaultCipherSuites() {
-        return delegate.getDefaultCipherSuites();
+        return instanceDelegate.getDefaultCipherSuites();
     }
 
     @Override
     public String[] getSupportedCipherSuites() {
-        return delegate.getSupportedCipherSuites();
+        return instanceDelegate.getSupportedCipherSuites();
     }
-    
-    public static synchronized SocketFactory getDefault() {
-    	return delegate;
+
+    public static SocketFactory getDefault() {
+    	return new SSLSocketFactory(currentDelegate());
     }
-    
+
 }
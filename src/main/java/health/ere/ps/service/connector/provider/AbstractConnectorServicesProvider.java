@@ -37,6 +37,8 @@ public abstract class AbstractConnectorServicesProvider {
     EndpointDiscoveryService endpointDiscoveryService;
     @Inject
     SecretsManagerService secretsManagerService;
+    @Inject
+    ConnectorBulkheadRegistry connectorBulkheadRegistry;
 
 
     private VSDServicePortType vSDServicePortType;
@@ -96,7 +98,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        vSDServicePortType = vsdService;
+        vSDServicePortType = withBulkhead(VSDServicePortType.class, vsdService);
     }
 
     private void initializeCardServicePortType() {
@@ -112,7 +114,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        cardServicePortType = cardService;
+        cardServicePortType = withBulkhead(CardServicePortType.class, cardService);
     }
 
     private void initializeCertificateService() {
@@ -128,7 +130,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        this.certificateService = service;
+        this.certificateService = withBulkhead(CertificateServicePortType.class, service);
     }
 
     private void initializeEventServicePortType() {
@@ -144,7 +146,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        eventServicePortType = service;
+        eventServicePortType = withBulkhead(EventServicePortType.class, service);
     }
 
     private void initializeAuthSignatureServicePortType() {
@@ -159,7 +161,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        authSignatureServicePortType = service;
+        authSignatureServicePortType = withBulkhead(AuthSignatureServicePortType.class, service);
     }
 
     private void initializeSignatureServicePortType() {
@@ -175,7 +177,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        signatureServicePortType = service;
+        signatureServicePortType = withBulkhead(SignatureServicePortTypeV740.class, service);
     }
 
     private void initializeSignatureServicePortTypeV755() {
@@ -191,7 +193,7 @@ public abstract class AbstractConnectorServicesProvider {
         }
         configureBindingProvider(bp);
 
-        signatureServicePortTypeV755 = service;
+        signatureServicePortTypeV755 = withBulkhead(SignatureServicePortTypeV755.class, service);
     }
 
     private void initializeContextType() {
@@ -205,6 +207,13 @@ public abstract class AbstractConnectorServicesProvider {
     }
 
     private void configureBindingProvider(BindingProvider bindingProvider) {
+        int connectTimeoutMs = connectorBulkheadRegistry != null ? connectorBulkheadRegistry.getConnectTimeoutMs()
+            : ConnectorBulkheadRegistry.DEFAULT_CONNECT_TIMEOUT_MS;
+        int readTimeoutMs = connectorBulkheadRegistry != null ? connectorBulkheadRegistry.getReadTimeoutMs()
+            : ConnectorBulkheadRegistry.DEFAULT_READ_TIMEOUT_MS;
+        bindingProvider.getRequestContext().put("com.sun.xml.ws.connect.timeout", connectTimeoutMs);
+        bindingProvider.getRequestContext().put("com.sun.xml.ws.request.timeout", readTimeoutMs);
+
         SSLContext sslContext = secretsManagerService.getSslContext();
         if(sslContext != null) {
             bindingProvider.getRequestContext().put("com.sun.xml.ws.transport.https.client.SSLSocketFactory",
@@ -222,6 +231,23 @@ public abstract class AbstractConnectorServicesProvider {
         }
     }
 
+    private <T> T withBulkhead(Class<T> portType, T port) {
+        if(connectorBulkheadRegistry == null) {
+            return port;
+        }
+        return connectorBulkheadRegistry.getBulkhead(getUserConfig().getConnectorBaseURL()).wrap(portType, port);
+    }
+
+    /**
+     * Returns the bulkhead that limits the concurrent calls to the connector of this provider.
+     */
+    public ConnectorBulkhead getConnectorBulkhead() {
+        if(connectorBulkheadRegistry == null) {
+            return null;
+        }
+        return connectorBulkheadRegistry.getBulkhead(getUserConfig().getConnectorBaseURL());
+    }
+
     @ProvidedConfig
     public CardServicePortType getCardServicePortType() {
         return cardServicePortType;
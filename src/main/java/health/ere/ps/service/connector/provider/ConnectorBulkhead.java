@@ -0,0 +1,121 @@
+package health.ere.ps.service.connector.provider;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.ws.BindingProvider;
+
+import health.ere.ps.exception.connector.ConnectorBulkheadFullException;
+import health.ere.ps.service.metrics.EreMetrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Limits the number of calls that run against one connector at the same time.
+ *
+ * A connector that hangs, e.g. while a SignDocument waits for the PIN entry, only blocks the
+ * threads of its own bulkhead. When all places are taken further calls wait at most
+ * maxWaitMs and are then rejected with a {@link ConnectorBulkheadFullException}.
+ */
+public class ConnectorBulkhead {
+
+    private final String connector;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMs;
+    private final Semaphore semaphore;
+
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicInteger maxActiveCalls = new AtomicInteger();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ConnectorBulkhead(String connector, int maxConcurrentCalls, long maxWaitMs) {
+        this.connector = connector;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMs = maxWaitMs;
+        this.semaphore = new Semaphore(maxConcurrentCalls, true);
+        EreMetrics.gauge(EreMetrics.CONNECTOR_BULKHEAD_ACTIVE_CALLS, activeCalls, AtomicInteger::get,
+            "connector", connector);
+    }
+
+    /**
+     * Returns a port that sends every call of the given port type through this bulkhead. The
+     * returned object is still a {@link BindingProvider} of the wrapped port. The time of every
+     * call is recorded in ere.connector.call, tagged with the SOAP operation, e.g. SignDocument.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T wrap(Class<T> portType, T port) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            try {
+                // the request context and Object methods do not talk to the connector
+                if (method.getDeclaringClass().isAssignableFrom(BindingProvider.class)) {
+                    return method.invoke(port, args);
+                }
+                String operation = Character.toUpperCase(method.getName().charAt(0)) + method.getName().substring(1);
+                acquire();
+                Timer.Sample sample = EreMetrics.start();
+                String outcome = EreMetrics.ERROR;
+                try {
+                    Object result = method.invoke(port, args);
+                    outcome = EreMetrics.SUCCESS;
+                    return result;
+                } finally {
+                    EreMetrics.stop(sample, EreMetrics.CONNECTOR_CALL, outcome, "connector", connector, "operation", operation);
+                    release();
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (T) Proxy.newProxyInstance(portType.getClassLoader(),
+            new Class<?>[] { portType, BindingProvider.class }, handler);
+    }
+
+    void acquire() {
+        boolean acquired;
+        try {
+            acquired = semaphore.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            EreMetrics.increment(EreMetrics.CONNECTOR_BULKHEAD_REJECTED, "connector", connector);
+            throw new ConnectorBulkheadFullException("Connector " + connector + " already has "
+                + maxConcurrentCalls + " running calls, call rejected");
+        }
+        calls.increment();
+        maxActiveCalls.accumulateAndGet(activeCalls.incrementAndGet(), Math::max);
+    }
+
+    void release() {
+        activeCalls.decrementAndGet();
+        semaphore.release();
+    }
+
+    public String getConnector() {
+        return connector;
+    }
+
+    public boolean isSaturated() {
+        return semaphore.availablePermits() == 0;
+    }
+
+    public ConnectorBulkheadStatistics getStatistics() {
+        ConnectorBulkheadStatistics statistics = new ConnectorBulkheadStatistics();
+        statistics.setConnector(connector);
+        statistics.setMaxConcurrentCalls(maxConcurrentCalls);
+        statistics.setActiveCalls(activeCalls.get());
+        statistics.setMaxActiveCalls(maxActiveCalls.get());
+        statistics.setQueuedCalls(semaphore.getQueueLength());
+        statistics.setCalls(calls.sum());
+        statistics.setRejected(rejected.sum());
+        statistics.setSaturated(isSaturated());
+        return statistics;
+    }
+}
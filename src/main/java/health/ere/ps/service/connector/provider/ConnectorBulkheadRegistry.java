@@ -0,0 +1,59 @@
+package health.ere.ps.service.connector.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Holds one {@link ConnectorBulkhead} per connector and the timeouts of the SOAP calls.
+ *
+ * All workplaces that use the same connector share its bulkhead, so the limit protects the
+ * connector and the threads of ere.health, independent of the number of configurations.
+ */
+@ApplicationScoped
+public class ConnectorBulkheadRegistry {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 180000;
+
+    @ConfigProperty(name = "ere.connector.bulkhead.max-concurrent-calls", defaultValue = "8")
+    int maxConcurrentCalls = 8;
+
+    @ConfigProperty(name = "ere.connector.bulkhead.max-wait-ms", defaultValue = "0")
+    long maxWaitMs = 0;
+
+    @ConfigProperty(name = "ere.connector.connect-timeout-ms", defaultValue = "10000")
+    int connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+
+    @ConfigProperty(name = "ere.connector.read-timeout-ms", defaultValue = "180000")
+    int readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+
+    private final Map<String, ConnectorBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    public ConnectorBulkhead getBulkhead(String connectorBaseURL) {
+        String connector = connectorBaseURL != null ? connectorBaseURL : "default";
+        return bulkheads.computeIfAbsent(connector,
+            c -> new ConnectorBulkhead(c, maxConcurrentCalls, maxWaitMs));
+    }
+
+    public List<ConnectorBulkheadStatistics> getStatistics() {
+        List<ConnectorBulkheadStatistics> statistics = new ArrayList<>();
+        for (ConnectorBulkhead bulkhead : bulkheads.values()) {
+            statistics.add(bulkhead.getStatistics());
+        }
+        return statistics;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+}
@@ -0,0 +1,81 @@
+package health.ere.ps.service.connector.provider;
+
+/**
+ * Snapshot of the load of the bulkhead of one connector. Rejected counts the calls that
+ * found the bulkhead full and were not sent to the connector.
+ */
+public class ConnectorBulkheadStatistics {
+
+    private String connector;
+    private int maxConcurrentCalls;
+    private int activeCalls;
+    private int maxActiveCalls;
+    private int queuedCalls;
+    private long calls;
+    private long rejected;
+    private boolean saturated;
+
+    public String getConnector() {
+        return this.connector;
+    }
+
+    public void setConnector(String connector) {
+        this.connector = connector;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return this.maxConcurrentCalls;
+    }
+
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public int getActiveCalls() {
+        return this.activeCalls;
+    }
+
+    public void setActiveCalls(int activeCalls) {
+        this.activeCalls = activeCalls;
+    }
+
+    public int getMaxActiveCalls() {
+        return this.maxActiveCalls;
+    }
+
+    public void setMaxActiveCalls(int maxActiveCalls) {
+        this.maxActiveCalls = maxActiveCalls;
+    }
+
+    public int getQueuedCalls() {
+        return this.queuedCalls;
+    }
+
+    public void setQueuedCalls(int queuedCalls) {
+        this.queuedCalls = queuedCalls;
+    }
+
+    public long getCalls() {
+        return this.calls;
+    }
+
+    public void setCalls(long calls) {
+        this.calls = calls;
+    }
+
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public boolean isSaturated() {
+        return this.saturated;
+    }
+
+    public void setSaturated(boolean saturated) {
+        this.saturated = saturated;
+    }
+}
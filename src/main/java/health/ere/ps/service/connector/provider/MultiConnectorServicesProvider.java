@@ -1,7 +1,7 @@
 package health.ere.ps.service.connector.provider;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.ApplicationScoped;
@@ -28,8 +28,11 @@ public class MultiConnectorServicesProvider {
     @Inject
     Event<Exception> eventException;
 
+    @Inject
+    ConnectorBulkheadRegistry connectorBulkheadRegistry;
+
 
-    Map<UserConfig,SingleConnectorServicesProvider> singleConnectorServicesProvider = new HashMap<>();
+    Map<UserConfig,SingleConnectorServicesProvider> singleConnectorServicesProvider = new ConcurrentHashMap<>();
 
     public CardServicePortType getCardServicePortType(UserConfig userConfig) {
         CardServicePortType cardServicePortType = getSingleConnectorServicesProvider(userConfig).getCardServicePortType();
@@ -40,10 +43,8 @@ public class MultiConnectorServicesProvider {
         if(userConfig == null) {
             return defaultConnectorServicesProvider;
         } else {
-            if(!singleConnectorServicesProvider.containsKey(userConfig)) {
-                singleConnectorServicesProvider.put(userConfig, new SingleConnectorServicesProvider(userConfig, eventException));
-            }
-            return singleConnectorServicesProvider.get(userConfig);
+            return singleConnectorServicesProvider.computeIfAbsent(userConfig,
+                c -> new SingleConnectorServicesProvider(c, eventException, connectorBulkheadRegistry));
         }
     }
 
@@ -90,6 +91,6 @@ public class MultiConnectorServicesProvider {
     }
 
     public void clearAll() {
-        singleConnectorServicesProvider = new HashMap<>();
+        singleConnectorServicesProvider = new ConcurrentHashMap<>();
     }
 }
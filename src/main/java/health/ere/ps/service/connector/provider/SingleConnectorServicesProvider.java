@@ -37,7 +37,13 @@ public class SingleConnectorServicesProvider extends AbstractConnectorServicesPr
     UserConfig userConfig;
 
     public SingleConnectorServicesProvider(UserConfig userConfig, Event<Exception> exceptionEvent) {
+        this(userConfig, exceptionEvent, null);
+    }
+
+    public SingleConnectorServicesProvider(UserConfig userConfig, Event<Exception> exceptionEvent,
+            ConnectorBulkheadRegistry connectorBulkheadRegistry) {
         this.userConfig = userConfig;
+        this.connectorBulkheadRegistry = connectorBulkheadRegistry;
         this.secretsManagerService = new SecretsManagerService();
         
         // Try to read SSL Certificates from the userConfig (this can also be the runtime config)
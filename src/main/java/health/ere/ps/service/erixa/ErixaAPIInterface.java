@@ -1,6 +1,8 @@
 package health.ere.ps.service.erixa;
 
 import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -33,15 +35,33 @@ public class ErixaAPIInterface {
     @Inject
     Event<Exception> eventException;
 
+    @ConfigProperty(name = "erixa.user-details.cache-ttl-seconds", defaultValue = "300")
+    long userDetailsTtlSeconds = 300;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private final Logger log = Logger.getLogger(getClass().getName());
 
+    private volatile CachedUserDetails cachedUserDetails;
+
 
+    /**
+     * Returns the details of the eRiXa user. They are fetched at most once per
+     * erixa.user-details.cache-ttl-seconds for the same credentials.
+     */
     public UserDetails getUserDetails() {
+        String credentials = httpClient.getCredentialsKey();
+        CachedUserDetails cached = cachedUserDetails;
+        if(cached != null && cached.isValid(credentials, userDetailsTtlSeconds)) {
+            return cached.userDetails;
+        }
         try {
             HttpResponse response = httpClient.sendGetRequest(userUserDataURL);
-            return parseUserDetails(response);
+            UserDetails userDetails = parseUserDetails(response);
+            if(userDetails != null) {
+                cachedUserDetails = new CachedUserDetails(credentials, userDetails);
+            }
+            return userDetails;
         } catch (Exception e) {
             e.printStackTrace();
             eventException.fireAsync(e);
@@ -51,12 +71,8 @@ public class ErixaAPIInterface {
 
     public Object uploadToDrugstore(String json) {
         try {
-            log.info("Post: "+uploadToDrugstoreURL+" "+json);
-            HttpResponse response = httpClient.sendPostRequest(uploadToDrugstoreURL, json);
-            if(response.getStatusLine().getStatusCode() != 200) {
-                log.log(Level.WARNING, "Could not upload prescription to eRiXa: "+response.getStatusLine().getStatusCode()+" "+new String(response.getEntity().getContent().readAllBytes()));
-            }
-            return parseDrugstoreUploadResult(response);
+            upload(json);
+            return null;
         } catch (Exception e) {
             e.printStackTrace();
             eventException.fireAsync(e);
@@ -64,12 +80,51 @@ public class ErixaAPIInterface {
         }
     }
 
+    /**
+     * Uploads a prescription to the drugstore and consumes the response, so that the
+     * connection can be reused.
+     *
+     * @return the HTTP status code of eRiXa
+     */
+    public int upload(String json) throws IOException {
+        log.info("Post: "+uploadToDrugstoreURL+" "+json.length()+" characters");
+        HttpResponse response = httpClient.sendPostRequest(uploadToDrugstoreURL, json);
+        try {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if(statusCode != 200) {
+                log.log(Level.WARNING, "Could not upload prescription to eRiXa: "+statusCode+" "+
+                    (response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : ""));
+            } else {
+                parseDrugstoreUploadResult(response);
+            }
+            return statusCode;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
     Object parseDrugstoreUploadResult(HttpResponse response) {
         // TODO implement method
         // throw new UnsupportedOperationException();
         return null;
     }
 
+    private static class CachedUserDetails {
+        private final String credentials;
+        private final UserDetails userDetails;
+        private final long created = System.nanoTime();
+
+        CachedUserDetails(String credentials, UserDetails userDetails) {
+            this.credentials = credentials;
+            this.userDetails = userDetails;
+        }
+
+        boolean isValid(String credentials, long ttlSeconds) {
+            return Objects.equals(this.credentials, credentials)
+                && System.nanoTime() - created < TimeUnit.SECONDS.toNanos(ttlSeconds);
+        }
+    }
+
     UserDetails parseUserDetails(HttpResponse response) {
         HttpEntity entity = response.getEntity();
         String content;
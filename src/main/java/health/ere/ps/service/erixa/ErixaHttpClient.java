@@ -3,20 +3,27 @@ package health.ere.ps.service.erixa;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.model.erixa.api.credentials.BasicAuthCredentials;
@@ -29,7 +36,50 @@ public class ErixaHttpClient {
     @Inject
     UserConfig userConfig;
 
-    private final HttpClient httpClient = HttpClientBuilder.create().build();
+    @ConfigProperty(name = "erixa.http.max-connections", defaultValue = "8")
+    int maxConnections = 8;
+
+    @ConfigProperty(name = "erixa.http.connect-timeout-ms", defaultValue = "10000")
+    int connectTimeoutMs = 10000;
+
+    @ConfigProperty(name = "erixa.http.socket-timeout-ms", defaultValue = "60000")
+    int socketTimeoutMs = 60000;
+
+    private CloseableHttpClient httpClient;
+
+    /**
+     * Creates the client with a connection pool that is large enough for the parallel uploads.
+     * Responses must be consumed completely, otherwise the connection is not given back to the pool.
+     */
+    @PostConstruct
+    void init() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        // all requests go to the same host
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMs)
+            .setConnectionRequestTimeout(connectTimeoutMs)
+            .setSocketTimeout(socketTimeoutMs)
+            .build();
+        httpClient = HttpClientBuilder.create()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictIdleConnections(60, TimeUnit.SECONDS)
+            .build();
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            if (httpClient != null) {
+                httpClient.close();
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not close eRiXa http client", e);
+        }
+    }
 
     public HttpResponse sendPostRequest(String url, String json) throws IOException {
 
@@ -66,6 +116,13 @@ public class ErixaHttpClient {
         return new BasicAuthCredentials(userConfig.getErixaUserEmail(), userConfig.getErixaUserPassword());
     }
 
+    /**
+     * Changes when the eRiXa user or api key is changed in the configuration.
+     */
+    String getCredentialsKey() {
+        return userConfig.getErixaUserEmail() + ":" + userConfig.getErixaUserPassword() + ":" + getApiKey();
+    }
+
     private String getApiKey() {
         return userConfig.getErixaApiKey();
     }
@@ -1,21 +1,39 @@
 package health.ere.ps.service.erixa;
 
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Base64;
+import java.net.ConnectException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
 import javax.inject.Inject;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.websocket.Session;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.apache.http.conn.ConnectTimeoutException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
 import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.erixa.ErixaEvent;
+import health.ere.ps.event.erixa.ErixaUploadStatus;
+import health.ere.ps.event.erixa.ErixaUploadStatusEvent;
 import health.ere.ps.event.erixa.SendToPharmacyEvent;
 import health.ere.ps.model.erixa.PrescriptionTransferEntry;
 import health.ere.ps.model.erixa.api.mapping.DeliveryType;
@@ -25,6 +43,7 @@ import health.ere.ps.model.erixa.api.mapping.PrescriptionData;
 import health.ere.ps.model.erixa.api.mapping.PrescriptionDoctorData;
 import health.ere.ps.model.erixa.api.mapping.Role;
 import health.ere.ps.model.erixa.api.mapping.UserDetails;
+import health.ere.ps.service.metrics.EreMetrics;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 
 @ApplicationScoped
@@ -39,23 +58,70 @@ public class ErixaUploadService {
     @Inject
     Event<Exception> exceptionEvent;
 
+    @Inject
+    Event<ErixaUploadStatusEvent> uploadStatusEvent;
+
+    @ConfigProperty(name = "erixa.upload.threads", defaultValue = "4")
+    int uploadThreads = 4;
+
+    @ConfigProperty(name = "erixa.upload.max-attempts", defaultValue = "3")
+    int maxAttempts = 3;
+
+    @ConfigProperty(name = "erixa.upload.retry-backoff-ms", defaultValue = "1000")
+    long retryBackoffMs = 1000;
+
     private final ObjectMapper mapper;
-    private final SimpleDateFormat simpleDateFormat, timestampFormat;
+    // SimpleDateFormat is not thread safe, uploads run in parallel
+    private final DateTimeFormatter simpleDateFormat, timestampFormat;
+
+    private ThreadPoolExecutor uploadExecutor;
 
     private static Logger log = Logger.getLogger(ErixaUploadService.class.getName());
 
 
     public ErixaUploadService() {
         mapper = new ObjectMapper();
-        simpleDateFormat = new SimpleDateFormat("dd-MM-yyyy");
-        timestampFormat = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss'Z'");
+        simpleDateFormat = DateTimeFormatter.ofPattern("dd-MM-yyyy").withZone(ZoneId.systemDefault());
+        timestampFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'hh:mm:ss'Z'").withZone(ZoneId.systemDefault());
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        uploadExecutor = new ThreadPoolExecutor(uploadThreads, uploadThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ere-erixa-upload-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        uploadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (uploadExecutor != null) {
+            uploadExecutor.shutdownNow();
+        }
     }
 
+    /**
+     * Handles SendToPharmacy requests. The payload is either one prescription with document and
+     * details or a list of them in "prescriptions". The uploads run on the eRiXa upload threads,
+     * an ErixaUploadStatus is sent for every prescription when its upload is finished.
+     */
     public void generatePrescriptionBundle(@ObservesAsync ErixaEvent erixaEvent) {
         if("SendToPharmacy".equals(erixaEvent.processType)){
             try {
-                SendToPharmacyEvent event = new SendToPharmacyEvent(erixaEvent.payload, erixaEvent.getReplyTo(), erixaEvent.getId());
-                uploadPrescriptionToDrugstore(event);
+                List<SendToPharmacyEvent> events = new ArrayList<>();
+                JsonArray prescriptions = erixaEvent.payload.getJsonArray("prescriptions");
+                if(prescriptions != null) {
+                    for(JsonObject prescription : prescriptions.getValuesAs(JsonObject.class)) {
+                        events.add(new SendToPharmacyEvent(prescription, erixaEvent.getReplyTo(), erixaEvent.getId()));
+                    }
+                } else {
+                    events.add(new SendToPharmacyEvent(erixaEvent.payload, erixaEvent.getReplyTo(), erixaEvent.getId()));
+                }
+                uploadPrescriptionsToDrugstore(events, erixaEvent.getReplyTo(), erixaEvent.getReplyToMessageId());
             } catch (IOException e) {
                 log.log(Level.WARNING, "Problem during uploading to pharmacy", e);
                 exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, erixaEvent.getReplyTo(), erixaEvent.getReplyToMessageId()));
@@ -63,6 +129,36 @@ public class ErixaUploadService {
         }
     }
 
+    /**
+     * Starts the uploads of the given prescriptions, at most erixa.upload.threads in parallel.
+     *
+     * @return completes when all uploads are finished, with the results in the order of the events
+     */
+    public CompletableFuture<List<ErixaUploadStatus>> uploadPrescriptionsToDrugstore(List<SendToPharmacyEvent> events,
+            Session replyTo, String replyToMessageId) {
+        AtomicInteger completed = new AtomicInteger();
+        List<CompletableFuture<ErixaUploadStatus>> futures = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            int index = i;
+            SendToPharmacyEvent event = events.get(i);
+            CompletableFuture<ErixaUploadStatus> future = uploadExecutor != null
+                ? CompletableFuture.supplyAsync(() -> upload(index, event), uploadExecutor)
+                : CompletableFuture.completedFuture(upload(index, event));
+            futures.add(future.thenApply(status -> {
+                if (uploadStatusEvent != null) {
+                    uploadStatusEvent.fireAsync(new ErixaUploadStatusEvent(status, completed.incrementAndGet(),
+                        events.size(), replyTo, replyToMessageId));
+                }
+                return status;
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<ErixaUploadStatus> results = new ArrayList<>();
+            futures.forEach(f -> results.add(f.join()));
+            return results;
+        });
+    }
+
     public void uploadPrescriptionToDrugstore(SendToPharmacyEvent event) throws IOException {
         PrescriptionTransferEntry details = event.getDetails();
 
@@ -71,6 +167,63 @@ public class ErixaUploadService {
         apiInterface.uploadToDrugstore(json);
     }
 
+    ErixaUploadStatus upload(int index, SendToPharmacyEvent event) {
+        ErixaUploadStatus status = new ErixaUploadStatus(index, null);
+        long backoff = retryBackoffMs;
+        try {
+            DoctorUploadToDrugstorePrescriptionModel model = buildBody(event.getDocument(), event.getDetails());
+            status.setFileName(model.getFileName());
+            String json = mapper.writeValueAsString(model);
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                status.setAttempts(attempt);
+                boolean retry;
+                try {
+                    int statusCode = apiInterface.upload(json);
+                    status.setHttpStatusCode(statusCode);
+                    if (statusCode == 200) {
+                        status.setStatus(ErixaUploadStatus.Status.OK);
+                        status.setErrorMessage(null);
+                        return status;
+                    }
+                    status.setStatus(ErixaUploadStatus.Status.ERROR);
+                    status.setErrorMessage("eRiXa responded with status " + statusCode);
+                    // eRiXa rejected the request itself, sending it again does not create a duplicate.
+                    // A gateway answers 502 and 504 also when eRiXa stored the upload, they are not retried.
+                    retry = statusCode == 429 || statusCode == 503;
+                } catch (IOException e) {
+                    status.setStatus(ErixaUploadStatus.Status.ERROR);
+                    status.setErrorMessage(e.getMessage());
+                    retry = isNotSent(e);
+                    log.log(Level.WARNING, "Could not upload prescription to eRiXa, attempt " + attempt + " of " + maxAttempts, e);
+                }
+                if (!retry || attempt == maxAttempts) {
+                    break;
+                }
+                EreMetrics.retry(EreMetrics.ERIXA_UPLOAD);
+                Thread.sleep(backoff);
+                backoff *= 2;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status.setStatus(ErixaUploadStatus.Status.ERROR);
+            status.setErrorMessage("Upload was interrupted");
+        } catch (RuntimeException | IOException e) {
+            log.log(Level.WARNING, "Problem during uploading to pharmacy", e);
+            status.setStatus(ErixaUploadStatus.Status.ERROR);
+            status.setErrorMessage(e.getMessage());
+        }
+        return status;
+    }
+
+    /**
+     * Only errors where eRiXa can not have received the upload are retried. A read timeout or
+     * a missing response is not retried because the prescription might have been stored already,
+     * the same holds for the status codes 502 and 504.
+     */
+    static boolean isNotSent(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException;
+    }
+
     private DoctorUploadToDrugstorePrescriptionModel buildBody(String document, PrescriptionTransferEntry details) {
 
         DoctorUploadToDrugstorePrescriptionModel model = new DoctorUploadToDrugstorePrescriptionModel();
@@ -89,15 +242,24 @@ public class ErixaUploadService {
     }
 
     private String getFileName(PrescriptionTransferEntry details) {
-        String date = simpleDateFormat.format(details.getCreationDateTime());
+        String date = simpleDateFormat.format(details.getCreationDateTime().toInstant());
         String name = String.format("%s %s", details.getFirstName(), details.getLastName());
         String receiver = getDrugstoreEmail();
 
         return String.format("%s %s %s.pdf", date, name, receiver);
     }
 
-    private int getFileSize(String base64Document) {
-        return Base64.getDecoder().decode(base64Document).length;
+    // the decoded length follows from the base64 length, the document does not have to be decoded
+    static int getFileSize(String base64Document) {
+        int length = base64Document.length();
+        int padding = 0;
+        if (length > 0 && base64Document.charAt(length - 1) == '=') {
+            padding++;
+            if (length > 1 && base64Document.charAt(length - 2) == '=') {
+                padding++;
+            }
+        }
+        return (int) ((long) length * 3 / 4) - padding;
     }
 
     private void interpolateDrugstoreDetails(DoctorUploadToDrugstorePrescriptionModel model) {
@@ -150,8 +312,7 @@ public class ErixaUploadService {
     }
 
     private String parseBirthday(Date birthday) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss'Z'");
-        return dateFormat.format(birthday);
+        return timestampFormat.format(birthday.toInstant());
     }
 
     private PrescriptionDoctorData getDoctorData() {
@@ -160,6 +321,6 @@ public class ErixaUploadService {
     }
 
     private String toTimestamp(Date date){
-        return timestampFormat.format(date);
+        return timestampFormat.format(date.toInstant());
     }
 }
@@ -0,0 +1,212 @@
+package health.ere.ps.service.fhir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Reads XML input once with StAX and returns every top level Bundle element as a separate
+ * XML string. The input is one document or several documents next to each other, e.g.
+ * Bundle elements without a common root, see {@link XmlDocumentsReader}.
+ *
+ * Attribute values and text are passed through a transformer while they are copied,
+ * namespaces that are declared on an ancestor of a Bundle are declared on the Bundle.
+ * The document is only read as far as needed for the next bundle.
+ */
+public class XmlBundleSplitter implements Iterator<String>, AutoCloseable {
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+
+    static {
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private final XMLStreamReader reader;
+    private final UnaryOperator<String> valueTransformer;
+    private String nextBundle;
+    private boolean finished;
+
+    public XmlBundleSplitter(Reader input, UnaryOperator<String> valueTransformer) {
+        this.valueTransformer = valueTransformer;
+        try {
+            this.reader = inputFactory.createXMLStreamReader(new XmlDocumentsReader(input));
+        } catch (XMLStreamException e) {
+            throw new MalformedXmlException(e);
+        }
+    }
+
+    /**
+     * @param input the xml documents, the encoding is taken from the xml declaration of the first one
+     */
+    public XmlBundleSplitter(InputStream input, UnaryOperator<String> valueTransformer) {
+        this.valueTransformer = valueTransformer;
+        try {
+            this.reader = inputFactory.createXMLStreamReader(XmlDocumentsReader.of(input));
+        } catch (XMLStreamException e) {
+            throw new MalformedXmlException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the remaining bundles as a sequential stream. Closing the stream closes the splitter.
+     */
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(this::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextBundle == null && !finished) {
+            nextBundle = readNextBundle();
+            if (nextBundle == null) {
+                finished = true;
+                close();
+            }
+        }
+        return nextBundle != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String bundle = nextBundle;
+        nextBundle = null;
+        return bundle;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new MalformedXmlException(e);
+        }
+    }
+
+    private String readNextBundle() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "Bundle".equals(reader.getLocalName())) {
+                    return copyElement();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new MalformedXmlException(e);
+        }
+    }
+
+    private String copyElement() throws XMLStreamException {
+        StringWriter out = new StringWriter();
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out);
+        int depth = 0;
+        while (true) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement(writer, depth == 0);
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(valueTransformer.apply(reader.getText()));
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(valueTransformer.apply(reader.getText()));
+                    break;
+                default:
+                    // comments and processing instructions are not needed by the FHIR parser
+                    break;
+            }
+            if (depth == 0) {
+                break;
+            }
+            reader.next();
+        }
+        writer.flush();
+        writer.close();
+        return out.toString();
+    }
+
+    private void writeStartElement(XMLStreamWriter writer, boolean root) throws XMLStreamException {
+        String prefix = emptyIfNull(reader.getPrefix());
+        String namespaceUri = emptyIfNull(reader.getNamespaceURI());
+        writer.writeStartElement(prefix, reader.getLocalName(), namespaceUri);
+
+        Set<String> declaredPrefixes = new HashSet<>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            writeNamespace(writer, emptyIfNull(reader.getNamespacePrefix(i)), emptyIfNull(reader.getNamespaceURI(i)));
+            declaredPrefixes.add(emptyIfNull(reader.getNamespacePrefix(i)));
+        }
+        if (root && !namespaceUri.isEmpty() && declaredPrefixes.add(prefix)) {
+            writeNamespace(writer, prefix, namespaceUri);
+        }
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String attributeNamespace = emptyIfNull(reader.getAttributeNamespace(i));
+            String value = valueTransformer.apply(reader.getAttributeValue(i));
+            if (attributeNamespace.isEmpty()) {
+                writer.writeAttribute(reader.getAttributeLocalName(i), value);
+            } else {
+                String attributePrefix = emptyIfNull(reader.getAttributePrefix(i));
+                if (root && !"xml".equals(attributePrefix) && declaredPrefixes.add(attributePrefix)) {
+                    writeNamespace(writer, attributePrefix, attributeNamespace);
+                }
+                writer.writeAttribute(attributePrefix, attributeNamespace, reader.getAttributeLocalName(i), value);
+            }
+        }
+    }
+
+    private static void writeNamespace(XMLStreamWriter writer, String prefix, String namespaceUri)
+            throws XMLStreamException {
+        if (prefix.isEmpty()) {
+            writer.writeDefaultNamespace(namespaceUri);
+        } else {
+            writer.writeNamespace(prefix, namespaceUri);
+        }
+    }
+
+    private static String emptyIfNull(String value) {
+        return value != null ? value : "";
+    }
+
+    /**
+     * Thrown when the input is not well-formed XML.
+     */
+    public static class MalformedXmlException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public MalformedXmlException(XMLStreamException cause) {
+            super("Could not read XML bundles: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package health.ere.ps.service.fhir;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads XML input as the content of a synthetic root element, so that several documents next
+ * to each other, e.g. Bundle elements without a common root, can be read with one StAX reader.
+ *
+ * The XML declarations of the documents are left out, a declaration is only allowed at the
+ * start of a document.
+ */
+class XmlDocumentsReader extends Reader {
+
+    private static final String PREFIX = "<ere-documents>";
+    private static final String SUFFIX = "</ere-documents>";
+    // "?xml" and a whitespace after the "<"
+    private static final int DECLARATION_LOOKAHEAD = 5;
+    private static final int HEAD_LENGTH = 256;
+    private static final Pattern ENCODING = Pattern.compile("^<\\?xml\\s[^>]*encoding\\s*=\\s*[\"']([A-Za-z0-9._-]+)[\"']");
+
+    private final PushbackReader in;
+    private int prefixPosition;
+    private int suffixPosition = -1;
+
+    XmlDocumentsReader(Reader input) {
+        this.in = new PushbackReader(new BufferedReader(input), DECLARATION_LOOKAHEAD);
+    }
+
+    /**
+     * @param input the xml documents, the encoding is taken from the byte order mark or the
+     *              xml declaration of the first document, UTF-8 if there is none
+     */
+    static XmlDocumentsReader of(InputStream input) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(input);
+        return new XmlDocumentsReader(new InputStreamReader(in, detectCharset(in)));
+    }
+
+    static Charset detectCharset(BufferedInputStream in) throws IOException {
+        in.mark(HEAD_LENGTH);
+        byte[] head = in.readNBytes(HEAD_LENGTH);
+        in.reset();
+        if (head.length >= 2 && ((head[0] == (byte) 0xFE && head[1] == (byte) 0xFF)
+                || (head[0] == (byte) 0xFF && head[1] == (byte) 0xFE))) {
+            // the decoder takes the byte order from the byte order mark
+            return StandardCharsets.UTF_16;
+        }
+        String declaration = new String(head, StandardCharsets.ISO_8859_1);
+        if (declaration.startsWith("\u00EF\u00BB\u00BF")) {
+            return StandardCharsets.UTF_8;
+        }
+        Matcher matcher = ENCODING.matcher(declaration);
+        if (matcher.find() && Charset.isSupported(matcher.group(1))) {
+            return Charset.forName(matcher.group(1));
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            int c = next();
+            if (c < 0) {
+                break;
+            }
+            cbuf[off + count++] = (char) c;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    private int next() throws IOException {
+        if (prefixPosition < PREFIX.length()) {
+            return PREFIX.charAt(prefixPosition++);
+        }
+        if (suffixPosition < 0) {
+            int c = in.read();
+            while (c == '<' && skipDeclaration()) {
+                c = in.read();
+            }
+            if (c >= 0) {
+                return c;
+            }
+            suffixPosition = 0;
+        }
+        return suffixPosition < SUFFIX.length() ? SUFFIX.charAt(suffixPosition++) : -1;
+    }
+
+    /**
+     * Called after a "<", skips the rest of an XML declaration. Anything else is pushed back.
+     */
+    private boolean skipDeclaration() throws IOException {
+        char[] lookahead = new char[DECLARATION_LOOKAHEAD];
+        int count = 0;
+        int c;
+        while (count < lookahead.length && (c = in.read()) >= 0) {
+            lookahead[count++] = (char) c;
+        }
+        if (count < lookahead.length || !"?xml".equals(new String(lookahead, 0, 4))
+                || !Character.isWhitespace(lookahead[4])) {
+            in.unread(lookahead, 0, count);
+            return false;
+        }
+        int previous = 0;
+        while ((c = in.read()) >= 0 && !(previous == '?' && c == '>')) {
+            previous = c;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
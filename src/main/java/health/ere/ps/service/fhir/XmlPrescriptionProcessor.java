@@ -1,12 +1,17 @@
 package health.ere.ps.service.fhir;
 
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response.Status;
@@ -31,32 +36,54 @@ import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 
 public class XmlPrescriptionProcessor {
-    // Get <Bundle> tag including content
-    private static final Pattern GET_BUNDLE = Pattern.compile("(<Bundle[^>]*>.*?</Bundle>)", Pattern.DOTALL);
     private static final Pattern GET_UUID = Pattern.compile("^urn:uuid:(.*)");
     private static final FhirContext fhirContext = FhirContext.forR4();
+    // applied to every attribute value and text while the bundles are split
+    private static final UnaryOperator<String> FIX_PROFILE_VERSION = value -> value.replace("|1.0.1", "|1.0.2");
 
+    /**
+     * @see #parse(Reader)
+     */
     public static Bundle[] parseFromString(String xml) {
-        List<Bundle> bundles = new ArrayList<>();
-        Matcher m = GET_BUNDLE.matcher(xml);
-        boolean found = false;
-        while (m.find()) {
-            found = true;
-            String bundleXml = m.group(1);
-            Bundle bundle = createFixedBundleFromString(bundleXml);
-            bundles.add(bundle);
+        return parse(new StringReader(xml)).toArray(new Bundle[0]);
+    }
+
+    /**
+     * Reads all bundles of the given XML input. Every XML input is read with this policy:
+     * the input has to be one or several well-formed XML documents that contain at least one
+     * Bundle element. The bundles are parsed one after the other while the input is read.
+     *
+     * @throws XmlBundleSplitter.MalformedXmlException if the input is not well-formed
+     * @throws WebApplicationException with status 406 if the input contains no bundle
+     */
+    public static List<Bundle> parse(Reader xml) {
+        return parse(new XmlBundleSplitter(xml, FIX_PROFILE_VERSION));
+    }
+
+    /**
+     * @see #parse(Reader)
+     */
+    public static List<Bundle> parse(InputStream xml) {
+        return parse(new XmlBundleSplitter(xml, FIX_PROFILE_VERSION));
+    }
+
+    private static List<Bundle> parse(XmlBundleSplitter splitter) {
+        List<Bundle> bundles;
+        try (Stream<String> stream = splitter.stream()) {
+            bundles = stream.map(XmlPrescriptionProcessor::createFixedBundleFromFixedVersionString)
+                .collect(Collectors.toList());
         }
-        if (!found) {
+        if (bundles.isEmpty()) {
             throw new WebApplicationException("Could not extract inner text", Status.NOT_ACCEPTABLE);
         }
-        return bundles.toArray(new Bundle[]{});
-
+        return bundles;
     }
 
     public static Bundle createFixedBundleFromString(String bundleXml) {
+        return createFixedBundleFromFixedVersionString(FIX_PROFILE_VERSION.apply(bundleXml));
+    }
 
-        bundleXml = bundleXml.replaceAll("\\|1.0.1", "|1.0.2");
-
+    private static Bundle createFixedBundleFromFixedVersionString(String bundleXml) {
         Bundle bundle = fhirContext.newXmlParser().parseResource(Bundle.class, bundleXml);
         fixFullUrls(bundle);
         fixRefencesInComposition(bundle);
@@ -4,11 +4,8 @@ import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.Bundle;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -21,6 +18,9 @@ public class EreBundle extends Bundle {
     protected Map<String, String> templateMap = new HashMap<>();
     protected String jsonTemplateForBundle;
 
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneId.systemDefault());
+
     public EreBundle(Bundle bundle) {
         this.bundle = bundle;
     }
@@ -34,25 +34,38 @@ public class EreBundle extends Bundle {
     }
 
     public String encodeToJson() {
+        StringBuilder sb = new StringBuilder();
+        encodeToJson(sb);
+        jsonTemplateForBundle = sb.toString();
+        return jsonTemplateForBundle;
+    }
 
-        try (InputStream is = getClass().getResourceAsStream(
-                "/bundle-samples/FEbundleTemplate.json")) {
-
+    /**
+     * Renders the bundle template into the given builder, so that several bundles
+     * can be written into the same buffer.
+     */
+    public void encodeToJson(StringBuilder sb) {
+        try {
             if(MapUtils.isEmpty(templateMap)) {
                 throw new EreParseException("Error. Bundle object must not have a null or empty " +
                         " template map object!");
             }
-
-            jsonTemplateForBundle = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-
-            templateMap.keySet().forEach(key ->
-                    jsonTemplateForBundle = jsonTemplateForBundle.replace(
-                            key, templateMap.get(key)));
-        } catch (EreParseException | IOException e) {
+            JsonTemplate template = TemplateHolder.FE_BUNDLE_TEMPLATE;
+            if (template.getSlotNames().containsAll(templateMap.keySet())) {
+                template.renderTo(templateMap, sb);
+            } else {
+                // keys that are not $PLACEHOLDER slots are replaced like before
+                String json = template.render(templateMap);
+                for (Map.Entry<String, String> entry : templateMap.entrySet()) {
+                    if (!template.getSlotNames().contains(entry.getKey())) {
+                        json = json.replace(entry.getKey(), entry.getValue());
+                    }
+                }
+                sb.append(json);
+            }
+        } catch (EreParseException | RuntimeException e) {
             throw new IllegalStateException("Error: Unable to serialise bundle to json!", e);
         }
-
-        return jsonTemplateForBundle;
     }
 
     public void setTimestampOnField(String fieldName, Date date) {
@@ -63,10 +76,13 @@ public class EreBundle extends Bundle {
                 tempDate = new Date();
             }
 
-            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
-
-            templateMap.put(fieldName, dateFormat.format(tempDate) + "Z");
+            templateMap.put(fieldName, TIMESTAMP_FORMAT.format(tempDate.toInstant()) + "Z");
         }
     }
 
+    // loaded on first use, a missing template fails encodeToJson and not the class loading
+    private static class TemplateHolder {
+        static final JsonTemplate FE_BUNDLE_TEMPLATE =
+                JsonTemplate.fromResource("/bundle-samples/FEbundleTemplate.json");
+    }
 }
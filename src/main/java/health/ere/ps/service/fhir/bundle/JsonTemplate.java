@@ -0,0 +1,170 @@
+package health.ere.ps.service.fhir.bundle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A json text with $PLACEHOLDER slots that is parsed once into literal and slot segments.
+ *
+ * A slot that is inside a json string literal is filled with the json escaped value.
+ * A slot outside of a string literal is filled with the raw value, these slots are
+ * used for optional json fragments. Slots without a value are rendered as they are.
+ */
+public class JsonTemplate {
+
+    private final String[] literals;
+    private final String[] slotNames;
+    private final boolean[] slotInString;
+    private final Set<String> names;
+    private final int literalLength;
+
+    private JsonTemplate(List<String> literals, List<String> slotNames, List<Boolean> slotInString) {
+        this.literals = literals.toArray(new String[0]);
+        this.slotNames = slotNames.toArray(new String[0]);
+        this.slotInString = new boolean[slotInString.size()];
+        for (int i = 0; i < this.slotInString.length; i++) {
+            this.slotInString[i] = slotInString.get(i);
+        }
+        this.names = Collections.unmodifiableSet(new HashSet<>(slotNames));
+        this.literalLength = literals.stream().mapToInt(String::length).sum();
+    }
+
+    public static JsonTemplate fromResource(String resourceName) {
+        try (InputStream is = JsonTemplate.class.getResourceAsStream(resourceName)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Template " + resourceName + " not found");
+            }
+            return parse(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits the template at every $ followed by an upper case letter. The slot name
+     * includes the $ and all following upper case letters, digits and underscores.
+     */
+    public static JsonTemplate parse(String template) {
+        List<String> literals = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        List<Boolean> slotInString = new ArrayList<>();
+        boolean inString = false;
+        int literalStart = 0;
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (inString && c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '"') {
+                inString = !inString;
+            } else if (c == '$' && i + 1 < template.length() && isSlotStart(template.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < template.length() && isSlotPart(template.charAt(end))) {
+                    end++;
+                }
+                literals.add(template.substring(literalStart, i));
+                slotNames.add(template.substring(i, end));
+                slotInString.add(inString);
+                literalStart = end;
+                i = end;
+                continue;
+            }
+            i++;
+        }
+        literals.add(template.substring(literalStart));
+        return new JsonTemplate(literals, slotNames, slotInString);
+    }
+
+    private static boolean isSlotStart(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isSlotPart(char c) {
+        return isSlotStart(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * @return the names of all slots including the leading $
+     */
+    public Set<String> getSlotNames() {
+        return names;
+    }
+
+    public String render(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder(literalLength + 32 * slotNames.length);
+        renderTo(values, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Renders the template in one pass into the given builder.
+     */
+    public void renderTo(Map<String, String> values, StringBuilder sb) {
+        for (int i = 0; i < slotNames.length; i++) {
+            sb.append(literals[i]);
+            String value = values.get(slotNames[i]);
+            if (value == null) {
+                sb.append(slotNames[i]);
+            } else if (slotInString[i]) {
+                appendEscaped(value, sb);
+            } else {
+                sb.append(value);
+            }
+        }
+        sb.append(literals[literals.length - 1]);
+    }
+
+    public static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        appendEscaped(value, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the value as content of a json string literal.
+     */
+    public static void appendEscaped(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+}
@@ -169,7 +169,7 @@ public class PrescriptionBundlesBuilderV2 implements IBundlesBuilder {
             templateKeyMapper.put($DOSAGE_TEXT, "");
         } else {
             templateKeyMapper.put($DOSAGE_TEXT, DOSAGE_TEXT_TEMPLATE
-                    .replace($DOSAGE, medicationString.getInstructions()));
+                    .replace($DOSAGE, JsonTemplate.escape(medicationString.getInstructions())));
         }
     }
 
@@ -180,7 +180,7 @@ public class PrescriptionBundlesBuilderV2 implements IBundlesBuilder {
 
         if (!muster16PrescriptionForm.getPatientNamePrefix().isEmpty()) {
             String prefixes = String.join(" ", muster16PrescriptionForm.getPatientNamePrefix());
-            templateKeyMapper.put($PATIENT_NAME_PREFIX, PREFIX_TEMPLATE.replace($PREFIX, prefixes));
+            templateKeyMapper.put($PATIENT_NAME_PREFIX, PREFIX_TEMPLATE.replace($PREFIX, JsonTemplate.escape(prefixes)));
         } else {
             templateKeyMapper.put($PATIENT_NAME_PREFIX, "");
         }
@@ -212,7 +212,7 @@ public class PrescriptionBundlesBuilderV2 implements IBundlesBuilder {
 
         if (!muster16PrescriptionForm.getPractitionerNamePrefix().isEmpty()) {
             templateKeyMapper.put($PRACTITIONER_NAME_PREFIX, PREFIX_TEMPLATE.replace($PREFIX,
-                    muster16PrescriptionForm.getPractitionerNamePrefix()));
+                    JsonTemplate.escape(muster16PrescriptionForm.getPractitionerNamePrefix())));
         } else {
             templateKeyMapper.put($PRACTITIONER_NAME_PREFIX, "");
         }
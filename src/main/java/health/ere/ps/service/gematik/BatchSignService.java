@@ -0,0 +1,195 @@
+package health.ere.ps.service.gematik;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hl7.fhir.r4.model.Bundle;
+
+import ca.uhn.fhir.context.FhirContext;
+import de.gematik.ws.conn.signatureservice.v7.SignResponse;
+import health.ere.ps.config.RuntimeConfig;
+
+/**
+ * Signs a stream of bundles, one bundle per line (NDJSON or one XML document per line).
+ *
+ * The bundles are parsed on a worker pool while the previous chunk is signed. Every chunk
+ * holds chunkSize bundles and is signed in one SignDocument call of the connector. The result
+ * of every line is written as soon as its chunk is signed, e.g.
+ * {@code {"line":1,"signature":"MIAG..."}} or {@code {"line":2,"error":"..."}}, so a broken
+ * bundle does not fail the whole batch.
+ */
+@ApplicationScoped
+public class BatchSignService {
+
+    private static final Logger log = Logger.getLogger(BatchSignService.class.getName());
+
+    @Inject
+    ERezeptWorkflowService eRezeptWorkflowService;
+
+    @ConfigProperty(name = "ere.batch-sign.parse-threads", defaultValue = "2")
+    int parseThreads = 2;
+
+    @ConfigProperty(name = "ere.batch-sign.chunk-size", defaultValue = "10")
+    int chunkSize = 10;
+
+    private final FhirContext fhirContext = FhirContext.forR4();
+
+    private ThreadPoolExecutor parseExecutor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        parseExecutor = new ThreadPoolExecutor(parseThreads, parseThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ere-batch-sign-parser-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        parseExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (parseExecutor != null) {
+            parseExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the bundles from the input and writes one result line per bundle to the output.
+     * The output is flushed after every chunk. Blank lines are skipped, the line numbers of
+     * the results count all lines of the input starting with 1.
+     */
+    public void signBundles(InputStream in, OutputStream out, RuntimeConfig runtimeConfig) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        // two chunks are parsed ahead, the next one is ready when the current one is signed
+        Deque<ParsedLine> pending = new ArrayDeque<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            pending.add(new ParsedLine(lineNumber, parse(line)));
+            if (pending.size() >= 2 * chunkSize) {
+                signChunk(pending, writer, runtimeConfig);
+            }
+        }
+        while (!pending.isEmpty()) {
+            signChunk(pending, writer, runtimeConfig);
+        }
+        writer.flush();
+    }
+
+    private Future<Bundle> parse(String line) {
+        if (parseExecutor == null) {
+            CompletableFuture<Bundle> future = new CompletableFuture<>();
+            try {
+                future.complete(parseBundle(line));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        return parseExecutor.submit(() -> parseBundle(line));
+    }
+
+    Bundle parseBundle(String line) {
+        // parsers are not thread safe, every bundle gets its own
+        String trimmed = line.trim();
+        return trimmed.startsWith("<") ? fhirContext.newXmlParser().parseResource(Bundle.class, trimmed)
+            : fhirContext.newJsonParser().parseResource(Bundle.class, trimmed);
+    }
+
+    private void signChunk(Deque<ParsedLine> pending, Writer writer, RuntimeConfig runtimeConfig) throws IOException {
+        List<Integer> lineNumbers = new ArrayList<>();
+        List<Bundle> bundles = new ArrayList<>();
+        for (int i = 0; i < chunkSize && !pending.isEmpty(); i++) {
+            ParsedLine parsedLine = pending.poll();
+            try {
+                bundles.add(parsedLine.bundle.get());
+                lineNumbers.add(parsedLine.lineNumber);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch sign was interrupted", e);
+            } catch (ExecutionException e) {
+                writeError(writer, parsedLine.lineNumber, e.getCause());
+            }
+        }
+        if (!bundles.isEmpty()) {
+            try {
+                List<SignResponse> signResponses = eRezeptWorkflowService.signBundleWithIdentifiers(bundles, false, runtimeConfig);
+                for (int i = 0; i < lineNumbers.size(); i++) {
+                    writeSignResponse(writer, lineNumbers.get(i), i < signResponses.size() ? signResponses.get(i) : null);
+                }
+            } catch (Exception e) {
+                log.log(Level.WARNING, "Could not sign chunk of " + bundles.size() + " bundles", e);
+                for (Integer lineNumber : lineNumbers) {
+                    writeError(writer, lineNumber, e);
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeSignResponse(Writer writer, int lineNumber, SignResponse signResponse) throws IOException {
+        if (signResponse == null || signResponse.getSignatureObject() == null
+            || signResponse.getSignatureObject().getBase64Signature() == null) {
+            writeLine(writer, Json.createObjectBuilder().add("line", lineNumber)
+                .add("error", "Connector returned no signature"));
+            return;
+        }
+        writeLine(writer, Json.createObjectBuilder().add("line", lineNumber)
+            .add("signature", Base64.getEncoder().encodeToString(signResponse.getSignatureObject().getBase64Signature().getValue())));
+    }
+
+    private void writeError(Writer writer, int lineNumber, Throwable throwable) throws IOException {
+        String message = throwable.getMessage() != null ? throwable.getMessage() : throwable.getClass().getSimpleName();
+        writeLine(writer, Json.createObjectBuilder().add("line", lineNumber).add("error", message));
+    }
+
+    private void writeLine(Writer writer, JsonObjectBuilder builder) throws IOException {
+        writer.write(builder.build().toString());
+        writer.write('\n');
+    }
+
+    private static class ParsedLine {
+        private final int lineNumber;
+        private final Future<Bundle> bundle;
+
+        ParsedLine(int lineNumber, Future<Bundle> bundle) {
+            this.lineNumber = lineNumber;
+            this.bundle = bundle;
+        }
+    }
+}
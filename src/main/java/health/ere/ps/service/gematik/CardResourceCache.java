@@ -0,0 +1,134 @@
+package health.ere.ps.service.gematik;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+
+/**
+ * Keeps data that was read from an inserted card, e.g. the insurant data of an eGK.
+ *
+ * The connector assigns a new card handle every time a card is inserted, so the key of
+ * a card changes when it is removed and inserted again. Entries of cards that are no
+ * longer returned by GetCards are removed with {@link #retainCards(Connector, Collection)}.
+ *
+ * Card handles are only unique within a connector and its context, so every entry belongs
+ * to the {@link Connector} it was read from and is only returned for that connector.
+ */
+public class CardResourceCache<T> {
+
+    private final Map<CardKey, T> entries;
+
+    public CardResourceCache(int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CardKey, T> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static String cardKey(CardInfoType card) {
+        return card.getCardHandle() + "|" + card.getIccsn() + "|" + card.getInsertTime();
+    }
+
+    public synchronized T get(Connector connector, CardInfoType card) {
+        return entries.get(new CardKey(connector, cardKey(card)));
+    }
+
+    public synchronized void put(Connector connector, CardInfoType card, T value) {
+        entries.put(new CardKey(connector, cardKey(card)), value);
+    }
+
+    /**
+     * Removes the entries of the given connector whose cards are not in the given GetCards
+     * result. The entries of other connectors are kept.
+     */
+    public synchronized void retainCards(Connector connector, Collection<CardInfoType> insertedCards) {
+        Set<String> keys = new HashSet<>();
+        for (CardInfoType card : insertedCards) {
+            keys.add(cardKey(card));
+        }
+        entries.keySet().removeIf(key -> key.connector.equals(connector) && !keys.contains(key.card));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The connector and the context that the cards were read with.
+     */
+    public static class Connector {
+        private final String connectorBaseURL;
+        private final String mandantId;
+        private final String clientSystemId;
+        private final String workplaceId;
+
+        public Connector(String connectorBaseURL, String mandantId, String clientSystemId, String workplaceId) {
+            this.connectorBaseURL = connectorBaseURL;
+            this.mandantId = mandantId;
+            this.clientSystemId = clientSystemId;
+            this.workplaceId = workplaceId;
+        }
+
+        public static Connector of(String connectorBaseURL, ContextType context) {
+            return new Connector(connectorBaseURL, context.getMandantId(), context.getClientSystemId(),
+                    context.getWorkplaceId());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Connector)) {
+                return false;
+            }
+            Connector connector = (Connector) o;
+            return Objects.equals(connectorBaseURL, connector.connectorBaseURL)
+                    && Objects.equals(mandantId, connector.mandantId)
+                    && Objects.equals(clientSystemId, connector.clientSystemId)
+                    && Objects.equals(workplaceId, connector.workplaceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectorBaseURL, mandantId, clientSystemId, workplaceId);
+        }
+    }
+
+    private static class CardKey {
+        private final Connector connector;
+        private final String card;
+
+        CardKey(Connector connector, String card) {
+            this.connector = Objects.requireNonNull(connector, "connector");
+            this.card = card;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CardKey)) {
+                return false;
+            }
+            CardKey cardKey = (CardKey) o;
+            return connector.equals(cardKey.connector) && card.equals(cardKey.card);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connector, card);
+        }
+    }
+}
@@ -11,17 +11,23 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
@@ -31,6 +37,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.Response;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -41,6 +48,7 @@ import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.c14n.InvalidCanonicalizerException;
 import org.apache.xml.security.parser.XMLParserException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Binary;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Coding;
@@ -48,7 +56,6 @@ import org.hl7.fhir.r4.model.Identifier;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
 import org.hl7.fhir.r4.model.Task;
-import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
@@ -72,6 +79,7 @@ import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.AbortTaskEntry;
 import health.ere.ps.event.AbortTaskStatus;
 import health.ere.ps.event.AbortTasksEvent;
+import health.ere.ps.event.AbortTaskStatusEvent;
 import health.ere.ps.event.AbortTasksStatusEvent;
 import health.ere.ps.event.ActivateComfortSignatureEvent;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
@@ -89,8 +97,11 @@ import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 import health.ere.ps.service.idp.BearerTokenService;
-import health.ere.ps.vau.VAUEngine;
+import health.ere.ps.service.logging.PayloadLog;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.service.pipeline.PrescriptionPipeline;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
+import io.micrometer.core.instrument.Timer;
 import oasis.names.tc.dss._1_0.core.schema.Base64Data;
 
 @ApplicationScoped
@@ -124,13 +135,24 @@ public class ERezeptWorkflowService {
     @Inject
     Event<AbortTasksStatusEvent> abortTasksStatusEvent;
     @Inject
+    Event<AbortTaskStatusEvent> abortTaskStatusEvent;
+    @Inject
+    PrescriptionPipeline pipeline;
+    @Inject
     Event<GetSignatureModeResponseEvent> getSignatureModeResponseEvent;
     @Inject
     Event<GetCardsResponseEvent> getCardsResponseEvent;
+    @Inject
+    PrescriptionServiceClients prescriptionServiceClients;
+
+    @ConfigProperty(name = "ere.workflow-service.abort.parallelism", defaultValue = "4")
+    int abortParallelism = 4;
 
-    private Client client;
     //In the future it should be managed automatically by the webclient, including its renewal
-    private Map<RuntimeConfig, String> bearerToken = new HashMap<>();
+    // synchronized because tasks are aborted in parallel, allows the null key of the default configuration
+    private Map<RuntimeConfig, String> bearerToken = Collections.synchronizedMap(new HashMap<>());
+
+    private ThreadPoolExecutor abortExecutor;
 
     private String userIdForComfortSignature;
 
@@ -157,16 +179,21 @@ public class ERezeptWorkflowService {
 
     @PostConstruct
     public void init() throws SecretsManagerException {
-        ClientBuilder clientBuilder = ClientBuilder.newBuilder();
-        if (appConfig.vauEnabled()) {
-            try {
-                ((ResteasyClientBuilderImpl) clientBuilder).httpEngine(new VAUEngine(appConfig.getPrescriptionServiceURL()));
-            } catch (Exception ex) {
-                log.log(Level.SEVERE, "Could not enable VAU", ex);
-                exceptionEvent.fireAsync(ex);
-            }
+        AtomicInteger threadNumber = new AtomicInteger();
+        abortExecutor = new ThreadPoolExecutor(abortParallelism, abortParallelism, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ere-abort-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        abortExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (abortExecutor != null) {
+            abortExecutor.shutdownNow();
         }
-        client = clientBuilder.build();
     }
 
     /**
@@ -174,15 +201,23 @@ public class ERezeptWorkflowService {
      * necessary processing
      */
     public void onSignAndUploadBundlesEvent(@ObservesAsync SignAndUploadBundlesEvent signAndUploadBundlesEvent) {
+        PrescriptionPipeline.run(pipeline, PrescriptionPipeline.SIGN_AND_UPLOAD, signAndUploadBundlesEvent,
+            () -> signAndUploadBundles(signAndUploadBundlesEvent));
+    }
+
+    void signAndUploadBundles(SignAndUploadBundlesEvent signAndUploadBundlesEvent) {
         requestNewAccessTokenIfNecessary(signAndUploadBundlesEvent.getRuntimeConfig(), signAndUploadBundlesEvent.getReplyTo(), signAndUploadBundlesEvent.getReplyToMessageId());
 
         List<List<Bundle>> listOfListOfBundles = signAndUploadBundlesEvent.listOfListOfBundles;
         log.info(String.format("Received %d bundles to sign ", listOfListOfBundles.size()));
-        log.info("Contents of list of bundles to sign are as follows:");
-        listOfListOfBundles.forEach(bundlesList -> {
-            log.info("Bundles list contents is:");
-            bundlesList.forEach(bundle -> log.info("Bundle content: " + bundle.toString()));
-        });
+        if (log.isLoggable(Level.FINE)) {
+            listOfListOfBundles.forEach(bundlesList ->
+                bundlesList.forEach(bundle -> log.fine("Bundle to sign: " + PayloadLog.summary(bundle))));
+        }
+        PayloadLog.dump("Bundles to sign", () -> listOfListOfBundles.stream()
+            .map(bundlesList -> bundlesList.stream().map(bundle -> fhirContext.newJsonParser().encodeResourceToString(bundle))
+                .collect(Collectors.joining("\n")))
+            .collect(Collectors.joining("\n")));
 
         List<List<BundleWithAccessCodeOrThrowable>> bundleWithAccessCodeOrThrowable = new ArrayList<>();
         List<Bundle> bundles = signAndUploadBundlesEvent.listOfListOfBundles.stream().flatMap(b -> b.stream()).collect(Collectors.toList());
@@ -369,11 +404,13 @@ public class ERezeptWorkflowService {
         ePrescriptionParameter.setResource(binary);
         parameters.addParameter(ePrescriptionParameter);
 
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task")
+        String prescriptionServiceURL = prescriptionServiceClients.getPrescriptionServiceURL(runtimeConfig);
+        try (Response response = post("$activate", EreMetrics.flowtypeOfTask(taskId), runtimeConfig,
+                prescriptionServiceClients.getClient(prescriptionServiceURL).target(prescriptionServiceURL).path("/Task")
                 .path("/" + taskId).path("/$activate").request()
                 .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
-                .post(Entity.entity(fhirContext.newXmlParser().encodeResourceToString(parameters),
+                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode),
+                Entity.entity(fhirContext.newXmlParser().encodeResourceToString(parameters),
                         "application/fhir+xml; charset=utf-8"))) {
 
             String taskString = response.readEntity(String.class);
@@ -382,9 +419,10 @@ public class ERezeptWorkflowService {
             if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
                 if(firstTry) {
                     log.warning("Was not able to $activate on first try. Status:" +response.getStatus()+" Response: " + taskString);
+                    EreMetrics.retry(EreMetrics.PRESCRIPTION_SERVICE_CALL, "operation", "$activate");
                     updateERezeptTask(taskId, accessCode, signedBytes, false, runtimeConfig, replyTo, replyToMessageId);
                 } else {
-                    throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+taskString, response.getStatus());
+                    throw new WebApplicationException("Error on "+prescriptionServiceURL+" "+taskString, response.getStatus());
                 }
             }
             log.info("Task $activate Response: " + taskString);
@@ -673,21 +711,24 @@ public class ERezeptWorkflowService {
         String parameterString = fhirContext.newXmlParser().encodeResourceToString(parameters);
         log.fine("Parameter String: " + parameterString);
 
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task/$create").request()
+        String prescriptionServiceURL = prescriptionServiceClients.getPrescriptionServiceURL(runtimeConfig);
+        try (Response response = post("$create", flowtype, runtimeConfig,
+                prescriptionServiceClients.getClient(prescriptionServiceURL).target(prescriptionServiceURL).path("/Task/$create").request()
                 .header("User-Agent", appConfig.getUserAgent())
-                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig))
-                .post(Entity.entity(parameterString, "application/fhir+xml; charset=utf-8"))) {
+                .header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)),
+                Entity.entity(parameterString, "application/fhir+xml; charset=utf-8"))) {
 
             String taskString = response.readEntity(String.class);
 
             // if this was the first try, try again, this will request a new bearer token
             if(firstTry && response.getStatus() == 401) {
                 log.warning("401 when trying to create e prescription. Retrying.");
+                EreMetrics.retry(EreMetrics.PRESCRIPTION_SERVICE_CALL, "operation", "$create");
                 return createERezeptTask(false, runtimeConfig, flowtype);
             }
 
             if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL) {
-                throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+taskString+" Status: "+response.getStatus(), response.getStatus());
+                throw new WebApplicationException("Error on "+prescriptionServiceURL+" "+taskString+" Status: "+response.getStatus(), response.getStatus());
             }
             log.info("Task Response: " + taskString);
             return fhirContext.newXmlParser().parseResource(Task.class, new StringReader(taskString));
@@ -706,20 +747,42 @@ public class ERezeptWorkflowService {
      */
     public void abortERezeptTask(RuntimeConfig runtimeConfig, String taskId, String accessCode) {
         requestNewAccessTokenIfNecessary(runtimeConfig, null, null);
-        try (Response response = client.target(appConfig.getPrescriptionServiceURL()).path("/Task").path("/" + taskId).path("/$abort")
-                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode)
-                .post(Entity.entity("", "application/fhir+xml; charset=utf-8"))) {
+        String prescriptionServiceURL = prescriptionServiceClients.getPrescriptionServiceURL(runtimeConfig);
+        try (Response response = post("$abort", EreMetrics.flowtypeOfTask(taskId), runtimeConfig,
+                prescriptionServiceClients.getClient(prescriptionServiceURL).target(prescriptionServiceURL).path("/Task").path("/" + taskId).path("/$abort")
+                .request().header("User-Agent", appConfig.getUserAgent()).header("Authorization", "Bearer " + bearerToken.get(runtimeConfig)).header("X-AccessCode", accessCode),
+                Entity.entity("", "application/fhir+xml; charset=utf-8"))) {
             String taskString = response.readEntity(String.class);
             // if it is not successful and it was found
             if (Response.Status.Family.familyOf(response.getStatus()) != Response.Status.Family.SUCCESSFUL
             && response.getStatus() != Response.Status.NOT_FOUND.getStatusCode()) {
-                throw new WebApplicationException("Error on "+appConfig.getPrescriptionServiceURL()+" "+taskString, response.getStatus());
+                throw new WebApplicationException("Error on "+prescriptionServiceURL+" "+taskString, response.getStatus());
             }
             
             log.info("Task $abort Response: " + taskString);
         }
     }
     
+    /**
+     * Posts the request to the prescription service and records the time in
+     * ere.prescription.service.call. A response that is not successful is tagged with outcome error.
+     */
+    private Response post(String operation, String flowtype, RuntimeConfig runtimeConfig, Invocation.Builder request, Entity<?> entity) {
+        String[] tags = { "connector", EreMetrics.connector(runtimeConfig != null ? runtimeConfig : userConfig),
+            "flowtype", flowtype != null ? flowtype : "unknown", "operation", operation };
+        Timer.Sample sample = EreMetrics.start();
+        try {
+            Response response = request.post(entity);
+            EreMetrics.stop(sample, EreMetrics.PRESCRIPTION_SERVICE_CALL,
+                Response.Status.Family.familyOf(response.getStatus()) == Response.Status.Family.SUCCESSFUL
+                    ? EreMetrics.SUCCESS : EreMetrics.ERROR, tags);
+            return response;
+        } catch (RuntimeException e) {
+            EreMetrics.stop(sample, EreMetrics.PRESCRIPTION_SERVICE_CALL, EreMetrics.ERROR, tags);
+            throw e;
+        }
+    }
+
     public void requestNewAccessTokenIfNecessary() {
         requestNewAccessTokenIfNecessary(null, null, null);
     }
@@ -763,28 +826,41 @@ public class ERezeptWorkflowService {
     }
 
     /**
-     * Is executed when an abortTasksEvent is received
+     * Is executed when an abortTasksEvent is received. The tasks are aborted in parallel,
+     * an AbortTaskStatus is sent for every task as soon as it is finished and an
+     * AbortTasksStatus with all tasks at the end.
      * @param abortTasksEvent event that contains the task to abort
      */
     public void onAbortTasksEvent(@ObservesAsync AbortTasksEvent abortTasksEvent) {
         requestNewAccessTokenIfNecessary(abortTasksEvent.getRuntimeConfig(), abortTasksEvent.getReplyTo(), abortTasksEvent.getReplyToMessageId());
-        List<AbortTaskStatus> abortTaskStatusList = new ArrayList<>();
+        List<CompletableFuture<AbortTaskStatus>> futures = new ArrayList<>();
         for (AbortTaskEntry abortTaskEntry : abortTasksEvent.getTasks()) {
-            AbortTaskStatus abortTaskStatus = new AbortTaskStatus(abortTaskEntry);
-
-            try {
-                abortERezeptTask(abortTasksEvent.getRuntimeConfig(), abortTaskEntry.getId(), abortTaskEntry.getAccessCode());
-                abortTaskStatus.setStatus(AbortTaskStatus.Status.OK);
-            } catch (Throwable t) {
-                abortTaskStatus.setThrowable(t);
-                abortTaskStatus.setStatus(AbortTaskStatus.Status.ERROR);
-            }
-
-            abortTaskStatusList.add(abortTaskStatus);
+            CompletableFuture<AbortTaskStatus> future = abortExecutor != null
+                ? CompletableFuture.supplyAsync(() -> abortTask(abortTasksEvent.getRuntimeConfig(), abortTaskEntry), abortExecutor)
+                : CompletableFuture.completedFuture(abortTask(abortTasksEvent.getRuntimeConfig(), abortTaskEntry));
+            futures.add(future.thenApply(abortTaskStatus -> {
+                if (abortTaskStatusEvent != null) {
+                    abortTaskStatusEvent.fireAsync(new AbortTaskStatusEvent(abortTaskStatus, abortTasksEvent.getReplyTo(), abortTasksEvent.getId()));
+                }
+                return abortTaskStatus;
+            }));
         }
+        List<AbortTaskStatus> abortTaskStatusList = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
         abortTasksStatusEvent.fireAsync(new AbortTasksStatusEvent(abortTaskStatusList, abortTasksEvent.getReplyTo(), abortTasksEvent.getId()));
     }
 
+    private AbortTaskStatus abortTask(RuntimeConfig runtimeConfig, AbortTaskEntry abortTaskEntry) {
+        AbortTaskStatus abortTaskStatus = new AbortTaskStatus(abortTaskEntry);
+        try {
+            abortERezeptTask(runtimeConfig, abortTaskEntry.getId(), abortTaskEntry.getAccessCode());
+            abortTaskStatus.setStatus(AbortTaskStatus.Status.OK);
+        } catch (Throwable t) {
+            abortTaskStatus.setThrowable(t);
+            abortTaskStatus.setStatus(AbortTaskStatus.Status.ERROR);
+        }
+        return abortTaskStatus;
+    }
+
     /**
      * Reacts to the event the ActivateComfortSignatureEvent
      */
@@ -955,7 +1031,7 @@ public class ERezeptWorkflowService {
      * Checks if ERezeptService is reachable
      */
     public boolean isERezeptServiceReachable(RuntimeConfig runtimeConfig, String parameterBearerToken) {
-        String prescriptionServiceURL = (runtimeConfig != null && runtimeConfig.getPrescriptionServerURL() != null) ? runtimeConfig.getPrescriptionServerURL() : appConfig.getPrescriptionServiceURL();
+        String prescriptionServiceURL = prescriptionServiceClients.getPrescriptionServiceURL(runtimeConfig);
         if (prescriptionServiceURL==null) return false;
         // use a http client that does not use a VAU implementation
         Client testClient = ClientBuilder.newBuilder()
@@ -974,6 +1050,8 @@ public class ERezeptWorkflowService {
             }
         } catch(Exception ex) {
             return false;
+        } finally {
+            testClient.close();
         }
     }
 }
@@ -3,49 +3,54 @@ package health.ere.ps.service.gematik;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
 import javax.inject.Inject;
-import javax.mail.Authenticator;
 import javax.mail.Message;
+import javax.mail.MessagingException;
 import javax.mail.Multipart;
-import javax.mail.PasswordAuthentication;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
-import javax.naming.Context;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.SizeLimitExceededException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
-import javax.naming.ldap.InitialLdapContext;
 import javax.naming.ldap.LdapContext;
 
-import org.hl7.fhir.r4.model.Bundle;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import health.ere.ps.config.RuntimeConfig;
 import health.ere.ps.event.BundlesWithAccessCodeEvent;
+import health.ere.ps.event.KIMSendResultEvent;
+import health.ere.ps.event.KIMSendStatus;
 import health.ere.ps.event.VZDSearchEvent;
 import health.ere.ps.event.VZDSearchResultEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
-import health.ere.ps.service.common.security.SSLSocketFactory;
 import health.ere.ps.service.common.security.SecretsManagerService;
+import health.ere.ps.service.pipeline.PrescriptionPipeline;
+import health.ere.ps.service.gematik.KIMTransportPool.PooledTransport;
+import health.ere.ps.service.gematik.VZDLdapContextPool.PooledContext;
+import health.ere.ps.service.metrics.EreMetrics;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 
 @ApplicationScoped
@@ -59,66 +64,123 @@ public class KIMFlowtype169Service {
     @Inject
     Event<VZDSearchResultEvent> vZDSearchResultEvent;
 
+    @Inject
+    Event<KIMSendResultEvent> kIMSendResultEvent;
+
     @Inject
     Event<Exception> exceptionEvent;
 
-    Pattern HOST_WITH_PORT = Pattern.compile("^(.*):([0-9]+)$");
+    @Inject
+    KIMTransportPool transportPool;
+
+    @Inject
+    VZDLdapContextPool contextPool;
+
+    @Inject
+    PrescriptionPipeline pipeline;
+
+    @ConfigProperty(name = "ere.vzd.cache.max-entries", defaultValue = "200")
+    int searchCacheMaxEntries = 200;
+
+    @ConfigProperty(name = "ere.vzd.cache.ttl-seconds", defaultValue = "60")
+    long searchCacheTtlSeconds = 60;
+
+    VZDSearchCache searchCache;
+
+    @ConfigProperty(name = "ere.kim.smtp.max-attempts", defaultValue = "3")
+    int maxAttempts = 3;
+
+    @ConfigProperty(name = "ere.kim.smtp.retry-backoff-ms", defaultValue = "500")
+    long retryBackoffMs = 500;
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ere-kim-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     @PostConstruct
+    public void init() {
+        disableEndpointIdentification();
+        if(searchCacheMaxEntries > 0) {
+            searchCache = new VZDSearchCache(searchCacheMaxEntries, searchCacheTtlSeconds);
+        }
+    }
+
     public void disableEndpointIdentification() {
         System.setProperty("com.sun.jndi.ldap.object.disableEndpointIdentification", "true");
     }
 
     public void sendERezeptToKIMAddress(String fromKimAddress, String toKimAddress, String noteToPharmacy, String smtpHostServer, String smtpUser, String smtpPassword, String eRezeptToken) {
-        try {
-            Properties props = new Properties();
-            Matcher m = HOST_WITH_PORT.matcher(smtpHostServer);
-            if(m.matches()) {
-                props.put("mail.smtp.host", m.group(1));
-                props.put("mail.smtp.port", m.group(2));
-            } else {
-                props.put("mail.smtp.host", smtpHostServer);
-            }
-            props.put("mail.smtp.auth", true);
+        KIMSendStatus status = sendERezepteToKIMAddress(fromKimAddress, toKimAddress, noteToPharmacy, smtpHostServer,
+            smtpUser, smtpPassword, List.of(Map.entry("", eRezeptToken))).get(0);
+        if (status.getStatus() == KIMSendStatus.Status.ERROR) {
+            log.warning("Error during sending E-Prescription: " + status.getErrorMessage());
+        }
+    }
 
-            Session session = Session.getInstance(props, new Authenticator() {
-                @Override
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    return new PasswordAuthentication(smtpUser, smtpPassword);
-                }
-            });
-            MimeMessage msg = new MimeMessage(session);
-            //set message headers
-            msg.addHeader("X-KIM-Dienstkennung", "eRezept;Zuweisung;V1.0");
+    /**
+     * Sends the messages like {@link #sendERezepteToKIMAddressAsync} and waits until all are sent.
+     */
+    public List<KIMSendStatus> sendERezepteToKIMAddress(String fromKimAddress, String toKimAddress, String noteToPharmacy,
+            String smtpHostServer, String smtpUser, String smtpPassword, List<Map.Entry<String, String>> eRezeptTokens) {
+        return sendERezepteToKIMAddressAsync(fromKimAddress, toKimAddress, noteToPharmacy, smtpHostServer, smtpUser,
+            smtpPassword, eRezeptTokens).join();
+    }
+
+    /**
+     * Sends one message per prescription to the given KIM address over a pooled SMTP connection.
+     *
+     * Only a message whose connection could not be opened is tried again. A message that failed
+     * while it was sent is not, the server may already have accepted it and would deliver it twice.
+     * Retries are scheduled with exponential backoff, the calling thread does not wait for them.
+     *
+     * @param eRezeptTokens prescription id and E-Rezept token of every message
+     * @return the result for every message in the order of the given list
+     */
+    public CompletableFuture<List<KIMSendStatus>> sendERezepteToKIMAddressAsync(String fromKimAddress, String toKimAddress,
+            String noteToPharmacy, String smtpHostServer, String smtpUser, String smtpPassword,
+            List<Map.Entry<String, String>> eRezeptTokens) {
+        // outside of CDI, e.g. in unit tests, a pool is used for this call only
+        KIMTransportPool pool = transportPool != null ? transportPool : new KIMTransportPool();
+        KIMSendJob job = new KIMSendJob(pool, fromKimAddress, toKimAddress, noteToPharmacy, smtpHostServer, smtpUser,
+            smtpPassword, eRezeptTokens);
+        job.run();
+        return job.result;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    MimeMessage createMessage(Session session, String fromKimAddress, String toKimAddress, String noteToPharmacy, String eRezeptToken) throws MessagingException {
+        MimeMessage msg = new MimeMessage(session);
+        //set message headers
+        msg.addHeader("X-KIM-Dienstkennung", "eRezept;Zuweisung;V1.0");
 
-            msg.setFrom(new InternetAddress(fromKimAddress));
+        msg.setFrom(new InternetAddress(fromKimAddress));
 
-            msg.setReplyTo(InternetAddress.parse(fromKimAddress, false));
+        msg.setReplyTo(InternetAddress.parse(fromKimAddress, false));
 
-            msg.setSubject("E-Rezept direkte Zuweisung", "UTF-8");
+        msg.setSubject("E-Rezept direkte Zuweisung", "UTF-8");
 
 
-            MimeBodyPart textPart = new MimeBodyPart();
-            textPart.setText(noteToPharmacy, "utf-8");
+        MimeBodyPart textPart = new MimeBodyPart();
+        textPart.setText(noteToPharmacy, "utf-8");
 
-            MimeBodyPart erezeptTokenPart = new MimeBodyPart();
-            erezeptTokenPart.setText(eRezeptToken, "utf8");
-            
-            Multipart multiPart = new MimeMultipart();
-            multiPart.addBodyPart(textPart); // <-- first
-            multiPart.addBodyPart(erezeptTokenPart); // <-- second
-            msg.setContent(multiPart);
+        MimeBodyPart erezeptTokenPart = new MimeBodyPart();
+        erezeptTokenPart.setText(eRezeptToken, "utf8");
 
-            msg.setSentDate(new Date());
+        Multipart multiPart = new MimeMultipart();
+        multiPart.addBodyPart(textPart); // <-- first
+        multiPart.addBodyPart(erezeptTokenPart); // <-- second
+        msg.setContent(multiPart);
 
-            msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toKimAddress, false));
-            log.info("Message is ready");
-            Transport.send(msg);  
+        msg.setSentDate(new Date());
 
-            log.info("E-Mail sent successfully to: "+toKimAddress);
-	    } catch (Exception e) {
-	      log.log(Level.WARNING, "Error during sending E-Prescription", e);
-	    }
+        msg.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toKimAddress, false));
+        return msg;
     }
 
     public List<Map<String,Object>> search(RuntimeConfig runtimeConfig, String searchDisplayName) {
@@ -126,48 +188,88 @@ public class KIMFlowtype169Service {
     	if(searchDisplayName == null || searchDisplayName.length() < 3) {
     		return list;
     	}
-    	try {
-            Hashtable<String, String> env = new Hashtable<>();
-            env.put(Context.SECURITY_PROTOCOL, "ssl");
-            env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-            env.put(Context.PROVIDER_URL, "ldaps://"+runtimeConfig.getConnectorAddress()+":636/");
-            env.put(Context.SECURITY_AUTHENTICATION, "none");
-
-            if(secretsManagerService != null && runtimeConfig != null && runtimeConfig.getConfigurations() != null) {
-                SSLSocketFactory.delegate = secretsManagerService.createSSLContext(runtimeConfig.getConfigurations()).getSocketFactory();
+        // outside of CDI, e.g. in unit tests, a pool is used for this call only
+        VZDLdapContextPool pool = contextPool;
+        if(pool == null) {
+            pool = new VZDLdapContextPool();
+            pool.secretsManagerService = secretsManagerService;
+        }
+        VZDLdapContextPool.Key connectorKey = VZDLdapContextPool.key(runtimeConfig);
+        if(searchCache != null) {
+            List<Map<String,Object>> cached = searchCache.get(connectorKey, searchDisplayName);
+            if(cached != null) {
+                return cached;
             }
+        }
+        List<List<String>> searchableValues = new ArrayList<>();
+        boolean complete = true;
+        PooledContext ctx = null;
+        try {
+            for(int attempt = 1; ; attempt++) {
+                list.clear();
+                searchableValues.clear();
+                try {
+                    ctx = pool.borrow(runtimeConfig);
+                    search(ctx.getContext(), searchDisplayName, list, searchableValues);
+                    break;
+                } catch (SizeLimitExceededException e) {
+                    log.info("Received more than expected LDAP entries. "+e.getMessage());
+                    complete = false;
+                    break;
+                } catch (NamingException e) {
+                    // a pooled connection may have been closed by the connector, try once with a new one
+                    if(ctx != null) {
+                        pool.invalidate(ctx);
+                        ctx = null;
+                    }
+                    if(attempt > 1) {
+                        throw e;
+                    }
+                    log.log(Level.FINE, "Could not search LDAP, retrying with new connection", e);
+                }
+            }
+        } catch (Exception e) {
+            log.log(Level.WARNING, "Could not search LDAP", e);
+            throw new RuntimeException(e);
+        } finally {
+            if(ctx != null) {
+                pool.release(ctx);
+            }
+            if(pool != contextPool) {
+                pool.shutdown();
+            }
+        }
+        if(searchCache != null) {
+            searchCache.put(connectorKey, searchDisplayName, list, searchableValues, complete);
+        }
+    	return list;
+    }
 
-            env.put("java.naming.ldap.factory.socket", "health.ere.ps.service.common.security.SSLSocketFactory");
-
-            LdapContext ctx = new InitialLdapContext(env, null);
-            ctx.setRequestControls(null);
-            NamingEnumeration<?> namingEnum = ctx.search("dc=data,dc=vzd", "(&(professionOID=1.2.276.0.76.4.54)(|(displayName=*"+searchDisplayName+"*)(rfc822mailbox=*"+searchDisplayName+"*)))", getSimpleSearchControls());
+    private void search(LdapContext ctx, String searchDisplayName, List<Map<String,Object>> list, List<List<String>> searchableValues) throws NamingException {
+        NamingEnumeration<?> namingEnum = ctx.search("dc=data,dc=vzd", "(&(professionOID=1.2.276.0.76.4.54)(|(displayName=*"+searchDisplayName+"*)(rfc822mailbox=*"+searchDisplayName+"*)))", getSimpleSearchControls());
+        try {
             while (namingEnum.hasMore ()) {
                 SearchResult result = (SearchResult) namingEnum.next();
                 Attributes attrs = result.getAttributes();
                 Map<String, Object> map = new HashMap<>();
+                List<String> values = new ArrayList<>();
                 NamingEnumeration<? extends Attribute> enumeration = attrs.getAll();
                 while(enumeration.hasMore()) {
                 	Attribute attribute = enumeration.next();
                 	map.put(attribute.getID(), attribute.get());
+                	if("displayName".equalsIgnoreCase(attribute.getID()) || "rfc822mailbox".equalsIgnoreCase(attribute.getID())) {
+                	    NamingEnumeration<?> all = attribute.getAll();
+                	    while(all.hasMore()) {
+                	        values.add(String.valueOf(all.next()));
+                	    }
+                	}
                 }
                 list.add(map);
-            } 
-            namingEnum.close();
-            ctx.close();
-        } catch (Exception e) {
-            if(e instanceof SizeLimitExceededException) {
-                log.info("Received more than expected LDAP entries. "+e.getMessage());
-            } else {
-                log.log(Level.WARNING, "Could not search LDAP", e);
-                throw new RuntimeException(e);
+                searchableValues.add(values);
             }
         } finally {
-            if(secretsManagerService != null) {
-                SSLSocketFactory.delegate = null;
-            }
+            namingEnum.close();
         }
-    	return list;
     }
     
     private SearchControls getSimpleSearchControls() {
@@ -178,21 +280,48 @@ public class KIMFlowtype169Service {
     }
 
     public void onBundlesWithAccessCodeEvent(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+        if("169".equals(bundlesWithAccessCodeEvent.getFlowtype())) {
+            PrescriptionPipeline.run(pipeline, PrescriptionPipeline.KIM, bundlesWithAccessCodeEvent,
+                () -> sendBundles(bundlesWithAccessCodeEvent));
+        }
+    }
+
+    void sendBundles(BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
         try {
             if("169".equals(bundlesWithAccessCodeEvent.getFlowtype())) {
                 Map<String,String> kimConfigMap = bundlesWithAccessCodeEvent.getKimConfigMap();
+                List<Map.Entry<String,String>> eRezeptTokens = new ArrayList<>();
                 for(List<BundleWithAccessCodeOrThrowable> list : bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable()) {
                     for(BundleWithAccessCodeOrThrowable bundle : list) {
-                        sendERezeptToKIMAddress(kimConfigMap.get("fromKimAddress"), bundlesWithAccessCodeEvent.getToKimAddress(), bundlesWithAccessCodeEvent.getNoteToPharmacy(), kimConfigMap.get("smtpHostServer"), getSmtpUser(kimConfigMap), kimConfigMap.get("smtpPassword"), getERezeptToken(bundle.getBundle(), bundle.getAccessCode()));
+                        if(bundle.getBundle() != null) {
+                            String prescriptionId = bundle.getBundle().getIdentifier().getValue();
+                            if(prescriptionId == null) {
+                                throw new IllegalArgumentException("Bundle " + bundle.getBundle().getId() + " has no prescription id and can not be sent via KIM");
+                            }
+                            eRezeptTokens.add(Map.entry(prescriptionId, getERezeptToken(prescriptionId, bundle.getAccessCode())));
+                        }
                     }
                 }
+                sendERezepteToKIMAddressAsync(kimConfigMap.get("fromKimAddress"), bundlesWithAccessCodeEvent.getToKimAddress(), bundlesWithAccessCodeEvent.getNoteToPharmacy(), kimConfigMap.get("smtpHostServer"), getSmtpUser(kimConfigMap), kimConfigMap.get("smtpPassword"), eRezeptTokens)
+                    .whenComplete((results, e) -> {
+                        if(e != null) {
+                            onSendBundlesFailed(bundlesWithAccessCodeEvent, e);
+                        } else if(kIMSendResultEvent != null) {
+                            kIMSendResultEvent.fireAsync(new KIMSendResultEvent(results, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getReplyToMessageId()));
+                        }
+                    });
             }
         } catch (Exception e) {
-            log.log(Level.WARNING, "Could not send kim E-Mail", e);
-            exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getId()));
+            onSendBundlesFailed(bundlesWithAccessCodeEvent, e);
         }
     }
 
+    private void onSendBundlesFailed(BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent, Throwable t) {
+        Exception e = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+        log.log(Level.WARNING, "Could not send kim E-Mail", e);
+        exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, bundlesWithAccessCodeEvent.getReplyTo(), bundlesWithAccessCodeEvent.getId()));
+    }
+
     public void onVZDSearchEvent(@ObservesAsync VZDSearchEvent vZDSearchEvent) {
         try {
             List<Map<String,Object>> results = search(vZDSearchEvent.getRuntimeConfig(), vZDSearchEvent.getSearch());
@@ -204,11 +333,135 @@ public class KIMFlowtype169Service {
         }
     }
 
-    private String getERezeptToken(Bundle bundle, String accessCode) {
-        return "Task/"+bundle.getIdentifier().getValue()+"/$accept?ac="+accessCode;
+    private String getERezeptToken(String prescriptionId, String accessCode) {
+        return "Task/"+prescriptionId+"/$accept?ac="+accessCode;
     }
 
     private String getSmtpUser(Map<String, String> kimConfigMap) {
         return kimConfigMap.get("fromKimAddress")+"#"+kimConfigMap.get("smtpFdServer")+"#"+kimConfigMap.get("mandant-id")+"#"+kimConfigMap.get("client-system-id")+"#"+kimConfigMap.get("workplace-id");
     }
+
+    /**
+     * Sends the messages of one call one after the other. When the connection for a message can
+     * not be opened, the job is scheduled again after the backoff and continues with that message.
+     */
+    private class KIMSendJob implements Runnable {
+        private final KIMTransportPool pool;
+        private final String fromKimAddress;
+        private final String toKimAddress;
+        private final String noteToPharmacy;
+        private final String smtpHostServer;
+        private final String smtpUser;
+        private final String smtpPassword;
+        private final List<Map.Entry<String, String>> eRezeptTokens;
+        private final List<KIMSendStatus> results = new ArrayList<>();
+        private final CompletableFuture<List<KIMSendStatus>> result = new CompletableFuture<>();
+        private int next;
+        private long backoff = retryBackoffMs;
+
+        KIMSendJob(KIMTransportPool pool, String fromKimAddress, String toKimAddress, String noteToPharmacy,
+                String smtpHostServer, String smtpUser, String smtpPassword, List<Map.Entry<String, String>> eRezeptTokens) {
+            this.pool = pool;
+            this.fromKimAddress = fromKimAddress;
+            this.toKimAddress = toKimAddress;
+            this.noteToPharmacy = noteToPharmacy;
+            this.smtpHostServer = smtpHostServer;
+            this.smtpUser = smtpUser;
+            this.smtpPassword = smtpPassword;
+            this.eRezeptTokens = eRezeptTokens;
+            for (Map.Entry<String, String> eRezeptToken : eRezeptTokens) {
+                results.add(new KIMSendStatus(eRezeptToken.getKey(), toKimAddress));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (; next < eRezeptTokens.size(); next++) {
+                    if (!send(eRezeptTokens.get(next).getValue(), results.get(next))) {
+                        return;
+                    }
+                    backoff = retryBackoffMs;
+                }
+                complete();
+            } catch (RuntimeException e) {
+                if (pool != transportPool) {
+                    pool.shutdown();
+                }
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * @return false if the message is tried again later
+         */
+        private boolean send(String eRezeptToken, KIMSendStatus status) {
+            int attempt = status.getAttempts() + 1;
+            status.setAttempts(attempt);
+            PooledTransport transport;
+            try {
+                // a pooled connection is checked with a NOOP, so a closed connection fails here and not during DATA
+                transport = pool.borrow(smtpHostServer, smtpUser, smtpPassword);
+            } catch (MessagingException e) {
+                status.setStatus(KIMSendStatus.Status.ERROR);
+                status.setErrorMessage(e.getMessage());
+                log.log(Level.WARNING, "Could not connect to send E-Prescription, attempt " + attempt + " of " + maxAttempts, e);
+                if (attempt < maxAttempts) {
+                    EreMetrics.retry(EreMetrics.KIM_SEND);
+                    scheduleRetry();
+                    return false;
+                }
+                return true;
+            }
+            try {
+                EreMetrics.record(EreMetrics.KIM_SEND, () -> {
+                    transport.send(createMessage(transport.getSession(), fromKimAddress, toKimAddress,
+                        noteToPharmacy, eRezeptToken));
+                    return null;
+                });
+                status.setStatus(KIMSendStatus.Status.OK);
+                status.setErrorMessage(null);
+                log.info("E-Mail sent successfully to: "+toKimAddress);
+                pool.release(transport);
+            } catch (SendFailedException e) {
+                // the server rejected the addresses, the connection can still be used
+                status.setStatus(KIMSendStatus.Status.ERROR);
+                status.setErrorMessage(e.getMessage());
+                log.log(Level.WARNING, "Error during sending E-Prescription", e);
+                pool.release(transport);
+            } catch (MessagingException | RuntimeException e) {
+                // not retried, the server may have accepted the message before the failure
+                status.setStatus(KIMSendStatus.Status.ERROR);
+                status.setErrorMessage(e.getMessage());
+                log.log(Level.WARNING, "Error during sending E-Prescription", e);
+                pool.invalidate(transport);
+            }
+            return true;
+        }
+
+        private void scheduleRetry() {
+            long delay = backoff;
+            backoff *= 2;
+            try {
+                retryScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                log.warning("Could not schedule retry of E-Prescription, the service is shutting down");
+                complete();
+            }
+        }
+
+        private void complete() {
+            // messages that were not tried because the service was shut down
+            for (KIMSendStatus status : results) {
+                if (status.getStatus() == null) {
+                    status.setStatus(KIMSendStatus.Status.ERROR);
+                    status.setErrorMessage("Sending was interrupted");
+                }
+            }
+            if (pool != transportPool) {
+                pool.shutdown();
+            }
+            result.complete(results);
+        }
+    }
 }
@@ -0,0 +1,215 @@
+package health.ere.ps.service.gematik;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.mail.Authenticator;
+import javax.mail.MessagingException;
+import javax.mail.PasswordAuthentication;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Keeps authenticated SMTP connections to the KIM client module open, so that several
+ * messages can be sent without a new TLS handshake and login for every message.
+ *
+ * Connections are pooled per SMTP host and user. A borrowed connection is used by one
+ * thread only and must be given back with {@link #release(PooledTransport)} or
+ * {@link #invalidate(PooledTransport)}.
+ */
+@ApplicationScoped
+public class KIMTransportPool {
+
+    private static final Logger log = Logger.getLogger(KIMTransportPool.class.getName());
+
+    private static final Pattern HOST_WITH_PORT = Pattern.compile("^(.*):([0-9]+)$");
+
+    @ConfigProperty(name = "ere.kim.smtp.max-idle-connections", defaultValue = "2")
+    int maxIdleConnections = 2;
+
+    @ConfigProperty(name = "ere.kim.smtp.idle-timeout-seconds", defaultValue = "60")
+    int idleTimeoutSeconds = 60;
+
+    @ConfigProperty(name = "ere.kim.smtp.timeout-ms", defaultValue = "30000")
+    int timeoutMs = 30000;
+
+    private final Map<Key, Deque<PooledTransport>> idleTransports = new HashMap<>();
+
+    /**
+     * Returns an idle connection for the given host and user or opens a new one.
+     *
+     * @param smtpHostServer host of the KIM client module, optionally with :port
+     */
+    public PooledTransport borrow(String smtpHostServer, String smtpUser, String smtpPassword) throws MessagingException {
+        Key key = new Key(smtpHostServer, smtpUser, smtpPassword);
+        List<PooledTransport> expired = new ArrayList<>();
+        PooledTransport pooledTransport = null;
+        synchronized (this) {
+            Deque<PooledTransport> idle = idleTransports.get(key);
+            while (idle != null && !idle.isEmpty() && pooledTransport == null) {
+                PooledTransport candidate = idle.pollFirst();
+                if (candidate.isExpired(idleTimeoutSeconds)) {
+                    expired.add(candidate);
+                } else {
+                    pooledTransport = candidate;
+                }
+            }
+        }
+        expired.forEach(PooledTransport::close);
+        // isConnected sends a NOOP, an idle connection may have been closed by the server
+        if (pooledTransport != null && pooledTransport.transport.isConnected()) {
+            return pooledTransport;
+        } else if (pooledTransport != null) {
+            pooledTransport.close();
+        }
+        return connect(key);
+    }
+
+    private PooledTransport connect(Key key) throws MessagingException {
+        Properties props = new Properties();
+        Matcher m = HOST_WITH_PORT.matcher(key.smtpHostServer);
+        if (m.matches()) {
+            props.put("mail.smtp.host", m.group(1));
+            props.put("mail.smtp.port", m.group(2));
+        } else {
+            props.put("mail.smtp.host", key.smtpHostServer);
+        }
+        props.put("mail.smtp.auth", true);
+        props.put("mail.smtp.connectiontimeout", String.valueOf(timeoutMs));
+        props.put("mail.smtp.timeout", String.valueOf(timeoutMs));
+        props.put("mail.smtp.writetimeout", String.valueOf(timeoutMs));
+
+        Session session = Session.getInstance(props, new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication() {
+                return new PasswordAuthentication(key.smtpUser, key.smtpPassword);
+            }
+        });
+        Transport transport = session.getTransport("smtp");
+        transport.connect();
+        log.info("Opened SMTP connection to " + key.smtpHostServer);
+        return new PooledTransport(key, session, transport);
+    }
+
+    /**
+     * Gives a connection back to the pool. Connections that are not needed are closed.
+     */
+    public void release(PooledTransport pooledTransport) {
+        pooledTransport.lastUsed = System.nanoTime();
+        synchronized (this) {
+            Deque<PooledTransport> idle = idleTransports.computeIfAbsent(pooledTransport.key, k -> new ArrayDeque<>());
+            if (idle.size() < maxIdleConnections) {
+                idle.addFirst(pooledTransport);
+                return;
+            }
+        }
+        pooledTransport.close();
+    }
+
+    /**
+     * Closes a connection that failed, it is not reused.
+     */
+    public void invalidate(PooledTransport pooledTransport) {
+        pooledTransport.close();
+    }
+
+    public synchronized int getIdleConnections() {
+        return idleTransports.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PooledTransport> transports = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Deque<PooledTransport>> it = idleTransports.values().iterator(); it.hasNext();) {
+                transports.addAll(it.next());
+                it.remove();
+            }
+        }
+        transports.forEach(PooledTransport::close);
+    }
+
+    public static class PooledTransport {
+        private final Key key;
+        private final Session session;
+        private final Transport transport;
+        private long lastUsed = System.nanoTime();
+
+        PooledTransport(Key key, Session session, Transport transport) {
+            this.key = key;
+            this.session = session;
+            this.transport = transport;
+        }
+
+        /**
+         * The mail session of this connection, messages that are sent over it should be created with it.
+         */
+        public Session getSession() {
+            return session;
+        }
+
+        public void send(MimeMessage message) throws MessagingException {
+            message.saveChanges();
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+
+        boolean isExpired(int idleTimeoutSeconds) {
+            return System.nanoTime() - lastUsed > TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        }
+
+        void close() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.log(Level.FINE, "Could not close SMTP connection", e);
+            }
+        }
+    }
+
+    static class Key {
+        private final String smtpHostServer;
+        private final String smtpUser;
+        private final String smtpPassword;
+
+        Key(String smtpHostServer, String smtpUser, String smtpPassword) {
+            this.smtpHostServer = smtpHostServer;
+            this.smtpUser = smtpUser;
+            this.smtpPassword = smtpPassword;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(smtpHostServer, other.smtpHostServer) && Objects.equals(smtpUser, other.smtpUser)
+                && Objects.equals(smtpPassword, other.smtpPassword);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(smtpHostServer, smtpUser, smtpPassword);
+        }
+    }
+}
@@ -10,6 +10,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -18,6 +27,8 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.enterprise.event.ObservesAsync;
@@ -33,6 +44,7 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.crypto.CryptoException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.r4.model.Address.AddressType;
 import org.hl7.fhir.r4.model.Annotation;
 import org.hl7.fhir.r4.model.BooleanType;
@@ -75,9 +87,11 @@ import de.gematik.ws.fa.vsdm.vsd.v5.UCAllgemeineVersicherungsdatenXML;
 import de.gematik.ws.fa.vsdm.vsd.v5.UCGeschuetzteVersichertendatenXML;
 import de.gematik.ws.fa.vsdm.vsd.v5.UCPersoenlicheVersichertendatenXML;
 import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.config.UserConfig;
 import health.ere.ps.event.BundlesEvent;
 import health.ere.ps.event.PrefillBundleEvent;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
+import health.ere.ps.service.gematik.CardResourceCache.Connector;
 import health.ere.ps.service.idp.crypto.CryptoLoader;
 import health.ere.ps.service.kbv.KBVFHIRUtil;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
@@ -103,12 +117,50 @@ public class PrefillPrescriptionService {
 	@Inject
 	MultiConnectorServicesProvider connectorServicesProvider;
 
+	@Inject
+	UserConfig userConfig;
+
 	@Inject
 	Event<BundlesEvent> bundleEvent;
 
 	@Inject
 	Event<Exception> exceptionEvent;
 
+	@ConfigProperty(name = "ere.prefill.threads", defaultValue = "3")
+	int prefillThreads = 3;
+
+	@ConfigProperty(name = "ere.prefill.cache-size", defaultValue = "20")
+	int cacheSize = 20;
+
+	private ThreadPoolExecutor prefillExecutor;
+
+	// FHIR resources that were read from the inserted cards, copies are put into the bundles
+	private CardResourceCache<Insurant> insurantCache = new CardResourceCache<>(cacheSize);
+	private CardResourceCache<Practitioner> practitionerCache = new CardResourceCache<>(cacheSize);
+	private CardResourceCache<Organization> organizationCache = new CardResourceCache<>(cacheSize);
+
+	@PostConstruct
+	void init() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		prefillExecutor = new ThreadPoolExecutor(prefillThreads, prefillThreads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "ere-prefill-" + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		prefillExecutor.allowCoreThreadTimeOut(true);
+		insurantCache = new CardResourceCache<>(cacheSize);
+		practitionerCache = new CardResourceCache<>(cacheSize);
+		organizationCache = new CardResourceCache<>(cacheSize);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		if (prefillExecutor != null) {
+			prefillExecutor.shutdownNow();
+		}
+	}
+
 	public Bundle get(RuntimeConfig runtimeConfig)
 			throws FaultMessage, de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage, JAXBException,
 			de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException, IOException,
@@ -118,53 +170,45 @@ public class PrefillPrescriptionService {
 
 		EventServicePortType eventService = connectorServicesProvider.getEventServicePortType(runtimeConfig);
 
-		String egkHandle = getFirstCardOfType(eventService, CardTypeType.EGK, context);
-		String smcbHandle = getFirstCardOfType(eventService, CardTypeType.SMC_B, context);
-		String hbaHandle = getFirstCardOfType(eventService, CardTypeType.HBA, context);
-
-		Patient patient = null;
-		Coverage coverage = null;
-		if (egkHandle != null) {
-			Holder<byte[]> persoenlicheVersichertendaten = new Holder<>();
-			Holder<byte[]> allgemeineVersicherungsdaten = new Holder<>();
-			Holder<byte[]> geschuetzteVersichertendaten = new Holder<>();
-			Holder<VSDStatusType> vSD_Status = new Holder<>();
-			Holder<byte[]> pruefungsnachweis = new Holder<>();
-			connectorServicesProvider.getVSDServicePortType(runtimeConfig).readVSD(egkHandle, smcbHandle, false, false,
-					context, persoenlicheVersichertendaten, allgemeineVersicherungsdaten, geschuetzteVersichertendaten,
-					vSD_Status, pruefungsnachweis);
-
-			InputStream isPersoenlicheVersichertendaten = new GZIPInputStream(
-					new ByteArrayInputStream(persoenlicheVersichertendaten.value));
-			UCPersoenlicheVersichertendatenXML schaumberg = (UCPersoenlicheVersichertendatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isPersoenlicheVersichertendaten);
-			patient = KBVFHIRUtil.UCPersoenlicheVersichertendatenXML2Patient(schaumberg);
-
-			InputStream isAllgemeineVersicherungsdaten = new GZIPInputStream(
-					new ByteArrayInputStream(allgemeineVersicherungsdaten.value));
-			UCAllgemeineVersicherungsdatenXML versicherung = (UCAllgemeineVersicherungsdatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isAllgemeineVersicherungsdaten);
-			InputStream isVersichungKennzeichen = new GZIPInputStream(
-					new ByteArrayInputStream(geschuetzteVersichertendaten.value));
-			UCGeschuetzteVersichertendatenXML versichungKennzeichen = (UCGeschuetzteVersichertendatenXML) jaxbContext
-					.createUnmarshaller().unmarshal(isVersichungKennzeichen);
-			coverage = KBVFHIRUtil.UCAllgemeineVersicherungsdatenXML2Coverage(versicherung,
-					patient.getIdElement().getIdPart(), versichungKennzeichen);
-		}
+		// one GetCards call returns the cards of all types
+		List<CardInfoType> cards = getCards(eventService, context);
+		// the caches are shared by all connectors, only the entries of this one are updated
+		UserConfig connectorConfig = runtimeConfig != null ? runtimeConfig : userConfig;
+		Connector connector = Connector.of(connectorConfig != null ? connectorConfig.getConnectorBaseURL() : null,
+				context);
+		insurantCache.retainCards(connector, cards);
+		practitionerCache.retainCards(connector, cards);
+		organizationCache.retainCards(connector, cards);
+
+		CardInfoType egk = getFirstCardOfType(cards, CardTypeType.EGK);
+		CardInfoType smcb = getFirstCardOfType(cards, CardTypeType.SMC_B);
+		CardInfoType hba = getFirstCardOfType(cards, CardTypeType.HBA);
+		String smcbHandle = smcb != null ? smcb.getCardHandle() : null;
+
+		// the VSD and the certificates are read in parallel, each only if the card was not seen before
+		Future<Insurant> insurantFuture = submit(connector, egk, insurantCache,
+				() -> readInsurant(runtimeConfig, egk.getCardHandle(), smcbHandle, context));
 
 		CertificateServicePortType certificateService = connectorServicesProvider
 				.getCertificateServicePortType(runtimeConfig);
 
-		Practitioner practitioner = null;
+		Future<Practitioner> practitionerFuture = submit(connector, hba, practitionerCache,
+				() -> hbaHandle2Practitioner(hba.getCardHandle(), runtimeConfig, certificateService, context));
+		Future<Organization> organizationFuture = submit(connector, smcb, organizationCache,
+				() -> smcbHandle2Organization(smcbHandle, runtimeConfig, certificateService, context));
 
-		if (hbaHandle != null) {
-			practitioner = hbaHandle2Practitioner(hbaHandle, runtimeConfig, certificateService, context);
-		}
+		Insurant insurant = await(insurantFuture);
+		Patient patient = insurant != null ? insurant.patient.copy() : null;
+		Coverage coverage = insurant != null ? insurant.coverage.copy() : null;
 
-		Organization organization = null;
+		Practitioner practitioner = await(practitionerFuture);
+		if (practitioner != null) {
+			practitioner = practitioner.copy();
+		}
 
-		if (smcbHandle != null) {
-			organization = smcbHandle2Organization(smcbHandle, runtimeConfig, certificateService, context);
+		Organization organization = await(organizationFuture);
+		if (organization != null) {
+			organization = organization.copy();
 		}
 
 		Medication medication = createMedicationResource();
@@ -179,6 +223,108 @@ public class PrefillPrescriptionService {
 		return bundle;
 	}
 
+	private Insurant readInsurant(RuntimeConfig runtimeConfig, String egkHandle, String smcbHandle, ContextType context)
+			throws de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage, JAXBException, IOException {
+		Holder<byte[]> persoenlicheVersichertendaten = new Holder<>();
+		Holder<byte[]> allgemeineVersicherungsdaten = new Holder<>();
+		Holder<byte[]> geschuetzteVersichertendaten = new Holder<>();
+		Holder<VSDStatusType> vSD_Status = new Holder<>();
+		Holder<byte[]> pruefungsnachweis = new Holder<>();
+		connectorServicesProvider.getVSDServicePortType(runtimeConfig).readVSD(egkHandle, smcbHandle, false, false,
+				context, persoenlicheVersichertendaten, allgemeineVersicherungsdaten, geschuetzteVersichertendaten,
+				vSD_Status, pruefungsnachweis);
+
+		InputStream isPersoenlicheVersichertendaten = new GZIPInputStream(
+				new ByteArrayInputStream(persoenlicheVersichertendaten.value));
+		UCPersoenlicheVersichertendatenXML schaumberg = (UCPersoenlicheVersichertendatenXML) jaxbContext
+				.createUnmarshaller().unmarshal(isPersoenlicheVersichertendaten);
+		Patient patient = KBVFHIRUtil.UCPersoenlicheVersichertendatenXML2Patient(schaumberg);
+
+		InputStream isAllgemeineVersicherungsdaten = new GZIPInputStream(
+				new ByteArrayInputStream(allgemeineVersicherungsdaten.value));
+		UCAllgemeineVersicherungsdatenXML versicherung = (UCAllgemeineVersicherungsdatenXML) jaxbContext
+				.createUnmarshaller().unmarshal(isAllgemeineVersicherungsdaten);
+		InputStream isVersichungKennzeichen = new GZIPInputStream(
+				new ByteArrayInputStream(geschuetzteVersichertendaten.value));
+		UCGeschuetzteVersichertendatenXML versichungKennzeichen = (UCGeschuetzteVersichertendatenXML) jaxbContext
+				.createUnmarshaller().unmarshal(isVersichungKennzeichen);
+		Coverage coverage = KBVFHIRUtil.UCAllgemeineVersicherungsdatenXML2Coverage(versicherung,
+				patient.getIdElement().getIdPart(), versichungKennzeichen);
+		return new Insurant(patient, coverage);
+	}
+
+	private <T> Future<T> submit(Connector connector, CardInfoType card, CardResourceCache<T> cache,
+			CardReader<T> reader) {
+		if (card == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		T cached = cache.get(connector, card);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		Callable<T> task = () -> {
+			T value = reader.read();
+			cache.put(connector, card, value);
+			return value;
+		};
+		if (prefillExecutor == null) {
+			// outside of CDI the cards are read one after another
+			FutureTask<T> futureTask = new FutureTask<>(task);
+			futureTask.run();
+			return futureTask;
+		}
+		return prefillExecutor.submit(task);
+	}
+
+	private static <T> T await(Future<T> future)
+			throws de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage, JAXBException,
+			de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException, IOException,
+			InvalidNameException, CertificateEncodingException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the cards", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage) {
+				throw (de.gematik.ws.conn.vsds.vsdservice.v5.FaultMessage) cause;
+			} else if (cause instanceof JAXBException) {
+				throw (JAXBException) cause;
+			} else if (cause instanceof de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage) {
+				throw (de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage) cause;
+			} else if (cause instanceof CryptoException) {
+				throw (CryptoException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof InvalidNameException) {
+				throw (InvalidNameException) cause;
+			} else if (cause instanceof CertificateEncodingException) {
+				throw (CertificateEncodingException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	@FunctionalInterface
+	private interface CardReader<T> {
+		T read() throws Exception;
+	}
+
+	private static class Insurant {
+		private final Patient patient;
+		private final Coverage coverage;
+
+		Insurant(Patient patient, Coverage coverage) {
+			this.patient = patient;
+			this.coverage = coverage;
+		}
+	}
+
 	private Organization smcbHandle2Organization(String hbaHandle, RuntimeConfig runtimeConfig,
 			CertificateServicePortType certificateService, ContextType context)
 			throws de.gematik.ws.conn.certificateservice.wsdl.v6.FaultMessage, CryptoException,
@@ -323,20 +469,15 @@ public class PrefillPrescriptionService {
 				certHolder.value.getX509DataInfo().get(0).getX509Data().getX509Certificate());
 	}
 
-	private String getFirstCardOfType(EventServicePortType eventService, CardTypeType type, ContextType context)
-			throws FaultMessage {
+	private List<CardInfoType> getCards(EventServicePortType eventService, ContextType context) throws FaultMessage {
 		GetCards parameter = new GetCards();
 		parameter.setContext(context);
-		parameter.setCardType(type);
 		GetCardsResponse getCardsResponse = eventService.getCards(parameter);
+		return getCardsResponse.getCards().getCard();
+	}
 
-		List<CardInfoType> cards = getCardsResponse.getCards().getCard();
-		if (cards.size() > 0) {
-			String ehcHandle = cards.get(0).getCardHandle();
-			return ehcHandle;
-		} else {
-			return null;
-		}
+	private CardInfoType getFirstCardOfType(List<CardInfoType> cards, CardTypeType type) {
+		return cards.stream().filter(card -> card.getCardType() == type).findFirst().orElse(null);
 	}
 
 	private Medication createMedicationResource() {
@@ -437,7 +578,9 @@ public class PrefillPrescriptionService {
 
 	public void onPrefillBundleEvent(@ObservesAsync PrefillBundleEvent prefillBundleEvent) {
 		try {
-			bundleEvent.fireAsync(new BundlesEvent(Arrays.asList(get(prefillBundleEvent.getRuntimeConfig()))));
+			// the prefilled bundles are sent to all sessions, the requester finds its reply by the message id
+			bundleEvent.fireAsync(new BundlesEvent(Arrays.asList(get(prefillBundleEvent.getRuntimeConfig())),
+					null, prefillBundleEvent.getId()));
 		} catch (Exception e) {
 			log.log(Level.SEVERE, "Could not create bundles", e);
 			exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, prefillBundleEvent.getReplyTo(),
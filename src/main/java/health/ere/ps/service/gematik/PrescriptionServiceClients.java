@@ -0,0 +1,173 @@
+package health.ere.ps.service.gematik;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.jboss.resteasy.client.jaxrs.internal.ResteasyClientBuilderImpl;
+
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.vau.VAUEngine;
+import io.micrometer.core.instrument.Gauge;
+
+/**
+ * One JAX-RS client per prescription service, e.g. RU and PU at the same time when the
+ * requests of a connector carry their own ere.workflow-service.prescription.server.url.
+ *
+ * Every client has its own pool of keep-alive connections with connect, pool and read
+ * timeouts. Idle connections are closed after idle-timeout-seconds. The requests go through
+ * the VAU when it is enabled, except for the servers in ere.workflow-service.vau.disabled-urls.
+ * The pool of every server is exported as ere.prescription.service.connections with the
+ * states leased, available and pending, the gauges are removed when the clients are closed.
+ */
+@ApplicationScoped
+public class PrescriptionServiceClients {
+
+    private static final Logger log = Logger.getLogger(PrescriptionServiceClients.class.getName());
+
+    @Inject
+    AppConfig appConfig;
+
+    @ConfigProperty(name = "ere.workflow-service.http.max-connections", defaultValue = "20")
+    int maxConnections = 20;
+
+    @ConfigProperty(name = "ere.workflow-service.http.connect-timeout-ms", defaultValue = "10000")
+    int connectTimeoutMs = 10000;
+
+    @ConfigProperty(name = "ere.workflow-service.http.socket-timeout-ms", defaultValue = "60000")
+    int socketTimeoutMs = 60000;
+
+    @ConfigProperty(name = "ere.workflow-service.http.idle-timeout-seconds", defaultValue = "60")
+    int idleTimeoutSeconds = 60;
+
+    @ConfigProperty(name = "ere.workflow-service.vau.disabled-urls")
+    Optional<List<String>> vauDisabledUrls = Optional.empty();
+
+    private final Map<String, PrescriptionServiceClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * The prescription service of the given configuration, the configured one if it has none.
+     */
+    public String getPrescriptionServiceURL(RuntimeConfig runtimeConfig) {
+        return runtimeConfig != null && runtimeConfig.getPrescriptionServerURL() != null
+            ? runtimeConfig.getPrescriptionServerURL() : appConfig.getPrescriptionServiceURL();
+    }
+
+    public Client getClient(RuntimeConfig runtimeConfig) {
+        return getClient(getPrescriptionServiceURL(runtimeConfig));
+    }
+
+    /**
+     * The client for the given prescription service, it is created with the first request.
+     */
+    public Client getClient(String prescriptionServiceURL) {
+        if (prescriptionServiceURL == null) {
+            throw new IllegalStateException("No prescription service url configured");
+        }
+        return clients.computeIfAbsent(prescriptionServiceURL, this::createClient).client;
+    }
+
+    boolean isVauEnabled(String prescriptionServiceURL) {
+        return appConfig.vauEnabled()
+            && !vauDisabledUrls.map(urls -> urls.contains(prescriptionServiceURL)).orElse(false);
+    }
+
+    private PrescriptionServiceClient createClient(String prescriptionServiceURL) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        // all requests of a client go to the same host
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeoutMs)
+            .setConnectionRequestTimeout(connectTimeoutMs)
+            .setSocketTimeout(socketTimeoutMs)
+            .build();
+        long idleTimeoutMs = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+        CloseableHttpClient httpClient = HttpClientBuilder.create()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .disableContentCompression()
+            // keep a connection not longer than the server allows and not longer than the idle timeout
+            .setKeepAliveStrategy((response, context) -> {
+                long keepAliveMs = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return keepAliveMs > 0 ? Math.min(keepAliveMs, idleTimeoutMs) : idleTimeoutMs;
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+            .build();
+
+        boolean vau = isVauEnabled(prescriptionServiceURL);
+        ApacheHttpClient43Engine engine = vau ? new VAUEngine(prescriptionServiceURL, httpClient)
+            : new ApacheHttpClient43Engine(httpClient, true);
+        ClientBuilder clientBuilder = ClientBuilder.newBuilder();
+        // the engine closes the http client when the client is closed
+        ((ResteasyClientBuilderImpl) clientBuilder).httpEngine(engine);
+        Client client = clientBuilder.build();
+
+        List<Gauge> gauges = List.of(
+            EreMetrics.gauge(EreMetrics.PRESCRIPTION_SERVICE_CONNECTIONS, connectionManager,
+                pool -> pool.getTotalStats().getLeased(), "server", prescriptionServiceURL, "state", "leased"),
+            EreMetrics.gauge(EreMetrics.PRESCRIPTION_SERVICE_CONNECTIONS, connectionManager,
+                pool -> pool.getTotalStats().getAvailable(), "server", prescriptionServiceURL, "state", "available"),
+            EreMetrics.gauge(EreMetrics.PRESCRIPTION_SERVICE_CONNECTIONS, connectionManager,
+                pool -> pool.getTotalStats().getPending(), "server", prescriptionServiceURL, "state", "pending"));
+        log.info("Created client for prescription service " + prescriptionServiceURL + (vau ? " with VAU" : " without VAU"));
+        return new PrescriptionServiceClient(client, connectionManager, gauges);
+    }
+
+    /**
+     * Connections of the pool of the given prescription service, null if it has no client yet.
+     */
+    PoolStats getPoolStats(String prescriptionServiceURL) {
+        PrescriptionServiceClient client = clients.get(prescriptionServiceURL);
+        return client != null ? client.connectionManager.getTotalStats() : null;
+    }
+
+    @PreDestroy
+    public void close() {
+        for (PrescriptionServiceClient client : clients.values()) {
+            client.gauges.forEach(EreMetrics::remove);
+            try {
+                client.client.close();
+            } catch (RuntimeException e) {
+                log.log(Level.FINE, "Could not close prescription service client", e);
+            }
+        }
+        clients.clear();
+    }
+
+    private static class PrescriptionServiceClient {
+        private final Client client;
+        // referenced here, the gauges only keep a weak reference
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final List<Gauge> gauges;
+
+        PrescriptionServiceClient(Client client, PoolingHttpClientConnectionManager connectionManager,
+            List<Gauge> gauges) {
+            this.client = client;
+            this.connectionManager = connectionManager;
+            this.gauges = gauges;
+        }
+    }
+}
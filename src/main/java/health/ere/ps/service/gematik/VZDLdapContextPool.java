@@ -0,0 +1,225 @@
+package health.ere.ps.service.gematik;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.net.ssl.SSLContext;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.model.config.UserConfigurations;
+import health.ere.ps.service.common.security.SSLSocketFactory;
+import health.ere.ps.service.common.security.SecretsManagerService;
+
+/**
+ * Keeps LDAP connections to the VZD of the connectors open, so that a search does not
+ * need a new TLS handshake.
+ *
+ * Connections are pooled per connector and client certificate. A borrowed connection is
+ * used by one thread only and must be given back with {@link #release(PooledContext)} or
+ * {@link #invalidate(PooledContext)}.
+ */
+@ApplicationScoped
+public class VZDLdapContextPool {
+
+    private static final Logger log = Logger.getLogger(VZDLdapContextPool.class.getName());
+
+    @Inject
+    SecretsManagerService secretsManagerService;
+
+    @ConfigProperty(name = "ere.vzd.pool.max-idle-connections", defaultValue = "2")
+    int maxIdleConnections = 2;
+
+    @ConfigProperty(name = "ere.vzd.pool.idle-timeout-seconds", defaultValue = "60")
+    int idleTimeoutSeconds = 60;
+
+    @ConfigProperty(name = "ere.vzd.pool.timeout-ms", defaultValue = "30000")
+    int timeoutMs = 30000;
+
+    private final Map<Key, Deque<PooledContext>> idleContexts = new HashMap<>();
+
+    /**
+     * Returns an idle connection to the VZD of the configured connector or opens a new one.
+     */
+    public PooledContext borrow(RuntimeConfig runtimeConfig) throws NamingException {
+        Key key = key(runtimeConfig);
+        List<PooledContext> expired = new ArrayList<>();
+        PooledContext pooledContext = null;
+        synchronized (this) {
+            Deque<PooledContext> idle = idleContexts.get(key);
+            while (idle != null && !idle.isEmpty() && pooledContext == null) {
+                PooledContext candidate = idle.pollFirst();
+                if (candidate.isExpired(idleTimeoutSeconds)) {
+                    expired.add(candidate);
+                } else {
+                    pooledContext = candidate;
+                }
+            }
+        }
+        expired.forEach(PooledContext::close);
+        if (pooledContext != null) {
+            return pooledContext;
+        }
+        return connect(key, runtimeConfig);
+    }
+
+    /**
+     * Identifies the connections that can be shared: same connector and same client certificate.
+     */
+    static Key key(RuntimeConfig runtimeConfig) {
+        UserConfigurations configurations = runtimeConfig.getConfigurations();
+        return new Key(runtimeConfig.getConnectorAddress(),
+            configurations != null ? configurations.getClientCertificate() : null,
+            configurations != null ? configurations.getClientCertificatePassword() : null);
+    }
+
+    private PooledContext connect(Key key, RuntimeConfig runtimeConfig) throws NamingException {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.SECURITY_PROTOCOL, "ssl");
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, "ldaps://"+key.connectorAddress+":636/");
+        env.put(Context.SECURITY_AUTHENTICATION, "none");
+        env.put("com.sun.jndi.ldap.connect.timeout", String.valueOf(timeoutMs));
+        env.put("com.sun.jndi.ldap.read.timeout", String.valueOf(timeoutMs));
+        env.put("java.naming.ldap.factory.socket", "health.ere.ps.service.common.security.SSLSocketFactory");
+
+        javax.net.ssl.SSLSocketFactory socketFactory = null;
+        if(secretsManagerService != null && runtimeConfig.getConfigurations() != null) {
+            SSLContext sslContext = secretsManagerService.createSSLContext(runtimeConfig.getConfigurations());
+            if(sslContext != null) {
+                socketFactory = sslContext.getSocketFactory();
+            }
+        }
+        // JNDI creates the socket factory on this thread while the context is created
+        SSLSocketFactory.setThreadDelegate(socketFactory);
+        try {
+            LdapContext ctx = new InitialLdapContext(env, null);
+            ctx.setRequestControls(null);
+            log.info("Opened LDAP connection to " + key.connectorAddress);
+            return new PooledContext(key, ctx);
+        } finally {
+            SSLSocketFactory.clearThreadDelegate();
+        }
+    }
+
+    /**
+     * Gives a connection back to the pool. Connections that are not needed are closed.
+     */
+    public void release(PooledContext pooledContext) {
+        pooledContext.lastUsed = System.nanoTime();
+        synchronized (this) {
+            Deque<PooledContext> idle = idleContexts.computeIfAbsent(pooledContext.key, k -> new ArrayDeque<>());
+            if (idle.size() < maxIdleConnections) {
+                idle.addFirst(pooledContext);
+                return;
+            }
+        }
+        pooledContext.close();
+    }
+
+    /**
+     * Closes a connection that failed, it is not reused.
+     */
+    public void invalidate(PooledContext pooledContext) {
+        pooledContext.close();
+    }
+
+    public synchronized int getIdleConnections() {
+        return idleContexts.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<PooledContext> contexts = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Deque<PooledContext>> it = idleContexts.values().iterator(); it.hasNext();) {
+                contexts.addAll(it.next());
+                it.remove();
+            }
+        }
+        contexts.forEach(PooledContext::close);
+    }
+
+    public static class PooledContext {
+        private final Key key;
+        private final LdapContext context;
+        private long lastUsed = System.nanoTime();
+
+        PooledContext(Key key, LdapContext context) {
+            this.key = key;
+            this.context = context;
+        }
+
+        public LdapContext getContext() {
+            return context;
+        }
+
+        /**
+         * Identifies the connector and TLS configuration of this connection, e.g. for caching results.
+         */
+        public Key getConnectorKey() {
+            return key;
+        }
+
+        boolean isExpired(int idleTimeoutSeconds) {
+            return System.nanoTime() - lastUsed > TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        }
+
+        void close() {
+            try {
+                context.close();
+            } catch (NamingException e) {
+                log.log(Level.FINE, "Could not close LDAP connection", e);
+            }
+        }
+    }
+
+    static class Key {
+        private final String connectorAddress;
+        private final String clientCertificate;
+        private final String clientCertificatePassword;
+
+        Key(String connectorAddress, String clientCertificate, String clientCertificatePassword) {
+            this.connectorAddress = connectorAddress;
+            this.clientCertificate = clientCertificate;
+            this.clientCertificatePassword = clientCertificatePassword;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(connectorAddress, other.connectorAddress)
+                && Objects.equals(clientCertificate, other.clientCertificate)
+                && Objects.equals(clientCertificatePassword, other.clientCertificatePassword);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectorAddress, clientCertificate, clientCertificatePassword);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package health.ere.ps.service.gematik;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache for VZD search results with a short time to live.
+ *
+ * The VZD is searched with a substring filter on displayName and rfc822mailbox. Every
+ * result of the search "Apothe" is therefore also a result of the search "Apo". When a
+ * complete result for a prefix of the search is cached, the result is narrowed locally
+ * and the VZD is not asked at all. Results that hit the size limit of the VZD are
+ * incomplete and only used for the exact same search.
+ */
+public class VZDSearchCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final Map<Key, CachedResult> entries;
+
+    public VZDSearchCache(int maxEntries, long ttlSeconds) {
+        this(maxEntries, ttlSeconds, System::nanoTime);
+    }
+
+    VZDSearchCache(int maxEntries, long ttlSeconds, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+                return size() > VZDSearchCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached or narrowed result for the given search or null if the VZD has to be asked.
+     *
+     * @param connector the connector and its TLS configuration, results of other connectors are not returned
+     */
+    public synchronized List<Map<String, Object>> get(VZDLdapContextPool.Key connector, String search) {
+        long now = clock.getAsLong();
+        String normalizedSearch = normalize(search);
+        CachedResult exact = entries.get(new Key(connector, normalizedSearch));
+        if (exact != null && !exact.isExpired(now)) {
+            return exact.toResults();
+        }
+        // the longest complete prefix needs the least filtering
+        for (int length = normalizedSearch.length() - 1; length > 0; length--) {
+            CachedResult prefix = entries.get(new Key(connector, normalizedSearch.substring(0, length)));
+            if (prefix != null && prefix.complete && !prefix.isExpired(now)) {
+                List<Entry> narrowed = new ArrayList<>();
+                for (Entry entry : prefix.entries) {
+                    if (entry.matches(normalizedSearch)) {
+                        narrowed.add(entry);
+                    }
+                }
+                CachedResult result = new CachedResult(narrowed, true, prefix.created);
+                entries.put(new Key(connector, normalizedSearch), result);
+                return result.toResults();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param searchableValues all values of the searched attributes, one list per result
+     * @param complete false if the VZD returned only a part of the matching entries
+     */
+    public synchronized void put(VZDLdapContextPool.Key connector, String search, List<Map<String, Object>> results,
+            List<List<String>> searchableValues, boolean complete) {
+        List<Entry> cachedEntries = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            cachedEntries.add(new Entry(results.get(i), searchableValues.get(i)));
+        }
+        entries.put(new Key(connector, normalize(search)), new CachedResult(cachedEntries, complete, clock.getAsLong()));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private class CachedResult {
+        final List<Entry> entries;
+        final boolean complete;
+        final long created;
+
+        CachedResult(List<Entry> entries, boolean complete, long created) {
+            this.entries = entries;
+            this.complete = complete;
+            this.created = created;
+        }
+
+        boolean isExpired(long now) {
+            return now - created > ttlNanos;
+        }
+
+        List<Map<String, Object>> toResults() {
+            List<Map<String, Object>> results = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                results.add(entry.attributes);
+            }
+            return results;
+        }
+    }
+
+    private static class Entry {
+        final Map<String, Object> attributes;
+        final List<String> searchableValues;
+
+        Entry(Map<String, Object> attributes, List<String> searchableValues) {
+            this.attributes = Collections.unmodifiableMap(attributes);
+            this.searchableValues = new ArrayList<>(searchableValues.size());
+            for (String value : searchableValues) {
+                this.searchableValues.add(normalize(value));
+            }
+        }
+
+        boolean matches(String normalizedSearch) {
+            for (String value : searchableValues) {
+                if (value.contains(normalizedSearch)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Key {
+        // compared by address, certificate and password, not by a hash of them that could collide
+        final VZDLdapContextPool.Key connector;
+        final String search;
+
+        Key(VZDLdapContextPool.Key connector, String search) {
+            this.connector = connector;
+            this.search = search;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(connector, other.connector) && Objects.equals(search, other.search);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connector, search);
+        }
+    }
+}
@@ -50,6 +50,8 @@ import health.ere.ps.model.idp.crypto.PkiIdentity;
 import health.ere.ps.service.connector.auth.SmcbAuthenticatorService;
 import health.ere.ps.service.idp.client.authentication.UriUtils;
 import health.ere.ps.service.idp.crypto.KeyAnalysis;
+import health.ere.ps.service.metrics.EreMetrics;
+import io.micrometer.core.instrument.Timer;
 
 @Dependent
 public class IdpClient implements IIdpClient {
@@ -161,57 +163,76 @@ public class IdpClient implements IIdpClient {
         final String codeVerifier = ClientUtilities.generateCodeVerifier();
         final String nonce = RandomStringUtils.randomAlphanumeric(20);
 
-        // Authorization
-        final String state = RandomStringUtils.randomAlphanumeric(20);
-        logger.debug("Performing Authorization with remote-URL: " +
-                discoveryDocumentResponse.getAuthorizationEndpoint());
-        final AuthorizationResponse authorizationResponse =
-                authenticatorClient
-                        .doAuthorizationRequest(AuthorizationRequest.builder()
-                                .clientId(clientId)
-                                .link(discoveryDocumentResponse.getAuthorizationEndpoint())
-                                .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
-                                .codeChallengeMethod(codeChallengeMethod)
-                                .redirectUri(redirectUrl)
-                                .state(state)
-                                .scopes(scopes)
-                                .nonce(nonce)
-                                .build());
-
-        IdpJwe idpJwe = new IdpJwe(signServerChallenge(
-                authorizationResponse.getAuthenticationChallenge().getChallenge().getRawString(),
-                certificate, contentSigner));
-
-        // Authentication
-        logger.debug("Performing Authentication with remote-URL: " +
-                discoveryDocumentResponse.getAuthorizationEndpoint());
-        final AuthenticationResponse authenticationResponse =
-                authenticatorClient
-                        .performAuthentication(AuthenticationRequest.builder()
-                                .authenticationEndpointUrl(
-                                        discoveryDocumentResponse.getAuthorizationEndpoint())
-                                .signedChallenge(idpJwe)
-                                .build());
-        if (shouldVerifyState) {
-            final String stringInTokenUrl = UriUtils
-                    .extractParameterValue(authenticationResponse.getLocation(), "state");
-            if (!state.equals(stringInTokenUrl)) {
-                throw new IdpClientException("state-parameter unexpected changed");
+        // every phase of the login is timed in ere.idp.login, the phase that failed is tagged with outcome error
+        String phase = "authorization";
+        Timer.Sample sample = EreMetrics.start();
+        try {
+            // Authorization
+            final String state = RandomStringUtils.randomAlphanumeric(20);
+            logger.debug("Performing Authorization with remote-URL: " +
+                    discoveryDocumentResponse.getAuthorizationEndpoint());
+            final AuthorizationResponse authorizationResponse =
+                    authenticatorClient
+                            .doAuthorizationRequest(AuthorizationRequest.builder()
+                                    .clientId(clientId)
+                                    .link(discoveryDocumentResponse.getAuthorizationEndpoint())
+                                    .codeChallenge(ClientUtilities.generateCodeChallenge(codeVerifier))
+                                    .codeChallengeMethod(codeChallengeMethod)
+                                    .redirectUri(redirectUrl)
+                                    .state(state)
+                                    .scopes(scopes)
+                                    .nonce(nonce)
+                                    .build());
+            EreMetrics.stop(sample, EreMetrics.IDP_LOGIN, EreMetrics.SUCCESS, "phase", phase);
+
+            phase = "sign-challenge";
+            sample = EreMetrics.start();
+            IdpJwe idpJwe = new IdpJwe(signServerChallenge(
+                    authorizationResponse.getAuthenticationChallenge().getChallenge().getRawString(),
+                    certificate, contentSigner));
+            EreMetrics.stop(sample, EreMetrics.IDP_LOGIN, EreMetrics.SUCCESS, "phase", phase);
+
+            // Authentication
+            phase = "authentication";
+            sample = EreMetrics.start();
+            logger.debug("Performing Authentication with remote-URL: " +
+                    discoveryDocumentResponse.getAuthorizationEndpoint());
+            final AuthenticationResponse authenticationResponse =
+                    authenticatorClient
+                            .performAuthentication(AuthenticationRequest.builder()
+                                    .authenticationEndpointUrl(
+                                            discoveryDocumentResponse.getAuthorizationEndpoint())
+                                    .signedChallenge(idpJwe)
+                                    .build());
+            if (shouldVerifyState) {
+                final String stringInTokenUrl = UriUtils
+                        .extractParameterValue(authenticationResponse.getLocation(), "state");
+                if (!state.equals(stringInTokenUrl)) {
+                    throw new IdpClientException("state-parameter unexpected changed");
+                }
             }
+            EreMetrics.stop(sample, EreMetrics.IDP_LOGIN, EreMetrics.SUCCESS, "phase", phase);
+
+            // get Token
+            phase = "token";
+            sample = EreMetrics.start();
+            logger.debug("Performing getToken with remote-URL: " +
+                    discoveryDocumentResponse.getTokenEndpoint());
+            IdpTokenResult idpTokenResult = authenticatorClient.retrieveAccessToken(TokenRequest.builder()
+                    .tokenUrl(discoveryDocumentResponse.getTokenEndpoint())
+                    .clientId(clientId)
+                    .code(authenticationResponse.getCode())
+                    .ssoToken(authenticationResponse.getSsoToken())
+                    .redirectUrl(redirectUrl)
+                    .codeVerifier(codeVerifier)
+                    .idpEnc(discoveryDocumentResponse.getIdpEnc())
+                    .build());
+            EreMetrics.stop(sample, EreMetrics.IDP_LOGIN, EreMetrics.SUCCESS, "phase", phase);
+            return idpTokenResult;
+        } catch (IdpClientException | IdpException | IdpJoseException | RuntimeException e) {
+            EreMetrics.stop(sample, EreMetrics.IDP_LOGIN, EreMetrics.ERROR, "phase", phase);
+            throw e;
         }
-
-        // get Token
-        logger.debug("Performing getToken with remote-URL: " +
-                discoveryDocumentResponse.getTokenEndpoint());
-        return authenticatorClient.retrieveAccessToken(TokenRequest.builder()
-                .tokenUrl(discoveryDocumentResponse.getTokenEndpoint())
-                .clientId(clientId)
-                .code(authenticationResponse.getCode())
-                .ssoToken(authenticationResponse.getSsoToken())
-                .redirectUrl(redirectUrl)
-                .codeVerifier(codeVerifier)
-                .idpEnc(discoveryDocumentResponse.getIdpEnc())
-                .build());
     }
 
     private void assertThatIdpIdentityIsValid(final PkiIdentity idpIdentity) {
@@ -31,6 +31,9 @@ import org.hl7.fhir.r4.model.Bundle;
 import ca.uhn.fhir.context.FhirContext;
 import health.ere.ps.event.HTMLBundlesEvent;
 import health.ere.ps.event.ReadyToSignBundlesEvent;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.service.trace.RequestTracer;
+import health.ere.ps.service.trace.TraceScope;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 
 @ApplicationScoped
@@ -121,10 +124,11 @@ public class XSLTService {
         
         List<String> htmlBundlesList;
 
-        try {
+        try (TraceScope traceScope = RequestTracer.activate(RequestTracer.traceId(readyToSignBundlesEvent))) {
             htmlBundlesList = readyToSignBundlesEvent.listOfListOfBundles.stream().flatMap(l -> l.stream()).map(bundle -> {
                 try {
-                    return generateHtmlForBundle(bundle);
+                    return EreMetrics.record(EreMetrics.DOCUMENT_RENDERING, () -> generateHtmlForBundle(bundle),
+                        "phase", "html");
                 } catch (Exception e) {
                     exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, readyToSignBundlesEvent.getReplyTo(), readyToSignBundlesEvent.getReplyToMessageId()));
                     return "";
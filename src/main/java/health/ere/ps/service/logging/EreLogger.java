@@ -1,20 +1,15 @@
 package health.ere.ps.service.logging;
 
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.logging.Logger;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import javax.enterprise.event.Event;
-import javax.enterprise.inject.spi.CDI;
 
 import health.ere.ps.event.EreLogNotificationEvent;
-import health.ere.ps.service.common.util.BundleJsonInfoExtractor;
 
 /**
  * This class decorates a JBoss Logger to allow for enhancing log statements with system context
@@ -62,16 +57,17 @@ import health.ere.ps.service.common.util.BundleJsonInfoExtractor;
  *
  *  Note: After every log method call completes, all settings applied to a log method call will
  *  be cleared.
+ *
+ *  The settings are kept per thread in an immutable {@link LogContext}, so loggers that are
+ *  shared by a class can be used by many threads at the same time. Log notification events
+ *  are not fired by the logging thread, they are put into a {@link LogNotificationBuffer} and
+ *  sent in batches by the {@link LogNotificationService}.
  */
 public class EreLogger extends Logger {
+    private static volatile LogNotificationBuffer notificationBuffer = new LogNotificationBuffer(256);
+
     protected Logger externalLogger;
-    protected List<SystemContext> systemContextList;
-    protected String simpleLogMessage;
-    protected String logMessage;
-    protected List<String> logDetails;
-    protected String status;
-    protected boolean publishLogNotificationEvent;
-    protected String bundleJson;
+    private final ThreadLocal<LogContext> loggingContext = new ThreadLocal<>();
 
     public enum SystemContext {
         Connector("Connector"),
@@ -104,6 +100,56 @@ public class EreLogger extends Logger {
         }
     }
 
+    /**
+     * The settings of the next log method call of one thread. Every setter of the logger
+     * replaces the context of the thread with a modified copy.
+     */
+    protected static final class LogContext {
+        private static final LogContext EMPTY = new LogContext(null, null, null, false, null);
+
+        private final List<SystemContext> systemContextList;
+        private final String simpleLogMessage;
+        private final List<String> logDetails;
+        private final boolean publishLogNotificationEvent;
+        private final String bundleJson;
+
+        private LogContext(List<SystemContext> systemContextList, String simpleLogMessage,
+                           List<String> logDetails, boolean publishLogNotificationEvent,
+                           String bundleJson) {
+            this.systemContextList = systemContextList;
+            this.simpleLogMessage = simpleLogMessage;
+            this.logDetails = logDetails;
+            this.publishLogNotificationEvent = publishLogNotificationEvent;
+            this.bundleJson = bundleJson;
+        }
+
+        LogContext withLoggingContext(List<SystemContext> systemContextList, String simpleLogMessage,
+                                      boolean publishLogNotificationEvent) {
+            return new LogContext(systemContextList, simpleLogMessage, logDetails,
+                    publishLogNotificationEvent, bundleJson);
+        }
+
+        LogContext withSimpleLogMessage(String simpleLogMessage) {
+            return new LogContext(systemContextList, simpleLogMessage, logDetails,
+                    publishLogNotificationEvent, bundleJson);
+        }
+
+        LogContext withLogDetails(List<String> logDetails) {
+            return new LogContext(systemContextList, simpleLogMessage, logDetails,
+                    publishLogNotificationEvent, bundleJson);
+        }
+
+        LogContext withPublishLogNotificationEvent(boolean publishLogNotificationEvent) {
+            return new LogContext(systemContextList, simpleLogMessage, logDetails,
+                    publishLogNotificationEvent, bundleJson);
+        }
+
+        LogContext withBundleJson(String bundleJson) {
+            return new LogContext(systemContextList, simpleLogMessage, logDetails,
+                    publishLogNotificationEvent, bundleJson);
+        }
+    }
+
     /**
      * Construct a new instance.
      *
@@ -139,19 +185,42 @@ public class EreLogger extends Logger {
         return new EreLogger(logger, logger.getName());
     }
 
-    protected String getSimpleLogPrefix(String originalLogMessage, String defaultMessage) {
+    /**
+     * The buffer that holds the log notifications of all loggers until they are sent.
+     */
+    public static LogNotificationBuffer getNotificationBuffer() {
+        return notificationBuffer;
+    }
+
+    static void setNotificationBuffer(LogNotificationBuffer logNotificationBuffer) {
+        notificationBuffer = logNotificationBuffer;
+    }
+
+    protected LogContext getLoggingContext() {
+        LogContext context = loggingContext.get();
+        return context != null ? context : LogContext.EMPTY;
+    }
 
-        if(CollectionUtils.isNotEmpty(getSystemContextList())) {
-            String sysCtxPrefix = CollectionUtils.isNotEmpty(getSystemContextList()) ?
-                    getSystemContextList().stream()
-                            .map(ctx -> ctx.getSysContext())
-                            .collect(Collectors.joining(",")) :
-                    StringUtils.defaultString(defaultMessage, "?");
-            String decoratedMessage = String.format("[%s <--> %s] <==> ", sysCtxPrefix,
-                    StringUtils.defaultString(simpleLogMessage, "?")) +
-                    StringUtils.defaultString(originalLogMessage);
+    private EreLogger updateLoggingContext(LogContext context) {
+        loggingContext.set(context);
+
+        return this;
+    }
 
-            return decoratedMessage;
+    protected String getSimpleLogPrefix(LogContext context, String originalLogMessage) {
+        if(CollectionUtils.isNotEmpty(context.systemContextList)) {
+            StringBuilder decoratedMessage = new StringBuilder("[");
+            for(int i = 0; i < context.systemContextList.size(); i++) {
+                if(i > 0) {
+                    decoratedMessage.append(',');
+                }
+                decoratedMessage.append(context.systemContextList.get(i).getSysContext());
+            }
+            return decoratedMessage.append(" <--> ")
+                    .append(StringUtils.defaultString(context.simpleLogMessage, "?"))
+                    .append("] <==> ")
+                    .append(StringUtils.defaultString(originalLogMessage))
+                    .toString();
         }
 
         return originalLogMessage;
@@ -165,33 +234,11 @@ public class EreLogger extends Logger {
      * @return the current EreLogger object associated with this method call.
      */
     public EreLogger setLogDetails(List<String> logDetails) {
-        this.logDetails = logDetails;
-
-        return this;
+        return updateLoggingContext(getLoggingContext().withLogDetails(logDetails));
     }
 
     protected List<String> getLogDetails() {
-        return logDetails;
-    }
-
-    protected EreLogger setStatus(String status) {
-        this.status = status;
-
-        return this;
-    }
-
-    public String getStatus() {
-        return status;
-    }
-
-    public EreLogger setLogMessage(String logMessage) {
-        this.logMessage = logMessage;
-
-        return this;
-    }
-
-    protected String getLogMessage() {
-        return logMessage;
+        return getLoggingContext().logDetails;
     }
 
     /**
@@ -209,11 +256,8 @@ public class EreLogger extends Logger {
     public EreLogger setLoggingContext(List<SystemContext> systemContextList,
                                        String simpleLogMessage,
                                        boolean publishLogNotificationEvent) {
-        this.systemContextList = systemContextList;
-        this.simpleLogMessage = simpleLogMessage;
-        this.setPublishLogNotificationEvent(publishLogNotificationEvent);
-
-        return this;
+        return updateLoggingContext(getLoggingContext().withLoggingContext(systemContextList,
+                simpleLogMessage, publishLogNotificationEvent));
     }
 
     /**
@@ -265,39 +309,35 @@ public class EreLogger extends Logger {
      *
      */
     public EreLogger setLoggingContext(List<SystemContext> systemContextList) {
-        this.systemContextList = systemContextList;
-        this.setPublishLogNotificationEvent(false);
-
-        return this;
+        LogContext context = getLoggingContext();
+        return updateLoggingContext(context.withLoggingContext(systemContextList,
+                context.simpleLogMessage, false));
     }
 
     public EreLogger setPublishLogNotificationEvent(boolean publishLogNotificationEvent) {
-        this.publishLogNotificationEvent = publishLogNotificationEvent;
-
-        return this;
+        return updateLoggingContext(getLoggingContext()
+                .withPublishLogNotificationEvent(publishLogNotificationEvent));
     }
 
 
     public EreLogger setSimpleLogMessage(String simpleLogMessage) {
-        this.simpleLogMessage = simpleLogMessage;
-        return this;
+        return updateLoggingContext(getLoggingContext().withSimpleLogMessage(simpleLogMessage));
     }
 
     public EreLogger setBundleJson(String bundleJson) {
-        this.bundleJson = bundleJson;
-        return this;
+        return updateLoggingContext(getLoggingContext().withBundleJson(bundleJson));
     }
 
     public String getBundleJson() {
-        return StringUtils.defaultString(bundleJson);
+        return StringUtils.defaultString(getLoggingContext().bundleJson);
     }
 
     protected List<SystemContext> getSystemContextList() {
-        return systemContextList;
+        return getLoggingContext().systemContextList;
     }
 
     protected boolean isPublishLogNotificationEvent() {
-        return publishLogNotificationEvent;
+        return getLoggingContext().publishLogNotificationEvent;
     }
 
     /**
@@ -306,56 +346,45 @@ public class EreLogger extends Logger {
      *
      */
     public EreLogger clearLoggingContext() {
-        setLogDetails(null);
-        setSimpleLogMessage(null);
-        setLoggingContext(null);
-        setStatus(null);
-        setLogMessage(null);
-        setPublishLogNotificationEvent(false);
+        loggingContext.remove();
 
         return this;
     }
 
-    private void handlePostLogging(String loggingMsg, String logStatus, Throwable thrown) {
-        setLogDetails(CollectionUtils.isNotEmpty(getLogDetails())? getLogDetails() :
-                thrown != null? List.of(StringUtils.defaultString(thrown.getMessage())) :
-                        List.of());
-        setLogMessage(loggingMsg);
-        setStatus(logStatus);
-
-        publishLogNotification();
-
-        clearLoggingContext();
+    private LogContext takeLoggingContext() {
+        LogContext context = getLoggingContext();
+        loggingContext.remove();
+        return context;
     }
 
     @Override
     protected void doLog(Level level, String loggerClassName, Object message,
                          Object[] parameters, Throwable thrown) {
+        LogContext context = takeLoggingContext();
+        String logMessage = message != null ? message.toString() : null;
 
-        String filledLogMessage = (String)message;
+        externalLogger.log(loggerClassName, level, getSimpleLogPrefix(context, logMessage),
+                parameters, thrown);
 
-        if(ArrayUtils.isNotEmpty(parameters)) {
-            filledLogMessage = MessageFormat.format(filledLogMessage, parameters);
+        if(context.publishLogNotificationEvent) {
+            String filledLogMessage = logMessage != null && ArrayUtils.isNotEmpty(parameters) ?
+                    MessageFormat.format(logMessage, parameters) : logMessage;
+            publishLogNotification(context, filledLogMessage, level.name(), thrown);
         }
-
-        String decoratedMessage = getSimpleLogPrefix((String)message,
-                StringUtils.defaultString(loggerClassName));
-
-        externalLogger.log(loggerClassName, level, decoratedMessage, parameters, thrown);
-
-        handlePostLogging(filledLogMessage, level.name(), thrown);
     }
 
     @Override
     protected void doLogf(Level level, String loggerClassName, String format,
                           Object[] parameters, Throwable thrown) {
-        String filledLogMessage = String.format(format, parameters);
-        String decoratedMessage = getSimpleLogPrefix(format,
-                StringUtils.defaultString(loggerClassName));
+        LogContext context = takeLoggingContext();
 
-        externalLogger.logf(loggerClassName, level, thrown, decoratedMessage, parameters);
+        externalLogger.logf(loggerClassName, level, thrown, getSimpleLogPrefix(context, format),
+                parameters);
 
-        handlePostLogging(filledLogMessage, level.name(), thrown);
+        if(context.publishLogNotificationEvent) {
+            publishLogNotification(context, String.format(format, parameters), level.name(),
+                    thrown);
+        }
     }
 
     @Override
@@ -364,28 +393,27 @@ public class EreLogger extends Logger {
     }
 
     protected String getSimpleLogMessage() {
-        return simpleLogMessage;
+        return getLoggingContext().simpleLogMessage;
     }
 
-    protected void publishLogNotification() {
-        if(isPublishLogNotificationEvent()) {
-            List<String> sysContexts = CollectionUtils.isNotEmpty(getSystemContextList()) ?
-                    getSystemContextList().stream()
-                            .map(ctx -> ctx.getSysContext())
-                            .collect(Collectors.toList()) : List.of();
-
-            EreLogNotificationEvent event =
-                    new EreLogNotificationEvent(sysContexts,
-                            StringUtils.defaultString(getSimpleLogMessage()),
-                            StringUtils.defaultString(getStatus()),
-                            StringUtils.defaultString(getLogMessage()),
-                            ListUtils.defaultIfNull(getLogDetails(), null),
-                            BundleJsonInfoExtractor.extractDefaultBundleInfoFromBundleJson(
-                                    getBundleJson()));
-            Event<EreLogNotificationEvent> ereLogNotificationEvent =
-                    CDI.current().select(Event.class).get();
-
-            ereLogNotificationEvent.fireAsync(event);
+    protected void publishLogNotification(LogContext context, String logMessage, String status,
+                                          Throwable thrown) {
+        List<String> sysContexts = List.of();
+        if(CollectionUtils.isNotEmpty(context.systemContextList)) {
+            sysContexts = new ArrayList<>(context.systemContextList.size());
+            for(SystemContext systemContext : context.systemContextList) {
+                sysContexts.add(systemContext.getSysContext());
+            }
         }
+        List<String> logDetails = CollectionUtils.isNotEmpty(context.logDetails) ?
+                context.logDetails : thrown != null ?
+                List.of(StringUtils.defaultString(thrown.getMessage())) : List.of();
+
+        notificationBuffer.offer(new LogNotification(sysContexts,
+                StringUtils.defaultString(context.simpleLogMessage),
+                StringUtils.defaultString(status),
+                StringUtils.defaultString(logMessage),
+                logDetails,
+                context.bundleJson));
     }
 }
@@ -0,0 +1,44 @@
+package health.ere.ps.service.logging;
+
+import java.util.List;
+
+import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.service.common.util.BundleJsonInfoExtractor;
+
+/**
+ * A log notification of {@link EreLogger} that waits in the {@link LogNotificationBuffer}.
+ * The bundle json is only parsed when the notification is sent, notifications that are
+ * dropped never pay for it.
+ */
+public final class LogNotification {
+
+    private final List<String> systemContextList;
+    private final String simpleLogMessage;
+    private final String status;
+    private final String logMessage;
+    private final List<String> logMessageDetails;
+    private final String bundleJson;
+
+    public LogNotification(List<String> systemContextList, String simpleLogMessage, String status,
+                           String logMessage, List<String> logMessageDetails, String bundleJson) {
+        this.systemContextList = systemContextList;
+        this.simpleLogMessage = simpleLogMessage;
+        this.status = status;
+        this.logMessage = logMessage;
+        this.logMessageDetails = logMessageDetails;
+        this.bundleJson = bundleJson;
+    }
+
+    public EreLogNotificationEvent toEvent() {
+        return new EreLogNotificationEvent(systemContextList, simpleLogMessage, status, logMessage,
+            logMessageDetails, BundleJsonInfoExtractor.extractDefaultBundleInfoFromBundleJson(bundleJson));
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getLogMessage() {
+        return logMessage;
+    }
+}
@@ -0,0 +1,69 @@
+package health.ere.ps.service.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import health.ere.ps.service.metrics.EreMetrics;
+
+/**
+ * Ring buffer for the log notifications of {@link EreLogger}. When the buffer is full the
+ * oldest notification is overwritten and counted as dropped, so a burst of notifications
+ * never blocks the logging thread or grows the memory.
+ */
+public class LogNotificationBuffer {
+
+    private final LogNotification[] notifications;
+    private int head;
+    private int size;
+    private long offered;
+    private long dropped;
+
+    public LogNotificationBuffer(int capacity) {
+        notifications = new LogNotification[Math.max(1, capacity)];
+    }
+
+    public synchronized void offer(LogNotification notification) {
+        offered++;
+        if (size == notifications.length) {
+            // overwrite the oldest notification
+            notifications[head] = notification;
+            head = (head + 1) % notifications.length;
+            dropped++;
+            EreMetrics.increment(EreMetrics.LOG_NOTIFICATIONS_DROPPED);
+            return;
+        }
+        notifications[(head + size) % notifications.length] = notification;
+        size++;
+    }
+
+    /**
+     * Removes at most max notifications, the oldest first.
+     */
+    public synchronized List<LogNotification> drain(int max) {
+        int count = Math.min(max, size);
+        List<LogNotification> drained = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            drained.add(notifications[head]);
+            notifications[head] = null;
+            head = (head + 1) % notifications.length;
+        }
+        size -= count;
+        return drained;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return notifications.length;
+    }
+
+    public synchronized long getOffered() {
+        return offered;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
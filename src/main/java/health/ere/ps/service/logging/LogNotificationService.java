@@ -0,0 +1,80 @@
+package health.ere.ps.service.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.event.EreLogNotificationsEvent;
+import health.ere.ps.service.metrics.EreMetrics;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * Sends the log notifications of the {@link EreLogger} to the websocket. Every
+ * ere.log-notification.flush-interval at most max-per-flush notifications are taken from the
+ * {@link LogNotificationBuffer} and fired as one {@link EreLogNotificationsEvent}. When more
+ * notifications are logged than can be sent the oldest ones are dropped by the buffer.
+ */
+@ApplicationScoped
+@Startup
+public class LogNotificationService {
+
+    private static final Logger log = Logger.getLogger(LogNotificationService.class.getName());
+
+    @Inject
+    Event<EreLogNotificationsEvent> ereLogNotificationsEvent;
+
+    @ConfigProperty(name = "ere.log-notification.buffer-size", defaultValue = "256")
+    int bufferSize = 256;
+
+    @ConfigProperty(name = "ere.log-notification.max-per-flush", defaultValue = "20")
+    int maxPerFlush = 20;
+
+    private LogNotificationBuffer buffer;
+    private long reportedDropped;
+
+    @PostConstruct
+    void init() {
+        LogNotificationBuffer startupBuffer = EreLogger.getNotificationBuffer();
+        buffer = new LogNotificationBuffer(bufferSize);
+        EreLogger.setNotificationBuffer(buffer);
+        // keep what was logged before the service started
+        startupBuffer.drain(Integer.MAX_VALUE).forEach(buffer::offer);
+        EreMetrics.gauge(EreMetrics.LOG_NOTIFICATIONS_QUEUE_DEPTH, buffer, LogNotificationBuffer::size);
+    }
+
+    @Scheduled(every = "{ere.log-notification.flush-interval}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void flush() {
+        List<LogNotification> notifications = buffer.drain(maxPerFlush);
+        long dropped = buffer.getDropped();
+        if (dropped > reportedDropped) {
+            log.warning("Dropped " + (dropped - reportedDropped) + " log notifications, more were logged than can be sent");
+            reportedDropped = dropped;
+        }
+        if (notifications.isEmpty()) {
+            return;
+        }
+        List<EreLogNotificationEvent> events = new ArrayList<>(notifications.size());
+        for (LogNotification notification : notifications) {
+            events.add(notification.toEvent());
+        }
+        try {
+            ereLogNotificationsEvent.fireAsync(new EreLogNotificationsEvent(events));
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Could not send log notifications", e);
+        }
+    }
+
+    public LogNotificationBuffer getBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,151 @@
+package health.ere.ps.service.logging;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.hl7.fhir.r4.model.Bundle;
+
+/**
+ * Short summaries of large payloads like bundles and websocket messages for the log.
+ *
+ * A summary contains the size, a hash to find the same payload in other log lines and the
+ * number of FHIR resources per type, e.g. {@code 48213 chars, hash 1f0c93a2, resources
+ * Bundle=1, Composition=1, Patient=1}. Full payloads are only written by {@link #dump} to the
+ * category health.ere.ps.payload at level FINE (DEBUG), which is off by default:
+ *
+ * <pre>quarkus.log.category."health.ere.ps.payload".level=DEBUG</pre>
+ */
+public final class PayloadLog {
+
+    public static final String CATEGORY = "health.ere.ps.payload";
+
+    // at most this many resource types are listed in a summary
+    static final int MAX_RESOURCE_TYPES = 10;
+
+    private static final Logger payloadLog = Logger.getLogger(CATEGORY);
+
+    private PayloadLog() {
+    }
+
+    public static boolean isDumpEnabled() {
+        return payloadLog.isLoggable(Level.FINE);
+    }
+
+    /**
+     * Writes the full payload to the payload category. The payload is only created when the
+     * category is enabled.
+     */
+    public static void dump(String description, Supplier<String> payload) {
+        if (isDumpEnabled()) {
+            payloadLog.fine(description + ":\n" + payload.get());
+        }
+    }
+
+    public static String summary(String payload) {
+        if (payload == null) {
+            return "null";
+        }
+        // String caches its hash code, logging it twice costs nothing
+        StringBuilder summary = new StringBuilder().append(payload.length()).append(" chars, hash ")
+            .append(String.format("%08x", payload.hashCode()));
+        Map<String, Integer> resourceCounts = countResources(payload);
+        appendResourceCounts(summary, resourceCounts);
+        return summary.toString();
+    }
+
+    public static String summary(Bundle bundle) {
+        if (bundle == null) {
+            return "null";
+        }
+        StringBuilder summary = new StringBuilder("Bundle ").append(bundle.getIdElement().getIdPart())
+            .append(", ").append(bundle.getEntry().size()).append(" entries");
+        Map<String, Integer> resourceCounts = new TreeMap<>();
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            if (entry.getResource() != null) {
+                resourceCounts.merge(entry.getResource().fhirType(), 1, Integer::sum);
+            }
+        }
+        appendResourceCounts(summary, resourceCounts);
+        return summary.toString();
+    }
+
+    private static void appendResourceCounts(StringBuilder summary, Map<String, Integer> resourceCounts) {
+        if (resourceCounts.isEmpty()) {
+            return;
+        }
+        summary.append(", resources ");
+        int listed = 0;
+        for (Map.Entry<String, Integer> resourceCount : resourceCounts.entrySet()) {
+            if (listed == MAX_RESOURCE_TYPES) {
+                summary.append(", ...");
+                break;
+            }
+            if (listed > 0) {
+                summary.append(", ");
+            }
+            summary.append(resourceCount.getKey()).append('=').append(resourceCount.getValue());
+            listed++;
+        }
+    }
+
+    /**
+     * Counts the FHIR resources of a json or xml payload without parsing it. In json every
+     * "resourceType" is counted, in xml the root element and the first element in every
+     * resource element.
+     */
+    static Map<String, Integer> countResources(String payload) {
+        Map<String, Integer> resourceCounts = new TreeMap<>();
+        int index = 0;
+        while ((index = payload.indexOf("\"resourceType\"", index)) >= 0) {
+            index += "\"resourceType\"".length();
+            int start = skip(payload, skip(payload, index, ':'), '"');
+            int end = payload.indexOf('"', start);
+            if (start < 0 || end < 0) {
+                break;
+            }
+            resourceCounts.merge(payload.substring(start, end), 1, Integer::sum);
+            index = end;
+        }
+        if (resourceCounts.isEmpty() && payload.startsWith("<")) {
+            int root = payload.startsWith("<?") ? payload.indexOf('<', payload.indexOf("?>") + 2) : 0;
+            String rootElement = elementName(payload, root);
+            if (rootElement != null) {
+                resourceCounts.merge(rootElement, 1, Integer::sum);
+            }
+            index = 0;
+            while ((index = payload.indexOf("<resource>", index)) >= 0) {
+                index += "<resource>".length();
+                String element = elementName(payload, payload.indexOf('<', index));
+                if (element != null) {
+                    resourceCounts.merge(element, 1, Integer::sum);
+                }
+            }
+        }
+        return resourceCounts;
+    }
+
+    // index after the expected character, skipping whitespace before it, -1 if not found
+    private static int skip(String payload, int index, char expected) {
+        if (index < 0) {
+            return -1;
+        }
+        while (index < payload.length() && Character.isWhitespace(payload.charAt(index))) {
+            index++;
+        }
+        return index < payload.length() && payload.charAt(index) == expected ? index + 1 : -1;
+    }
+
+    private static String elementName(String payload, int index) {
+        if (index < 0 || index + 1 >= payload.length()) {
+            return null;
+        }
+        int end = index + 1;
+        while (end < payload.length() && Character.isLetterOrDigit(payload.charAt(end))) {
+            end++;
+        }
+        return end > index + 1 ? payload.substring(index + 1, end) : null;
+    }
+}
@@ -0,0 +1,160 @@
+package health.ere.ps.service.metrics;
+
+import java.util.function.ToDoubleFunction;
+
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.service.trace.RequestTracer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers, counters and gauges of ere.health. They are exported by the Prometheus registry
+ * of Quarkus under /q/metrics.
+ *
+ * The meters are registered in the global registry, so that classes that are not CDI beans,
+ * like the VAU engine or the connector bulkheads, can record them too. Tags are given as
+ * key value pairs, e.g. {@code "connector", url, "flowtype", "160"}.
+ */
+public final class EreMetrics {
+
+    public static final String CONNECTOR_CALL = "ere.connector.call";
+    public static final String CONNECTOR_BULKHEAD_REJECTED = "ere.connector.bulkhead.rejected";
+    public static final String CONNECTOR_BULKHEAD_ACTIVE_CALLS = "ere.connector.bulkhead.active.calls";
+    public static final String IDP_LOGIN = "ere.idp.login";
+    public static final String VAU_CRYPTO = "ere.vau.crypto";
+    public static final String PRESCRIPTION_SERVICE_CALL = "ere.prescription.service.call";
+    public static final String PRESCRIPTION_SERVICE_CONNECTIONS = "ere.prescription.service.connections";
+    public static final String VALIDATION = "ere.validation";
+    public static final String DOCUMENT_RENDERING = "ere.document.rendering";
+    public static final String ERIXA_UPLOAD = "ere.erixa.upload";
+    public static final String KIM_SEND = "ere.kim.send";
+    public static final String ERRORS = "ere.errors";
+    public static final String RETRIES = "ere.retries";
+    public static final String WEBSOCKET_SESSIONS = "ere.websocket.sessions";
+    public static final String WEBSOCKET_OUTBOX_DEPTH = "ere.websocket.outbox.depth";
+    public static final String WEBSOCKET_NOTIFICATIONS_DROPPED = "ere.websocket.notifications.dropped";
+    public static final String WEBSOCKET_NOTIFICATIONS_COALESCED = "ere.websocket.notifications.coalesced";
+    public static final String WEBSOCKET_DISPATCHER_QUEUE_DEPTH = "ere.websocket.dispatcher.queue.depth";
+    public static final String PIPELINE_QUEUE_DEPTH = "ere.pipeline.queue.depth";
+    public static final String PIPELINE_ACTIVE_THREADS = "ere.pipeline.active.threads";
+    public static final String LOG_NOTIFICATIONS_DROPPED = "ere.log.notifications.dropped";
+    public static final String LOG_NOTIFICATIONS_QUEUE_DEPTH = "ere.log.notifications.queue.depth";
+
+    public static final String SUCCESS = "success";
+    public static final String ERROR = "error";
+
+    private static volatile MeterRegistry registry = Metrics.globalRegistry;
+
+    private EreMetrics() {
+    }
+
+    /**
+     * A call that is timed with {@link EreMetrics#record(String, TimedCall, String...)}.
+     */
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    public static MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    // for tests
+    static void setRegistry(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+    }
+
+    /**
+     * Times the call and tags the time with outcome success or error. A failed call is also
+     * counted in ere.errors.
+     */
+    public static <T, E extends Exception> T record(String name, TimedCall<T, E> call, String... tags) throws E {
+        Timer.Sample sample = start();
+        String outcome = ERROR;
+        try {
+            T result = call.call();
+            outcome = SUCCESS;
+            return result;
+        } finally {
+            stop(sample, name, outcome, tags);
+        }
+    }
+
+    public static Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Records the time since the sample was started with the given outcome. The time is also
+     * added as a span to the trace of the current request, if there is one.
+     */
+    public static void stop(Timer.Sample sample, String name, String outcome, String... tags) {
+        long durationNanos = sample.stop(Timer.builder(name)
+            .tags(Tags.of(tags).and("outcome", outcome))
+            .publishPercentileHistogram()
+            .register(registry));
+        RequestTracer.record(name, durationNanos, outcome, tags);
+        if (ERROR.equals(outcome)) {
+            error(name, tags);
+        }
+    }
+
+    /**
+     * Counts an error in ere.errors. The source tag is the name of the timer of the failed call.
+     */
+    public static void error(String source, String... tags) {
+        Counter.builder(ERRORS).tags(Tags.of(tags).and("source", source)).register(registry).increment();
+    }
+
+    /**
+     * Counts a retry in ere.retries. The source tag names the retried call, e.g. ere.kim.send.
+     */
+    public static void retry(String source, String... tags) {
+        Counter.builder(RETRIES).tags(Tags.of(tags).and("source", source)).register(registry).increment();
+    }
+
+    public static void increment(String name, String... tags) {
+        Counter.builder(name).tags(tags).register(registry).increment();
+    }
+
+    /**
+     * Registers a gauge. The registry only keeps a weak reference to the object, it has to
+     * be referenced by its owner. An owner that is closed before the application removes
+     * the gauge with {@link #remove(Meter)}.
+     */
+    public static <T> Gauge gauge(String name, T object, ToDoubleFunction<T> value, String... tags) {
+        return Gauge.builder(name, object, value).tags(tags).register(registry);
+    }
+
+    public static void remove(Meter meter) {
+        registry.remove(meter);
+    }
+
+    /**
+     * Value of the connector tag, the connector of the given configuration.
+     */
+    public static String connector(UserConfig userConfig) {
+        return connector(userConfig != null ? userConfig.getConnectorBaseURL() : null);
+    }
+
+    public static String connector(String connectorBaseURL) {
+        return connectorBaseURL != null ? connectorBaseURL : "default";
+    }
+
+    /**
+     * Value of the flowtype tag for a task, the prescription id starts with the flowtype,
+     * e.g. 160.000.100.000.001.05.
+     */
+    public static String flowtypeOfTask(String taskId) {
+        if (taskId != null && taskId.length() > 3 && taskId.charAt(3) == '.') {
+            return taskId.substring(0, 3);
+        }
+        return "unknown";
+    }
+}
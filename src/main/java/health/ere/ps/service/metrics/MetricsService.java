@@ -0,0 +1,29 @@
+package health.ere.ps.service.metrics;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.quarkus.runtime.Startup;
+
+/**
+ * Connects the registry of Quarkus, which is exported under /q/metrics, with the global
+ * registry that is used by {@link EreMetrics}.
+ */
+@Startup
+@ApplicationScoped
+public class MetricsService {
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @PostConstruct
+    void init() {
+        // meters that were registered before are added to the registry, too
+        if (meterRegistry != Metrics.globalRegistry && !Metrics.globalRegistry.getRegistries().contains(meterRegistry)) {
+            Metrics.addRegistry(meterRegistry);
+        }
+    }
+}
@@ -52,6 +52,8 @@ import health.ere.ps.event.BundlesWithAccessCodeEvent;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
 import health.ere.ps.model.gematik.BundleWithAccessCodeOrThrowable;
 import health.ere.ps.model.pdf.ERezeptDocument;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.service.pipeline.PrescriptionPipeline;
 import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
 
 @ApplicationScoped
@@ -65,6 +67,8 @@ public class DocumentService {
     Event<ERezeptWithDocumentsEvent> eRezeptDocumentsEvent;
     @Inject
     Event<Exception> exceptionEvent;
+    @Inject
+    PrescriptionPipeline pipeline;
 
     @ConfigProperty(name = "ere.document-service.write-pdf-file", defaultValue = "false")
     boolean writePdfFile = false;
@@ -169,6 +173,11 @@ public class DocumentService {
 
 
     public void onBundlesWithAccessCodes(@ObservesAsync BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
+        PrescriptionPipeline.run(pipeline, PrescriptionPipeline.DOCUMENT, bundlesWithAccessCodeEvent,
+            () -> createDocuments(bundlesWithAccessCodeEvent));
+    }
+
+    void createDocuments(BundlesWithAccessCodeEvent bundlesWithAccessCodeEvent) {
         log.info(String.format("About to create prescription receipts for %d bundles",
                 bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().size()));
         bundlesWithAccessCodeEvent.getBundleWithAccessCodeOrThrowable().forEach(bundles -> {
@@ -275,7 +284,8 @@ public class DocumentService {
             }
         });
 
-        Transformer transformer = factory.newTransformer(xslt);
+        Transformer transformer = EreMetrics.record(EreMetrics.DOCUMENT_RENDERING,
+            () -> factory.newTransformer(xslt), "phase", "xslt");
         transformer.setParameter("bundleFileUrl", xml.toURI().toURL().toString());
 
         // Step 5: Setup input and output for XSLT transformation
@@ -286,7 +296,11 @@ public class DocumentService {
         Result res = new SAXResult(fop.getDefaultHandler());
 
         // Step 6: Start XSLT transformation and FOP processing
-        transformer.transform(src, res);
+        // the FO is streamed into FOP, so the time of the fop phase includes applying the stylesheet
+        EreMetrics.record(EreMetrics.DOCUMENT_RENDERING, () -> {
+            transformer.transform(src, res);
+            return null;
+        }, "phase", "fop");
 
         if(isWritePdfFile()) {
             String thisMoment = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH_mm_ssX")
@@ -0,0 +1,133 @@
+package health.ere.ps.service.pipeline;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One stage of the prescription pipeline: a bounded queue that is worked off by a fixed
+ * number of threads.
+ *
+ * When the queue is full the submitting thread waits up to the submit timeout for a free
+ * place, afterwards the task is rejected. This way a burst of work for one stage can not
+ * take the threads of the other stages.
+ */
+public class PipelineStage {
+
+    private static final Logger log = Logger.getLogger(PipelineStage.class.getName());
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalServiceNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxServiceNanos = new AtomicLong();
+
+    public PipelineStage(String name, int threads, int queueCapacity, long submitTimeoutMs) {
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "ere-pipeline-" + name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, (runnable, pool) -> {
+                // backpressure: the submitter waits for a free place in the queue
+                try {
+                    if (pool.isShutdown() || !pool.getQueue().offer(runnable, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        throw new RejectedExecutionException("Pipeline stage " + name + " is full, "
+                            + pool.getQueue().size() + " tasks are waiting");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for pipeline stage " + name, e);
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the task for this stage.
+     *
+     * @throws RejectedExecutionException if the queue stayed full for the submit timeout
+     */
+    public void submit(Runnable task) {
+        long queued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                started.increment();
+                record(totalWaitNanos, maxWaitNanos, start - queued);
+                try {
+                    task.run();
+                    completed.increment();
+                } catch (RuntimeException e) {
+                    failed.increment();
+                    log.log(Level.WARNING, "Task of pipeline stage " + name + " failed", e);
+                } finally {
+                    record(totalServiceNanos, maxServiceNanos, System.nanoTime() - start);
+                }
+            });
+            submitted.increment();
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    private static void record(LongAdder total, AtomicLong max, long nanos) {
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public PipelineStageStatistics getStatistics() {
+        PipelineStageStatistics statistics = new PipelineStageStatistics();
+        statistics.setThreads(threads);
+        statistics.setActiveThreads(getActiveThreads());
+        statistics.setQueueCapacity(queueCapacity);
+        statistics.setQueueDepth(getQueueDepth());
+        statistics.setSubmitted(submitted.sum());
+        statistics.setCompleted(completed.sum());
+        statistics.setFailed(failed.sum());
+        statistics.setRejected(rejected.sum());
+        long startedTasks = started.sum();
+        long finishedTasks = completed.sum() + failed.sum();
+        statistics.setAverageWaitMillis(startedTasks > 0 ? totalWaitNanos.sum() / startedTasks / 1_000_000d : 0);
+        statistics.setMaxWaitMillis(maxWaitNanos.get() / 1_000_000d);
+        statistics.setAverageServiceMillis(finishedTasks > 0 ? totalServiceNanos.sum() / finishedTasks / 1_000_000d : 0);
+        statistics.setMaxServiceMillis(maxServiceNanos.get() / 1_000_000d);
+        return statistics;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
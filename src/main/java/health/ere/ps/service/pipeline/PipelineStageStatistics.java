@@ -0,0 +1,117 @@
+package health.ere.ps.service.pipeline;
+
+/**
+ * Snapshot of the load of one pipeline stage. Wait time is the time a task spent in the
+ * queue, service time the time it was processed.
+ */
+public class PipelineStageStatistics {
+
+    private int threads;
+    private int activeThreads;
+    private int queueCapacity;
+    private int queueDepth;
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long rejected;
+    private double averageWaitMillis;
+    private double maxWaitMillis;
+    private double averageServiceMillis;
+    private double maxServiceMillis;
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getActiveThreads() {
+        return this.activeThreads;
+    }
+
+    public void setActiveThreads(int activeThreads) {
+        this.activeThreads = activeThreads;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getQueueDepth() {
+        return this.queueDepth;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public long getSubmitted() {
+        return this.submitted;
+    }
+
+    public void setSubmitted(long submitted) {
+        this.submitted = submitted;
+    }
+
+    public long getCompleted() {
+        return this.completed;
+    }
+
+    public void setCompleted(long completed) {
+        this.completed = completed;
+    }
+
+    public long getFailed() {
+        return this.failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public long getRejected() {
+        return this.rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public double getAverageWaitMillis() {
+        return this.averageWaitMillis;
+    }
+
+    public void setAverageWaitMillis(double averageWaitMillis) {
+        this.averageWaitMillis = averageWaitMillis;
+    }
+
+    public double getMaxWaitMillis() {
+        return this.maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(double maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public double getAverageServiceMillis() {
+        return this.averageServiceMillis;
+    }
+
+    public void setAverageServiceMillis(double averageServiceMillis) {
+        this.averageServiceMillis = averageServiceMillis;
+    }
+
+    public double getMaxServiceMillis() {
+        return this.maxServiceMillis;
+    }
+
+    public void setMaxServiceMillis(double maxServiceMillis) {
+        this.maxServiceMillis = maxServiceMillis;
+    }
+}
@@ -0,0 +1,108 @@
+package health.ere.ps.service.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.event.AbstractEvent;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.service.trace.RequestTracer;
+import health.ere.ps.websocket.ExceptionWithReplyToExcetion;
+
+/**
+ * Runs the steps of the prescription workflow in separate stages, each with its own queue
+ * and threads: signing and uploading, rendering the receipts and sending them via KIM.
+ *
+ * The CDI events stay the contract between the services. An observer only hands the
+ * event to its stage, so the CDI async threads are not blocked by the slow steps.
+ * Stages are configured with ere.pipeline.&lt;stage&gt;.threads and
+ * ere.pipeline.&lt;stage&gt;.queue-capacity.
+ */
+@ApplicationScoped
+public class PrescriptionPipeline {
+
+    public static final String SIGN_AND_UPLOAD = "sign-and-upload";
+    public static final String DOCUMENT = "document";
+    public static final String KIM = "kim";
+
+    private static final Logger log = Logger.getLogger(PrescriptionPipeline.class.getName());
+
+    @Inject
+    Event<Exception> exceptionEvent;
+
+    @ConfigProperty(name = "ere.pipeline.submit-timeout-ms", defaultValue = "30000")
+    long submitTimeoutMs = 30000;
+
+    private final Map<String, PipelineStage> stages = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the task for the given event in the given stage. If the stage does not accept
+     * the task in time, the requester of the event gets an error.
+     */
+    public void submit(String stageName, AbstractEvent event, Runnable task) {
+        try {
+            getStage(stageName).submit(task);
+        } catch (RejectedExecutionException e) {
+            log.warning(e.getMessage());
+            if (exceptionEvent != null) {
+                // incoming events carry the message id in id, events created by the services in replyToMessageId
+                String messageId = event.getReplyToMessageId() != null ? event.getReplyToMessageId() : event.getId();
+                exceptionEvent.fireAsync(new ExceptionWithReplyToExcetion(e, event.getReplyTo(), messageId));
+            }
+        }
+    }
+
+    PipelineStage getStage(String stageName) {
+        return stages.computeIfAbsent(stageName, this::createStage);
+    }
+
+    private PipelineStage createStage(String stageName) {
+        Config config = ConfigProvider.getConfig();
+        int threads = config.getOptionalValue("ere.pipeline." + stageName + ".threads", Integer.class).orElse(2);
+        int queueCapacity = config.getOptionalValue("ere.pipeline." + stageName + ".queue-capacity", Integer.class).orElse(100);
+        log.info("Starting pipeline stage " + stageName + " with " + threads + " threads and a queue for " + queueCapacity + " tasks");
+        PipelineStage stage = new PipelineStage(stageName, threads, queueCapacity, submitTimeoutMs);
+        EreMetrics.gauge(EreMetrics.PIPELINE_QUEUE_DEPTH, stage, PipelineStage::getQueueDepth, "stage", stageName);
+        EreMetrics.gauge(EreMetrics.PIPELINE_ACTIVE_THREADS, stage, PipelineStage::getActiveThreads, "stage", stageName);
+        return stage;
+    }
+
+    /**
+     * Statistics of all stages that were used, by stage name.
+     */
+    public Map<String, PipelineStageStatistics> getStatistics() {
+        Map<String, PipelineStageStatistics> statistics = new LinkedHashMap<>();
+        stages.values().forEach(stage -> statistics.put(stage.getName(), stage.getStatistics()));
+        return statistics;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stages.values().forEach(PipelineStage::shutdown);
+    }
+
+    /**
+     * Runs the task in the stage of the pipeline or directly if there is no pipeline,
+     * e.g. when a service is used outside of CDI.
+     */
+    public static void run(PrescriptionPipeline pipeline, String stageName, AbstractEvent event, Runnable task) {
+        // the stage runs with the trace of the websocket message, the wait in the queue is a span too
+        Runnable tracedTask = RequestTracer.wrap(RequestTracer.traceId(event), "ere.pipeline." + stageName, task);
+        if (pipeline != null) {
+            pipeline.submit(stageName, event, tracedTask);
+        } else {
+            tracedTask.run();
+        }
+    }
+}
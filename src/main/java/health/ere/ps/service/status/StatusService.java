@@ -1,6 +1,7 @@
 package health.ere.ps.service.status;
 
 import java.io.File;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,6 +27,9 @@ import health.ere.ps.service.common.security.SecretsManagerService;
 import health.ere.ps.service.connector.cards.ConnectorCardsService;
 import health.ere.ps.service.connector.cards.ConnectorCardsService.CardHandleType;
 import health.ere.ps.service.connector.certificate.CardCertificateReaderService;
+import health.ere.ps.service.connector.provider.ConnectorBulkhead;
+import health.ere.ps.service.connector.provider.ConnectorBulkheadRegistry;
+import health.ere.ps.service.connector.provider.ConnectorBulkheadStatistics;
 import health.ere.ps.service.connector.provider.MultiConnectorServicesProvider;
 import health.ere.ps.service.gematik.ERezeptWorkflowService;
 import health.ere.ps.service.idp.BearerTokenService;
@@ -60,6 +64,9 @@ public class StatusService {
     @Inject
     ERezeptWorkflowService eRezeptWorkflowService;
 
+    @Inject
+    ConnectorBulkheadRegistry connectorBulkheadRegistry;
+
     @Inject
     Event<Exception> exceptionEvent;
 
@@ -102,6 +109,20 @@ public class StatusService {
             log.info("Did not find client certificate in app config.");
         }
 
+        // ConnectorBulkheadAvailable, checked first because the following checks use the bulkhead
+        try {
+            ConnectorBulkhead bulkhead = connectorServicesProvider.getSingleConnectorServicesProvider(runtimeConfig).getConnectorBulkhead();
+            if(bulkhead == null) {
+                status.setConnectorBulkheadAvailable(true, "No bulkhead configured");
+            } else {
+                ConnectorBulkheadStatistics statistics = bulkhead.getStatistics();
+                status.setConnectorBulkheadAvailable(!statistics.isSaturated(), statistics.getActiveCalls()+" of "
+                    +statistics.getMaxConcurrentCalls()+" calls running, "+statistics.getRejected()+" calls rejected");
+            }
+        } catch(Exception e) {
+            status.setConnectorBulkheadAvailable(false, "Exception: "+e.getMessage());
+        }
+
         // ConnectorReachable
         try {
             connectorServicesProvider.getSingleConnectorServicesProvider(runtimeConfig).initializeServices(true);
@@ -179,5 +200,12 @@ public class StatusService {
 
         return status;
     }
+
+    /**
+     * Returns the load of the bulkheads of all connectors that were used so far.
+     */
+    public List<ConnectorBulkheadStatistics> getConnectorBulkheadStatistics() {
+        return connectorBulkheadRegistry.getStatistics();
+    }
     
 }
@@ -0,0 +1,150 @@
+package health.ere.ps.service.trace;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * The spans of one websocket message. The trace id is the id of the message, which is the
+ * replyToMessageId of all events and replies that belong to it.
+ */
+public final class RequestTrace {
+
+    // a broken client must not let a trace grow without limit
+    static final int MAX_SPANS = 500;
+
+    private final String id;
+    private final String name;
+    private final long startEpochMillis;
+    private final long startNanos;
+    private volatile long lastActivityNanos;
+    private final List<TraceSpan> spans = new ArrayList<>();
+    private int droppedSpans;
+
+    RequestTrace(String id, String name) {
+        this.id = id;
+        this.name = name;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.lastActivityNanos = startNanos;
+    }
+
+    /**
+     * Adds a span that ended now.
+     */
+    void addSpan(String spanName, long durationNanos, String outcome, Map<String, String> attributes) {
+        long now = System.nanoTime();
+        TraceSpan span = new TraceSpan(spanName, Math.max(0, now - durationNanos - startNanos), durationNanos,
+            outcome, Thread.currentThread().getName(), attributes);
+        synchronized (spans) {
+            if (spans.size() < MAX_SPANS) {
+                spans.add(span);
+            } else {
+                droppedSpans++;
+            }
+        }
+        lastActivityNanos = now;
+    }
+
+    void touch() {
+        lastActivityNanos = System.nanoTime();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Time from the start of the trace to the end of the last span.
+     */
+    public long getDurationNanos() {
+        return lastActivityNanos - startNanos;
+    }
+
+    public List<TraceSpan> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    public int getDroppedSpans() {
+        synchronized (spans) {
+            return droppedSpans;
+        }
+    }
+
+    /**
+     * The timings block of a reply, e.g.
+     * {@code {"totalMs":5230,"spans":[{"name":"ere.idp.login","startMs":12,"durationMs":840}]}}.
+     */
+    public JsonObject toTimingsJson() {
+        JsonArrayBuilder spansJson = Json.createArrayBuilder();
+        for (TraceSpan span : getSpans()) {
+            JsonObjectBuilder spanJson = Json.createObjectBuilder()
+                .add("name", span.getName())
+                .add("startMs", TimeUnit.NANOSECONDS.toMillis(span.getOffsetNanos()))
+                .add("durationMs", TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos()))
+                .add("outcome", span.getOutcome());
+            // e.g. the operation $create or the phase fop
+            span.getAttributes().forEach((key, value) -> {
+                if (!"connector".equals(key)) {
+                    spanJson.add(key, value);
+                }
+            });
+            spansJson.add(spanJson);
+        }
+        return Json.createObjectBuilder()
+            .add("totalMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos))
+            .add("spans", spansJson)
+            .build();
+    }
+
+    /**
+     * The trace as written to the trace file, one trace per line.
+     */
+    public JsonObject toJson() {
+        JsonArrayBuilder spansJson = Json.createArrayBuilder();
+        for (TraceSpan span : getSpans()) {
+            JsonObjectBuilder attributes = Json.createObjectBuilder();
+            span.getAttributes().forEach(attributes::add);
+            spansJson.add(Json.createObjectBuilder()
+                .add("name", span.getName())
+                .add("startMs", TimeUnit.NANOSECONDS.toMillis(span.getOffsetNanos()))
+                .add("durationMs", TimeUnit.NANOSECONDS.toMillis(span.getDurationNanos()))
+                .add("outcome", span.getOutcome())
+                .add("thread", span.getThread())
+                .add("attributes", attributes));
+        }
+        return Json.createObjectBuilder()
+            .add("traceId", id)
+            .add("name", name)
+            .add("start", Instant.ofEpochMilli(startEpochMillis).toString())
+            .add("durationMs", TimeUnit.NANOSECONDS.toMillis(getDurationNanos()))
+            .add("droppedSpans", getDroppedSpans())
+            .add("spans", spansJson)
+            .build();
+    }
+}
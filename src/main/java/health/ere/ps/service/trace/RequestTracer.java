@@ -0,0 +1,185 @@
+package health.ere.ps.service.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import health.ere.ps.event.AbstractEvent;
+
+/**
+ * Collects the spans of a websocket message while it passes through the services, e.g.
+ * Websocket, ERezeptWorkflowService, DocumentService and KIMFlowtype169Service.
+ *
+ * The trace is keyed on the message id. Every event carries it as replyToMessageId (or id
+ * for the incoming events), so a service that handles an event activates the trace with
+ * {@link #activate(String)}. Everything that is timed with
+ * {@link health.ere.ps.service.metrics.EreMetrics} on that thread becomes a span of the trace.
+ * Traces that had no new span for a while are exported by the {@link TraceExportService}.
+ */
+public final class RequestTracer {
+
+    private static volatile boolean enabled = true;
+    private static volatile int maxTraces = 1000;
+    // evicted traces are only kept when an exporter takes them
+    private static volatile boolean exporting;
+
+    private static final Map<String, RequestTrace> traces = new ConcurrentHashMap<>();
+    private static final Queue<RequestTrace> finished = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<RequestTrace> current = new ThreadLocal<>();
+
+    private RequestTracer() {
+    }
+
+    static void configure(boolean tracingEnabled, int maximumTraces, boolean exportingTraces) {
+        enabled = tracingEnabled;
+        maxTraces = maximumTraces;
+        exporting = exportingTraces;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The message id of an event, incoming events carry it in id, events created by the
+     * services in replyToMessageId.
+     */
+    public static String traceId(AbstractEvent event) {
+        if (event == null) {
+            return null;
+        }
+        return event.getReplyToMessageId() != null ? event.getReplyToMessageId() : event.getId();
+    }
+
+    /**
+     * Starts the trace of a message, e.g. when it arrives at the websocket.
+     */
+    public static RequestTrace begin(String traceId, String name) {
+        if (!enabled || traceId == null) {
+            return null;
+        }
+        RequestTrace trace = traces.computeIfAbsent(traceId, id -> new RequestTrace(id, name != null ? name : "message"));
+        if (traces.size() > maxTraces) {
+            evictOldest();
+        }
+        return trace;
+    }
+
+    public static RequestTrace get(String traceId) {
+        return traceId != null ? traces.get(traceId) : null;
+    }
+
+    public static RequestTrace current() {
+        return current.get();
+    }
+
+    /**
+     * Makes the trace of the message the current trace of this thread. The trace is started
+     * if this is the first service that sees the message.
+     */
+    public static TraceScope activate(String traceId) {
+        RequestTrace previous = current.get();
+        RequestTrace trace = begin(traceId, null);
+        if (trace != null) {
+            trace.touch();
+            current.set(trace);
+        }
+        return new TraceScope(previous);
+    }
+
+    static void restore(RequestTrace previous) {
+        if (previous != null) {
+            current.set(previous);
+        } else {
+            current.remove();
+        }
+    }
+
+    /**
+     * Adds a span that ended now to the current trace of this thread. Tags are given as key
+     * value pairs like in EreMetrics.
+     */
+    public static void record(String name, long durationNanos, String outcome, String... tags) {
+        RequestTrace trace = current.get();
+        if (trace == null) {
+            return;
+        }
+        Map<String, String> attributes = Collections.emptyMap();
+        if (tags.length > 1) {
+            attributes = new LinkedHashMap<>();
+            for (int i = 0; i + 1 < tags.length; i += 2) {
+                attributes.put(tags[i], tags[i + 1]);
+            }
+        }
+        trace.addSpan(name, durationNanos, outcome, attributes);
+    }
+
+    /**
+     * Wraps a task that is run by another thread. The time the task waited is recorded as
+     * &lt;name&gt;.queued and the time it ran as &lt;name&gt;, the task runs with the trace of the
+     * message as current trace.
+     */
+    public static Runnable wrap(String traceId, String name, Runnable task) {
+        if (!enabled || traceId == null) {
+            return task;
+        }
+        long submitted = System.nanoTime();
+        return () -> {
+            try (TraceScope scope = activate(traceId)) {
+                long started = System.nanoTime();
+                record(name + ".queued", started - submitted, "success");
+                String outcome = "error";
+                try {
+                    task.run();
+                    outcome = "success";
+                } finally {
+                    record(name, System.nanoTime() - started, outcome);
+                }
+            }
+        };
+    }
+
+    /**
+     * Removes the traces that had no new span for idleNanos and the traces that were evicted
+     * and returns them for the export.
+     */
+    static List<RequestTrace> takeFinished(long idleNanos) {
+        long now = System.nanoTime();
+        traces.values().removeIf(trace -> {
+            if (now - trace.getLastActivityNanos() >= idleNanos) {
+                finished.add(trace);
+                return true;
+            }
+            return false;
+        });
+        List<RequestTrace> result = new ArrayList<>();
+        RequestTrace trace;
+        while ((trace = finished.poll()) != null) {
+            result.add(trace);
+        }
+        return result;
+    }
+
+    private static void evictOldest() {
+        traces.values().stream()
+            .min(Comparator.comparingLong(RequestTrace::getLastActivityNanos))
+            .ifPresent(oldest -> {
+                if (traces.remove(oldest.getId(), oldest) && exporting) {
+                    finished.add(oldest);
+                }
+            });
+    }
+
+    // for tests
+    static void clear() {
+        traces.clear();
+        finished.clear();
+        current.remove();
+    }
+}
@@ -0,0 +1,175 @@
+package health.ere.ps.service.trace;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * Exports the finished traces of the {@link RequestTracer}. A trace is finished when it had
+ * no new span for ere.trace.idle-timeout-ms. Traces are appended as json lines to
+ * ere.trace.export.file and/or sent as OTLP/HTTP json to ere.trace.export.otlp-endpoint,
+ * e.g. http://localhost:4318/v1/traces. Without an exporter finished traces are discarded.
+ */
+@ApplicationScoped
+@Startup
+public class TraceExportService {
+
+    private static final Logger log = Logger.getLogger(TraceExportService.class.getName());
+
+    @ConfigProperty(name = "ere.trace.enabled", defaultValue = "true")
+    boolean enabled = true;
+
+    @ConfigProperty(name = "ere.trace.max-traces", defaultValue = "1000")
+    int maxTraces = 1000;
+
+    @ConfigProperty(name = "ere.trace.idle-timeout-ms", defaultValue = "30000")
+    long idleTimeoutMs = 30000;
+
+    @ConfigProperty(name = "ere.trace.export.file")
+    Optional<String> exportFile = Optional.empty();
+
+    @ConfigProperty(name = "ere.trace.export.otlp-endpoint")
+    Optional<String> otlpEndpoint = Optional.empty();
+
+    private Client otlpClient;
+
+    @PostConstruct
+    void init() {
+        RequestTracer.configure(enabled, maxTraces, true);
+        if (otlpEndpoint.isPresent()) {
+            otlpClient = ClientBuilder.newBuilder()
+                .connectTimeout(5, TimeUnit.SECONDS)
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        export();
+        if (otlpClient != null) {
+            otlpClient.close();
+        }
+    }
+
+    @Scheduled(every = "10s", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void export() {
+        List<RequestTrace> traces = RequestTracer.takeFinished(TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs));
+        if (traces.isEmpty()) {
+            return;
+        }
+        exportFile.ifPresent(file -> writeToFile(Paths.get(file), traces));
+        otlpEndpoint.ifPresent(endpoint -> sendToCollector(endpoint, traces));
+    }
+
+    void writeToFile(Path file, List<RequestTrace> traces) {
+        StringBuilder lines = new StringBuilder();
+        for (RequestTrace trace : traces) {
+            lines.append(trace.toJson()).append('\n');
+        }
+        try {
+            Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not write traces to " + file, e);
+        }
+    }
+
+    private void sendToCollector(String endpoint, List<RequestTrace> traces) {
+        try (Response response = otlpClient.target(endpoint).request()
+            .post(Entity.json(toOtlpJson(traces).toString()))) {
+            if (response.getStatus() >= 300) {
+                log.warning("OTLP collector " + endpoint + " did not accept traces, status " + response.getStatus());
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.WARNING, "Could not send traces to " + endpoint, e);
+        }
+    }
+
+    /**
+     * Converts the traces to an OTLP ExportTraceServiceRequest in json encoding. Every trace
+     * gets a root span for the message, the recorded spans are its children.
+     */
+    static JsonObject toOtlpJson(List<RequestTrace> traces) {
+        JsonArrayBuilder spans = Json.createArrayBuilder();
+        for (RequestTrace trace : traces) {
+            String traceId = UUID.nameUUIDFromBytes(trace.getId().getBytes(StandardCharsets.UTF_8))
+                .toString().replace("-", "");
+            String rootSpanId = spanId();
+            long startNanos = TimeUnit.MILLISECONDS.toNanos(trace.getStartEpochMillis());
+            spans.add(otlpSpan(traceId, rootSpanId, null, trace.getName(), startNanos,
+                startNanos + trace.getDurationNanos(), "success")
+                .add("attributes", Json.createArrayBuilder().add(attribute("ere.message.id", trace.getId()))));
+            for (TraceSpan span : trace.getSpans()) {
+                JsonArrayBuilder attributes = Json.createArrayBuilder().add(attribute("thread.name", span.getThread()));
+                span.getAttributes().forEach((key, value) -> attributes.add(attribute(key, value)));
+                long spanStart = startNanos + span.getOffsetNanos();
+                spans.add(otlpSpan(traceId, spanId(), rootSpanId, span.getName(), spanStart,
+                    spanStart + span.getDurationNanos(), span.getOutcome())
+                    .add("attributes", attributes));
+            }
+        }
+        return Json.createObjectBuilder()
+            .add("resourceSpans", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                .add("resource", Json.createObjectBuilder()
+                    .add("attributes", Json.createArrayBuilder().add(attribute("service.name", "ere.health"))))
+                .add("scopeSpans", Json.createArrayBuilder().add(Json.createObjectBuilder()
+                    .add("scope", Json.createObjectBuilder().add("name", "health.ere.ps"))
+                    .add("spans", spans)))))
+            .build();
+    }
+
+    private static JsonObjectBuilder otlpSpan(String traceId, String spanId, String parentSpanId, String name,
+                                              long startNanos, long endNanos, String outcome) {
+        JsonObjectBuilder span = Json.createObjectBuilder()
+            .add("traceId", traceId)
+            .add("spanId", spanId)
+            .add("name", name)
+            // SPAN_KIND_INTERNAL
+            .add("kind", 1)
+            .add("startTimeUnixNano", String.valueOf(startNanos))
+            .add("endTimeUnixNano", String.valueOf(endNanos))
+            // STATUS_CODE_OK or STATUS_CODE_ERROR
+            .add("status", Json.createObjectBuilder().add("code", "error".equals(outcome) ? 2 : 1));
+        if (parentSpanId != null) {
+            span.add("parentSpanId", parentSpanId);
+        }
+        return span;
+    }
+
+    private static JsonObjectBuilder attribute(String key, String value) {
+        return Json.createObjectBuilder().add("key", key)
+            .add("value", Json.createObjectBuilder().add("stringValue", value != null ? value : ""));
+    }
+
+    private static String spanId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+}
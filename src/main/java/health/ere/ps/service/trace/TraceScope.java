@@ -0,0 +1,19 @@
+package health.ere.ps.service.trace;
+
+/**
+ * Makes a trace the current trace of the thread until it is closed, see
+ * {@link RequestTracer#activate(String)}.
+ */
+public final class TraceScope implements AutoCloseable {
+
+    private final RequestTrace previous;
+
+    TraceScope(RequestTrace previous) {
+        this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+        RequestTracer.restore(previous);
+    }
+}
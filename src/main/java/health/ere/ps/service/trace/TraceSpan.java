@@ -0,0 +1,51 @@
+package health.ere.ps.service.trace;
+
+import java.util.Map;
+
+/**
+ * One step of a {@link RequestTrace}, e.g. a call of the prescription service or the
+ * rendering of a receipt. Times are relative to the start of the trace.
+ */
+public final class TraceSpan {
+
+    private final String name;
+    private final long offsetNanos;
+    private final long durationNanos;
+    private final String outcome;
+    private final String thread;
+    private final Map<String, String> attributes;
+
+    TraceSpan(String name, long offsetNanos, long durationNanos, String outcome, String thread,
+              Map<String, String> attributes) {
+        this.name = name;
+        this.offsetNanos = offsetNanos;
+        this.durationNanos = durationNanos;
+        this.outcome = outcome;
+        this.thread = thread;
+        this.attributes = attributes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+}
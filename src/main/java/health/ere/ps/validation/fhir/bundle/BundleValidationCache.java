@@ -0,0 +1,120 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Bounded LRU cache for bundle validation results.
+ *
+ * The key is the profile of the bundle together with a SHA-256 hash over a canonical
+ * form of the bundle json (object keys sorted, no whitespace). Two bundles that only
+ * differ in key order or formatting share the same result.
+ */
+public class BundleValidationCache {
+
+    private final Map<String, JsonObject> cache;
+
+    public BundleValidationCache(int maxEntries) {
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<String, JsonObject>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    public JsonObject get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, JsonObject result) {
+        cache.put(key, result);
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the cache key for the given bundle.
+     */
+    public static String key(JsonValue bundle) {
+        return getProfile(bundle) + "#" + hash(bundle);
+    }
+
+    /**
+     * Returns the first profile of the bundle including its version,
+     * e.g. https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2
+     */
+    public static String getProfile(JsonValue bundle) {
+        if (bundle instanceof JsonObject) {
+            JsonObject meta = ((JsonObject) bundle).getJsonObject("meta");
+            if (meta != null && meta.get("profile") instanceof JsonArray) {
+                JsonArray profiles = meta.getJsonArray("profile");
+                if (!profiles.isEmpty() && profiles.get(0) instanceof JsonString) {
+                    return profiles.getString(0);
+                }
+            }
+        }
+        return "unknown";
+    }
+
+    static String hash(JsonValue bundle) {
+        StringBuilder canonical = new StringBuilder();
+        appendCanonical(bundle, canonical);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static void appendCanonical(JsonValue value, StringBuilder sb) {
+        if (value instanceof JsonObject) {
+            JsonObject object = (JsonObject) value;
+            List<String> keys = new ArrayList<>(object.keySet());
+            Collections.sort(keys);
+            sb.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append('"').append(keys.get(i)).append("\":");
+                appendCanonical(object.get(keys.get(i)), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof JsonArray) {
+            JsonArray array = (JsonArray) value;
+            sb.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendCanonical(array.get(i), sb);
+            }
+            sb.append(']');
+        } else {
+            // strings, numbers and literals are already written in a normalized form
+            sb.append(value.toString());
+        }
+    }
+}
@@ -2,8 +2,16 @@ package health.ere.ps.validation.fhir.bundle;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.json.Json;
 import javax.json.JsonArray;
@@ -12,6 +20,7 @@ import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hl7.fhir.common.hapi.validation.support.CachingValidationSupport;
 import org.hl7.fhir.common.hapi.validation.support.CommonCodeSystemsTerminologyService;
 import org.hl7.fhir.common.hapi.validation.support.InMemoryTerminologyServerValidationSupport;
@@ -26,7 +35,10 @@ import ca.uhn.fhir.context.support.DefaultProfileValidationSupport;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.SingleValidationMessage;
 import ca.uhn.fhir.validation.ValidationResult;
+import health.ere.ps.service.logging.PayloadLog;
+import health.ere.ps.service.metrics.EreMetrics;
 import health.ere.ps.validation.fhir.context.support.ErePrePopulatedValidationSupport;
+import io.micrometer.core.instrument.Timer;
 import io.quarkus.runtime.Startup;
 
 @ApplicationScoped
@@ -37,9 +49,29 @@ public class PrescriptionBundleValidator {
             Logger.getLogger(PrescriptionBundleValidator.class.getName());
     private FhirValidator validator;
 
+    @ConfigProperty(name = "ere.validator.threads", defaultValue = "2")
+    int validatorThreads = 2;
+
+    @ConfigProperty(name = "ere.validator.queue-capacity", defaultValue = "100")
+    int queueCapacity = 100;
+
+    @ConfigProperty(name = "ere.validator.submit-timeout-ms", defaultValue = "30000")
+    long submitTimeoutMs = 30000;
+
+    @ConfigProperty(name = "ere.validator.cache-size", defaultValue = "200")
+    int cacheSize = 200;
+
+    private ThreadPoolExecutor validationExecutor;
+    private BundleValidationCache validationCache;
+    private final ValidationStatistics validationStatistics = new ValidationStatistics();
+
     @PostConstruct
     void init() {
         log.info("Starting validator");
+        // FhirValidator is thread safe, bundles of one request are validated in parallel
+        validationExecutor = createExecutor(validatorThreads, queueCapacity, submitTimeoutMs);
+        validationCache = new BundleValidationCache(cacheSize);
+
         FhirContext ctx = FhirContext.forR4();
 
         // Create a chain that will hold our modules
@@ -49,11 +81,16 @@ public class PrescriptionBundleValidator {
         // even if you are using custom profiles, since those profiles will derive from the base
         // definitions.
         validationSupportChain.addValidationSupport(new DefaultProfileValidationSupport(ctx));
-        validationSupportChain.addValidationSupport(new ErePrePopulatedValidationSupport(ctx));
+        ErePrePopulatedValidationSupport erePrePopulatedValidationSupport = new ErePrePopulatedValidationSupport(ctx);
+        validationSupportChain.addValidationSupport(erePrePopulatedValidationSupport);
         validationSupportChain.addValidationSupport(new CommonCodeSystemsTerminologyService(ctx));
         validationSupportChain.addValidationSupport(new InMemoryTerminologyServerValidationSupport(ctx));
         validationSupportChain.addValidationSupport(new SnapshotGeneratingValidationSupport(ctx));
 
+        // on the first start with a new KBV configuration the snapshots are generated here
+        // and written to the cache, later starts read them from the cache
+        erePrePopulatedValidationSupport.generateSnapshotsAndWriteCache(validationSupportChain);
+
         CachingValidationSupport cache = new CachingValidationSupport(validationSupportChain);
 
         FhirInstanceValidator validatorModule = new FhirInstanceValidator(cache);
@@ -65,7 +102,15 @@ public class PrescriptionBundleValidator {
 
         validator = ctx.newValidator().registerValidatorModule(validatorModule);
 
-        // needed for initializing
+        warmUp();
+    }
+
+    /**
+     * Validates a sample bundle, so that the caches of the validator are filled
+     * before the first real bundle arrives.
+     */
+    void warmUp() {
+        long start = System.currentTimeMillis();
         validateResource("{\"resourceType\":\"Bundle\",\"id\":\"2e38f9d3-6de0-4272-b343-7b6975e8fe9e\",\"meta\":{\"lastUpdated\":\"2021-04-06T08:30:00Z\",\"profile\":"+
         "[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]},\"identifier\":{\"system\":\"https://gematik.de/fhir/NamingSystem/PrescriptionID\",\"value\":\"160.10"+
         "0.000.000.004.30\"},\"type\":\"document\",\"timestamp\":\"2021-04-06T08:30:00Z\",\"entry\":[{\"fullUrl\":\"http://pvs.praxis.local/fhir/Composition/70e4e747-a1e6-44cd-b91d-"+
@@ -126,10 +171,50 @@ public class PrescriptionBundleValidator {
         "\",\"valueCoding\":{\"system\":\"https://fhir.kbv.de/CodeSystem/KBV_CS_SFHIR_KBV_VERSICHERTENSTATUS\",\"code\":\"5\"}}],\"status\":\"active\",\"type\":{\"coding\":[{\"system\":\"h"+
         "ttp://fhir.de/CodeSystem/versicherungsart-de-basis\",\"code\":\"GKV\"}]},\"beneficiary\":{\"reference\":\"Patient/93866fdc-3e50-4902-a7e9-891b54737b5e\"},\"payor\":[{\"identifier\""+
         ":{\"system\":\"http://fhir.de/NamingSystem/arge-ik/iknr\",\"value\":\"109719018\"},\"display\":\"AOK Nordost\"}]}}]}", false);
+        log.infof("Validator warm-up finished in %d ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * An executor with a bounded queue. When the queue is full the submitting thread waits up
+     * to the submit timeout for a free place, afterwards the bundle is rejected.
+     */
+    static ThreadPoolExecutor createExecutor(int threads, int queueCapacity, long submitTimeoutMs) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "ere-validator-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, (runnable, pool) -> {
+                try {
+                    if (pool.isShutdown() || !pool.getQueue().offer(runnable, submitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                        throw new RejectedExecutionException("Validator is busy, "
+                            + pool.getQueue().size() + " bundles are waiting");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for the validator", e);
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        validationExecutor.shutdown();
     }
 
     public ValidationResult validateResource(IBaseResource resource, boolean showIssues) {
-        ValidationResult validationResult = validator.validateWithResult(resource);
+        Timer.Sample sample = EreMetrics.start();
+        ValidationResult validationResult;
+        try {
+            validationResult = validator.validateWithResult(resource);
+        } catch (RuntimeException e) {
+            EreMetrics.stop(sample, EreMetrics.VALIDATION, EreMetrics.ERROR);
+            throw e;
+        }
+        EreMetrics.stop(sample, EreMetrics.VALIDATION, validationResult.isSuccessful() ? "valid" : "invalid");
 
         if(showIssues) {
             showIssues(validationResult);
@@ -149,7 +234,15 @@ public class PrescriptionBundleValidator {
 
     public ValidationResult validateResource(String resourceText, boolean showIssues,
                                              List<String> validationErrorsCollectorList) {
-        ValidationResult validationResult = validator.validateWithResult(resourceText);
+        Timer.Sample sample = EreMetrics.start();
+        ValidationResult validationResult;
+        try {
+            validationResult = validator.validateWithResult(resourceText);
+        } catch (RuntimeException e) {
+            EreMetrics.stop(sample, EreMetrics.VALIDATION, EreMetrics.ERROR);
+            throw e;
+        }
+        EreMetrics.stop(sample, EreMetrics.VALIDATION, validationResult.isSuccessful() ? "valid" : "invalid");
 
         if(showIssues || validationErrorsCollectorList != null) {
             showIssues(validationResult, validationErrorsCollectorList);
@@ -183,14 +276,30 @@ public class PrescriptionBundleValidator {
         JsonObjectBuilder builder = Json.createObjectBuilder();
         builder.add("type", "BundlesValidationResult");
         JsonArrayBuilder payload = Json.createArrayBuilder();
+        List<Future<JsonObjectBuilder>> results = new ArrayList<>();
         for (JsonValue jsonValue : bundlePayload.getJsonArray("payload")) {
             if (jsonValue instanceof JsonArray) {
                 for (JsonValue singleBundle : (JsonArray) jsonValue) {
-                    JsonObjectBuilder singleBundleResults = validateBundle(singleBundle);
-                    payload.add(singleBundleResults);
+                    try {
+                        results.add(validationExecutor.submit(() -> validateBundle(singleBundle)));
+                    } catch (RejectedExecutionException e) {
+                        // the request is answered with an error, its other bundles are not needed anymore
+                        results.forEach(result -> result.cancel(false));
+                        throw e;
+                    }
                 }
             }
         }
+        for (Future<JsonObjectBuilder> result : results) {
+            try {
+                payload.add(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while validating bundles", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not validate bundle", e.getCause());
+            }
+        }
         builder.add("payload", payload);
         if(bundlePayload.containsKey("id")) {
             builder.add("replyToMessageId", bundlePayload.getString("id", null));
@@ -201,10 +310,30 @@ public class PrescriptionBundleValidator {
     }
 
     public JsonObjectBuilder validateBundle(JsonValue singleBundle) {
-        log.info("Now validating incoming sign and upload bundle:\n" +
-                    singleBundle.toString());
+        String cacheKey = BundleValidationCache.key(singleBundle);
+        JsonObject cachedResult = validationCache.get(cacheKey);
+        if (cachedResult != null) {
+            validationStatistics.cacheHit();
+            log.debug("Validation result for bundle taken from cache");
+            return Json.createObjectBuilder(cachedResult);
+        }
+        validationStatistics.cacheMiss();
+        long start = System.nanoTime();
+        JsonObjectBuilder singleBundleResults = validateBundleUncached(singleBundle);
+        long duration = System.nanoTime() - start;
+        String profile = BundleValidationCache.getProfile(singleBundle);
+        validationStatistics.record(profile, duration);
+        log.infof("Validated bundle with profile %s in %d ms", profile, TimeUnit.NANOSECONDS.toMillis(duration));
+
+        JsonObject result = singleBundleResults.build();
+        validationCache.put(cacheKey, result);
+        return Json.createObjectBuilder(result);
+    }
+
+    JsonObjectBuilder validateBundleUncached(JsonValue singleBundle) {
         JsonObjectBuilder singleBundleResults = Json.createObjectBuilder();
         String bundleJson = singleBundle.toString();
+        PayloadLog.dump("Now validating incoming sign and upload bundle", () -> bundleJson);
         List<String> errorsList = new ArrayList<>(1);
 
         if (!validateResource(bundleJson,
@@ -215,10 +344,16 @@ public class PrescriptionBundleValidator {
             singleBundleResults.add("valid", false);
         } else {
             singleBundleResults.add("valid", true);
-            log.info("Validation for the following incoming sign and " +
-            "upload bundle passed:\n" +
-            singleBundle.toString());
+            log.debugf("Validation for incoming sign and upload bundle passed: %s",
+            PayloadLog.summary(bundleJson));
         }
         return singleBundleResults;
     }
+
+    /**
+     * Returns the validation durations per profile and the cache hit rate.
+     */
+    public JsonObject getValidationStatistics() {
+        return validationStatistics.toJson();
+    }
 }
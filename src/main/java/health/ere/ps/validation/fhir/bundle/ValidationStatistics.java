@@ -0,0 +1,65 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * Collects how long the validation of bundles takes per profile.
+ */
+public class ValidationStatistics {
+
+    private final Map<String, ProfileStatistics> profiles = new ConcurrentHashMap<>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    public void record(String profile, long durationNanos) {
+        profiles.computeIfAbsent(profile, p -> new ProfileStatistics()).record(durationNanos);
+    }
+
+    public void cacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    public JsonObject toJson() {
+        JsonObjectBuilder profilesBuilder = Json.createObjectBuilder();
+        profiles.forEach((profile, statistics) -> profilesBuilder.add(profile, statistics.toJson()));
+        return Json.createObjectBuilder()
+            .add("cacheHits", cacheHits.get())
+            .add("cacheMisses", cacheMisses.get())
+            .add("profiles", profilesBuilder)
+            .build();
+    }
+
+    static class ProfileStatistics {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastNanos;
+
+        synchronized void record(long durationNanos) {
+            count++;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+            lastNanos = durationNanos;
+        }
+
+        synchronized JsonObject toJson() {
+            return Json.createObjectBuilder()
+                .add("count", count)
+                .add("averageMillis", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos / count))
+                .add("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos))
+                .add("lastMillis", TimeUnit.NANOSECONDS.toMillis(lastNanos))
+                .build();
+        }
+    }
+}
@@ -8,16 +8,22 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.hl7.fhir.common.hapi.validation.support.PrePopulatedValidationSupport;
+import org.hl7.fhir.common.hapi.validation.support.SnapshotGeneratingValidationSupport;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.CodeSystem;
 import org.hl7.fhir.r4.model.StructureDefinition;
 import org.hl7.fhir.r4.model.ValueSet;
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.support.IValidationSupport;
+import ca.uhn.fhir.context.support.ValidationSupportContext;
 import ca.uhn.fhir.parser.IParser;
 import health.ere.ps.service.logging.EreLogger;
 
@@ -28,6 +34,11 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             EreLogger.SystemContext.KbvBundleValidator,
             EreLogger.SystemContext.KbvBundleValidatorConfiguration);
     private IParser xmlParser = FhirContext.forR4().newXmlParser();
+    // resources in the order they were loaded, written to the configuration cache
+    private final List<IBaseResource> kbvResources = new ArrayList<>();
+    private KbvValidatorConfigurationCache configurationCache;
+    private String configurationFingerprint;
+    private boolean loadedFromCache;
 
     protected enum ConfigType {
         PROFILE, EXTENSION, VALUE_SET, CODE_SYSTEM, NAMING_SYSTEM, UNKNOWN
@@ -67,6 +78,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addStructureDefinition(structureDefinition);
+            kbvResources.add(structureDefinition);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV Profile Config files", true)
@@ -97,6 +109,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addValueSet(valueSet);
+            kbvResources.add(valueSet);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV ValueSet Config Files",
@@ -128,6 +141,7 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
             }
 
             addCodeSystem(codeSystem);
+            kbvResources.add(codeSystem);
         } catch (IOException e) {
             ereLogger.setLoggingContext(systemContextList,
                     "Cannot load KBV Code System Config files", true)
@@ -140,6 +154,10 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
                 ConfigProvider.getConfig().getValue("kbv.validator.config.dir", String.class);
         Path start = Path.of(kbvValidatorConfigDirectory).toAbsolutePath();
 
+        if (loadFromCache(start)) {
+            return;
+        }
+
         try {
             Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
 
@@ -157,6 +175,94 @@ public class ErePrePopulatedValidationSupport extends PrePopulatedValidationSupp
         }
     }
 
+    private boolean loadFromCache(Path configDirectory) {
+        Optional<String> cacheFile = ConfigProvider.getConfig()
+                .getOptionalValue("kbv.validator.cache.file", String.class);
+        if (cacheFile.isEmpty() || cacheFile.get().isBlank()) {
+            return false;
+        }
+        configurationCache = new KbvValidatorConfigurationCache(getFhirContext(), Path.of(cacheFile.get()));
+        try {
+            long start = System.currentTimeMillis();
+            configurationFingerprint = KbvValidatorConfigurationCache.fingerprint(configDirectory);
+            List<IBaseResource> resources = configurationCache.read(configurationFingerprint);
+            if (resources == null) {
+                ereLogger.setLoggingContext(systemContextList)
+                        .infof("No KBV Validator cache for the current configuration in %s",
+                                configurationCache.getCacheFile());
+                return false;
+            }
+            for (IBaseResource resource : resources) {
+                if (resource instanceof StructureDefinition) {
+                    addStructureDefinition(resource);
+                } else if (resource instanceof ValueSet) {
+                    addValueSet(resource);
+                } else if (resource instanceof CodeSystem) {
+                    addCodeSystem(resource);
+                }
+                kbvResources.add(resource);
+            }
+            loadedFromCache = true;
+            ereLogger.setLoggingContext(systemContextList)
+                    .infof("Loaded %d KBV conformance resources from cache %s in %d ms", resources.size(),
+                            configurationCache.getCacheFile(), System.currentTimeMillis() - start);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            ereLogger.setLoggingContext(systemContextList)
+                    .warnf(e, "Could not read KBV Validator cache %s", configurationCache.getCacheFile());
+            kbvResources.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Generates the snapshots of all KBV profiles that do not have one yet and writes
+     * the result to the configuration cache. Does nothing if the configuration was
+     * read from the cache or no cache file is configured.
+     *
+     * @param rootValidationSupport the validation support chain used to resolve base definitions
+     */
+    public void generateSnapshotsAndWriteCache(IValidationSupport rootValidationSupport) {
+        if (loadedFromCache || configurationCache == null || configurationFingerprint == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        SnapshotGeneratingValidationSupport snapshotGenerator =
+                new SnapshotGeneratingValidationSupport(getFhirContext());
+        ValidationSupportContext validationSupportContext = new ValidationSupportContext(rootValidationSupport);
+
+        for (int i = 0; i < kbvResources.size(); i++) {
+            if (!(kbvResources.get(i) instanceof StructureDefinition)) {
+                continue;
+            }
+            StructureDefinition structureDefinition = (StructureDefinition) kbvResources.get(i);
+            if (structureDefinition.hasSnapshot()) {
+                continue;
+            }
+            try {
+                IBaseResource snapshot = snapshotGenerator.generateSnapshot(validationSupportContext,
+                        structureDefinition, structureDefinition.getUrl(), null, structureDefinition.getName());
+                if (snapshot != null) {
+                    addStructureDefinition(snapshot);
+                    kbvResources.set(i, snapshot);
+                }
+            } catch (RuntimeException e) {
+                ereLogger.setLoggingContext(systemContextList)
+                        .warnf(e, "Could not generate snapshot for %s", structureDefinition.getUrl());
+            }
+        }
+
+        try {
+            configurationCache.write(configurationFingerprint, kbvResources);
+            ereLogger.setLoggingContext(systemContextList)
+                    .infof("Wrote KBV Validator cache %s in %d ms", configurationCache.getCacheFile(),
+                            System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            ereLogger.setLoggingContext(systemContextList)
+                    .warnf(e, "Could not write KBV Validator cache %s", configurationCache.getCacheFile());
+        }
+    }
+
     protected ConfigType getConfigType(Path kbvConfigFile) {
         String configFileName = kbvConfigFile.getFileName().toString();
 
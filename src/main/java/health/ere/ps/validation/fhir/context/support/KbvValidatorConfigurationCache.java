@@ -0,0 +1,128 @@
+package health.ere.ps.validation.fhir.context.support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * On-disk cache of the KBV conformance resources after snapshot generation.
+ *
+ * The cache is a gzipped file with one compact json resource per line. The first line
+ * contains a fingerprint of the KBV configuration directory, the cache is only used
+ * when it matches the current directory content.
+ */
+public class KbvValidatorConfigurationCache {
+
+    static final String HEADER_PREFIX = "ere-kbv-validator-cache v1 ";
+
+    private final FhirContext fhirContext;
+    private final Path cacheFile;
+
+    public KbvValidatorConfigurationCache(FhirContext fhirContext, Path cacheFile) {
+        this.fhirContext = fhirContext;
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Calculates a SHA-256 over the relative path and the content of every file in the given directory.
+     */
+    public static String fingerprint(Path configDirectory) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(configDirectory)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            digest.update(configDirectory.relativize(file).toString().replace('\\', '/')
+                .getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Files.readAllBytes(file));
+            digest.update((byte) 0);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    /**
+     * Reads the cached resources. The lines are parsed in parallel.
+     *
+     * @param fingerprint the fingerprint of the current configuration directory
+     * @return the cached resources or null if there is no cache for the given fingerprint
+     */
+    public List<IBaseResource> read(String fingerprint) throws IOException {
+        if (!Files.isRegularFile(cacheFile)) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(cacheFile)), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (!(HEADER_PREFIX + fingerprint).equals(header)) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        // parsers are not thread safe, every resource gets its own
+        return lines.parallelStream()
+            .map(line -> fhirContext.newJsonParser().parseResource(line))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes the given resources to a temporary file and moves it over the cache file.
+     */
+    public void write(String fingerprint, Collection<? extends IBaseResource> resources) throws IOException {
+        Path parent = cacheFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempFile = Files.createTempFile(parent, "kbv-validator-cache", ".tmp");
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tempFile)), StandardCharsets.UTF_8))) {
+                writer.write(HEADER_PREFIX + fingerprint);
+                writer.newLine();
+                for (IBaseResource resource : resources) {
+                    writer.write(fhirContext.newJsonParser().encodeResourceToString(resource));
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    public Path getCacheFile() {
+        return cacheFile;
+    }
+}
@@ -1,15 +1,12 @@
 package health.ere.ps.vau;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 import java.net.URL;
-import java.security.InvalidAlgorithmParameterException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SecureRandom;
 import java.security.Security;
@@ -20,8 +17,13 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 import javax.xml.bind.DatatypeConverter;
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -37,25 +39,20 @@ import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
 import org.bouncycastle.cert.ocsp.SingleResp;
-import org.bouncycastle.crypto.BasicAgreement;
-import org.bouncycastle.crypto.InvalidCipherTextException;
-import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
 import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
-import org.bouncycastle.crypto.modes.GCMBlockCipher;
-import org.bouncycastle.crypto.params.AEADParameters;
 import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
 import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
 import org.bouncycastle.crypto.params.HKDFParameters;
-import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
-import org.bouncycastle.jce.ECNamedCurveTable;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
 import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointUtil;
 
 import de.gematik.ws.conn.certificateservice.v6.VerificationResultType;
 import de.gematik.ws.conn.certificateservice.v6.VerifyCertificateResponse;
@@ -68,31 +65,59 @@ public class VAU {
     private static final Logger log = Logger.getLogger(VAU.class.getName());
     static X9ECParameters x9EC = org.bouncycastle.asn1.x9.ECNamedCurveTable
             .getByOID(new ASN1ObjectIdentifier(TeleTrusTObjectIdentifiers.brainpoolP256r1.getId()));
+    // the domain is shared by all requests, so the comb table of the base point for the
+    // ephemeral keys is computed only once
+    private static final ECDomainParameters EC_DOMAIN = new ECDomainParameters(x9EC.getCurve(), x9EC.getG(),
+            x9EC.getN(), x9EC.getH(), x9EC.getSeed());
+    private static final byte[] HKDF_INFO = "ecies-vau-transport".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION_LENGTH = 1;
+    private static final int COORDINATE_LENGTH = 32;
+    private static final int IV_LENGTH = 96 / 8;
+    private static final int TAG_BIT_LENGTH = 128;
+    private static final int KEY_LENGTH = 128 / 8;
+    private static final int HEADER_LENGTH = VERSION_LENGTH + 2 * COORDINATE_LENGTH + IV_LENGTH;
+    // the VAU certificate is fetched and verified again after this time
+    private static final long VAU_PUBLIC_KEY_MAX_AGE_NANOS = TimeUnit.HOURS.toNanos(12);
+    // Cipher instances are not thread safe, every thread reuses its own
+    private static final ThreadLocal<Cipher> aesGcm = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        }
+    });
 
     static {
         Security.addProvider(new BouncyCastleProvider());
+        FixedPointUtil.precompute(EC_DOMAIN.getG());
     }
 
     private final SecureRandom secureRandom = new SecureRandom();
+    private final ECKeyPairGenerator keyPairGenerator = new ECKeyPairGenerator();
     String fachdienstUrl;
     CertificateServicePortType certificateService;
     ContextType contextType;
+    // the point keeps the wNAF table of the scalar multiplication, it is reused for all requests
+    private volatile ECPoint vauPublicKey;
+    private volatile long vauPublicKeyFetchedNanos;
 
     public VAU() {
+        keyPairGenerator.init(new ECKeyGenerationParameters(EC_DOMAIN, secureRandom));
     }
 
     public VAU(String fachdienstUrl) {
+        this();
         this.fachdienstUrl = fachdienstUrl;
     }
 
     public VAU(String fachdienstUrl, ContextType contextType, CertificateServicePortType certificateService) {
-        this.fachdienstUrl = fachdienstUrl;
+        this(fachdienstUrl);
         this.certificateService = certificateService;
         this.contextType = contextType;
     }
 
     static ECDomainParameters getECDomain() {
-        return new ECDomainParameters(x9EC.getCurve(), x9EC.getG(), x9EC.getN(), x9EC.getH(), x9EC.getSeed());
+        return EC_DOMAIN;
     }
 
     static String byteArrayToHexString(byte[] bytes) {
@@ -100,32 +125,30 @@ public class VAU {
     }
 
     static byte[] decryptWithKey(byte[] message, byte[] key) throws Exception {
-        int MAC_BIT_SIZE = 128;
-        int NONCE_BIT_SIZE = 96;
-        int KEY_LENGTH = 128;
-
-        if (key == null || key.length != KEY_LENGTH / 8) {
-            throw new Exception("Key needs to be " + KEY_LENGTH + " bit!");
+        if (key == null || key.length != KEY_LENGTH) {
+            throw new Exception("Key needs to be " + KEY_LENGTH * 8 + " bit!");
         }
         if (message == null || message.length == 0) {
             throw new Exception("Message required!");
         }
+        return decryptWithKey(message, 0, message.length, key);
+    }
 
-        var cipherStream = new ByteArrayInputStream(message);
-        byte[] nonSecretPayload = new byte[0];
-        cipherStream.read(nonSecretPayload, 0, 0);
-        byte[] nonce = new byte[NONCE_BIT_SIZE / 8];
-        cipherStream.read(nonce, 0, NONCE_BIT_SIZE / 8);
-        var cipher = new GCMBlockCipher(new AESEngine());
-        var parameters = new AEADParameters(new KeyParameter(key), MAC_BIT_SIZE, nonce, nonSecretPayload);
-        cipher.init(false, parameters);
-        byte[] cipherText = new byte[message.length - nonce.length];
-        cipherStream.read(cipherText, 0, message.length - nonce.length);
-        var plainText = new byte[cipher.getOutputSize(cipherText.length)];
-        var len = cipher.processBytes(cipherText, 0, cipherText.length, plainText, 0);
-        cipher.doFinal(plainText, len);
-
-        return plainText;
+    /**
+     * Decrypts a VAU response: the 96 bit nonce followed by the AES/GCM cipher text and the 128 bit
+     * tag. The message is read in place, only the plain text is allocated.
+     */
+    static byte[] decryptWithKey(byte[] message, int offset, int length, byte[] key) throws GeneralSecurityException {
+        if (key == null || key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Key needs to be " + KEY_LENGTH * 8 + " bit!");
+        }
+        if (length < IV_LENGTH + TAG_BIT_LENGTH / 8) {
+            throw new IllegalArgumentException("Message is too short: " + length + " bytes");
+        }
+        Cipher cipher = aesGcm.get();
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"),
+                new GCMParameterSpec(TAG_BIT_LENGTH, message, offset, IV_LENGTH));
+        return cipher.doFinal(message, offset + IV_LENGTH, length - IV_LENGTH);
     }
 
     byte[] getRandom(int cntBytes) {
@@ -135,20 +158,7 @@ public class VAU {
     }
 
     private byte[] getIv() {
-        byte[] keyBytes = new byte[96 / 8];
-        secureRandom.nextBytes(keyBytes);
-        return keyBytes;
-    }
-
-    private KeyPair generateNewECDHKey() throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException {
-        // eigener Key
-        KeyPairGenerator keyGenerator;
-        keyGenerator = KeyPairGenerator.getInstance("ECDH", BouncyCastleProvider.PROVIDER_NAME); //ECDSA.getInstance(TeleTrusTObjectIdentifiers.brainpoolP256r1.getId());
-        // TeleTrusTObjectIdentifiers.brainpoolP256r1.
-        ECNamedCurveParameterSpec parameterSpec = ECNamedCurveTable.getParameterSpec("brainpoolp256r1");
-        keyGenerator.initialize(parameterSpec, secureRandom);
-
-        return keyGenerator.generateKeyPair();
+        return getRandom(IV_LENGTH);
     }
 
     KeyCoords getVauPublicKeyXY() throws CertificateException, IOException, NoSuchProviderException {
@@ -164,6 +174,49 @@ public class VAU {
                 new BigInteger(1, x.getQ().getYCoord().getEncoded()));
     }
 
+    /**
+     * The public key of the VAU certificate. The certificate is fetched and verified again when
+     * the key is older than 12 hours or was cleared with {@link #clearVauPublicKey()}.
+     */
+    private ECPoint getVauPublicKey() throws CertificateException, IOException, NoSuchProviderException {
+        ECPoint point = vauPublicKey;
+        if (point == null || System.nanoTime() - vauPublicKeyFetchedNanos > VAU_PUBLIC_KEY_MAX_AGE_NANOS) {
+            synchronized (this) {
+                point = vauPublicKey;
+                if (point == null || System.nanoTime() - vauPublicKeyFetchedNanos > VAU_PUBLIC_KEY_MAX_AGE_NANOS) {
+                    point = useVauPublicKey(getVauPublicKeyXY());
+                }
+            }
+        }
+        return point;
+    }
+
+    /**
+     * Forgets the key of the VAU certificate, the certificate is fetched and verified again with
+     * the next request. Used when a request fails, the certificate might have been changed.
+     */
+    synchronized void clearVauPublicKey() {
+        vauPublicKey = null;
+    }
+
+    /**
+     * Uses the given key for the next requests instead of the one of the VAU certificate.
+     */
+    synchronized ECPoint useVauPublicKey(KeyCoords vauPublicKeyXY) {
+        ECPoint point = toPoint(vauPublicKeyXY);
+        vauPublicKey = point;
+        vauPublicKeyFetchedNanos = System.nanoTime();
+        return point;
+    }
+
+    private static ECPoint toPoint(KeyCoords keyCoords) {
+        ECPoint point = x9EC.getCurve().createPoint(keyCoords.X, keyCoords.Y);
+        if (!point.isValid()) {
+            throw new IllegalArgumentException("VAU public key is not a point on brainpoolP256r1");
+        }
+        return point;
+    }
+
     void verifyCertificate(X509Certificate z) {
         Holder<Status> status = new Holder<>();
         Holder<VerifyCertificateResponse.VerificationStatus> verificationStatus = new Holder<>();
@@ -212,75 +265,71 @@ public class VAU {
         }
     }
 
-    byte[] encrypt(String message) throws NoSuchAlgorithmException, IllegalStateException,
-            InvalidCipherTextException, CertificateException, IOException, NoSuchProviderException,
-            InvalidAlgorithmParameterException {
-        KeyPair myECDHKey = generateNewECDHKey();
-        KeyCoords vauPublicKeyXY = getVauPublicKeyXY();
+    byte[] encrypt(String message) throws CertificateException, IOException, NoSuchProviderException {
+        return encrypt(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypts a request for the VAU with a new ephemeral key, see gemSpec_Krypt chapter 7.
+     */
+    byte[] encrypt(byte[] message) throws CertificateException, IOException, NoSuchProviderException {
+        ECPoint vauPoint = getVauPublicKey();
+        AsymmetricCipherKeyPair ephemeralKey = keyPairGenerator.generateKeyPair();
 
-        return encrypt(message, myECDHKey, vauPublicKeyXY, null);
+        return encrypt(message, ((ECPrivateKeyParameters) ephemeralKey.getPrivate()).getD(),
+                ((ECPublicKeyParameters) ephemeralKey.getPublic()).getQ(), vauPoint, getIv());
     }
 
     byte[] encrypt(String message, KeyPair myECDHKey, KeyCoords vauPublicKeyXY, byte[] ivBytes)
-            throws IllegalStateException, InvalidCipherTextException {
-        ECDomainParameters ecDomain = getECDomain();
-
+            throws IllegalStateException {
         BCECPrivateKey myPrivate = (BCECPrivateKey) myECDHKey.getPrivate();
         BCECPublicKey myPublic = (BCECPublicKey) myECDHKey.getPublic();
-        log.fine("MY public X=" + byteArrayToHexString(myPublic.getQ().getXCoord().getEncoded()));
-        log.fine("MY public Y=" + byteArrayToHexString(myPublic.getQ().getYCoord().getEncoded()));
-        log.fine("MY private =" + byteArrayToHexString(myPrivate.getD().toByteArray()));
 
-        ECPoint point = x9EC.getCurve().createPoint(vauPublicKeyXY.X, vauPublicKeyXY.Y);
-        ECPublicKeyParameters vauPublicKey = new ECPublicKeyParameters(point, ecDomain);
-        log.fine("VAU X=" + vauPublicKeyXY.X.toString(16));
-        log.fine("VAU Y=" + vauPublicKeyXY.Y.toString(16));
-
-        // SharedSecret
-        BasicAgreement aKeyAgree = new ECDHBasicAgreement();
-        aKeyAgree.init(new ECPrivateKeyParameters(myPrivate.getD(), ecDomain));
-        BigInteger sharedSecret = aKeyAgree.calculateAgreement(vauPublicKey);
-        byte[] sharedSecretBytes = sharedSecret.toByteArray();
+        return encrypt(message.getBytes(StandardCharsets.UTF_8), myPrivate.getD(), myPublic.getQ(),
+                toPoint(vauPublicKeyXY), ivBytes == null ? getIv() : ivBytes);
+    }
 
-        sharedSecretBytes = make32ByteLong(sharedSecretBytes);
-        log.fine("SharedSecret=" + byteArrayToHexString(sharedSecretBytes) + " " + sharedSecretBytes.length);
+    /**
+     * Writes 0x01 || X || Y of the own public key || IV || AES/GCM(message) || tag into one array.
+     */
+    static byte[] encrypt(byte[] message, BigInteger privateKey, ECPoint publicKey, ECPoint vauPublicKey, byte[] iv) {
+        // SharedSecret, the x coordinate is always encoded with 32 bytes
+        ECPoint sharedPoint = vauPublicKey.multiply(privateKey).normalize();
+        if (sharedPoint.isInfinity()) {
+            throw new IllegalStateException("Invalid shared secret");
+        }
+        byte[] sharedSecretBytes = sharedPoint.getAffineXCoord().getEncoded();
 
         // HKDF
-        byte[] info = "ecies-vau-transport".getBytes();
         HKDFBytesGenerator hkdfBytesGenerator = new HKDFBytesGenerator(new SHA256Digest());
-        hkdfBytesGenerator.init(new HKDFParameters(sharedSecretBytes, new byte[0], info));
-        byte[] aes128Key_CEK = new byte[16];
+        hkdfBytesGenerator.init(new HKDFParameters(sharedSecretBytes, new byte[0], HKDF_INFO));
+        byte[] aes128Key_CEK = new byte[KEY_LENGTH];
         hkdfBytesGenerator.generateBytes(aes128Key_CEK, 0, aes128Key_CEK.length);
-        log.fine("Schlüsselableitung AES128Key=" + byteArrayToHexString(aes128Key_CEK));
-
-        // AES CGM
-        byte[] input = message.getBytes();
-        byte[] outputAESCGM = new byte[input.length + 16];
-
-        // random IV
-        byte[] iv = ivBytes == null ? getIv() : ivBytes;
-        log.fine("IV =" + byteArrayToHexString(iv));
-
-        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
-        AEADParameters parameters = new AEADParameters(new KeyParameter(aes128Key_CEK), 128, iv);
-        cipher.init(true, parameters);
-        int len = cipher.processBytes(input, 0, input.length, outputAESCGM, 0);
-        int finalData = cipher.doFinal(outputAESCGM, len);
-
-        log.fine(len + " " + finalData);
-
-        ByteArrayOutputStream mem = new ByteArrayOutputStream();
-        mem.write(0x01); // Version
-        mem.write(myPublic.getQ().getXCoord().getEncoded(), 0, myPublic.getQ().getXCoord().getEncoded().length); // XKoordinate
-        // VAU
-        // Zert
-        mem.write(myPublic.getQ().getYCoord().getEncoded(), 0, myPublic.getQ().getYCoord().getEncoded().length); // YKoordinate
-        // VAU
-        // Zert
-        mem.write(iv, 0, iv.length);
-        mem.write(outputAESCGM, 0, outputAESCGM.length);
-
-        return mem.toByteArray();
+
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("VAU X=" + vauPublicKey.getAffineXCoord().toBigInteger().toString(16));
+            log.fine("VAU Y=" + vauPublicKey.getAffineYCoord().toBigInteger().toString(16));
+            log.fine("IV =" + byteArrayToHexString(iv));
+        }
+
+        ECPoint ownPublicKey = publicKey.normalize();
+        byte[] result = new byte[HEADER_LENGTH + message.length + TAG_BIT_LENGTH / 8];
+        result[0] = 0x01; // Version
+        System.arraycopy(ownPublicKey.getAffineXCoord().getEncoded(), 0, result, VERSION_LENGTH, COORDINATE_LENGTH);
+        System.arraycopy(ownPublicKey.getAffineYCoord().getEncoded(), 0, result, VERSION_LENGTH + COORDINATE_LENGTH,
+                COORDINATE_LENGTH);
+        System.arraycopy(iv, 0, result, VERSION_LENGTH + 2 * COORDINATE_LENGTH, IV_LENGTH);
+
+        // AES GCM, the cipher text and the tag are written behind the header
+        try {
+            Cipher cipher = aesGcm.get();
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aes128Key_CEK, "AES"),
+                    new GCMParameterSpec(TAG_BIT_LENGTH, iv));
+            cipher.doFinal(message, 0, message.length, result, HEADER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt VAU request", e);
+        }
+        return result;
     }
 
     public static byte[] make32ByteLong(byte[] sharedSecretBytes) {
@@ -1,15 +1,13 @@
 package health.ere.ps.vau;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.NoSuchAlgorithmException;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.core.MultivaluedMap;
@@ -18,18 +16,13 @@ import javax.ws.rs.core.Response;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.config.MessageConstraints;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.io.DefaultHttpResponseParserFactory;
-import org.apache.http.impl.io.HttpTransportMetricsImpl;
-import org.apache.http.impl.io.SessionInputBufferImpl;
-import org.bouncycastle.crypto.InvalidCipherTextException;
 import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
 import org.jboss.resteasy.client.jaxrs.i18n.LogMessages;
 import org.jboss.resteasy.client.jaxrs.i18n.Messages;
@@ -37,6 +30,9 @@ import org.jboss.resteasy.client.jaxrs.internal.ClientInvocation;
 import org.jboss.resteasy.client.jaxrs.internal.ClientResponse;
 import org.jboss.resteasy.client.jaxrs.internal.FinalizedClientResponse;
 
+import health.ere.ps.service.metrics.EreMetrics;
+import io.micrometer.core.instrument.Timer;
+
 /**
  * Engine for RestEasy inspired by the Gematik implementation of VAU:
  * https://github.com/gematik/ref-ePA-vauchannel/blob/master/vauchannel-cxf/src/main/java/de/gematik/ti/vauchannel/cxf/AESInterceptor.java
@@ -46,24 +42,31 @@ import org.jboss.resteasy.client.jaxrs.internal.FinalizedClientResponse;
  */
 public class VAUEngine extends ApacheHttpClient43Engine {
     private static final Logger log = Logger.getLogger(VAUEngine.class.getName());
-    private static final String responsePattern = "1 ([A-Fa-f0-9]{32}) (.*?)\r?\n\r?\n(.*)";
-    private static final Pattern RESPONSE_PATTERN = Pattern.compile(responsePattern, Pattern.DOTALL);
     private final String fachdienstUrl;
-    String requestid;
-    String userpseudonym = "0";
-    private VAU vau;
-    private byte[] aeskey;
+    // the engine is shared by all requests of a client, buildEntity and invoke of one request run on the same thread
+    final ThreadLocal<String> requestid = new ThreadLocal<>();
+    volatile String userpseudonym = "0";
+    private volatile VAU vau;
+    private final ThreadLocal<byte[]> aeskey = new ThreadLocal<>();
 
     public VAUEngine(String fachdienstUrl) {
         this.fachdienstUrl = fachdienstUrl;
     }
 
+    /**
+     * Sends the requests with the given client, it is closed with the engine.
+     */
+    public VAUEngine(String fachdienstUrl, HttpClient httpClient) {
+        super(httpClient, true);
+        this.fachdienstUrl = fachdienstUrl;
+    }
+
     /**
      * This function inits a Vau session described in the following document
      * https://fachportal.gematik.de/fachportal-import/files/gemSpec_Krypt_V2.19.0.pdf
      * Chapter 6 Page 78
      */
-    public void initVauSession() {
+    public synchronized void initVauSession() {
         try {
             vau = new VAU(fachdienstUrl);
         } catch (Exception e) {
@@ -78,8 +81,12 @@ public class VAUEngine extends ApacheHttpClient43Engine {
         String userAgent = (String) newHeaders.getFirst("User-Agent");
 
         if (this.vau == null) {
-            // init vauSession
-            initVauSession();
+            synchronized (this) {
+                if (this.vau == null) {
+                    // init vauSession
+                    initVauSession();
+                }
+            }
         }
 
         String authorization = (String) newHeaders.getFirst("Authorization");
@@ -102,28 +109,43 @@ public class VAUEngine extends ApacheHttpClient43Engine {
         byte[] finalMessageData;
         try {
             byte[] postBytes = httpEntity.getContent().readAllBytes();
-            String postBody = new String(postBytes);
-            String content = request.getMethod() + " " + request.getUri().getPath() + " HTTP/1.1\r\n" +
-                    "Host: " + request.getUri().getHost() + "\r\n" +
-                    "Authorization: " + authorization + "\r\n" +
-                    "Content-Type: " + contentType + "\r\n" +
-                    (accessCode != null ? "X-AccessCode: " + accessCode + "\r\n" : "") +
-                    "User-Agent: " + userAgent + "\r\n" +
-                    "Content-Length: " + postBytes.length + "\r\n" +
-                    "Accept: application/fhir+xml; charset=utf-8\r\n\r\n"
-                    + postBody;
 
             String bearer = authorization.substring(7);
-            requestid = VAU.byteArrayToHexString(vau.getRandom(16)).toLowerCase();
-            aeskey = vau.getRandom(16);
+            String requestid = VAU.byteArrayToHexString(vau.getRandom(16)).toLowerCase();
+            byte[] aeskey = vau.getRandom(16);
+            this.requestid.set(requestid);
+            this.aeskey.set(aeskey);
             String aeskeyString = VAU.byteArrayToHexString(aeskey).toLowerCase();
-            String p = "1 " + bearer + " " + requestid + " " + aeskeyString + " " + content;
+            // only the header is built as String, the body is appended as it is
+            String header = new StringBuilder(512 + bearer.length())
+                    .append("1 ").append(bearer).append(' ').append(requestid).append(' ').append(aeskeyString).append(' ')
+                    .append(request.getMethod()).append(' ').append(request.getUri().getPath()).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(request.getUri().getHost()).append("\r\n")
+                    .append("Authorization: ").append(authorization).append("\r\n")
+                    .append("Content-Type: ").append(contentType).append("\r\n")
+                    .append(accessCode != null ? "X-AccessCode: " + accessCode + "\r\n" : "")
+                    .append("User-Agent: ").append(userAgent).append("\r\n")
+                    .append("Content-Length: ").append(postBytes.length).append("\r\n")
+                    .append("Accept: application/fhir+xml; charset=utf-8\r\n\r\n")
+                    .toString();
+            byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+            byte[] p = Arrays.copyOf(headerBytes, headerBytes.length + postBytes.length);
+            System.arraycopy(postBytes, 0, p, headerBytes.length, postBytes.length);
 
-            log.fine(p);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(new String(p, StandardCharsets.UTF_8));
+            }
 
-            finalMessageData = vau.encrypt(p);
-        } catch (NoSuchAlgorithmException | IllegalStateException | InvalidCipherTextException | CertificateException
-                | UnsupportedOperationException | NoSuchProviderException | InvalidAlgorithmParameterException e) {
+            Timer.Sample sample = EreMetrics.start();
+            String outcome = EreMetrics.ERROR;
+            try {
+                finalMessageData = vau.encrypt(p);
+                outcome = EreMetrics.SUCCESS;
+            } finally {
+                EreMetrics.stop(sample, EreMetrics.VAU_CRYPTO, outcome, "operation", "encrypt");
+            }
+        } catch (IllegalStateException | CertificateException | UnsupportedOperationException
+                | NoSuchProviderException e) {
             throw new RuntimeException(e);
         }
 
@@ -147,66 +169,85 @@ public class VAUEngine extends ApacheHttpClient43Engine {
         }
     }
 
+    /**
+     * Sends the request through the VAU. When the VAU rejects the request or its response can
+     * not be decrypted, the certificate might have been changed. It is fetched again and the
+     * request is sent once more.
+     */
     @Override
     public Response invoke(Invocation inv) {
+        try {
+            return invokeOnce(inv);
+        } catch (VAUFailedException e) {
+            log.log(Level.WARNING, "VAU request failed, retrying with the current VAU certificate", e);
+            VAU current = vau;
+            if (current != null) {
+                current.clearVauPublicKey();
+            }
+            return invokeOnce(inv);
+        }
+    }
+
+    private Response invokeOnce(Invocation inv) {
         Response response = null;
         response = super.invoke(inv);
+        // the encrypted response is read completely, it is closed to release its connection to the pool
+        boolean closeResponse = true;
 
         byte[] transportedData;
         byte[] responseBytes = null;
-        String responseContent;
         try {
             String contentType = response.getHeaderString("Content-Type");
             if (!("application/octet-stream".equals(contentType))) {
                 // A_20174
-                throw new RuntimeException("VAU response content type has to be application/octet-stream but was: " + contentType + " Content: " + (response.getEntity() != null ? new String(((InputStream) response.getEntity()).readAllBytes()) : "null"));
+                throw new VAUFailedException("VAU response content type has to be application/octet-stream but was: " + contentType + " Content: " + (response.getEntity() != null ? new String(((InputStream) response.getEntity()).readAllBytes(), StandardCharsets.UTF_8) : "null"));
+            }
+            responseBytes = VAUResponseDecoder.readEncrypted((InputStream) response.getEntity(), response.getLength());
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(VAU.byteArrayToHexString(responseBytes));
             }
-            responseBytes = ((InputStream) response.getEntity()).readAllBytes();
-            log.fine(VAU.byteArrayToHexString(responseBytes));
             if(Response.Status.Family.SUCCESSFUL == response.getStatusInfo().getFamily()) {
                 // if it is successful 
-                transportedData = VAU.decryptWithKey(responseBytes, aeskey);
+                byte[] encryptedResponse = responseBytes;
+                try {
+                    transportedData = EreMetrics.record(EreMetrics.VAU_CRYPTO,
+                        () -> VAU.decryptWithKey(encryptedResponse, aeskey.get()), "operation", "decrypt");
+                } catch (Exception e) {
+                    throw new VAUFailedException("Could not decrypt VAU response", e);
+                }
                 if(userpseudonym != response.getHeaderString("userpseudonym")) {
                     userpseudonym = response.getHeaderString("userpseudonym");
                 }
-                responseContent = new String(transportedData);
-                log.fine(responseContent);
-                return parseResponseFromVAU(responseContent, (ClientInvocation) inv);
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(new String(transportedData, StandardCharsets.UTF_8));
+                }
+                return parseResponseFromVAU(transportedData, (ClientInvocation) inv);
             } else {
+                closeResponse = false;
                 return response;
             }
         } catch (Exception e) {
             if(responseBytes != null) {
                 log.info("VAU Response Bytes: "+VAU.byteArrayToHexString(responseBytes));
             }
-            if(aeskey != null) {
-                log.info("VAU AES Key: "+VAU.byteArrayToHexString(aeskey));
+            if(aeskey.get() != null) {
+                log.info("VAU AES Key: "+VAU.byteArrayToHexString(aeskey.get()));
+            }
+            throw e instanceof VAUFailedException ? (VAUFailedException) e : new RuntimeException(e);
+        } finally {
+            requestid.remove();
+            aeskey.remove();
+            if (closeResponse) {
+                response.close();
             }
-            throw new RuntimeException(e);
         }
     }
 
-    HttpResponse extractHttpResponse(String responseContent) throws IOException, HttpException {
-        Matcher m = RESPONSE_PATTERN.matcher(responseContent);
-        if (!m.matches()) {
-            throw new RuntimeException("Response content does not match " + responsePattern + " was: " + responseContent);
-        }
-
-        String requestIdFromResponse = m.group(1);
-        if (!requestIdFromResponse.equals(requestid)) {
-            throw new RuntimeException("requestIdFromResponse (" + requestIdFromResponse + ") does not match requestid (" + requestid + ")");
-        }
-        String rawResponseHeader = m.group(2);
-        String rawResponseBody = m.group(3);
-
-        SessionInputBufferImpl buffer = new SessionInputBufferImpl(new HttpTransportMetricsImpl(), 8092);
-        buffer.bind(new ByteArrayInputStream(rawResponseHeader.getBytes()));
-        HttpResponse res = DefaultHttpResponseParserFactory.INSTANCE.create(buffer, MessageConstraints.DEFAULT).parse();
-        res.setEntity(new StringEntity(rawResponseBody, ContentType.create("application/fhir+xml"/*res.getFirstHeader("Content-Type").getValue()*/)));
-        return res;
+    HttpResponse extractHttpResponse(byte[] responseContent) throws IOException, HttpException {
+        return VAUResponseDecoder.decode(responseContent, requestid.get());
     }
 
-    private Response parseResponseFromVAU(String responseContent, ClientInvocation request) throws IOException, HttpException {
+    private Response parseResponseFromVAU(byte[] responseContent, ClientInvocation request) throws IOException, HttpException {
         HttpResponse res = extractHttpResponse(responseContent);
 
         ClientResponse response = new FinalizedClientResponse(request.getClientConfiguration(),
@@ -291,4 +332,19 @@ public class VAUEngine extends ApacheHttpClient43Engine {
         response.setClientConfiguration(request.getClientConfiguration());
         return response;
     }
-}
\ No newline at end of file
+
+    /**
+     * The VAU rejected the request or its response could not be decrypted.
+     */
+    static class VAUFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        VAUFailedException(String message) {
+            super(message);
+        }
+
+        VAUFailedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
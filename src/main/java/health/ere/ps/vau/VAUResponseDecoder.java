@@ -0,0 +1,135 @@
+package health.ere.ps.vau;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.logging.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.ParseException;
+import org.apache.http.config.MessageConstraints;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.io.DefaultHttpResponseParserFactory;
+import org.apache.http.impl.io.HttpTransportMetricsImpl;
+import org.apache.http.impl.io.SessionInputBufferImpl;
+
+/**
+ * Decodes the decrypted response of the VAU: "1 ", the 32 hex digits of the request id, a space
+ * and the inner http response, see gemSpec_Krypt chapter 7.
+ * <p>
+ * The status line and the headers are parsed from the bytes like HTTP/1.1 does (ISO-8859-1). The
+ * body stays in the decrypted buffer, the entity streams it from there without a copy. Its
+ * charset is the one of the inner Content-Type header, UTF-8 if there is none.
+ */
+class VAUResponseDecoder {
+
+    private static final Logger log = Logger.getLogger(VAUResponseDecoder.class.getName());
+    static final int REQUEST_ID_LENGTH = 32;
+    private static final int PREFIX_LENGTH = 2 + REQUEST_ID_LENGTH + 1;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int PREVIEW_LENGTH = 1024;
+    private static final ContentType DEFAULT_CONTENT_TYPE = ContentType.create("application/fhir+xml",
+            StandardCharsets.UTF_8);
+
+    private VAUResponseDecoder() {
+    }
+
+    /**
+     * Reads the encrypted response. With a known content length the bytes are read into one
+     * array of that size. The end of the stream is not read then, the caller closes it to release
+     * the connection.
+     */
+    static byte[] readEncrypted(InputStream in, int contentLength) throws IOException {
+        if (contentLength < 0) {
+            return in.readAllBytes();
+        }
+        byte[] data = new byte[contentLength];
+        int read = in.readNBytes(data, 0, contentLength);
+        if (read != contentLength) {
+            throw new IOException("VAU response ended after " + read + " of " + contentLength + " bytes");
+        }
+        return data;
+    }
+
+    static HttpResponse decode(byte[] data, String requestId) throws IOException, HttpException {
+        return decode(data, 0, data.length, requestId);
+    }
+
+    static HttpResponse decode(byte[] data, int offset, int length, String requestId)
+            throws IOException, HttpException {
+        int end = offset + length;
+        if (length < PREFIX_LENGTH || data[offset] != '1' || data[offset + 1] != ' '
+                || data[offset + PREFIX_LENGTH - 1] != ' ' || !isHex(data, offset + 2, REQUEST_ID_LENGTH)) {
+            throw new RuntimeException("Response content does not start with 1 {requestid} was: "
+                    + preview(data, offset, length));
+        }
+        String requestIdFromResponse = new String(data, offset + 2, REQUEST_ID_LENGTH, StandardCharsets.US_ASCII);
+        if (!requestIdFromResponse.equals(requestId)) {
+            throw new RuntimeException("requestIdFromResponse (" + requestIdFromResponse
+                    + ") does not match requestid (" + requestId + ")");
+        }
+
+        int headerStart = offset + PREFIX_LENGTH;
+        int bodyStart = findBodyStart(data, headerStart, end);
+        if (bodyStart < 0) {
+            throw new RuntimeException("Response content has no end of header was: " + preview(data, offset, length));
+        }
+
+        SessionInputBufferImpl buffer = new SessionInputBufferImpl(new HttpTransportMetricsImpl(), BUFFER_SIZE);
+        buffer.bind(new ByteArrayInputStream(data, headerStart, bodyStart - headerStart));
+        HttpResponse res = DefaultHttpResponseParserFactory.INSTANCE.create(buffer, MessageConstraints.DEFAULT).parse();
+        res.setEntity(new ByteArrayEntity(data, bodyStart, end - bodyStart, contentType(res)));
+        return res;
+    }
+
+    /**
+     * The index after the first empty line, the line breaks may be \n or \r\n, or -1.
+     */
+    static int findBodyStart(byte[] data, int from, int end) {
+        for (int i = from; i < end - 1; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (data[i + 1] == '\n') {
+                return i + 2;
+            }
+            if (data[i + 1] == '\r' && i + 2 < end && data[i + 2] == '\n') {
+                return i + 3;
+            }
+        }
+        return -1;
+    }
+
+    private static ContentType contentType(HttpResponse res) {
+        Header header = res.getFirstHeader("Content-Type");
+        ContentType contentType = DEFAULT_CONTENT_TYPE;
+        if (header != null) {
+            try {
+                contentType = ContentType.parse(header.getValue());
+            } catch (ParseException | UnsupportedCharsetException e) {
+                log.fine("Could not parse Content-Type of VAU response: " + header.getValue());
+            }
+        }
+        return contentType.getCharset() == null ? contentType.withCharset(StandardCharsets.UTF_8) : contentType;
+    }
+
+    private static boolean isHex(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (!((b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String preview(byte[] data, int offset, int length) {
+        return new String(data, offset, Math.min(length, PREVIEW_LENGTH), StandardCharsets.UTF_8)
+                + (length > PREVIEW_LENGTH ? "..." : "");
+    }
+}
@@ -0,0 +1,92 @@
+package health.ere.ps.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+
+import health.ere.ps.jsonb.AttachmentReferenceSerializer;
+import health.ere.ps.jsonb.AttachmentReferenceSerializer.Attachment;
+import health.ere.ps.jsonb.BundleAdapter;
+import health.ere.ps.jsonb.DurationAdapter;
+import health.ere.ps.jsonb.ThrowableAdapter;
+
+/**
+ * Encodes a websocket message as compact json text frame plus binary frames
+ * for all contained byte arrays (e.g. receipt PDFs and PKCS#7 signatures).
+ *
+ * In the text frame every byte array is replaced by
+ * <code>{"attachmentId": "&lt;uuid&gt;", "size": &lt;bytes&gt;}</code>.
+ * The attachment data follows in one or more binary frames with this layout:
+ * <pre>
+ * 16 bytes  attachment id (uuid, most significant bits first)
+ *  4 bytes  chunk index (int, big endian)
+ *  4 bytes  chunk count (int, big endian)
+ *  n bytes  data
+ * </pre>
+ */
+public class BinaryAttachmentEncoder {
+
+    public static final int HEADER_SIZE = 16 + 4 + 4;
+
+    static final JsonbConfig compactConfig = new JsonbConfig()
+            .withAdapters(new BundleAdapter())
+            .withAdapters(new ThrowableAdapter())
+            .withAdapters(new DurationAdapter())
+            .withSerializers(new AttachmentReferenceSerializer());
+    static final Jsonb compactJsonb = JsonbBuilder.create(compactConfig);
+
+    private final int chunkSize;
+
+    public BinaryAttachmentEncoder(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Encodes the given payload.
+     *
+     * @param type the message type
+     * @param payload the payload that may contain byte arrays
+     * @param replyToMessageId id of the message that is answered
+     * @return the text frame followed by the binary frames
+     */
+    public List<Object> encode(String type, Object payload, String replyToMessageId) {
+        String payloadJson;
+        List<Attachment> attachments;
+        AttachmentReferenceSerializer.startCollecting();
+        try {
+            payloadJson = compactJsonb.toJson(payload);
+        } finally {
+            attachments = AttachmentReferenceSerializer.stopCollecting();
+        }
+        List<Object> frames = new ArrayList<>();
+        frames.add("{\"type\":\"" + type + "\",\"payload\":" + payloadJson + ",\"attachments\":" + attachments.size()
+            + ",\"replyToMessageId\":\"" + replyToMessageId + "\"}");
+        for (Attachment attachment : attachments) {
+            frames.addAll(toFrames(attachment));
+        }
+        return frames;
+    }
+
+    List<ByteBuffer> toFrames(Attachment attachment) {
+        byte[] content = attachment.getContent();
+        int chunkCount = Math.max(1, (content.length + chunkSize - 1) / chunkSize);
+        List<ByteBuffer> frames = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            int offset = i * chunkSize;
+            int length = Math.min(chunkSize, content.length - offset);
+            ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+            frame.putLong(attachment.getId().getMostSignificantBits());
+            frame.putLong(attachment.getId().getLeastSignificantBits());
+            frame.putInt(i);
+            frame.putInt(chunkCount);
+            frame.put(content, offset, length);
+            frame.flip();
+            frames.add(frame);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,259 @@
+package health.ere.ps.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.websocket.CloseReason;
+import javax.websocket.CloseReason.CloseCodes;
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+
+import health.ere.ps.service.metrics.EreMetrics;
+
+/**
+ * Bounded outbound queue for a single websocket session.
+ *
+ * Only one asynchronous send is in flight per session. Further messages are queued,
+ * replies are always sent before notifications. Pending notifications are coalesced by
+ * their key: a newer notification with the same key replaces the pending one. Of the
+ * pending notifications only the newest are kept, older ones are dropped.
+ *
+ * If the queue exceeds its limits, pending notifications are dropped first (degraded mode).
+ * If the replies alone still exceed the limits, the session is closed. Dropped and
+ * coalesced notifications are counted in ere.websocket.notifications.dropped and
+ * ere.websocket.notifications.coalesced.
+ */
+public class SessionOutbox {
+
+    private static final Logger log = Logger.getLogger(SessionOutbox.class.getName());
+
+    public enum Priority {
+        REPLY,
+        NOTIFICATION
+    }
+
+    private final Session session;
+    private final int maxMessages;
+    private final long maxChars;
+    private final int maxPendingNotifications;
+
+    private final Deque<OutboundMessage> replies = new ArrayDeque<>();
+    private final Deque<OutboundMessage> notifications = new ArrayDeque<>();
+    private long queuedChars;
+    private boolean sending;
+    private boolean closed;
+    private long droppedNotifications;
+    private long coalescedNotifications;
+
+    public SessionOutbox(Session session, int maxMessages, long maxChars, int maxPendingNotifications) {
+        this.session = session;
+        this.maxMessages = maxMessages;
+        this.maxChars = maxChars;
+        this.maxPendingNotifications = maxPendingNotifications;
+    }
+
+    /**
+     * Queues a message for this session and starts sending if nothing is in flight.
+     *
+     * @param message the message, either a String, a ByteBuffer for a binary frame or an object that can be encoded by the endpoint
+     * @param priority the priority of the message
+     * @param errorMessage the message that is logged when sending fails
+     * @return false if the message was not queued
+     */
+    public boolean offer(Object message, Priority priority, String errorMessage) {
+        return offer(message, priority, null, errorMessage);
+    }
+
+    /**
+     * Queues a message for this session and starts sending if nothing is in flight.
+     *
+     * @param message the message, either a String, a ByteBuffer for a binary frame or an object that can be encoded by the endpoint
+     * @param priority the priority of the message
+     * @param notificationKey notifications with the same key are coalesced, null if the notification is always sent
+     * @param errorMessage the message that is logged when sending fails
+     * @return false if the message was not queued
+     */
+    public boolean offer(Object message, Priority priority, String notificationKey, String errorMessage) {
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            OutboundMessage outboundMessage = new OutboundMessage(message, notificationKey, errorMessage);
+            if (priority == Priority.NOTIFICATION) {
+                queueNotification(outboundMessage);
+            } else {
+                replies.addLast(outboundMessage);
+                queuedChars += outboundMessage.chars;
+            }
+            if (isOverLimit()) {
+                degrade();
+            }
+            if (isOverLimit()) {
+                closed = true;
+            }
+        }
+        if (isClosed()) {
+            closeSession();
+            return false;
+        }
+        sendNext();
+        return true;
+    }
+
+    private void queueNotification(OutboundMessage outboundMessage) {
+        if (outboundMessage.key != null) {
+            for (Iterator<OutboundMessage> it = notifications.iterator(); it.hasNext();) {
+                OutboundMessage pending = it.next();
+                if (outboundMessage.key.equals(pending.key)) {
+                    // the newer notification replaces the pending one
+                    it.remove();
+                    queuedChars -= pending.chars;
+                    coalescedNotifications++;
+                    EreMetrics.increment(EreMetrics.WEBSOCKET_NOTIFICATIONS_COALESCED);
+                    break;
+                }
+            }
+        }
+        notifications.addLast(outboundMessage);
+        queuedChars += outboundMessage.chars;
+        while (notifications.size() > maxPendingNotifications) {
+            OutboundMessage oldest = notifications.removeFirst();
+            queuedChars -= oldest.chars;
+            droppedNotifications++;
+            EreMetrics.increment(EreMetrics.WEBSOCKET_NOTIFICATIONS_DROPPED, "reason", "max-pending");
+        }
+    }
+
+    private boolean isOverLimit() {
+        return replies.size() + notifications.size() > maxMessages || queuedChars > maxChars;
+    }
+
+    private void degrade() {
+        Iterator<OutboundMessage> it = notifications.iterator();
+        while (it.hasNext()) {
+            queuedChars -= it.next().chars;
+            it.remove();
+            droppedNotifications++;
+            EreMetrics.increment(EreMetrics.WEBSOCKET_NOTIFICATIONS_DROPPED, "reason", "over-limit");
+        }
+        log.warning("Outbound queue of websocket session " + session.getId() + " is over its limit. Dropped pending notifications.");
+    }
+
+    private void closeSession() {
+        log.warning("Outbound queue of websocket session " + session.getId() + " is still over its limit. Closing session.");
+        synchronized (this) {
+            replies.clear();
+            notifications.clear();
+            queuedChars = 0;
+        }
+        try {
+            session.close(new CloseReason(CloseCodes.TRY_AGAIN_LATER, "Outbound queue limit exceeded"));
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Could not close websocket session", e);
+        }
+    }
+
+    private void sendNext() {
+        OutboundMessage next;
+        synchronized (this) {
+            if (sending || closed) {
+                return;
+            }
+            next = replies.pollFirst();
+            if (next == null) {
+                next = notifications.pollFirst();
+            }
+            if (next == null) {
+                return;
+            }
+            queuedChars -= next.chars;
+            sending = true;
+        }
+        final OutboundMessage current = next;
+        SendHandler sendHandler = result -> {
+            if (!result.isOK()) {
+                log.severe(current.errorMessage + ": " + result.getException());
+            }
+            onSent();
+        };
+        try {
+            if (current.message instanceof ByteBuffer) {
+                session.getAsyncRemote().sendBinary((ByteBuffer) current.message, sendHandler);
+            } else {
+                session.getAsyncRemote().sendObject(current.message, sendHandler);
+            }
+        } catch (RuntimeException e) {
+            log.log(Level.SEVERE, current.errorMessage, e);
+            onSent();
+        }
+    }
+
+    private void onSent() {
+        synchronized (this) {
+            sending = false;
+        }
+        sendNext();
+    }
+
+    /**
+     * Discards all pending messages. Called when the session was closed.
+     */
+    public synchronized void close() {
+        closed = true;
+        replies.clear();
+        notifications.clear();
+        queuedChars = 0;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of messages waiting to be sent, without the one in flight
+     */
+    public synchronized int getQueueDepth() {
+        return replies.size() + notifications.size();
+    }
+
+    public synchronized long getQueuedChars() {
+        return queuedChars;
+    }
+
+    public synchronized long getDroppedNotifications() {
+        return droppedNotifications;
+    }
+
+    public synchronized long getCoalescedNotifications() {
+        return coalescedNotifications;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    private static class OutboundMessage {
+        final Object message;
+        final String key;
+        final String errorMessage;
+        final long chars;
+
+        OutboundMessage(Object message, String key, String errorMessage) {
+            this.message = message;
+            this.key = key;
+            this.errorMessage = errorMessage;
+            if (message instanceof String) {
+                this.chars = ((String) message).length();
+            } else if (message instanceof ByteBuffer) {
+                this.chars = ((ByteBuffer) message).remaining();
+            } else {
+                this.chars = 0;
+            }
+        }
+    }
+}
@@ -8,15 +8,20 @@ import java.io.StringReader;
 import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -47,6 +52,7 @@ import de.gematik.ws.tel.error.v2.Error;
 import de.gematik.ws.tel.error.v2.Error.Trace;
 import health.ere.ps.config.AppConfig;
 import health.ere.ps.event.AbortTasksEvent;
+import health.ere.ps.event.AbortTaskStatusEvent;
 import health.ere.ps.event.AbortTasksStatusEvent;
 import health.ere.ps.event.ActivateComfortSignatureEvent;
 import health.ere.ps.event.BundlesEvent;
@@ -55,6 +61,7 @@ import health.ere.ps.event.ChangePinResponseEvent;
 import health.ere.ps.event.DeactivateComfortSignatureEvent;
 import health.ere.ps.event.ERezeptWithDocumentsEvent;
 import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.event.EreLogNotificationsEvent;
 import health.ere.ps.event.GetCardsEvent;
 import health.ere.ps.event.GetCardsResponseEvent;
 import health.ere.ps.event.GetPinStatusEvent;
@@ -62,6 +69,7 @@ import health.ere.ps.event.GetPinStatusResponseEvent;
 import health.ere.ps.event.GetSignatureModeEvent;
 import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.event.HTMLBundlesEvent;
+import health.ere.ps.event.KIMSendResultEvent;
 import health.ere.ps.event.PrefillBundleEvent;
 import health.ere.ps.event.ReadyToSignBundlesEvent;
 import health.ere.ps.event.RequestStatusEvent;
@@ -75,6 +83,7 @@ import health.ere.ps.event.VZDSearchResultEvent;
 import health.ere.ps.event.VerifyPinEvent;
 import health.ere.ps.event.VerifyPinResponseEvent;
 import health.ere.ps.event.erixa.ErixaEvent;
+import health.ere.ps.event.erixa.ErixaUploadStatusEvent;
 import health.ere.ps.jsonb.BundleAdapter;
 import health.ere.ps.jsonb.ByteAdapter;
 import health.ere.ps.jsonb.DurationAdapter;
@@ -85,7 +94,13 @@ import health.ere.ps.service.config.UserConfigurationService;
 import health.ere.ps.service.fhir.XmlPrescriptionProcessor;
 import health.ere.ps.service.fhir.bundle.EreBundle;
 import health.ere.ps.service.logging.EreLogger;
+import health.ere.ps.service.logging.PayloadLog;
+import health.ere.ps.service.trace.RequestTrace;
+import health.ere.ps.service.trace.RequestTracer;
+import health.ere.ps.service.metrics.EreMetrics;
 import health.ere.ps.validation.fhir.bundle.PrescriptionBundleValidator;
+import health.ere.ps.websocket.SessionOutbox.Priority;
+import health.ere.ps.websocket.WebsocketMessageDispatcher.MessageEnvelope;
 import health.ere.ps.websocket.encoder.ResponseEventEncoder;
 import message.processor.incoming.IncomingBundleMessageProcessor;
 import message.processor.incoming.IncomingMessageProcessor;
@@ -147,6 +162,8 @@ public class Websocket {
     @Inject
     PrescriptionBundleValidator prescriptionBundleValidator;
     @Inject
+    WebsocketMessageDispatcher messageDispatcher;
+    @Inject
     AppConfig appConfig;
     @Inject
     UserConfigurationService userConfigurationService;
@@ -157,6 +174,9 @@ public class Websocket {
     @ConfigProperty(name = "ere.websocket.erezeptdocuments.reply-to-all", defaultValue = "false")
     boolean erezeptdocumentsReplyToAll = false;
 
+    @ConfigProperty(name = "ere.trace.timings-in-reply", defaultValue = "false")
+    boolean timingsInReply = false;
+
     static JsonbConfig customConfig = new JsonbConfig()
             .setProperty(JsonbConfig.FORMATTING, true)
             .withAdapters(new BundleAdapter())
@@ -170,13 +190,89 @@ public class Websocket {
 
     private final FhirContext ctx = FhirContext.forR4();
     private final static Set<Session> sessions = new CopyOnWriteArraySet<>();
+    private final static Map<Session, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+
+    static {
+        EreMetrics.gauge(EreMetrics.WEBSOCKET_SESSIONS, sessions, Set::size);
+        EreMetrics.gauge(EreMetrics.WEBSOCKET_OUTBOX_DEPTH, outboxes,
+            o -> o.values().stream().mapToInt(SessionOutbox::getQueueDepth).sum());
+    }
+
+    @ConfigProperty(name = "ere.websocket.outbox.max-messages", defaultValue = "100")
+    int outboxMaxMessages = 100;
+
+    @ConfigProperty(name = "ere.websocket.outbox.max-chars", defaultValue = "100000000")
+    long outboxMaxChars = 100000000L;
+
+    @ConfigProperty(name = "ere.websocket.outbox.max-pending-notifications", defaultValue = "20")
+    int outboxMaxPendingNotifications = 20;
+
+    @ConfigProperty(name = "ere.websocket.binary-attachments.chunk-size", defaultValue = "1048576")
+    int binaryAttachmentsChunkSize = 1048576;
+
+    static final String BINARY_ATTACHMENTS_PROPERTY = "ere.binaryAttachments";
 
     @OnOpen
     public void onOpen(Session session) {
         sessions.add(session);
+        // the outbox is only created here, a reply after onClose must not register the session again
+        outboxes.put(session, new SessionOutbox(session, outboxMaxMessages, outboxMaxChars, outboxMaxPendingNotifications));
+        // opt-in: wss://host/websocket?attachments=binary
+        List<String> attachments = session.getRequestParameterMap() != null ? session.getRequestParameterMap().get("attachments") : null;
+        if(attachments != null && attachments.contains("binary")) {
+            session.getUserProperties().put(BINARY_ATTACHMENTS_PROPERTY, Boolean.TRUE);
+        }
         ereLog.info("Websocket opened");
     }
 
+    static boolean usesBinaryAttachments(Session session) {
+        return Boolean.TRUE.equals(session.getUserProperties().get(BINARY_ATTACHMENTS_PROPERTY));
+    }
+
+    /**
+     * Queues the message in the outbound queue of the given session.
+     */
+    void send(Session session, Object message, Priority priority, String errorMessage) {
+        send(session, message, priority, null, errorMessage);
+    }
+
+    /**
+     * Queues the message in the outbound queue of the given session. Pending notifications
+     * with the same key are replaced by the newer one. Messages for a closed session are
+     * discarded.
+     */
+    void send(Session session, Object message, Priority priority, String notificationKey, String errorMessage) {
+        if(session == null) {
+            ereLog.warn(errorMessage + ": no websocket session given");
+            return;
+        }
+        SessionOutbox outbox = outboxes.get(session);
+        if(outbox == null) {
+            ereLog.warn(errorMessage + ": websocket session is closed");
+            return;
+        }
+        if(!outbox.offer(message, priority, notificationKey, errorMessage) && outbox.isClosed()) {
+            sessions.remove(session);
+            outboxes.remove(session);
+        }
+    }
+
+    /**
+     * @return the number of pending outgoing messages per websocket session id
+     */
+    public static Map<String, Integer> getOutboxQueueDepths() {
+        return outboxes.values().stream()
+            .collect(Collectors.toMap(outbox -> outbox.getSession().getId(), SessionOutbox::getQueueDepth, (a, b) -> a + b));
+    }
+
+    private void removeSession(Session session) {
+        sessions.remove(session);
+        SessionOutbox outbox = outboxes.remove(session);
+        if(outbox != null) {
+            outbox.close();
+        }
+    }
+
     void sendAllKBVExamples(String folder, Session senderSession) {
         if(folder.equals("../src/test/resources/kbv-zip")) {
             try {
@@ -242,13 +338,13 @@ public class Websocket {
 
     @OnClose
     public void onClose(Session session) {
-        sessions.remove(session);
+        removeSession(session);
         ereLog.info("Websocket closed");
     }
 
     @OnError
     public void onError(Session session, Throwable throwable) {
-        sessions.remove(session);
+        removeSession(session);
 
         throwable.printStackTrace();
 
@@ -257,11 +353,40 @@ public class Websocket {
 
     @OnMessage
     public void onMessage(String message, Session senderSession) {
-        ereLog.info("Message: " + message);
+        ereLog.info("Message: " + PayloadLog.summary(message));
+        PayloadLog.dump("Message", () -> message);
         if(message == null) {
             ereLog.warn("null given as message");
             return;
         }
+        // only the envelope is read on the I/O thread, the rest is done by the dispatcher
+        MessageEnvelope envelope;
+        try {
+            envelope = WebsocketMessageDispatcher.parseEnvelope(message);
+        } catch(Exception ex) {
+            ereLog.warn("Could not process message", ex);
+            onException(new ExceptionWithReplyToExcetion(ex, senderSession, null));
+            return;
+        }
+        // the trace of the message is followed through all events with its id as replyToMessageId
+        RequestTracer.begin(envelope.getId(), envelope.getType());
+        Runnable handler = RequestTracer.wrap(envelope.getId(), "ere.websocket.dispatch",
+            () -> handleMessage(message, senderSession));
+        // e.g. when not running inside the CDI container
+        if(messageDispatcher == null) {
+            handler.run();
+            return;
+        }
+        try {
+            messageDispatcher.dispatch(senderSession.getId(), envelope.getType(), handler);
+        } catch(RejectedExecutionException ex) {
+            onException(new ExceptionWithReplyToExcetion(
+                new RejectedExecutionException("Too many pending messages of type " + envelope.getType() + ". Please try again later.", ex),
+                senderSession, envelope.getId()));
+        }
+    }
+
+    void handleMessage(String message, Session senderSession) {
         String messageId = null;
         try (JsonReader jsonReader = Json.createReader(new StringReader(message))) {
             JsonObject object = jsonReader.readObject();
@@ -270,20 +395,16 @@ public class Websocket {
                 processSignAndUploadBundles(senderSession, messageId, object);
             } else if ("ValidateBundles".equals(object.getString("type"))) {
                 JsonObject bundlesValidationResultMessage = prescriptionBundleValidator.bundlesValidationResult(object);
-                senderSession.getAsyncRemote().sendObject(
-                    bundlesValidationResultMessage.toString(),
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to sent bundlesValidationResult event: " + result.getException());
-                        }
-                    });
+                send(senderSession, bundlesValidationResultMessage.toString(), Priority.REPLY,
+                    "Unable to sent bundlesValidationResult event");
             } else if ("XMLBundle".equals(object.getString("type"))) {
-                Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(object.getString("payload"));
+                // the bundles are parsed while the payload is read, both events share the list
+                List<Bundle> bundles = XmlPrescriptionProcessor.parse(new StringReader(object.getString("payload")));
                 if(appConfig.getXmlBundleDirectProcess()) {
                     SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(bundles, senderSession, messageId);
                     signAndUploadBundlesEvent.fireAsync(event);   
                 }
-                onFhirBundle(new BundlesEvent(Arrays.asList(bundles), null, messageId));
+                onFhirBundle(new BundlesEvent(bundles, null, messageId));
             } else if ("AbortTasks".equals(object.getString("type"))) {
                 abortTasksEvent.fireAsync(new AbortTasksEvent(object, senderSession, messageId));
             } else if ("ErixaEvent".equals(object.getString("type"))) {
@@ -322,13 +443,9 @@ public class Websocket {
             }  else if ("RequestSettings".equals(object.getString("type"))) {
                 UserConfigurations userConfigurations = userConfigurationService.getConfig();
                 String payload = jsonbFactory.toJson(userConfigurations);
-                senderSession.getAsyncRemote().sendObject(
+                send(senderSession,
                     "{\"type\": \"Settings\", \"payload\": " + payload + ", \"replyToMessageId\": \""+messageId+"\"}",
-                    result -> {
-                        if (!result.isOK()) {
-                            ereLog.fatal("Unable to send settings event: " + result.getException());
-                        }
-                    });
+                    Priority.REPLY, "Unable to send settings event");
             } else if("SaveSettings".equals(object.getString("type"))) {
                 String userConfiguration = object.getJsonObject("payload").toString();
                 UserConfigurations userConfigurations = jsonbFactory.fromJson(userConfiguration, UserConfigurations.class);
@@ -366,13 +483,9 @@ public class Websocket {
             SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(object, senderSession, messageId);
             signAndUploadBundlesEvent.fireAsync(event);
         } else {
-            senderSession.getAsyncRemote().sendObject(
+            send(senderSession,
                 bundlesValidationResultMessage == null ? "{}" : bundlesValidationResultMessage.toString(),
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesValidationResult event: " + result.getException());
-                    }
-                });
+                Priority.REPLY, "Unable to send bundlesValidationResult event");
         }
     }
 
@@ -395,113 +508,83 @@ public class Websocket {
         } else {
             localSessions = sessions;
         }
-        localSessions.forEach(session -> session.getAsyncRemote().sendObject(
-                "{\"type\": \"Bundles\", \"payload\": " + bundlesString + ", \"replyToMessageId\": \""+bundlesEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
-                    }
-                }));
+        String message = "{\"type\": \"Bundles\", \"payload\": " + bundlesString + ", \"replyToMessageId\": \""+bundlesEvent.getReplyToMessageId()+"\"}";
+        localSessions.forEach(session -> send(session, message, Priority.REPLY, "Unable to send bundlesEvent"));
     }
 
     public void onAbortTasksStatusEvent(@ObservesAsync AbortTasksStatusEvent abortTasksStatusEvent) {
         assureChromeIsOpen();
         String abortTasksStatusString = generateJson(abortTasksStatusEvent);
         
-        abortTasksStatusEvent.getReplyTo().getAsyncRemote().sendObject(
+        send(abortTasksStatusEvent.getReplyTo(),
                 "{\"type\": \"AbortTasksStatus\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+abortTasksStatusEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send bundlesEvent: " + result.getException());
-                    }
-                });
+                Priority.REPLY, "Unable to send bundlesEvent");
+    }
+
+    public void onAbortTaskStatusEvent(@ObservesAsync AbortTaskStatusEvent abortTaskStatusEvent) {
+        String abortTaskStatusString = jsonbFactory.toJson(abortTaskStatusEvent.getAbortTaskStatus());
+
+        send(abortTaskStatusEvent.getReplyTo(),
+                "{\"type\": \"AbortTaskStatus\", \"payload\": " + abortTaskStatusString + ", \"replyToMessageId\": \""+abortTaskStatusEvent.getReplyToMessageId()+"\"}",
+                Priority.REPLY, "Unable to send AbortTaskStatusEvent");
     }
 
     public void onGetCardsResponseEvent(@ObservesAsync GetCardsResponseEvent getCardsResponseEvent) {
         assureChromeIsOpen();
         String abortTasksStatusString = generateJson(getCardsResponseEvent);
         
-        getCardsResponseEvent.getReplyTo().getAsyncRemote().sendObject(
+        send(getCardsResponseEvent.getReplyTo(),
                 "{\"type\": \"GetCardsResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getCardsResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to get cards response: " + result.getException());
-                    }
-                });
+                Priority.REPLY, "Unable to get cards response");
     }
 
     public void onGetSignatureModeResponseEvent(@ObservesAsync GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
         assureChromeIsOpen();
         String abortTasksStatusString = generateJson(getSignatureModeResponseEvent);
-        getSignatureModeResponseEvent.getReplyTo().getAsyncRemote().sendObject(
+        send(getSignatureModeResponseEvent.getReplyTo(),
                 "{\"type\": \"GetSignatureModeResponse\", \"payload\": " + abortTasksStatusString + ", \"replyToMessageId\": \""+getSignatureModeResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send getSignatureModeResponseEvent: " + result.getException());
-                    }
-                });
+                Priority.REPLY, "Unable to send getSignatureModeResponseEvent");
     }
 
     public void onChangePinResponseEvent(@ObservesAsync ChangePinResponseEvent changePinResponseEvent) {
         assureChromeIsOpen();
         String changePinResponseString = generateJson(changePinResponseEvent);
-        changePinResponseEvent.getReplyTo().getAsyncRemote().sendObject(
+        send(changePinResponseEvent.getReplyTo(),
                 "{\"type\": \"ChangePinResponse\", \"payload\": " + changePinResponseString + ", \"replyToMessageId\": \""+changePinResponseEvent.getReplyToMessageId()+"\"}",
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send changePinResponseEvent: " + result.getException());
-                    }
-                });
+                Priority.REPLY, "Unable to send changePinResponseEvent");
     }
 
     public void onStatusResponseEvent(@ObservesAsync StatusResponseEvent statusResponseEvent) {
         assureChromeIsOpen();
-        statusResponseEvent.getReplyTo().getAsyncRemote().sendObject(statusResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send StatusResponseEvent: " + result.getException());
-                    }
-                });
+        send(statusResponseEvent.getReplyTo(), statusResponseEvent, Priority.REPLY, "Unable to send StatusResponseEvent");
     }
 
     public void onVZDSearchResultEvent(@ObservesAsync VZDSearchResultEvent vZDSearchResultEvent) {
         assureChromeIsOpen();
-        vZDSearchResultEvent.getReplyTo().getAsyncRemote().sendObject(vZDSearchResultEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send VZDSearchResultEvent: " + result.getException());
-                    }
-                });
+        send(vZDSearchResultEvent.getReplyTo(), vZDSearchResultEvent, Priority.REPLY, "Unable to send VZDSearchResultEvent");
+    }
+
+    public void onKIMSendResultEvent(@ObservesAsync KIMSendResultEvent kIMSendResultEvent) {
+        send(kIMSendResultEvent.getReplyTo(), kIMSendResultEvent, Priority.REPLY, "Unable to send KIMSendResultEvent");
+    }
+
+    public void onErixaUploadStatusEvent(@ObservesAsync ErixaUploadStatusEvent erixaUploadStatusEvent) {
+        send(erixaUploadStatusEvent.getReplyTo(), erixaUploadStatusEvent, Priority.REPLY, "Unable to send ErixaUploadStatusEvent");
     }
 
     public void onVerifyPinResponseEvent(@ObservesAsync VerifyPinResponseEvent verifyPinResponseEvent) {
         assureChromeIsOpen();
-        verifyPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(verifyPinResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send VerifyPinResponseEvent: " + result.getException());
-                    }
-                });
+        send(verifyPinResponseEvent.getReplyTo(), verifyPinResponseEvent, Priority.REPLY, "Unable to send VerifyPinResponseEvent");
     }
 
     public void onUnblockPinResponseEvent(@ObservesAsync UnblockPinResponseEvent unblockPinResponseEvent) {
         assureChromeIsOpen();
-        unblockPinResponseEvent.getReplyTo().getAsyncRemote().sendObject(unblockPinResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send UnblockPinResponseEvent: " + result.getException());
-                    }
-                });
+        send(unblockPinResponseEvent.getReplyTo(), unblockPinResponseEvent, Priority.REPLY, "Unable to send UnblockPinResponseEvent");
     }
 
     public void onGetPinStatusResponseEvent(@ObservesAsync GetPinStatusResponseEvent getPinStatusResponseEvent) {
         assureChromeIsOpen();
-        getPinStatusResponseEvent.getReplyTo().getAsyncRemote().sendObject(getPinStatusResponseEvent,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send GetPinStatusResponseEvent: " + result.getException());
-                    }
-                });
+        send(getPinStatusResponseEvent.getReplyTo(), getPinStatusResponseEvent, Priority.REPLY, "Unable to send GetPinStatusResponseEvent");
     }
 
     String generateJson(GetSignatureModeResponseEvent getSignatureModeResponseEvent) {
@@ -545,56 +628,80 @@ public class Websocket {
     }
 
     public void onERezeptDocuments(@ObservesAsync ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
-        String jsonPayload = generateJson(eRezeptDocumentsEvent);
-        ereLog.info("Sending prescription receipt payload to front-end: " +
-                jsonPayload);
-
-                Set<Session> localSessions = new HashSet<>();
+        Set<Session> localSessions = new HashSet<>();
         if(eRezeptDocumentsEvent.getReplyTo() != null && !erezeptdocumentsReplyToAll) {
             localSessions.add(eRezeptDocumentsEvent.getReplyTo());
         } else {
             localSessions = sessions;
         }
-        localSessions.forEach(session -> {
+        List<Session> binarySessions = localSessions.stream().filter(Websocket::usesBinaryAttachments).collect(Collectors.toList());
+        List<Session> textSessions = localSessions.stream().filter(session -> !usesBinaryAttachments(session)).collect(Collectors.toList());
+
+        if(!textSessions.isEmpty()) {
+            String jsonPayload = generateJson(eRezeptDocumentsEvent);
+            ereLog.info("Sending prescription receipt payload to front-end: " +
+                    PayloadLog.summary(jsonPayload));
+            PayloadLog.dump("Prescription receipt payload", () -> jsonPayload);
+            textSessions.forEach(session -> send(session, jsonPayload, Priority.REPLY,
+                    "Unable to send eRezeptWithDocumentsEvent"));
+        }
+        if(!binarySessions.isEmpty()) {
+            List<Object> frames = generateFrames(eRezeptDocumentsEvent);
+            binarySessions.forEach(session -> frames.forEach(frame -> send(session,
+                    frame instanceof ByteBuffer ? ((ByteBuffer) frame).duplicate() : frame, Priority.REPLY,
+                    "Unable to send eRezeptWithDocumentsEvent")));
+        }
+    }
 
-            session.getAsyncRemote().sendObject(
-                jsonPayload,
-                result -> {
-                    if (!result.isOK()) {
-                        ereLog.fatal("Unable to send eRezeptWithDocumentsEvent: " +
-                                result.getException());
-                    }
-                });
-        });
+    /**
+     * Generates a compact text frame and binary frames for the PDFs and signatures.
+     */
+    List<Object> generateFrames(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        removeSignatureIfConfigured(eRezeptDocumentsEvent);
+        return new BinaryAttachmentEncoder(binaryAttachmentsChunkSize).encode("ERezeptWithDocuments",
+                eRezeptDocumentsEvent.getERezeptWithDocuments(), eRezeptDocumentsEvent.getReplyToMessageId());
     }
 
-    public String generateJson(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+    private void removeSignatureIfConfigured(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
         if(removeSignatureFromMessage) {
             eRezeptDocumentsEvent.getERezeptWithDocuments().stream()
                 .flatMap(ezd -> ezd.getBundleWithAccessCodeOrThrowables().stream())
                 .forEach(bundleWithAccessCodeOrThrowables -> bundleWithAccessCodeOrThrowables.setSignedBundle(null));
         }
+    }
+
+    public String generateJson(ERezeptWithDocumentsEvent eRezeptDocumentsEvent) {
+        removeSignatureIfConfigured(eRezeptDocumentsEvent);
 
         return "{\"type\": \"ERezeptWithDocuments\", \"payload\": " +
-                jsonbFactory.toJson(eRezeptDocumentsEvent.getERezeptWithDocuments()) + ", \"replyToMessageId\": \""+eRezeptDocumentsEvent.getReplyToMessageId()+"\"}";
+                jsonbFactory.toJson(eRezeptDocumentsEvent.getERezeptWithDocuments()) + ", \"replyToMessageId\": \""+eRezeptDocumentsEvent.getReplyToMessageId()+"\""
+                + timingsJson(eRezeptDocumentsEvent.getReplyToMessageId()) + "}";
+    }
+
+    /**
+     * The optional timings block of a reply with the spans that the request had so far.
+     */
+    private String timingsJson(String replyToMessageId) {
+        RequestTrace trace = timingsInReply ? RequestTracer.get(replyToMessageId) : null;
+        return trace != null ? ", \"timings\": " + trace.toTimingsJson() : "";
     }
 
     String generateJson(BundlesEvent bundlesEvent) {
 
-        bundlesEvent.getBundles().forEach(bundle -> {
-            if (bundle instanceof EreBundle) {
-                ereLog.info("Filled bundle json template result shown below. Null value place" +
-                        " holders present.");
-                ereLog.info("==============================================");
+        if (bundlesEvent.getBundles().stream().anyMatch(b -> b instanceof EreBundle)) {
+            // all bundles are rendered into one buffer, every template is filled only once
+            StringBuilder json = new StringBuilder("[");
+            for (Bundle bundle : bundlesEvent.getBundles()) {
+                if (json.length() > 1) {
+                    json.append(",\n");
+                }
+                int start = json.length();
+                ((EreBundle) bundle).encodeToJson(json);
 
-                ereLog.info(((EreBundle) bundle).encodeToJson());
+                PayloadLog.dump("Filled bundle json template result, null value place holders present",
+                    () -> json.substring(start));
             }
-        });
-
-        if (bundlesEvent.getBundles().stream().anyMatch(b -> b instanceof EreBundle)) {
-            return bundlesEvent.getBundles().stream().map(bundle ->
-                            ((EreBundle) bundle).encodeToJson())
-                    .collect(Collectors.joining(",\n", "[", "]"));
+            return json.append("]").toString();
         } else {
             return bundlesEvent.getBundles().stream().map(bundle ->
                             ctx.newJsonParser().encodeResourceToString(bundle))
@@ -623,39 +730,36 @@ public class Websocket {
         final Exception exception = exceptionFromReplyTo != null ? exceptionFromReplyTo : exceptionParam;
         final String replyToMessageId = replyToMessageIdFromException != null ? replyToMessageIdFromException : "";
 
-        localSessions.forEach(session -> {
-            session.getAsyncRemote()
-                .sendObject("{\"type\": \"Exception\", \"payload\": "+jsonbFactory.toJson(exception)+", \"replyToMessageId\": \""+replyToMessageId+"\"}", result -> {
-                    if (result.getException() != null) {
-                        ereLog.fatal("Unable to send message: " + result.getException());
-                    }
-                });
-        });
+        String message = "{\"type\": \"Exception\", \"payload\": "+jsonbFactory.toJson(exception)+", \"replyToMessageId\": \""+replyToMessageId+"\"}";
+        localSessions.forEach(session -> send(session, message, Priority.REPLY, "Unable to send message"));
     }
 
-    public void onEreLogNotificationEvent(@ObservesAsync EreLogNotificationEvent event) {
-        sessions.forEach(session -> {
-            OutgoingPayload<EreLogNotificationEvent> outgoingPayload = new OutgoingPayload<>(event);
+    public void onEreLogNotificationsEvent(@ObservesAsync EreLogNotificationsEvent event) {
+        // every notification is rendered once and then queued in the outbox of every session
+        for (EreLogNotificationEvent notification : event.getNotifications()) {
+            OutgoingPayload<EreLogNotificationEvent> outgoingPayload = new OutgoingPayload<>(notification);
 
             outgoingPayload.setType("Notification");
 
-            session.getAsyncRemote()
-                    .sendObject(outgoingPayload.toString(), result -> {
-                        if (result.getException() != null) {
-                            ereLog.fatal("Unable to send message: " + result.getException());
-                        }
-                    });
-        });
+            String message = outgoingPayload.toString();
+            String notificationKey = notificationKey(notification);
+            sessions.forEach(session -> send(session, message, Priority.NOTIFICATION, notificationKey, "Unable to send message"));
+        }
+    }
+
+    /**
+     * Log notifications of the same status and message for the same bundle are coalesced,
+     * the pending one is replaced by the newer one with its details.
+     */
+    static String notificationKey(EreLogNotificationEvent notification) {
+        return "Notification|" + notification.getStatus() + "|" + notification.getSimpleLogMessage() + "|"
+            + notification.getLogMessage() + "|" + notification.getBundleInfo();
     }
 
     public void onHTMLBundlesEvent(@ObservesAsync HTMLBundlesEvent event) {
-        event.getReplyTo().getAsyncRemote()
-        .sendObject("{\"type\": \"HTMLBundles\", \"payload\": " +
-        jsonbFactory.toJson(event.getBundles()) + ", \"replyToMessageId\": \""+event.getReplyToMessageId()+"\"}", result -> {
-            if (result.getException() != null) {
-                ereLog.fatal("Unable to send message: " + result.getException());
-            }
-        });
+        send(event.getReplyTo(), "{\"type\": \"HTMLBundles\", \"payload\": " +
+            jsonbFactory.toJson(event.getBundles()) + ", \"replyToMessageId\": \""+event.getReplyToMessageId()+"\"}",
+            Priority.REPLY, "Unable to send message");
     }
 
     private void processIncomingMessage(JsonObject object, Session senderSession) {
@@ -675,10 +779,8 @@ public class Websocket {
 
     private void sendMessage(String message, String errorMessage) {
         final String processedMessage = processOutgoing(message);
-        sessions.forEach(session -> session.getAsyncRemote().sendObject(processedMessage, result -> {
-            if (result.getException() != null)
-                ereLog.fatal(errorMessage);
-        }));
+        // published results are replies for the other clients, they are never dropped or coalesced
+        sessions.forEach(session -> send(session, processedMessage, Priority.REPLY, errorMessage));
     }
 
     private String processOutgoing(String message) {
@@ -0,0 +1,256 @@
+package health.ere.ps.websocket;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.json.Json;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import health.ere.ps.service.metrics.EreMetrics;
+
+/**
+ * Moves the processing of incoming websocket messages off the container I/O thread.
+ *
+ * Only the message envelope (type and id) is read on the I/O thread. The message is
+ * then handed to a bounded executor that is selected by the message type. When the
+ * queue of an executor is full the message is rejected and the caller is expected to
+ * answer with an overload reply.
+ *
+ * The messages of the DEFAULT lane are handled in the order in which a session sent
+ * them. Each session has its own queue that is worked off by one thread of the lane
+ * at a time, so a later message of a session can not overtake an earlier one.
+ */
+@ApplicationScoped
+public class WebsocketMessageDispatcher {
+
+    private static final Logger log = Logger.getLogger(WebsocketMessageDispatcher.class.getName());
+
+    /**
+     * Groups message types that share an executor.
+     */
+    public enum Lane {
+        // FHIR validation, can take several seconds per bundle
+        VALIDATION,
+        // parsing of XML bundles
+        XML,
+        // everything else, mostly firing CDI events
+        DEFAULT;
+
+        static Lane forType(String type) {
+            if ("ValidateBundles".equals(type) || "SignAndUploadBundles".equals(type)) {
+                return VALIDATION;
+            } else if ("XMLBundle".equals(type)) {
+                return XML;
+            } else {
+                return DEFAULT;
+            }
+        }
+    }
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.validation.threads", defaultValue = "2")
+    int validationThreads = 2;
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.validation.queue-size", defaultValue = "20")
+    int validationQueueSize = 20;
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.xml.threads", defaultValue = "2")
+    int xmlThreads = 2;
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.xml.queue-size", defaultValue = "20")
+    int xmlQueueSize = 20;
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.default.threads", defaultValue = "4")
+    int defaultThreads = 4;
+
+    @ConfigProperty(name = "ere.websocket.dispatcher.default.queue-size", defaultValue = "200")
+    int defaultQueueSize = 200;
+
+    private final Map<Lane, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
+    // only read and changed in compute of this map, which locks the entry of the session
+    private final Map<String, SessionQueue> sessionQueues = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        executors.put(Lane.VALIDATION, createExecutor(Lane.VALIDATION, validationThreads, validationQueueSize));
+        executors.put(Lane.XML, createExecutor(Lane.XML, xmlThreads, xmlQueueSize));
+        executors.put(Lane.DEFAULT, createExecutor(Lane.DEFAULT, defaultThreads, defaultQueueSize));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    private static ThreadPoolExecutor createExecutor(Lane lane, int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), runnable -> {
+                    Thread thread = new Thread(runnable, "ere-websocket-" + lane.name().toLowerCase()
+                            + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        EreMetrics.gauge(EreMetrics.WEBSOCKET_DISPATCHER_QUEUE_DEPTH, executor, e -> e.getQueue().size(),
+                "lane", lane.name().toLowerCase());
+        return executor;
+    }
+
+    /**
+     * Runs the given handler on the executor responsible for the given message type.
+     *
+     * @param sessionId the id of the websocket session that sent the message, messages of the
+     *        DEFAULT lane with the same session id are handled one after the other
+     * @param type the type of the message, may be null
+     * @param handler the message handler
+     * @throws RejectedExecutionException if the queue for the message type is full
+     */
+    public void dispatch(String sessionId, String type, Runnable handler) throws RejectedExecutionException {
+        Lane lane = Lane.forType(type);
+        try {
+            if (lane == Lane.DEFAULT && sessionId != null) {
+                dispatchInOrder(sessionId, handler);
+            } else {
+                executors.get(lane).execute(handler);
+            }
+        } catch (RejectedExecutionException ex) {
+            log.warning("Rejected websocket message of type " + type + ". Queue of lane " + lane + " is full.");
+            throw ex;
+        }
+    }
+
+    private void dispatchInOrder(String sessionId, Runnable handler) {
+        sessionQueues.compute(sessionId, (id, queue) -> {
+            if (queue == null) {
+                // nothing of this session is running, the handler is queued in the lane
+                SessionQueue newQueue = new SessionQueue(id);
+                newQueue.tasks.add(handler);
+                executors.get(Lane.DEFAULT).execute(newQueue);
+                return newQueue;
+            }
+            if (queue.tasks.size() >= defaultQueueSize) {
+                throw new RejectedExecutionException("Too many pending messages of session " + id);
+            }
+            queue.tasks.add(handler);
+            return queue;
+        });
+    }
+
+    /**
+     * Returns the number of messages waiting for a free thread in the given lane.
+     */
+    public int getQueueDepth(Lane lane) {
+        ThreadPoolExecutor executor = executors.get(lane);
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * Reads the top level "type" and "id" fields from a message without
+     * building the complete json object tree.
+     *
+     * @param message the raw websocket message
+     * @return the envelope of the message
+     * @throws javax.json.stream.JsonParsingException if the message is not valid json
+     */
+    public static MessageEnvelope parseEnvelope(String message) {
+        String type = null;
+        String id = null;
+        try (JsonParser parser = Json.createParser(new StringReader(message))) {
+            if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+                throw new IllegalArgumentException("Websocket message is not a json object");
+            }
+            while (parser.hasNext()) {
+                Event event = parser.next();
+                if (event == Event.END_OBJECT) {
+                    break;
+                }
+                // event is KEY_NAME on the top level
+                String key = parser.getString();
+                Event valueEvent = parser.next();
+                if (valueEvent == Event.START_OBJECT) {
+                    parser.skipObject();
+                } else if (valueEvent == Event.START_ARRAY) {
+                    parser.skipArray();
+                } else if (valueEvent == Event.VALUE_STRING) {
+                    if ("type".equals(key)) {
+                        type = parser.getString();
+                    } else if ("id".equals(key)) {
+                        id = parser.getString();
+                    }
+                }
+                if (type != null && id != null) {
+                    break;
+                }
+            }
+        }
+        return new MessageEnvelope(type, id);
+    }
+
+    /**
+     * The pending messages of one session. It runs on the DEFAULT lane until no message is
+     * left and is then removed, the next message of the session queues a new one.
+     */
+    private class SessionQueue implements Runnable {
+        private final String sessionId;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void run() {
+            for (Runnable task = next(); task != null; task = next()) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "Could not handle websocket message of session " + sessionId, e);
+                }
+            }
+        }
+
+        private Runnable next() {
+            Runnable[] next = new Runnable[1];
+            sessionQueues.compute(sessionId, (id, queue) -> {
+                next[0] = tasks.poll();
+                return next[0] != null ? queue : null;
+            });
+            return next[0];
+        }
+    }
+
+    public static class MessageEnvelope {
+        private final String type;
+        private final String id;
+
+        public MessageEnvelope(String type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package health.ere.ps.loadtest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * A recorded websocket message that is sent again and again by the {@link WebsocketLoadGenerator}.
+ *
+ * Every message gets a new id, so its replies can be told apart by their replyToMessageId. The
+ * template may contain the place holders ${uuid} (a new random uuid per message) and
+ * ${sequence} (the number of the message in the run), e.g. to give every bundle a new id.
+ */
+public class LoadMessageTemplate {
+
+    private final String type;
+    private final String template;
+    private final int weight;
+
+    public LoadMessageTemplate(String type, String template, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be positive but was " + weight);
+        }
+        this.type = type;
+        this.template = template;
+        this.weight = weight;
+    }
+
+    /**
+     * Reads a message from a json file like the ones in src/test/resources/websocket-messages. A
+     * xml file is sent as XMLBundle message with the file content as payload.
+     */
+    public static LoadMessageTemplate fromFile(Path file, int weight) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        if (file.getFileName().toString().endsWith(".xml")) {
+            return new LoadMessageTemplate("XMLBundle", Json.createObjectBuilder()
+                .add("type", "XMLBundle")
+                .add("payload", content)
+                .build().toString(), weight);
+        }
+        JsonObject message;
+        try (JsonReader jsonReader = Json.createReader(new StringReader(content))) {
+            message = jsonReader.readObject();
+        }
+        // the id is added again for every message that is sent
+        return new LoadMessageTemplate(message.getString("type"),
+            Json.createObjectBuilder(message).remove("id").build().toString(), weight);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * The message that is sent with the given id.
+     */
+    public String render(String messageId, long sequence) {
+        String message = template;
+        if (message.contains("${")) {
+            message = message.replace("${uuid}", UUID.randomUUID().toString())
+                .replace("${sequence}", Long.toString(sequence));
+        }
+        int start = message.indexOf('{') + 1;
+        boolean empty = message.substring(start).trim().startsWith("}");
+        return message.substring(0, start) + "\"id\": \"" + messageId + "\"" + (empty ? "" : ",")
+            + message.substring(start);
+    }
+}
@@ -0,0 +1,131 @@
+package health.ere.ps.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts and latencies of a load test run per message type.
+ *
+ * The latency of a message is measured from the time it was scheduled to be sent until its
+ * final reply arrived, so a slow server that delays the sending of the next messages does not
+ * hide its own latency.
+ */
+public class LoadStatistics {
+
+    private final Map<String, TypeStatistics> types = new TreeMap<>();
+    private long startNanos;
+    private long endNanos;
+
+    synchronized void start(long nanos) {
+        startNanos = nanos;
+    }
+
+    synchronized void end(long nanos) {
+        endNanos = nanos;
+    }
+
+    synchronized void sent(String type) {
+        type(type).sent++;
+    }
+
+    synchronized void completed(String type, long latencyNanos) {
+        type(type).addLatency(latencyNanos);
+    }
+
+    synchronized void failed(String type, long latencyNanos) {
+        TypeStatistics statistics = type(type);
+        statistics.errors++;
+        statistics.addLatency(latencyNanos);
+    }
+
+    synchronized void timedOut(String type) {
+        type(type).timeouts++;
+    }
+
+    private TypeStatistics type(String type) {
+        return types.computeIfAbsent(type, t -> new TypeStatistics());
+    }
+
+    public synchronized TypeStatistics get(String type) {
+        return types.get(type);
+    }
+
+    public synchronized double getElapsedSeconds() {
+        return (endNanos - startNanos) / 1_000_000_000.0;
+    }
+
+    /**
+     * A table with one line per message type.
+     */
+    public synchronized String report() {
+        double elapsedSeconds = Math.max(getElapsedSeconds(), 0.001);
+        StringBuilder report = new StringBuilder(String.format("%-22s %7s %7s %7s %8s %9s %8s %8s %8s %8s%n",
+            "type", "sent", "ok", "errors", "timeouts", "ok/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        types.forEach((type, statistics) -> report.append(String.format(
+            "%-22s %7d %7d %7d %8d %9.2f %8.1f %8.1f %8.1f %8.1f%n", type, statistics.sent,
+            statistics.getCompleted(), statistics.errors, statistics.timeouts,
+            statistics.getCompleted() / elapsedSeconds, statistics.percentileMillis(50),
+            statistics.percentileMillis(90), statistics.percentileMillis(99), statistics.percentileMillis(100))));
+        types.forEach((type, statistics) -> report.append(String.format("%s error rate: %.2f%%%n", type,
+            statistics.getErrorRate() * 100)));
+        return report.toString();
+    }
+
+    public static class TypeStatistics {
+
+        private long sent;
+        private long errors;
+        private long timeouts;
+        // latencies of all replies, also the ones with an error
+        private long[] latencies = new long[1024];
+        private int latencyCount;
+
+        private void addLatency(long latencyNanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = latencyNanos;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * Messages with a reply that is not an error.
+         */
+        public long getCompleted() {
+            return latencyCount - errors;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Errors and timeouts of all sent messages.
+         */
+        public double getErrorRate() {
+            return sent == 0 ? 0 : (double) (errors + timeouts) / sent;
+        }
+
+        /**
+         * The latency in milliseconds that the given percentage of the replies did not exceed.
+         */
+        public double percentileMillis(double percentile) {
+            if (latencyCount == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+            return sorted[Math.max(0, Math.min(index, latencyCount - 1))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
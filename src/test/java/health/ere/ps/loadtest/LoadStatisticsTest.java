@@ -0,0 +1,55 @@
+package health.ere.ps.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+class LoadStatisticsTest {
+
+    @Test
+    void testPercentilesAndErrorRate() {
+        LoadStatistics statistics = new LoadStatistics();
+        statistics.start(0);
+        for (int i = 1; i <= 100; i++) {
+            statistics.sent("ValidateBundles");
+            statistics.completed("ValidateBundles", TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        statistics.sent("SignAndUploadBundles");
+        statistics.sent("SignAndUploadBundles");
+        statistics.failed("SignAndUploadBundles", TimeUnit.MILLISECONDS.toNanos(5));
+        statistics.timedOut("SignAndUploadBundles");
+        statistics.end(TimeUnit.SECONDS.toNanos(10));
+
+        LoadStatistics.TypeStatistics validate = statistics.get("ValidateBundles");
+        assertEquals(100, validate.getCompleted());
+        assertEquals(50.0, validate.percentileMillis(50));
+        assertEquals(99.0, validate.percentileMillis(99));
+        assertEquals(100.0, validate.percentileMillis(100));
+        assertEquals(0.0, validate.getErrorRate());
+
+        LoadStatistics.TypeStatistics signAndUpload = statistics.get("SignAndUploadBundles");
+        assertEquals(0, signAndUpload.getCompleted());
+        assertEquals(1.0, signAndUpload.getErrorRate());
+        assertTrue(statistics.report().contains("ValidateBundles"), statistics.report());
+    }
+
+    @Test
+    void testRenderAddsIdAndReplacesPlaceHolders() {
+        LoadMessageTemplate template = new LoadMessageTemplate("PrefillBundle",
+            "{\"type\": \"PrefillBundle\", \"payload\": {\"bundleId\": \"${uuid}\", \"n\": \"${sequence}\"}}", 1);
+
+        JsonObject message = Json.createReader(new StringReader(template.render("message-1", 7))).readObject();
+
+        assertEquals("message-1", message.getString("id"));
+        assertEquals("7", message.getJsonObject("payload").getString("n"));
+        assertEquals(36, message.getJsonObject("payload").getString("bundleId").length());
+        assertEquals("{\"id\": \"message-2\"}", new LoadMessageTemplate("Empty", "{}", 1).render("message-2", 0));
+    }
+}
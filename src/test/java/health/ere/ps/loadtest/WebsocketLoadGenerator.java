@@ -0,0 +1,308 @@
+package health.ere.ps.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.ContainerProvider;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.MessageHandler;
+import javax.websocket.Session;
+import javax.websocket.WebSocketContainer;
+
+/**
+ * Opens a number of websocket sessions to ere.health and sends recorded messages at a fixed
+ * rate, e.g. SignAndUploadBundles, ValidateBundles, XMLBundle and PrefillBundle. The messages
+ * are spread round robin over the sessions and picked by the weight of their template.
+ *
+ * A message is done when the first reply with its id as replyToMessageId arrives that is not
+ * a status message like HTMLBundles. An Exception reply counts as error, a message without a
+ * reply within the reply timeout as timeout.
+ *
+ * Run it against a running instance with the test classpath, e.g.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=health.ere.ps.loadtest.WebsocketLoadGenerator \
+ *   -Dexec.args="--uri=ws://localhost:8080/websocket --sessions=20 --rate=10 --duration=300
+ *     --messages=src/test/resources/websocket-messages/SignAndUploadBundles.json:3,src/test/resources/websocket-messages/ValidateBundles.json"
+ * </pre>
+ * Started with -Dere.simulator.* properties and the simulator profile the app needs no TI access,
+ * see {@link health.ere.ps.simulator.TiSimulator}.
+ */
+public class WebsocketLoadGenerator {
+
+    private static final Logger log = Logger.getLogger(WebsocketLoadGenerator.class.getName());
+
+    private static final Pattern TYPE = Pattern.compile("^\\s*\\{\\s*\"type\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern REPLY_TO_MESSAGE_ID = Pattern.compile("\"replyToMessageId\"\\s*:\\s*\"([^\"]*)\"");
+    // replies that are sent while a message is still processed
+    private static final Set<String> STATUS_TYPES = Set.of("HTMLBundles", "Notification");
+
+    private final URI uri;
+    private final List<LoadMessageTemplate> templates = new ArrayList<>();
+    private int sessions = 1;
+    private double ratePerSecond = 1;
+    private long durationSeconds = 60;
+    private long replyTimeoutSeconds = 120;
+
+    private final Map<String, PendingMessage> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LoadStatistics statistics = new LoadStatistics();
+    private int totalWeight;
+
+    public WebsocketLoadGenerator(URI uri) {
+        this.uri = uri;
+    }
+
+    public WebsocketLoadGenerator addTemplate(LoadMessageTemplate template) {
+        templates.add(template);
+        totalWeight += template.getWeight();
+        return this;
+    }
+
+    public WebsocketLoadGenerator setSessions(int sessions) {
+        this.sessions = sessions;
+        return this;
+    }
+
+    /**
+     * Messages per second over all sessions.
+     */
+    public WebsocketLoadGenerator setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+        return this;
+    }
+
+    public WebsocketLoadGenerator setDurationSeconds(long durationSeconds) {
+        this.durationSeconds = durationSeconds;
+        return this;
+    }
+
+    public WebsocketLoadGenerator setReplyTimeoutSeconds(long replyTimeoutSeconds) {
+        this.replyTimeoutSeconds = replyTimeoutSeconds;
+        return this;
+    }
+
+    /**
+     * Sends messages for the configured duration and waits for the outstanding replies.
+     */
+    public LoadStatistics run() throws IOException, DeploymentException, InterruptedException {
+        if (templates.isEmpty()) {
+            throw new IllegalStateException("No message templates given");
+        }
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        List<Session> openSessions = new ArrayList<>();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ere-load-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < sessions; i++) {
+                openSessions.add(container.connectToServer(new LoadEndpoint(),
+                    ClientEndpointConfig.Builder.create().build(), uri));
+            }
+            log.info(String.format("Opened %d sessions to %s, sending %.2f messages/s for %d s", sessions, uri,
+                ratePerSecond, durationSeconds));
+
+            long start = System.nanoTime();
+            statistics.start(start);
+            long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+            scheduler.scheduleAtFixedRate(() -> send(openSessions, start, periodNanos), 0, periodNanos,
+                TimeUnit.NANOSECONDS);
+            scheduler.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.SECONDS);
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            scheduler.shutdown();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(replyTimeoutSeconds);
+            while (!pending.isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+            expire(Long.MAX_VALUE);
+            statistics.end(System.nanoTime());
+        } finally {
+            scheduler.shutdownNow();
+            for (Session session : openSessions) {
+                try {
+                    session.close();
+                } catch (IOException e) {
+                    log.log(Level.FINE, "Could not close session", e);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    private void send(List<Session> openSessions, long start, long periodNanos) {
+        long number = sequence.getAndIncrement();
+        // the time the message should have been sent, a late scheduler counts as latency
+        long scheduledNanos = start + number * periodNanos;
+        Session session = openSessions.get((int) (number % openSessions.size()));
+        LoadMessageTemplate template = pickTemplate();
+        String messageId = UUID.randomUUID().toString();
+
+        pending.put(messageId, new PendingMessage(template.getType(), scheduledNanos));
+        statistics.sent(template.getType());
+        session.getAsyncRemote().sendText(template.render(messageId, number), result -> {
+            if (!result.isOK() && pending.remove(messageId) != null) {
+                log.log(Level.WARNING, "Could not send " + template.getType(), result.getException());
+                statistics.failed(template.getType(), System.nanoTime() - scheduledNanos);
+            }
+        });
+    }
+
+    private LoadMessageTemplate pickTemplate() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (LoadMessageTemplate template : templates) {
+            pick -= template.getWeight();
+            if (pick < 0) {
+                return template;
+            }
+        }
+        return templates.get(templates.size() - 1);
+    }
+
+    private void expire() {
+        expire(TimeUnit.SECONDS.toNanos(replyTimeoutSeconds));
+    }
+
+    private void expire(long timeoutNanos) {
+        long now = System.nanoTime();
+        for (Iterator<PendingMessage> it = pending.values().iterator(); it.hasNext(); ) {
+            PendingMessage message = it.next();
+            if (now - message.scheduledNanos >= timeoutNanos) {
+                it.remove();
+                statistics.timedOut(message.type);
+            }
+        }
+    }
+
+    void onReply(String reply) {
+        Matcher replyTo = REPLY_TO_MESSAGE_ID.matcher(reply);
+        String replyToMessageId = null;
+        // the replyToMessageId is the last field of a reply, the payload may contain others
+        while (replyTo.find()) {
+            replyToMessageId = replyTo.group(1);
+        }
+        if (replyToMessageId == null || replyToMessageId.isEmpty()) {
+            return;
+        }
+        Matcher typeMatcher = TYPE.matcher(reply);
+        String type = typeMatcher.find() ? typeMatcher.group(1) : "";
+        if (STATUS_TYPES.contains(type)) {
+            return;
+        }
+        PendingMessage message = pending.remove(replyToMessageId);
+        if (message == null) {
+            return;
+        }
+        long latencyNanos = System.nanoTime() - message.scheduledNanos;
+        if ("Exception".equals(type)) {
+            statistics.failed(message.type, latencyNanos);
+        } else {
+            statistics.completed(message.type, latencyNanos);
+        }
+    }
+
+    private static class PendingMessage {
+
+        final String type;
+        final long scheduledNanos;
+
+        PendingMessage(String type, long scheduledNanos) {
+            this.type = type;
+            this.scheduledNanos = scheduledNanos;
+        }
+    }
+
+    private class LoadEndpoint extends Endpoint {
+
+        @Override
+        public void onOpen(Session session, EndpointConfig config) {
+            // ERezeptWithDocuments replies with the bundles can be several MB
+            session.setMaxTextMessageBufferSize(64 * 1024 * 1024);
+            session.setMaxBinaryMessageBufferSize(64 * 1024 * 1024);
+            session.addMessageHandler(new MessageHandler.Whole<String>() {
+                @Override
+                public void onMessage(String message) {
+                    onReply(message);
+                }
+            });
+            // the pdfs and signatures of ERezeptWithDocuments follow the text frame as binary frames
+            session.addMessageHandler(new MessageHandler.Whole<ByteBuffer>() {
+                @Override
+                public void onMessage(ByteBuffer attachment) {
+                }
+            });
+        }
+
+        @Override
+        public void onClose(Session session, CloseReason closeReason) {
+            log.info("Session closed: " + closeReason);
+        }
+
+        @Override
+        public void onError(Session session, Throwable throwable) {
+            log.log(Level.WARNING, "Error in websocket session", throwable);
+        }
+    }
+
+    /**
+     * Options: --uri, --sessions, --rate (messages/s), --duration (s), --timeout (reply timeout in
+     * s) and --messages, a comma separated list of template files with an optional :weight.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --option=value but was " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        WebsocketLoadGenerator generator = new WebsocketLoadGenerator(
+            URI.create(options.getOrDefault("uri", "ws://localhost:8080/websocket")))
+            .setSessions(Integer.parseInt(options.getOrDefault("sessions", "10")))
+            .setRatePerSecond(Double.parseDouble(options.getOrDefault("rate", "5")))
+            .setDurationSeconds(Long.parseLong(options.getOrDefault("duration", "60")))
+            .setReplyTimeoutSeconds(Long.parseLong(options.getOrDefault("timeout", "120")));
+        String messages = options.getOrDefault("messages", String.join(",",
+            "src/test/resources/websocket-messages/SignAndUploadBundles.json",
+            "src/test/resources/websocket-messages/ValidateBundles.json",
+            "src/test/resources/websocket-messages/PrefillBundle.json",
+            "src/test/resources/examples-kbv-fhir-erp-v1-0-2/Beispiel_01_PZN.xml"));
+        for (String message : messages.split(",")) {
+            int weightSeparator = message.lastIndexOf(':');
+            boolean weighted = weightSeparator > 1 && message.substring(weightSeparator + 1).matches("\\d+");
+            Path file = Paths.get(weighted ? message.substring(0, weightSeparator) : message);
+            generator.addTemplate(LoadMessageTemplate.fromFile(file,
+                weighted ? Integer.parseInt(message.substring(weightSeparator + 1)) : 1));
+        }
+        System.out.println(generator.run().report());
+    }
+}
@@ -0,0 +1,47 @@
+package health.ere.ps.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.profile.SimulatorTestProfile;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+
+/**
+ * A short load test against the app and the TI simulator, run it with
+ * mvn test -Dsurefire.excludedGroups=titus -Dtest=WebsocketLoadTest
+ */
+@QuarkusTest
+@Tag("benchmark")
+@TestProfile(SimulatorTestProfile.class)
+public class WebsocketLoadTest {
+
+    private static final Logger log = Logger.getLogger(WebsocketLoadTest.class.getName());
+
+    @TestHTTPResource("/websocket")
+    URI uri;
+
+    @Test
+    void testValidateAndSignAndUploadBundles() throws Exception {
+        LoadStatistics statistics = new WebsocketLoadGenerator(URI.create(uri.toString().replaceFirst("^http", "ws")))
+            .addTemplate(LoadMessageTemplate.fromFile(
+                Paths.get("src/test/resources/websocket-messages/ValidateBundles.json"), 3))
+            .addTemplate(LoadMessageTemplate.fromFile(
+                Paths.get("src/test/resources/websocket-messages/SignAndUploadBundles.json"), 1))
+            .setSessions(4)
+            .setRatePerSecond(4)
+            .setDurationSeconds(15)
+            .setReplyTimeoutSeconds(60)
+            .run();
+
+        log.info("\n" + statistics.report());
+        assertEquals(0.0, statistics.get("ValidateBundles").getErrorRate());
+    }
+}
@@ -0,0 +1,33 @@
+package health.ere.ps.profile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import health.ere.ps.simulator.TiSimulator;
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+/**
+ * Runs the app against a {@link TiSimulator} instead of a connector and the TI services.
+ * All tests with this profile share one simulator.
+ */
+public class SimulatorTestProfile implements QuarkusTestProfile {
+
+    private static TiSimulator simulator;
+
+    public static synchronized TiSimulator getSimulator() {
+        if (simulator == null) {
+            try {
+                simulator = new TiSimulator().start();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return simulator;
+    }
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return getSimulator().getConfigOverrides();
+    }
+}
@@ -16,6 +16,6 @@ public class XmlPrescriptionResourceTest {
     public void testPost() throws IOException {
         XmlPrescriptionResource xmlPrescriptionResource = new XmlPrescriptionResource();
         xmlPrescriptionResource.bundleEvent = mock(Event.class);
-        xmlPrescriptionResource.post(new String(Files.readAllBytes(Paths.get("/home/manuel/git/secret-test-print-samples/CGM-Turbomed/XML/Kaiser_Bella_20210630113252.xml"))));
+        xmlPrescriptionResource.post(Files.newInputStream(Paths.get("/home/manuel/git/secret-test-print-samples/CGM-Turbomed/XML/Kaiser_Bella_20210630113252.xml")));
     }*/
 }
@@ -0,0 +1,128 @@
+package health.ere.ps.service.connector.provider;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.ws.Binding;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.EndpointReference;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.exception.connector.ConnectorBulkheadFullException;
+
+class ConnectorBulkheadTest {
+
+    @Test
+    void testRejectsCallsWhenFull() throws Exception {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("https://connector", 1, 0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Port port = bulkhead.wrap(Port.class, new BlockingPort(started, finish));
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(port::call);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(bulkhead.isSaturated());
+
+        assertThrows(ConnectorBulkheadFullException.class, port::call);
+
+        finish.countDown();
+        assertEquals("result", running.get(5, TimeUnit.SECONDS));
+        assertFalse(bulkhead.isSaturated());
+
+        ConnectorBulkheadStatistics statistics = bulkhead.getStatistics();
+        assertEquals(1, statistics.getCalls());
+        assertEquals(1, statistics.getRejected());
+        assertEquals(1, statistics.getMaxActiveCalls());
+        assertEquals(0, statistics.getActiveCalls());
+    }
+
+    @Test
+    void testRequestContextDoesNotUseBulkhead() {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("https://connector", 1, 0);
+        BlockingPort blockingPort = new BlockingPort(new CountDownLatch(1), new CountDownLatch(0));
+        Port port = bulkhead.wrap(Port.class, blockingPort);
+
+        bulkhead.acquire();
+        assertSame(blockingPort.getRequestContext(), ((BindingProvider) port).getRequestContext());
+        bulkhead.release();
+    }
+
+    @Test
+    void testExceptionOfPortIsNotWrapped() {
+        ConnectorBulkhead bulkhead = new ConnectorBulkhead("https://connector", 1, 0);
+        Port port = bulkhead.wrap(Port.class, new BlockingPort(null, null));
+
+        assertThrows(NullPointerException.class, port::call);
+        assertFalse(bulkhead.isSaturated());
+    }
+
+    @Test
+    void testRegistrySharesBulkheadPerConnector() {
+        ConnectorBulkheadRegistry registry = new ConnectorBulkheadRegistry();
+
+        assertSame(registry.getBulkhead("https://connector1"), registry.getBulkhead("https://connector1"));
+        assertFalse(registry.getBulkhead("https://connector1") == registry.getBulkhead("https://connector2"));
+        assertEquals(2, registry.getStatistics().size());
+    }
+
+    public interface Port {
+        String call();
+    }
+
+    static class BlockingPort implements Port, BindingProvider {
+        private final CountDownLatch started;
+        private final CountDownLatch finish;
+        private final Map<String, Object> requestContext = new HashMap<>();
+
+        BlockingPort(CountDownLatch started, CountDownLatch finish) {
+            this.started = started;
+            this.finish = finish;
+        }
+
+        @Override
+        public String call() {
+            started.countDown();
+            try {
+                finish.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        }
+
+        @Override
+        public Map<String, Object> getRequestContext() {
+            return requestContext;
+        }
+
+        @Override
+        public Map<String, Object> getResponseContext() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Binding getBinding() {
+            return null;
+        }
+
+        @Override
+        public EndpointReference getEndpointReference() {
+            return null;
+        }
+
+        @Override
+        public <T extends EndpointReference> T getEndpointReference(Class<T> clazz) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package health.ere.ps.service.erixa;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import javax.enterprise.event.Event;
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.config.UserConfig;
+import health.ere.ps.event.erixa.ErixaUploadStatus;
+import health.ere.ps.event.erixa.ErixaUploadStatusEvent;
+import health.ere.ps.event.erixa.SendToPharmacyEvent;
+
+class ErixaUploadServiceTest {
+
+    private ErixaUploadService erixaUploadService;
+    private ErixaAPIInterface apiInterface;
+    private Event<ErixaUploadStatusEvent> uploadStatusEvent;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        apiInterface = mock(ErixaAPIInterface.class);
+        uploadStatusEvent = mock(Event.class);
+        UserConfig userConfig = mock(UserConfig.class);
+        when(userConfig.getErixaReceiverEmail()).thenReturn("apotheke@erixa.de");
+
+        erixaUploadService = new ErixaUploadService();
+        erixaUploadService.apiInterface = apiInterface;
+        erixaUploadService.userConfig = userConfig;
+        erixaUploadService.uploadStatusEvent = uploadStatusEvent;
+        erixaUploadService.retryBackoffMs = 1;
+    }
+
+    @AfterEach
+    void tearDown() {
+        erixaUploadService.shutdown();
+    }
+
+    private SendToPharmacyEvent sendToPharmacyEvent(String lastName) throws IOException {
+        JsonObject payload = Json.createObjectBuilder()
+            .add("document", Base64.getEncoder().encodeToString("%PDF-1.4".getBytes(StandardCharsets.UTF_8)))
+            .add("details", Json.createObjectBuilder()
+                .add("firstName", "Max")
+                .add("lastName", lastName)
+                .add("birthday", "1980-01-01")
+                .add("creationDateTime", "2021-09-01T10:00:00Z"))
+            .build();
+        return new SendToPharmacyEvent(payload);
+    }
+
+    @Test
+    void testGetFileSize() {
+        for (String document : new String[] { "", "a", "ab", "abc", "%PDF-1.4" }) {
+            byte[] bytes = document.getBytes(StandardCharsets.UTF_8);
+            assertEquals(bytes.length, ErixaUploadService.getFileSize(Base64.getEncoder().encodeToString(bytes)));
+            assertEquals(bytes.length, ErixaUploadService.getFileSize(Base64.getEncoder().withoutPadding().encodeToString(bytes)));
+        }
+    }
+
+    @Test
+    void testRetryWhenNotSent() throws IOException {
+        when(apiInterface.upload(anyString())).thenThrow(new ConnectException("Connection refused")).thenReturn(200);
+
+        ErixaUploadStatus status = erixaUploadService.upload(0, sendToPharmacyEvent("Mustermann"));
+
+        assertEquals(ErixaUploadStatus.Status.OK, status.getStatus());
+        assertEquals(2, status.getAttempts());
+        assertEquals("01-09-2021 Max Mustermann apotheke@erixa.de.pdf", status.getFileName());
+    }
+
+    @Test
+    void testNoRetryAfterReadTimeout() throws IOException {
+        when(apiInterface.upload(anyString())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        ErixaUploadStatus status = erixaUploadService.upload(0, sendToPharmacyEvent("Mustermann"));
+
+        assertEquals(ErixaUploadStatus.Status.ERROR, status.getStatus());
+        assertEquals(1, status.getAttempts());
+        verify(apiInterface, times(1)).upload(anyString());
+    }
+
+    @Test
+    void testRetryWhenUnavailable() throws IOException {
+        when(apiInterface.upload(anyString())).thenReturn(503);
+
+        ErixaUploadStatus status = erixaUploadService.upload(0, sendToPharmacyEvent("Mustermann"));
+
+        assertEquals(ErixaUploadStatus.Status.ERROR, status.getStatus());
+        assertEquals(3, status.getAttempts());
+        assertEquals(503, status.getHttpStatusCode());
+    }
+
+    @Test
+    void testNoRetryAfterGatewayTimeout() throws IOException {
+        when(apiInterface.upload(anyString())).thenReturn(504);
+
+        ErixaUploadStatus status = erixaUploadService.upload(0, sendToPharmacyEvent("Mustermann"));
+
+        assertEquals(ErixaUploadStatus.Status.ERROR, status.getStatus());
+        assertEquals(1, status.getAttempts());
+        verify(apiInterface, times(1)).upload(anyString());
+    }
+
+    @Test
+    void testUploadsInParallelAndReportsProgress() throws Exception {
+        erixaUploadService.init();
+        when(apiInterface.upload(anyString())).thenReturn(200);
+        List<SendToPharmacyEvent> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(sendToPharmacyEvent("Mustermann" + i));
+        }
+
+        List<ErixaUploadStatus> results = erixaUploadService.uploadPrescriptionsToDrugstore(events, null, "1").get();
+
+        assertEquals(5, results.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals(ErixaUploadStatus.Status.OK, results.get(i).getStatus());
+        }
+        verify(uploadStatusEvent, times(5)).fireAsync(any(ErixaUploadStatusEvent.class));
+    }
+}
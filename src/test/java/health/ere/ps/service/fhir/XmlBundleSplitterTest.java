@@ -0,0 +1,80 @@
+package health.ere.ps.service.fhir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+class XmlBundleSplitterTest {
+
+    private static final UnaryOperator<String> FIX_VERSION = value -> value.replace("|1.0.1", "|1.0.2");
+
+    @Test
+    void testSplitsBundlesAndDeclaresInheritedNamespace() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<Export xmlns=\"http://hl7.org/fhir\"><!-- comment -->"
+            + "<Bundle><id value=\"1\"/><meta><profile value=\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.1\"/></meta></Bundle>"
+            + "<Bundle><id value=\"2\"/><text>a &amp; b</text></Bundle>"
+            + "</Export>";
+
+        List<String> bundles = new XmlBundleSplitter(new StringReader(xml), FIX_VERSION).stream()
+            .collect(Collectors.toList());
+
+        assertEquals(2, bundles.size());
+        assertTrue(bundles.get(0).startsWith("<Bundle xmlns=\"http://hl7.org/fhir\">"));
+        assertTrue(bundles.get(0).contains("KBV_PR_ERP_Bundle|1.0.2"));
+        assertFalse(bundles.get(0).contains("comment"));
+        assertTrue(bundles.get(1).contains("<id value=\"2\">"));
+        assertTrue(bundles.get(1).contains("a &amp; b"));
+    }
+
+    @Test
+    void testReadsLazily() {
+        // the second bundle is broken, the first one can be read nevertheless
+        String xml = "<Export><Bundle><id value=\"1\"/></Bundle><Bundle><id></Bundle></Export>";
+
+        XmlBundleSplitter splitter = new XmlBundleSplitter(new StringReader(xml), FIX_VERSION);
+
+        assertTrue(splitter.hasNext());
+        assertEquals("<Bundle><id value=\"1\"></id></Bundle>", splitter.next());
+        assertThrows(XmlBundleSplitter.MalformedXmlException.class, splitter::hasNext);
+    }
+
+    @Test
+    void testSplitsDocumentsWithoutCommonRoot() {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Bundle xmlns=\"http://hl7.org/fhir\"><id value=\"1\"/></Bundle>\n"
+            + "<?xml version=\"1.0\"?><?xml-stylesheet href=\"bundle.xsl\"?><Bundle><id value=\"2\"/></Bundle>";
+
+        List<String> bundles = new XmlBundleSplitter(new StringReader(xml), FIX_VERSION).stream()
+            .collect(Collectors.toList());
+
+        assertEquals(List.of("<Bundle xmlns=\"http://hl7.org/fhir\"><id value=\"1\"></id></Bundle>",
+            "<Bundle><id value=\"2\"></id></Bundle>"), bundles);
+    }
+
+    @Test
+    void testReadsEncodingOfDeclaration() {
+        String xml = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><Bundle><text>Müller</text></Bundle>";
+
+        XmlBundleSplitter splitter = new XmlBundleSplitter(
+            new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1)), FIX_VERSION);
+
+        assertEquals("<Bundle><text>Müller</text></Bundle>", splitter.next());
+        assertFalse(splitter.hasNext());
+    }
+
+    @Test
+    void testNoBundle() {
+        XmlBundleSplitter splitter = new XmlBundleSplitter(new StringReader("<Export/>"), FIX_VERSION);
+        assertFalse(splitter.hasNext());
+    }
+}
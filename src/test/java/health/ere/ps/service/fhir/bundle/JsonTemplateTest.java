@@ -0,0 +1,86 @@
+package health.ere.ps.service.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+class JsonTemplateTest {
+
+    @Test
+    void testRenderEscapesValuesInStrings() {
+        JsonTemplate template = JsonTemplate.parse("{\"name\": \"$NAME\", \"text\": \"Dosage: $DOSAGE_1 \\\"$X\\\"\"$FRAGMENT}");
+        assertEquals(Set.of("$NAME", "$DOSAGE_1", "$X", "$FRAGMENT"), template.getSlotNames());
+
+        Map<String, String> values = new HashMap<>();
+        values.put("$NAME", "Viani \"50\" \\ 250");
+        values.put("$DOSAGE_1", "1-0-1\n");
+        values.put("$X", "x");
+        values.put("$FRAGMENT", ", \"extra\": true");
+
+        String json = template.render(values);
+        JsonObject object = Json.createReader(new StringReader(json)).readObject();
+
+        assertEquals("Viani \"50\" \\ 250", object.getString("name"));
+        assertEquals("Dosage: 1-0-1\n \"x\"", object.getString("text"));
+        assertTrue(object.getBoolean("extra"));
+    }
+
+    @Test
+    void testMissingValuesAreKept() {
+        JsonTemplate template = JsonTemplate.parse("{\"id\": \"$ID\", \"price\": \"5 $\", \"a\": \"$a\"}");
+        assertEquals("{\"id\": \"$ID\", \"price\": \"5 $\", \"a\": \"$a\"}", template.render(Map.of()));
+    }
+
+    @Test
+    void testFeBundleTemplate() {
+        JsonTemplate template = JsonTemplate.fromResource("/bundle-samples/FEbundleTemplate.json");
+        assertTrue(template.getSlotNames().contains("$KVID_10"));
+        assertTrue(template.getSlotNames().contains("$PATIENT_NAME_PREFIX"));
+
+        StringBuilder sb = new StringBuilder("[");
+        template.renderTo(Map.of("$BUNDLE_ID", "1"), sb);
+        assertTrue(sb.toString().startsWith("[{"));
+        assertTrue(sb.toString().contains("\"id\": \"1\""));
+    }
+
+    @Test
+    void testFeBundleTemplateMatchesReplace() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        for (String slot : JsonTemplate.fromResource("/bundle-samples/FEbundleTemplate.json").getSlotNames()) {
+            values.put(slot, UUID.randomUUID().toString());
+        }
+        values.put("$DOSAGE_TEXT", "");
+        values.put("$PATIENT_NAME_PREFIX", "");
+        values.put("$PRACTITIONER_NAME_PREFIX", "");
+        values.put("$LAST_UPDATED", "2021-04-06T08:30:00Z");
+        values.put("$AUTHORED_ON", "2021-04-06T00:00:00.000Z");
+
+        EreBundle bundle = new EreBundle(new HashMap<>(values));
+        bundle.setTimestampOnField("$TIMESTAMP", new Date(0));
+
+        // the rendering of EreBundle before the template was precompiled
+        values.put("$TIMESTAMP", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(0)) + "Z");
+        try (InputStream is = JsonTemplateTest.class.getResourceAsStream("/bundle-samples/FEbundleTemplate.json")) {
+            String json = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+            for (String key : values.keySet()) {
+                json = json.replace(key, values.get(key));
+            }
+            assertEquals(json, bundle.encodeToJson());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package health.ere.ps.service.fhir.bundle;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,6 +11,7 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import health.ere.ps.service.fhir.XmlBundleSplitter;
 import health.ere.ps.service.fhir.XmlPrescriptionProcessor;
 
 public class XmlPrescriptionProcessorTest {
@@ -27,5 +29,31 @@ public class XmlPrescriptionProcessorTest {
             e.printStackTrace();
         }
     }
-    
+
+    @Test
+    public void testParseFromStringWithMultipleBundles() throws IOException {
+        String xmlBundle = Files.readString(Paths.get("src/test/resources/examples-kbv-fhir-erp-v1-0-2/Beispiel_01_PZN.xml"));
+
+        Bundle[] bundles = XmlPrescriptionProcessor.parseFromString("<Export>" + xmlBundle + xmlBundle + "</Export>");
+
+        assertEquals(2, bundles.length);
+        assertEquals("https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2", bundles[1].getMeta().getProfile().get(0).getValue());
+    }
+
+    @Test
+    public void testParseFromStringWithBundlesWithoutRoot() throws IOException {
+        String xmlBundle = Files.readString(Paths.get("src/test/resources/examples-kbv-fhir-erp-v1-0-2/Beispiel_01_PZN.xml"));
+
+        // several documents next to each other, the same input is accepted by the REST endpoint
+        Bundle[] bundles = XmlPrescriptionProcessor.parseFromString(xmlBundle + xmlBundle
+            + "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xmlBundle);
+
+        assertEquals(3, bundles.length);
+    }
+
+    @Test
+    public void testParseFromStringRejectsMalformedXml() {
+        assertThrows(XmlBundleSplitter.MalformedXmlException.class,
+            () -> XmlPrescriptionProcessor.parseFromString("<Bundle><id></Bundle>"));
+    }
 }
@@ -0,0 +1,99 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.gematik.ws.conn.signatureservice.v7.SignResponse;
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.exception.gematik.ERezeptWorkflowException;
+
+class BatchSignServiceTest {
+
+    private static final String BUNDLE = "{\"resourceType\":\"Bundle\",\"id\":\"1\"}";
+
+    private BatchSignService batchSignService;
+
+    @BeforeEach
+    void setUp() {
+        batchSignService = new BatchSignService();
+        batchSignService.eRezeptWorkflowService = mock(ERezeptWorkflowService.class);
+        batchSignService.chunkSize = 2;
+        batchSignService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchSignService.shutdown();
+    }
+
+    @Test
+    void testWritesOneResultPerLine() throws Exception {
+        when(batchSignService.eRezeptWorkflowService.signBundleWithIdentifiers(anyList(), eq(false), any()))
+            .thenAnswer(invocation -> Arrays.asList(signResponse(), signResponse()).subList(0,
+                ((List<?>) invocation.getArgument(0)).size()));
+
+        List<JsonObject> results = signBundles(BUNDLE + "\nnot a bundle\n\n" + BUNDLE + "\n" + BUNDLE + "\n");
+
+        assertEquals(4, results.size());
+        assertEquals("AQI=", result(results, 1).getString("signature"));
+        assertTrue(result(results, 2).containsKey("error"));
+        assertEquals("AQI=", result(results, 4).getString("signature"));
+        assertEquals("AQI=", result(results, 5).getString("signature"));
+        verify(batchSignService.eRezeptWorkflowService, times(2))
+            .signBundleWithIdentifiers(anyList(), eq(false), any());
+    }
+
+    @Test
+    void testFailedChunkGivesErrorForEveryLine() throws Exception {
+        when(batchSignService.eRezeptWorkflowService.signBundleWithIdentifiers(anyList(), eq(false), any()))
+            .thenThrow(new ERezeptWorkflowException("Card is not inserted"));
+
+        List<JsonObject> results = signBundles(BUNDLE + "\n" + BUNDLE + "\n");
+
+        assertEquals(2, results.size());
+        assertEquals("Card is not inserted", result(results, 1).getString("error"));
+        assertEquals("Card is not inserted", result(results, 2).getString("error"));
+    }
+
+    private List<JsonObject> signBundles(String ndjson) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchSignService.signBundles(new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), out,
+            (RuntimeConfig) null);
+        return Arrays.stream(out.toString(StandardCharsets.UTF_8).split("\n"))
+            .map(line -> Json.createReader(new StringReader(line)).readObject())
+            .collect(Collectors.toList());
+    }
+
+    private JsonObject result(List<JsonObject> results, int line) {
+        return results.stream().filter(result -> result.getInt("line") == line).findFirst().orElseThrow();
+    }
+
+    private SignResponse signResponse() {
+        SignResponse signResponse = mock(SignResponse.class, RETURNS_DEEP_STUBS);
+        when(signResponse.getSignatureObject().getBase64Signature().getValue()).thenReturn(new byte[] { 1, 2 });
+        return signResponse;
+    }
+}
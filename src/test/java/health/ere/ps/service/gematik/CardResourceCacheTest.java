@@ -0,0 +1,80 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import health.ere.ps.service.gematik.CardResourceCache.Connector;
+
+class CardResourceCacheTest {
+
+    private static final Connector CONNECTOR_A = new Connector("https://192.168.178.42", "Mandant1", "ClientID1", "Workplace1");
+    private static final Connector CONNECTOR_B = new Connector("https://192.168.178.43", "Mandant1", "ClientID1", "Workplace1");
+
+    private static CardInfoType card(String cardHandle, String iccsn) {
+        CardInfoType card = new CardInfoType();
+        card.setCardHandle(cardHandle);
+        card.setIccsn(iccsn);
+        return card;
+    }
+
+    @Test
+    void testEntryIsRemovedWithCard() {
+        CardResourceCache<String> cache = new CardResourceCache<>(10);
+        CardInfoType egk = card("EGK-1", "80276883110000000001");
+        CardInfoType hba = card("HBA-1", "80276883110000000002");
+        cache.put(CONNECTOR_A, egk, "Patient");
+        cache.put(CONNECTOR_A, hba, "Practitioner");
+
+        cache.retainCards(CONNECTOR_A, List.of(hba));
+
+        assertNull(cache.get(CONNECTOR_A, egk));
+        assertEquals("Practitioner", cache.get(CONNECTOR_A, hba));
+    }
+
+    @Test
+    void testReinsertedCardIsReadAgain() {
+        CardResourceCache<String> cache = new CardResourceCache<>(10);
+        cache.put(CONNECTOR_A, card("EGK-1", "80276883110000000001"), "Patient");
+
+        // the connector assigns a new handle when the card is inserted again
+        assertNull(cache.get(CONNECTOR_A, card("EGK-2", "80276883110000000001")));
+        assertEquals("Patient", cache.get(CONNECTOR_A, card("EGK-1", "80276883110000000001")));
+    }
+
+    @Test
+    void testEntriesAreSeparatedByConnector() {
+        CardResourceCache<String> cache = new CardResourceCache<>(10);
+        // both connectors use the same handle for different cards
+        cache.put(CONNECTOR_A, card("EGK-1", "1"), "Patient A");
+        cache.put(CONNECTOR_B, card("EGK-1", "1"), "Patient B");
+        cache.put(CONNECTOR_B, card("EGK-2", "2"), "Patient B2");
+
+        assertEquals("Patient A", cache.get(CONNECTOR_A, card("EGK-1", "1")));
+        assertEquals("Patient B", cache.get(CONNECTOR_B, card("EGK-1", "1")));
+        assertNull(cache.get(new Connector("https://192.168.178.42", "Mandant2", "ClientID1", "Workplace1"),
+            card("EGK-1", "1")));
+
+        // GetCards of connector A does not remove the cards of connector B
+        cache.retainCards(CONNECTOR_A, List.of());
+
+        assertNull(cache.get(CONNECTOR_A, card("EGK-1", "1")));
+        assertEquals("Patient B", cache.get(CONNECTOR_B, card("EGK-1", "1")));
+        assertEquals("Patient B2", cache.get(CONNECTOR_B, card("EGK-2", "2")));
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        CardResourceCache<String> cache = new CardResourceCache<>(2);
+        cache.put(CONNECTOR_A, card("EGK-1", "1"), "1");
+        cache.put(CONNECTOR_A, card("EGK-2", "2"), "2");
+        cache.put(CONNECTOR_A, card("EGK-3", "3"), "3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(CONNECTOR_A, card("EGK-1", "1")));
+    }
+}
@@ -1,11 +1,24 @@
 package health.ere.ps.service.gematik;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import javax.enterprise.event.Event;
 
 import org.junit.jupiter.api.Test;
@@ -13,6 +26,12 @@ import org.mockito.ArgumentCaptor;
 
 import de.gematik.ws.conn.connectorcontext.v2.ContextType;
 import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.event.AbortTaskEntry;
+import health.ere.ps.event.AbortTaskStatus;
+import health.ere.ps.event.AbortTaskStatusEvent;
+import health.ere.ps.event.AbortTasksEvent;
+import health.ere.ps.event.AbortTasksStatusEvent;
 import health.ere.ps.event.ActivateComfortSignatureEvent;
 import health.ere.ps.event.GetSignatureModeResponseEvent;
 import health.ere.ps.exception.gematik.ERezeptWorkflowException;
@@ -48,4 +67,50 @@ public class ERezeptWorkflowServiceUnitTest {
         
         assertNotNull(thrownEvent.getUserId());
     }
-}
\ No newline at end of file
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testAbortTasksInParallel() throws Exception {
+        ERezeptWorkflowService eRezeptWorkflowService = spy(new ERezeptWorkflowService());
+        AppConfig appConfig = mock(AppConfig.class);
+        eRezeptWorkflowService.appConfig = appConfig;
+        eRezeptWorkflowService.abortParallelism = 3;
+        eRezeptWorkflowService.init();
+        Event<AbortTaskStatusEvent> abortTaskStatusEvent = (Event<AbortTaskStatusEvent>) mock(Event.class);
+        eRezeptWorkflowService.abortTaskStatusEvent = abortTaskStatusEvent;
+        Event<AbortTasksStatusEvent> abortTasksStatusEvent = (Event<AbortTasksStatusEvent>) mock(Event.class);
+        eRezeptWorkflowService.abortTasksStatusEvent = abortTasksStatusEvent;
+
+        doNothing().when(eRezeptWorkflowService).requestNewAccessTokenIfNecessary(any(), any(), any());
+        // every abort waits until all aborts were started, this only finishes if they run in parallel
+        CountDownLatch started = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            started.countDown();
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            return null;
+        }).when(eRezeptWorkflowService).abortERezeptTask(any(), anyString(), anyString());
+        doThrow(new IllegalStateException("Task not found")).when(eRezeptWorkflowService).abortERezeptTask(any(), eq("160.000.000.000.002.01"), anyString());
+
+        AbortTasksEvent abortTasksEvent = new AbortTasksEvent();
+        for (int i = 1; i <= 3; i++) {
+            AbortTaskEntry abortTaskEntry = new AbortTaskEntry();
+            abortTaskEntry.setId("160.000.000.000.00" + i + ".01");
+            abortTaskEntry.setAccessCode("accessCode" + i);
+            abortTasksEvent.addAbortTaskEntry(abortTaskEntry);
+        }
+        // the failing task does not wait
+        started.countDown();
+
+        eRezeptWorkflowService.onAbortTasksEvent(abortTasksEvent);
+
+        verify(abortTaskStatusEvent, times(3)).fireAsync(any(AbortTaskStatusEvent.class));
+        ArgumentCaptor<AbortTasksStatusEvent> argumentCaptor = ArgumentCaptor.forClass(AbortTasksStatusEvent.class);
+        verify(abortTasksStatusEvent).fireAsync(argumentCaptor.capture());
+        List<AbortTaskStatus> tasks = argumentCaptor.getValue().getTasks();
+        assertEquals(3, tasks.size());
+        assertEquals(AbortTaskStatus.Status.OK, tasks.get(0).getStatus());
+        assertEquals(AbortTaskStatus.Status.ERROR, tasks.get(1).getStatus());
+        assertEquals("160.000.000.000.002.01", tasks.get(1).getAbortTaskEntry().getId());
+        assertEquals(AbortTaskStatus.Status.OK, tasks.get(2).getStatus());
+    }
+}
@@ -0,0 +1,127 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.event.KIMSendStatus;
+import health.ere.ps.service.gematik.KIMTransportPool.PooledTransport;
+
+class KIMFlowtype169ServiceSendTest {
+
+    private KIMFlowtype169Service kimFlowtype169Service;
+    private KIMTransportPool transportPool;
+    private PooledTransport transport;
+
+    @BeforeEach
+    void setUp() throws MessagingException {
+        transportPool = mock(KIMTransportPool.class);
+        transport = mock(PooledTransport.class);
+        when(transport.getSession()).thenReturn(Session.getInstance(new Properties()));
+        when(transportPool.borrow(anyString(), anyString(), anyString())).thenReturn(transport);
+
+        kimFlowtype169Service = new KIMFlowtype169Service();
+        kimFlowtype169Service.transportPool = transportPool;
+        kimFlowtype169Service.retryBackoffMs = 1;
+    }
+
+    private List<KIMSendStatus> send(List<Map.Entry<String, String>> tokens) {
+        return kimFlowtype169Service.sendERezepteToKIMAddress("from@arv.kim.telematik-test", "to@arv.kim.telematik-test",
+            "Hallo Apotheke", "localhost:465", "user", "password", tokens);
+    }
+
+    @Test
+    void testAllMessagesUseOneConnection() throws MessagingException {
+        List<KIMSendStatus> results = send(List.of(
+            Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1"),
+            Map.entry("160.000.000.000.002.01", "Task/160.000.000.000.002.01/$accept?ac=2")));
+
+        assertEquals(2, results.size());
+        assertEquals(KIMSendStatus.Status.OK, results.get(0).getStatus());
+        assertEquals("160.000.000.000.002.01", results.get(1).getPrescriptionId());
+        assertEquals(KIMSendStatus.Status.OK, results.get(1).getStatus());
+        verify(transport, times(2)).send(any(MimeMessage.class));
+        verify(transportPool, times(2)).release(transport);
+    }
+
+    @Test
+    void testPrescriptionsWithSameIdAreAllSent() throws MessagingException {
+        List<KIMSendStatus> results = send(List.of(
+            Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1"),
+            Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=2")));
+
+        assertEquals(2, results.size());
+        assertEquals(KIMSendStatus.Status.OK, results.get(0).getStatus());
+        assertEquals(KIMSendStatus.Status.OK, results.get(1).getStatus());
+        verify(transport, times(2)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void testConnectIsRetried() throws MessagingException {
+        when(transportPool.borrow(anyString(), anyString(), anyString()))
+            .thenThrow(new MessagingException("Connection refused")).thenReturn(transport);
+
+        List<KIMSendStatus> results = send(List.of(Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1")));
+
+        assertEquals(KIMSendStatus.Status.OK, results.get(0).getStatus());
+        assertEquals(2, results.get(0).getAttempts());
+        verify(transportPool, times(2)).borrow(anyString(), anyString(), anyString());
+        verify(transport, times(1)).send(any(MimeMessage.class));
+    }
+
+    @Test
+    void testFailedSendIsNotRetried() throws MessagingException {
+        doThrow(new MessagingException("Connection reset")).when(transport).send(any(MimeMessage.class));
+
+        List<KIMSendStatus> results = send(List.of(
+            Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1"),
+            Map.entry("160.000.000.000.002.01", "Task/160.000.000.000.002.01/$accept?ac=2")));
+
+        // the server may have accepted the message before the connection was reset
+        assertEquals(KIMSendStatus.Status.ERROR, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getAttempts());
+        assertEquals("Connection reset", results.get(0).getErrorMessage());
+        assertEquals(1, results.get(1).getAttempts());
+        verify(transportPool, times(2)).invalidate(transport);
+    }
+
+    @Test
+    void testRejectedAddressIsNotRetried() throws MessagingException {
+        doThrow(new SendFailedException("Invalid Addresses")).when(transport).send(any(MimeMessage.class));
+
+        List<KIMSendStatus> results = send(List.of(Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1")));
+
+        assertEquals(KIMSendStatus.Status.ERROR, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getAttempts());
+        assertEquals("Invalid Addresses", results.get(0).getErrorMessage());
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() throws MessagingException {
+        when(transportPool.borrow(anyString(), anyString(), anyString())).thenThrow(new MessagingException("Connection refused"));
+
+        List<KIMSendStatus> results = send(List.of(Map.entry("160.000.000.000.001.01", "Task/160.000.000.000.001.01/$accept?ac=1")));
+
+        assertEquals(KIMSendStatus.Status.ERROR, results.get(0).getStatus());
+        assertEquals(3, results.get(0).getAttempts());
+        assertEquals("Connection refused", results.get(0).getErrorMessage());
+        verify(transport, times(0)).send(any(MimeMessage.class));
+    }
+}
@@ -0,0 +1,163 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import health.ere.ps.config.AppConfig;
+import health.ere.ps.config.RuntimeConfig;
+import health.ere.ps.service.metrics.EreMetrics;
+import health.ere.ps.simulator.PrescriptionServiceSimulator;
+
+class PrescriptionServiceClientsTest {
+
+    private HttpServer server;
+    private String url;
+    private PrescriptionServiceClients prescriptionServiceClients;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = "<Task/>".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(2000);
+                exchange.sendResponseHeaders(204, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort();
+
+        AppConfig appConfig = mock(AppConfig.class);
+        when(appConfig.getPrescriptionServiceURL()).thenReturn(url);
+        when(appConfig.vauEnabled()).thenReturn(true);
+        prescriptionServiceClients = new PrescriptionServiceClients();
+        prescriptionServiceClients.appConfig = appConfig;
+        prescriptionServiceClients.vauDisabledUrls = Optional.of(List.of(url));
+        prescriptionServiceClients.socketTimeoutMs = 500;
+    }
+
+    @AfterEach
+    void tearDown() {
+        prescriptionServiceClients.close();
+        server.stop(0);
+    }
+
+    @Test
+    void testClientPerPrescriptionService() {
+        RuntimeConfig runtimeConfig = mock(RuntimeConfig.class);
+        when(runtimeConfig.getPrescriptionServerURL()).thenReturn("https://erp-ref.zentral.erp.splitdns.ti-dienste.de");
+
+        assertEquals(url, prescriptionServiceClients.getPrescriptionServiceURL(null));
+        assertEquals("https://erp-ref.zentral.erp.splitdns.ti-dienste.de",
+            prescriptionServiceClients.getPrescriptionServiceURL(runtimeConfig));
+        assertSame(prescriptionServiceClients.getClient((RuntimeConfig) null), prescriptionServiceClients.getClient(url));
+        assertNotSame(prescriptionServiceClients.getClient(url), prescriptionServiceClients.getClient(runtimeConfig));
+        assertFalse(prescriptionServiceClients.isVauEnabled(url));
+        assertTrue(prescriptionServiceClients.isVauEnabled("https://erp-ref.zentral.erp.splitdns.ti-dienste.de"));
+        assertThrows(IllegalStateException.class, () -> prescriptionServiceClients.getClient((String) null));
+    }
+
+    @Test
+    void testConnectionIsKeptAlive() {
+        for (int i = 0; i < 3; i++) {
+            try (Response response = prescriptionServiceClients.getClient(url).target(url).path("/Task").request().get()) {
+                assertEquals("<Task/>", response.readEntity(String.class));
+            }
+        }
+
+        PoolStats poolStats = prescriptionServiceClients.getPoolStats(url);
+        assertEquals(0, poolStats.getLeased());
+        assertEquals(1, poolStats.getAvailable());
+    }
+
+    @Test
+    void testGaugesAreRemovedOnClose() {
+        prescriptionServiceClients.getClient(url);
+        assertEquals(3, EreMetrics.getRegistry().find(EreMetrics.PRESCRIPTION_SERVICE_CONNECTIONS)
+            .tag("server", url).gauges().size());
+
+        prescriptionServiceClients.close();
+
+        assertTrue(EreMetrics.getRegistry().find(EreMetrics.PRESCRIPTION_SERVICE_CONNECTIONS)
+            .tag("server", url).gauges().isEmpty());
+    }
+
+    @Test
+    void testVauConnectionsAreReleased() {
+        new PrescriptionServiceSimulator().start(server, "/erezept");
+        String vauUrl = url + "/erezept";
+        prescriptionServiceClients.maxConnections = 2;
+        prescriptionServiceClients.connectTimeoutMs = 1000;
+
+        for (int i = 0; i < 5; i++) {
+            // the simulator answers a request without a valid token with 401 inside the VAU
+            assertEquals(401, createTask(vauUrl));
+        }
+
+        assertEquals(0, prescriptionServiceClients.getPoolStats(vauUrl).getLeased());
+    }
+
+    @Test
+    void testVauCertificateIsFetchedAgainAfterRotation() {
+        PrescriptionServiceSimulator simulator = new PrescriptionServiceSimulator();
+        simulator.start(server, "/erezept");
+        String vauUrl = url + "/erezept";
+
+        assertEquals(401, createTask(vauUrl));
+        simulator.rotateVauCertificate();
+
+        // the first attempt is encrypted for the former certificate and rejected by the VAU
+        assertEquals(401, createTask(vauUrl));
+    }
+
+    private int createTask(String vauUrl) {
+        try (Response response = prescriptionServiceClients.getClient(vauUrl).target(vauUrl).path("/Task/$create")
+            .request()
+            .header("Authorization", "Bearer invalid")
+            .header("User-Agent", "ere.health")
+            .post(Entity.entity("<Parameters xmlns=\"http://hl7.org/fhir\"/>", "application/fhir+xml"))) {
+            return response.getStatus();
+        }
+    }
+
+    @Test
+    void testReadTimeout() {
+        assertThrows(ProcessingException.class,
+            () -> prescriptionServiceClients.getClient(url).target(url).path("/slow").request().get().close());
+        assertEquals(0, prescriptionServiceClients.getPoolStats(url).getLeased());
+    }
+}
@@ -0,0 +1,85 @@
+package health.ere.ps.service.gematik;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VZDSearchCacheTest {
+
+    private static final VZDLdapContextPool.Key CONNECTOR = new VZDLdapContextPool.Key("192.168.0.1", "certificate", "password");
+
+    private AtomicLong now;
+    private VZDSearchCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong();
+        cache = new VZDSearchCache(2, 60, now::get);
+    }
+
+    private void putApotheken(String search, boolean complete) {
+        cache.put(CONNECTOR, search,
+            List.of(Map.of("displayName", "Adler Apotheke"), Map.of("displayName", "Apotheke am Markt")),
+            List.of(List.of("Adler Apotheke", "adler@apotheke.kim.telematik"),
+                List.of("Apotheke am Markt", "markt@apo.kim.telematik")),
+            complete);
+    }
+
+    @Test
+    void testExactHit() {
+        putApotheken("Apo", true);
+
+        assertEquals(2, cache.get(CONNECTOR, "apo").size());
+        assertNull(cache.get(new VZDLdapContextPool.Key("192.168.0.2", "certificate", "password"), "Apo"));
+        assertNull(cache.get(new VZDLdapContextPool.Key("192.168.0.1", "other certificate", "password"), "Apo"));
+    }
+
+    @Test
+    void testNarrowsFromCachedPrefix() {
+        putApotheken("Apo", true);
+
+        List<Map<String, Object>> results = cache.get(CONNECTOR, "Apotheke am");
+
+        assertEquals(1, results.size());
+        assertEquals("Apotheke am Markt", results.get(0).get("displayName"));
+        // matches the mail address of the other entry
+        results = cache.get(CONNECTOR, "Apotheke.kim");
+        assertEquals(1, results.size());
+        assertEquals("Adler Apotheke", results.get(0).get("displayName"));
+    }
+
+    @Test
+    void testIncompleteResultIsNotNarrowed() {
+        putApotheken("Apo", false);
+
+        assertEquals(2, cache.get(CONNECTOR, "Apo").size());
+        assertNull(cache.get(CONNECTOR, "Apotheke am"));
+    }
+
+    @Test
+    void testExpiredResultIsNotUsed() {
+        putApotheken("Apo", true);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertNull(cache.get(CONNECTOR, "Apo"));
+        assertNull(cache.get(CONNECTOR, "Apotheke"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        putApotheken("Apo", true);
+        putApotheken("Adl", true);
+        cache.get(CONNECTOR, "Apo");
+        putApotheken("Mar", true);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(CONNECTOR, "Adl"));
+    }
+}
@@ -7,14 +7,17 @@ import javax.enterprise.event.ObservesAsync;
 import javax.inject.Inject;
 
 import health.ere.ps.event.EreLogNotificationEvent;
+import health.ere.ps.event.EreLogNotificationsEvent;
 
 @ApplicationScoped
 public class EreLogNotificationEventHandler {
     @Inject
     Logger logger;
 
-    void logEventHandler(@ObservesAsync EreLogNotificationEvent ereLogNotificationEvent) {
+    void logEventHandler(@ObservesAsync EreLogNotificationsEvent ereLogNotificationsEvent) {
 
-        logger.info(ereLogNotificationEvent.toString());
+        for (EreLogNotificationEvent ereLogNotificationEvent : ereLogNotificationsEvent.getNotifications()) {
+            logger.info(ereLogNotificationEvent.toString());
+        }
     }
 }
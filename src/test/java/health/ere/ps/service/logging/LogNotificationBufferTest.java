@@ -0,0 +1,62 @@
+package health.ere.ps.service.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class LogNotificationBufferTest {
+
+    private final LogNotificationBuffer originalBuffer = EreLogger.getNotificationBuffer();
+
+    @AfterEach
+    void tearDown() {
+        EreLogger.setNotificationBuffer(originalBuffer);
+    }
+
+    @Test
+    void testDropsOldestWhenFull() {
+        LogNotificationBuffer buffer = new LogNotificationBuffer(2);
+        buffer.offer(notification("1"));
+        buffer.offer(notification("2"));
+        buffer.offer(notification("3"));
+
+        assertEquals(1, buffer.getDropped());
+        assertEquals(3, buffer.getOffered());
+        List<LogNotification> drained = buffer.drain(1);
+        assertEquals("2", drained.get(0).getLogMessage());
+        assertEquals("3", buffer.drain(10).get(0).getLogMessage());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testLoggingContextBelongsToOneThread() throws Exception {
+        LogNotificationBuffer buffer = new LogNotificationBuffer(10);
+        EreLogger.setNotificationBuffer(buffer);
+        EreLogger logger = EreLogger.getLogger(LogNotificationBufferTest.class);
+
+        logger.setLoggingContext(List.of(EreLogger.SystemContext.Connector), "Card missing", true);
+        // a log call of another thread must neither use nor clear this context
+        CompletableFuture.runAsync(() -> logger.info("other thread")).get(5, TimeUnit.SECONDS);
+        assertEquals(0, buffer.size());
+
+        logger.warn("SMC-B not found");
+        List<LogNotification> notifications = buffer.drain(10);
+        assertEquals(1, notifications.size());
+        assertEquals("WARN", notifications.get(0).getStatus());
+        assertEquals("Card missing", notifications.get(0).toEvent().getSimpleLogMessage());
+        assertTrue(notifications.get(0).toEvent().getBundleInfo().isEmpty());
+
+        logger.info("context was cleared");
+        assertEquals(0, buffer.size());
+    }
+
+    private LogNotification notification(String logMessage) {
+        return new LogNotification(List.of(), "", "INFO", logMessage, List.of(), null);
+    }
+}
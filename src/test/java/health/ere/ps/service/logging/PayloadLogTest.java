@@ -0,0 +1,56 @@
+package health.ere.ps.service.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Medication;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+
+class PayloadLogTest {
+
+    @Test
+    void testSummaryOfJson() {
+        String json = "{\"resourceType\":\"Bundle\",\"entry\":[{\"resource\":{\"resourceType\" : \"Patient\"}},"
+            + "{\"resource\":{\"resourceType\":\"Medication\"}},{\"resource\":{\"resourceType\":\"Patient\"}}]}";
+
+        String summary = PayloadLog.summary(json);
+
+        assertTrue(summary.startsWith(json.length() + " chars, hash " + String.format("%08x", json.hashCode())));
+        assertTrue(summary.endsWith("resources Bundle=1, Medication=1, Patient=2"));
+        assertFalse(summary.contains("entry"));
+    }
+
+    @Test
+    void testCountResourcesOfXml() {
+        String xml = "<?xml version=\"1.0\"?><Bundle xmlns=\"http://hl7.org/fhir\"><entry><resource>"
+            + "<Composition/></resource></entry><entry><resource>\n  <Patient/></resource></entry></Bundle>";
+
+        assertEquals(Map.of("Bundle", 1, "Composition", 1, "Patient", 1), PayloadLog.countResources(xml));
+    }
+
+    @Test
+    void testSummaryOfBundle() {
+        Bundle bundle = new Bundle();
+        bundle.setId("0428d416-149e-48a4-977c-394887b3d85c");
+        bundle.addEntry().setResource(new Patient());
+        bundle.addEntry().setResource(new Medication());
+
+        assertEquals("Bundle 0428d416-149e-48a4-977c-394887b3d85c, 2 entries, resources Medication=1, Patient=1",
+            PayloadLog.summary(bundle));
+    }
+
+    @Test
+    void testDumpIsLazy() {
+        PayloadLog.dump("Bundle", () -> {
+            if (!PayloadLog.isDumpEnabled()) {
+                throw new IllegalStateException("payload created although the category is disabled");
+            }
+            return "";
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package health.ere.ps.service.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EreMetricsTest {
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        EreMetrics.setRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        EreMetrics.setRegistry(Metrics.globalRegistry);
+    }
+
+    @Test
+    void testRecordSuccess() {
+        String result = EreMetrics.record(EreMetrics.PRESCRIPTION_SERVICE_CALL, () -> "task",
+            "operation", "$create", "flowtype", "160");
+
+        assertEquals("task", result);
+        assertEquals(1, registry.get(EreMetrics.PRESCRIPTION_SERVICE_CALL)
+            .tags("operation", "$create", "flowtype", "160", "outcome", EreMetrics.SUCCESS).timer().count());
+        assertNull(registry.find(EreMetrics.ERRORS).counter());
+    }
+
+    @Test
+    void testRecordError() {
+        assertThrows(IOException.class, () -> EreMetrics.record(EreMetrics.VAU_CRYPTO, () -> {
+            throw new IOException("broken");
+        }, "operation", "decrypt"));
+
+        assertEquals(1, registry.get(EreMetrics.VAU_CRYPTO)
+            .tags("operation", "decrypt", "outcome", EreMetrics.ERROR).timer().count());
+        assertEquals(1.0, registry.get(EreMetrics.ERRORS)
+            .tags("operation", "decrypt", "source", EreMetrics.VAU_CRYPTO).counter().count());
+    }
+
+    @Test
+    void testRetryAndGauge() {
+        AtomicInteger queueDepth = new AtomicInteger(3);
+        EreMetrics.gauge(EreMetrics.PIPELINE_QUEUE_DEPTH, queueDepth, AtomicInteger::get, "stage", "kim");
+        EreMetrics.retry(EreMetrics.KIM_SEND);
+        EreMetrics.retry(EreMetrics.KIM_SEND);
+
+        assertEquals(3.0, registry.get(EreMetrics.PIPELINE_QUEUE_DEPTH).tags("stage", "kim").gauge().value());
+        assertEquals(2.0, registry.get(EreMetrics.RETRIES).tags("source", EreMetrics.KIM_SEND).counter().count());
+    }
+
+    @Test
+    void testTags() {
+        assertEquals("160", EreMetrics.flowtypeOfTask("160.000.100.000.001.05"));
+        assertEquals("169", EreMetrics.flowtypeOfTask("169.000.000.000.001.11"));
+        assertEquals("unknown", EreMetrics.flowtypeOfTask("abc"));
+        assertEquals("unknown", EreMetrics.flowtypeOfTask(null));
+        assertEquals("default", EreMetrics.connector((String) null));
+        assertEquals("https://connector", EreMetrics.connector("https://connector"));
+    }
+}
@@ -0,0 +1,109 @@
+package health.ere.ps.service.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PipelineStageTest {
+
+    private PipelineStage stage;
+
+    @AfterEach
+    void tearDown() {
+        stage.shutdown();
+    }
+
+    @Test
+    void testStatistics() throws InterruptedException {
+        stage = new PipelineStage("test", 2, 10, 1000);
+        CountDownLatch done = new CountDownLatch(3);
+        stage.submit(done::countDown);
+        stage.submit(done::countDown);
+        stage.submit(() -> {
+            done.countDown();
+            throw new IllegalStateException("Broken task");
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        PipelineStageStatistics statistics = waitUntilFinished(3);
+        assertEquals(3, statistics.getSubmitted());
+        assertEquals(2, statistics.getCompleted());
+        assertEquals(1, statistics.getFailed());
+        assertEquals(2, statistics.getThreads());
+        assertEquals(10, statistics.getQueueCapacity());
+    }
+
+    @Test
+    void testRejectsWhenQueueStaysFull() throws InterruptedException {
+        stage = new PipelineStage("test", 1, 1, 50);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        stage.submit(() -> {
+            running.countDown();
+            await(release);
+        });
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        // fills the queue
+        stage.submit(() -> { });
+
+        assertThrows(RejectedExecutionException.class, () -> stage.submit(() -> { }));
+        PipelineStageStatistics statistics = stage.getStatistics();
+        assertEquals(1, statistics.getRejected());
+        assertEquals(1, statistics.getQueueDepth());
+        assertEquals(1, statistics.getActiveThreads());
+
+        release.countDown();
+        assertEquals(2, waitUntilFinished(2).getCompleted());
+    }
+
+    @Test
+    void testSubmitterWaitsForFreePlace() throws InterruptedException {
+        stage = new PipelineStage("test", 1, 1, 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        stage.submit(() -> await(release));
+        stage.submit(() -> { });
+
+        new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        }).start();
+        // blocks until the first task is finished
+        stage.submit(() -> { });
+
+        assertEquals(3, waitUntilFinished(3).getCompleted());
+        assertEquals(0, stage.getStatistics().getRejected());
+    }
+
+    private PipelineStageStatistics waitUntilFinished(long tasks) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        PipelineStageStatistics statistics = stage.getStatistics();
+        while (statistics.getCompleted() + statistics.getFailed() < tasks && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            statistics = stage.getStatistics();
+        }
+        return statistics;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
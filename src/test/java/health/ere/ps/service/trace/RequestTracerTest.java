@@ -0,0 +1,103 @@
+package health.ere.ps.service.trace;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.json.JsonObject;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.event.SignAndUploadBundlesEvent;
+import health.ere.ps.service.metrics.EreMetrics;
+
+class RequestTracerTest {
+
+    @BeforeEach
+    void setUp() {
+        RequestTracer.configure(true, 1000, true);
+        RequestTracer.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestTracer.configure(true, 1000, false);
+        RequestTracer.clear();
+    }
+
+    @Test
+    void testTimedCallsBecomeSpansOfCurrentTrace() {
+        RequestTracer.begin("message-1", "SignAndUploadBundles");
+        try (TraceScope scope = RequestTracer.activate("message-1")) {
+            EreMetrics.record(EreMetrics.PRESCRIPTION_SERVICE_CALL, () -> "task", "operation", "$create", "flowtype", "160");
+        }
+        // no trace is active any more
+        EreMetrics.record(EreMetrics.PRESCRIPTION_SERVICE_CALL, () -> "task", "operation", "$activate", "flowtype", "160");
+        assertNull(RequestTracer.current());
+
+        List<TraceSpan> spans = RequestTracer.get("message-1").getSpans();
+        assertEquals(1, spans.size());
+        assertEquals(EreMetrics.PRESCRIPTION_SERVICE_CALL, spans.get(0).getName());
+        assertEquals("$create", spans.get(0).getAttributes().get("operation"));
+        assertEquals(EreMetrics.SUCCESS, spans.get(0).getOutcome());
+
+        JsonObject timings = RequestTracer.get("message-1").toTimingsJson();
+        assertEquals("$create", timings.getJsonArray("spans").getJsonObject(0).getString("operation"));
+    }
+
+    @Test
+    void testWrappedTaskRunsWithTraceOfEvent() throws Exception {
+        SignAndUploadBundlesEvent event = new SignAndUploadBundlesEvent(new Bundle[0], null, "message-2");
+        RequestTrace trace = RequestTracer.begin(RequestTracer.traceId(event), "SignAndUploadBundles");
+
+        Runnable task = RequestTracer.wrap(RequestTracer.traceId(event), "ere.pipeline.document",
+            () -> assertSame(trace, RequestTracer.current()));
+        CompletableFuture.runAsync(task).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("ere.pipeline.document.queued", "ere.pipeline.document"),
+            trace.getSpans().stream().map(TraceSpan::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testIdleTracesAreExported() {
+        RequestTracer.begin("message-3", "SignAndUploadBundles");
+        try (TraceScope scope = RequestTracer.activate("message-3")) {
+            RequestTracer.record(EreMetrics.KIM_SEND, 1_000_000, EreMetrics.ERROR);
+        }
+
+        assertTrue(RequestTracer.takeFinished(TimeUnit.HOURS.toNanos(1)).isEmpty());
+        List<RequestTrace> finished = RequestTracer.takeFinished(0);
+        assertEquals(1, finished.size());
+        assertNull(RequestTracer.get("message-3"));
+
+        JsonObject otlp = TraceExportService.toOtlpJson(finished);
+        List<JsonObject> spans = otlp.getJsonArray("resourceSpans").getJsonObject(0).getJsonArray("scopeSpans")
+            .getJsonObject(0).getJsonArray("spans").getValuesAs(JsonObject.class);
+        assertEquals(2, spans.size());
+        assertEquals("SignAndUploadBundles", spans.get(0).getString("name"));
+        assertEquals(32, spans.get(0).getString("traceId").length());
+        assertEquals(spans.get(0).getString("spanId"), spans.get(1).getString("parentSpanId"));
+        assertEquals(2, spans.get(1).getJsonObject("status").getInt("code"));
+    }
+
+    @Test
+    void testOldestTraceIsEvicted() throws InterruptedException {
+        RequestTracer.configure(true, 2, true);
+        RequestTracer.begin("message-4", "a");
+        Thread.sleep(5);
+        RequestTracer.begin("message-5", "b");
+        RequestTracer.begin("message-6", "c");
+
+        assertNull(RequestTracer.get("message-4"));
+        assertEquals("message-4", RequestTracer.takeFinished(TimeUnit.HOURS.toNanos(1)).get(0).getId());
+    }
+}
@@ -0,0 +1,73 @@
+package health.ere.ps.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Applies the {@link ServiceBehaviour} of a service before its handler runs. A failing
+ * SOAP request gets a fault with a gematik error, so the client sees the FaultMessage of the
+ * operation like with a real connector.
+ */
+public class BehaviourFilter extends Filter {
+
+    private static final String SOAP_FAULT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><soap:Fault>"
+        + "<faultcode>soap:Server</faultcode><faultstring>Simulated error</faultstring><detail>"
+        + "<err:Error xmlns:err=\"http://ws.gematik.de/tel/error/v2.0\">"
+        + "<err:MessageID>%s</err:MessageID><err:Timestamp>%s</err:Timestamp><err:Trace>"
+        + "<err:EventID>%s</err:EventID><err:Instance>%s</err:Instance><err:LogReference>simulator</err:LogReference>"
+        + "<err:CompType>KON</err:CompType><err:Code>4000</err:Code><err:Severity>Error</err:Severity>"
+        + "<err:ErrorType>Technical</err:ErrorType><err:ErrorText>Simulated error</err:ErrorText>"
+        + "</err:Trace></err:Error></detail></soap:Fault></soap:Body></soap:Envelope>";
+
+    private final ServiceBehaviour behaviour;
+    private final boolean soap;
+
+    public BehaviourFilter(ServiceBehaviour behaviour, boolean soap) {
+        this.behaviour = behaviour;
+        this.soap = soap;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long delayMs = behaviour.nextDelayMs();
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!behaviour.nextFails()) {
+            chain.doFilter(exchange);
+            return;
+        }
+        exchange.getRequestBody().readAllBytes();
+        byte[] body;
+        if (soap) {
+            String id = UUID.randomUUID().toString();
+            body = String.format(SOAP_FAULT, id, Instant.now(), id, behaviour.getService())
+                .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+            exchange.sendResponseHeaders(500, body.length);
+        } else {
+            body = ("Simulated error of " + behaviour.getService()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(behaviour.getErrorStatus(), body.length);
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "latency and error injection of " + behaviour.getService();
+    }
+}
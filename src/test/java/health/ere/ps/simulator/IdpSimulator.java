@@ -0,0 +1,267 @@
+package health.ere.ps.simulator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.security.interfaces.ECPublicKey;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.spec.SecretKeySpec;
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.jose4j.json.JsonUtil;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.lang.JoseException;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import health.ere.ps.exception.idp.IdpJoseException;
+import health.ere.ps.model.idp.client.brainPoolExtension.BrainpoolAlgorithmSuiteIdentifiers;
+import health.ere.ps.model.idp.client.field.ClaimName;
+import health.ere.ps.model.idp.client.token.IdpJwe;
+import health.ere.ps.model.idp.client.token.TokenClaimExtraction;
+import health.ere.ps.service.idp.client.ClientUtilities;
+import health.ere.ps.service.idp.client.IdpHttpClientService;
+
+/**
+ * An IDP for the authorization code flow of the prescription service, see gemSpec_IDP_Dienst.
+ * The discovery document, the challenge and the tokens are signed with a generated
+ * brainpoolP256r1 key. The signature of the signed challenge is not checked, the PKCE code
+ * verifier is.
+ */
+public class IdpSimulator {
+
+    private static final Logger log = Logger.getLogger(IdpSimulator.class.getName());
+
+    private final ServiceBehaviour behaviour = new ServiceBehaviour("idp");
+    private final SimulatorCredentials signatureCredentials = SimulatorCredentials.create("IDP Sig Simulator");
+    private final SimulatorCredentials encryptionCredentials = SimulatorCredentials.create("IDP Enc Simulator");
+    // code -> claims of the challenge it was issued for
+    private final Map<String, Map<String, Object>> codes = new ConcurrentHashMap<>();
+    private volatile long tokenLifetimeSeconds = 300;
+    private String basePath;
+    private String baseUrl;
+
+    /**
+     * Serves the IDP below basePath, e.g. /idp. The discovery document is at
+     * basePath/.well-known/openid-configuration.
+     */
+    public void start(HttpServer server, String basePath, String baseUrl) {
+        this.basePath = basePath;
+        this.baseUrl = baseUrl;
+        HttpContext context = server.createContext(basePath, this::handle);
+        context.getFilters().add(new BehaviourFilter(behaviour, false));
+    }
+
+    public ServiceBehaviour getBehaviour() {
+        return behaviour;
+    }
+
+    public SimulatorCredentials getSignatureCredentials() {
+        return signatureCredentials;
+    }
+
+    /**
+     * Lifetime of the access tokens, a short lifetime makes the app request new tokens.
+     */
+    public void setTokenLifetimeSeconds(long tokenLifetimeSeconds) {
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(basePath.length());
+        String method = exchange.getRequestMethod();
+        try {
+            if (IdpHttpClientService.DISCOVERY_DOCUMENT_URI.equals(path)) {
+                Exchanges.send(exchange, 200, "application/jwt", discoveryDocument());
+            } else if ("/idpSig/jwk.json".equals(path)) {
+                Exchanges.send(exchange, 200, "application/json", jwk(signatureCredentials, "puk_idp_sig", "sig", true));
+            } else if ("/idpEnc/jwk.json".equals(path)) {
+                Exchanges.send(exchange, 200, "application/json", jwk(encryptionCredentials, "puk_idp_enc", "enc", false));
+            } else if ("/sign_response".equals(path) && "GET".equals(method)) {
+                Exchanges.send(exchange, 200, "application/json", challenge(Exchanges.query(exchange)));
+            } else if ("/sign_response".equals(path) && "POST".equals(method)) {
+                authenticate(exchange, Exchanges.form(exchange).get("signed_challenge"));
+            } else if ("/token".equals(path) && "POST".equals(method)) {
+                token(exchange, Exchanges.form(exchange));
+            } else {
+                Exchanges.send(exchange, 404, "text/plain", "Unknown IDP path " + path);
+            }
+        } catch (IdpJoseException | JoseException | RuntimeException e) {
+            log.log(Level.WARNING, "IDP simulator could not handle " + method + " " + path, e);
+            Exchanges.send(exchange, 400, "application/json", Json.createObjectBuilder()
+                .add("error", "invalid_request")
+                .add("error_description", String.valueOf(e.getMessage()))
+                .build().toString());
+        }
+    }
+
+    private String discoveryDocument() throws JoseException {
+        JwtClaims claims = claims(TimeUnit.HOURS.toSeconds(24));
+        claims.setClaim("authorization_endpoint", baseUrl + "/sign_response");
+        claims.setClaim("token_endpoint", baseUrl + "/token");
+        claims.setClaim("uri_disc", baseUrl + IdpHttpClientService.DISCOVERY_DOCUMENT_URI);
+        claims.setClaim("uri_puk_idp_enc", baseUrl + "/idpEnc/jwk.json");
+        claims.setClaim("uri_puk_idp_sig", baseUrl + "/idpSig/jwk.json");
+        claims.setClaim("jwks_uri", baseUrl + "/jwks");
+        claims.setClaim("scopes_supported", new String[]{"openid", "e-rezept"});
+        return sign(claims, "JWT");
+    }
+
+    private String jwk(SimulatorCredentials credentials, String keyId, String use, boolean withCertificate) {
+        ECPublicKey publicKey = (ECPublicKey) credentials.getKeyPair().getPublic();
+        Base64.Encoder base64Url = Base64.getUrlEncoder().withoutPadding();
+        var jwk = Json.createObjectBuilder()
+            .add(ClaimName.KEY_ID.getJoseName(), keyId)
+            .add("use", use)
+            .add("kty", "EC")
+            .add("crv", "BP-256")
+            .add("x", base64Url.encodeToString(unsigned32(publicKey.getW().getAffineX())))
+            .add("y", base64Url.encodeToString(unsigned32(publicKey.getW().getAffineY())));
+        if (withCertificate) {
+            try {
+                jwk.add(ClaimName.X509_CERTIFICATE_CHAIN.getJoseName(), Json.createArrayBuilder()
+                    .add(Base64.getEncoder().encodeToString(credentials.getCertificate().getEncoded())));
+            } catch (CertificateEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return jwk.build().toString();
+    }
+
+    private String challenge(Map<String, String> query) throws JoseException {
+        JwtClaims claims = claims(TimeUnit.MINUTES.toSeconds(3));
+        claims.setClaim(ClaimName.TOKEN_TYPE.getJoseName(), "challenge");
+        claims.setClaim(ClaimName.JWT_ID.getJoseName(), UUID.randomUUID().toString());
+        claims.setClaim(ClaimName.SERVER_NONCE.getJoseName(), UUID.randomUUID().toString());
+        for (ClaimName claim : new ClaimName[]{ClaimName.RESPONSE_TYPE, ClaimName.SCOPE, ClaimName.CLIENT_ID,
+            ClaimName.STATE, ClaimName.REDIRECT_URI, ClaimName.NONCE, ClaimName.CODE_CHALLENGE,
+            ClaimName.CODE_CHALLENGE_METHOD}) {
+            String value = query.get(claim.getJoseName());
+            if (value == null) {
+                throw new IllegalArgumentException("Parameter " + claim.getJoseName() + " is missing");
+            }
+            claims.setClaim(claim.getJoseName(), value);
+        }
+        JsonObject response = Json.createObjectBuilder()
+            .add("challenge", sign(claims, "JWT"))
+            .add("user_consent", Json.createObjectBuilder()
+                .add("requested_scopes", Json.createObjectBuilder()
+                    .add("openid", "Der Zugriff auf den ID-Token")
+                    .add("e-rezept", "Zugriff auf die E-Rezept-Funktionalität."))
+                .add("requested_claims", Json.createObjectBuilder()
+                    .add(ClaimName.PROFESSION_OID.getJoseName(), "Zustimmung zur Verarbeitung der Rolle")
+                    .add(ClaimName.ORGANIZATION_NAME.getJoseName(), "Zustimmung zur Verarbeitung der Organisationszugehörigkeit")
+                    .add(ClaimName.ID_NUMBER.getJoseName(), "Zustimmung zur Verarbeitung der Id (z.B. Krankenversichertennummer, Telematik-Id)")))
+            .build();
+        return response.toString();
+    }
+
+    /**
+     * The signed challenge is a JWE with the nested signed JWT, which contains the challenge.
+     */
+    private void authenticate(HttpExchange exchange, String signedChallenge) throws IdpJoseException, IOException {
+        if (signedChallenge == null) {
+            throw new IllegalArgumentException("Parameter signed_challenge is missing");
+        }
+        String signedJwt = (String) JsonUtil.parseJson(new IdpJwe(signedChallenge)
+            .decryptJweAndReturnPayloadString(encryptionCredentials.getPrivateKey()))
+            .get(ClaimName.NESTED_JWT.getJoseName());
+        String challenge = (String) TokenClaimExtraction.extractClaimsFromJwtBody(signedJwt)
+            .get(ClaimName.NESTED_JWT.getJoseName());
+        Map<String, Object> challengeClaims = TokenClaimExtraction.extractClaimsFromJwtBody(challenge);
+
+        String code = UUID.randomUUID().toString();
+        codes.put(code, challengeClaims);
+        exchange.getResponseHeaders().set("Location", challengeClaims.get(ClaimName.REDIRECT_URI.getJoseName())
+            + "?code=" + code + "&state=" + challengeClaims.get(ClaimName.STATE.getJoseName()));
+        Exchanges.send(exchange, 302, null, new byte[0]);
+    }
+
+    private void token(HttpExchange exchange, Map<String, String> form) throws IdpJoseException, JoseException, IOException {
+        Map<String, Object> challengeClaims = codes.remove(String.valueOf(form.get("code")));
+        if (challengeClaims == null) {
+            throw new IllegalArgumentException("Unknown code " + form.get("code"));
+        }
+        Map<String, Object> keyVerifier = JsonUtil.parseJson(new IdpJwe(form.get("key_verifier"))
+            .decryptJweAndReturnPayloadString(encryptionCredentials.getPrivateKey()));
+        String codeVerifier = (String) keyVerifier.get(ClaimName.CODE_VERIFIER.getJoseName());
+        if (!ClientUtilities.generateCodeChallenge(codeVerifier)
+            .equals(challengeClaims.get(ClaimName.CODE_CHALLENGE.getJoseName()))) {
+            throw new IllegalArgumentException("code_verifier does not match code_challenge");
+        }
+        SecretKeySpec tokenKey = new SecretKeySpec(Base64.getUrlDecoder()
+            .decode((String) keyVerifier.get(ClaimName.TOKEN_KEY.getJoseName())), "AES");
+
+        JwtClaims accessToken = userClaims(challengeClaims);
+        accessToken.setClaim(ClaimName.AUDIENCE.getJoseName(), "https://erp-test.zentral.erp.splitdns.ti-dienste.de/");
+        accessToken.setClaim(ClaimName.SCOPE.getJoseName(), challengeClaims.get(ClaimName.SCOPE.getJoseName()));
+        JwtClaims idToken = userClaims(challengeClaims);
+        idToken.setClaim(ClaimName.AUDIENCE.getJoseName(), challengeClaims.get(ClaimName.CLIENT_ID.getJoseName()));
+        idToken.setClaim(ClaimName.NONCE.getJoseName(), challengeClaims.get(ClaimName.NONCE.getJoseName()));
+
+        Exchanges.send(exchange, 200, "application/json", Json.createObjectBuilder()
+            .add("expires_in", tokenLifetimeSeconds)
+            .add("token_type", "Bearer")
+            .add("access_token", encrypt(sign(accessToken, "at+JWT"), tokenKey))
+            .add("id_token", encrypt(sign(idToken, "JWT"), tokenKey))
+            .build().toString());
+    }
+
+    private JwtClaims userClaims(Map<String, Object> challengeClaims) {
+        JwtClaims claims = claims(tokenLifetimeSeconds);
+        claims.setClaim(ClaimName.SUBJECT.getJoseName(), "simulator-" + challengeClaims.get(ClaimName.CLIENT_ID.getJoseName()));
+        claims.setClaim(ClaimName.AUTH_TIME.getJoseName(), claims.getClaimValue(ClaimName.ISSUED_AT.getJoseName()));
+        claims.setClaim(ClaimName.PROFESSION_OID.getJoseName(), "1.2.276.0.76.4.50");
+        claims.setClaim(ClaimName.ID_NUMBER.getJoseName(), "1-SMC-B-Testkarte-883110000095711");
+        claims.setClaim(ClaimName.ORGANIZATION_NAME.getJoseName(), "Praxis Dr. Simulator");
+        claims.setClaim(ClaimName.CLIENT_ID.getJoseName(), challengeClaims.get(ClaimName.CLIENT_ID.getJoseName()));
+        claims.setClaim(ClaimName.AUTHORIZED_PARTY.getJoseName(), challengeClaims.get(ClaimName.CLIENT_ID.getJoseName()));
+        claims.setClaim(ClaimName.AUTHENTICATION_CLASS_REFERENCE.getJoseName(), "gematik-ehealth-loa-high");
+        claims.setClaim(ClaimName.AUTHENTICATION_METHODS_REFERENCE.getJoseName(), new String[]{"mfa", "sc", "pin"});
+        claims.setClaim(ClaimName.JWT_ID.getJoseName(), UUID.randomUUID().toString());
+        return claims;
+    }
+
+    private JwtClaims claims(long lifetimeSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        JwtClaims claims = new JwtClaims();
+        claims.setClaim(ClaimName.ISSUER.getJoseName(), baseUrl);
+        claims.setClaim(ClaimName.ISSUED_AT.getJoseName(), now);
+        claims.setClaim(ClaimName.EXPIRES_AT.getJoseName(), now + lifetimeSeconds);
+        return claims;
+    }
+
+    private String sign(JwtClaims claims, String type) throws JoseException {
+        JsonWebSignature jws = new JsonWebSignature();
+        jws.setPayload(claims.toJson());
+        jws.setAlgorithmHeaderValue(BrainpoolAlgorithmSuiteIdentifiers.BRAINPOOL256_USING_SHA256);
+        jws.setHeader(ClaimName.TYPE.getJoseName(), type);
+        jws.setKeyIdHeaderValue("puk_idp_sig");
+        jws.setKey(signatureCredentials.getPrivateKey());
+        return jws.getCompactSerialization();
+    }
+
+    private static String encrypt(String jwt, SecretKeySpec tokenKey) {
+        return IdpJwe.createWithPayloadAndEncryptWithKey("{\"" + ClaimName.NESTED_JWT.getJoseName() + "\":\"" + jwt + "\"}",
+            tokenKey, "NJWT").getRawString();
+    }
+
+    private static byte[] unsigned32(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        byte[] result = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, result, 32 - length, length);
+        return result;
+    }
+}
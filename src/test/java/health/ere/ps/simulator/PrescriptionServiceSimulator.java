@@ -0,0 +1,265 @@
+package health.ere.ps.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.asn1.teletrust.TeleTrusTNamedCurves;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.agreement.ECDHBasicAgreement;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.HKDFParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
+import org.bouncycastle.util.BigIntegers;
+import org.bouncycastle.util.encoders.Hex;
+import org.hl7.fhir.r4.model.Coding;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.Task;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * The prescription service behind its VAU. Requests to basePath/VAU/{userpseudonym} are
+ * decrypted with the key of the VAU certificate and answered with an AES-GCM encrypted inner
+ * response, see gemSpec_Krypt chapter 7. Task $create, $activate and $abort are supported.
+ *
+ * The bearer token is not verified, an inner request without a token or with an expired
+ * token gets 401 like from the real service.
+ */
+public class PrescriptionServiceSimulator {
+
+    private static final Logger log = Logger.getLogger(PrescriptionServiceSimulator.class.getName());
+
+    private static final String FLOWTYPE_SYSTEM = "https://gematik.de/fhir/CodeSystem/Flowtype";
+    private static final String PRESCRIPTION_ID_SYSTEM = "https://gematik.de/fhir/NamingSystem/PrescriptionID";
+    private static final String ACCESS_CODE_SYSTEM = "https://gematik.de/fhir/NamingSystem/AccessCode";
+    private static final X9ECParameters BRAINPOOL_P256R1 = TeleTrusTNamedCurves.getByName("brainpoolP256r1");
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private final ServiceBehaviour behaviour = new ServiceBehaviour("prescription-service");
+    private volatile SimulatorCredentials vauCredentials = SimulatorCredentials.create("ERP VAU Simulator");
+    private final FhirContext fhirContext = FhirContext.forR4();
+    private final JwtConsumer bearerConsumer = new JwtConsumerBuilder()
+        .setSkipSignatureVerification()
+        .setSkipDefaultAudienceValidation()
+        .setRequireExpirationTime()
+        .build();
+    // prescription id -> task
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private final AtomicInteger prescriptionNumber = new AtomicInteger();
+    private final AtomicInteger userPseudonym = new AtomicInteger();
+    private String basePath;
+
+    /**
+     * Serves the prescription service below basePath, e.g. /erezept.
+     */
+    public void start(HttpServer server, String basePath) {
+        this.basePath = basePath;
+        HttpContext context = server.createContext(basePath, this::handle);
+        context.getFilters().add(new BehaviourFilter(behaviour, false));
+    }
+
+    public ServiceBehaviour getBehaviour() {
+        return behaviour;
+    }
+
+    public Map<String, Task> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Replaces the VAU certificate, requests that are encrypted for the former one are rejected.
+     */
+    public void rotateVauCertificate() {
+        vauCredentials = SimulatorCredentials.create("ERP VAU Simulator");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(basePath.length());
+        if (path.isEmpty() || "/".equals(path)) {
+            // isERezeptServiceReachable
+            Exchanges.send(exchange, 200, "text/plain", "ok");
+        } else if ("/VAUCertificate".equals(path)) {
+            try {
+                Exchanges.send(exchange, 200, "application/pkix-cert", vauCredentials.getCertificate().getEncoded());
+            } catch (CertificateEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        } else if (path.startsWith("/VAU/") && "POST".equals(exchange.getRequestMethod())) {
+            vau(exchange);
+        } else {
+            Exchanges.send(exchange, 404, "text/plain", "Unknown path " + path);
+        }
+    }
+
+    private void vau(HttpExchange exchange) throws IOException {
+        String[] request;
+        try {
+            request = new String(decrypt(exchange.getRequestBody().readAllBytes()), StandardCharsets.UTF_8)
+                .split(" ", 5);
+        } catch (InvalidCipherTextException | RuntimeException e) {
+            log.log(Level.WARNING, "Could not decrypt VAU request", e);
+            Exchanges.send(exchange, 400, "text/plain", "Could not decrypt VAU request");
+            return;
+        }
+        if (request.length != 5 || !"1".equals(request[0])) {
+            Exchanges.send(exchange, 400, "text/plain", "Invalid VAU request");
+            return;
+        }
+        String bearer = request[1];
+        String requestId = request[2];
+        byte[] aesKey = Hex.decode(request[3]);
+        String innerRequest = request[4];
+
+        String innerResponse;
+        int headerEnd = innerRequest.indexOf("\r\n\r\n");
+        String requestLine = innerRequest.substring(0, innerRequest.indexOf("\r\n"));
+        String body = headerEnd < 0 ? "" : innerRequest.substring(headerEnd + 4);
+        if (!isValid(bearer)) {
+            innerResponse = response(401, "Unauthorized", "");
+        } else {
+            innerResponse = route(requestLine, body);
+        }
+
+        byte[] nonce = new byte[12];
+        secureRandom.nextBytes(nonce);
+        byte[] encrypted;
+        try {
+            encrypted = aesGcm(true, aesKey, nonce,
+                ("1 " + requestId + " " + innerResponse).getBytes(StandardCharsets.UTF_8));
+        } catch (InvalidCipherTextException e) {
+            throw new IOException(e);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(nonce);
+        out.write(encrypted);
+        exchange.getResponseHeaders().set("userpseudonym", String.valueOf(userPseudonym.incrementAndGet()));
+        Exchanges.send(exchange, 200, "application/octet-stream", out.toByteArray());
+    }
+
+    private boolean isValid(String bearer) {
+        try {
+            bearerConsumer.process(bearer);
+            return true;
+        } catch (InvalidJwtException e) {
+            log.fine("Rejected bearer token: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private String route(String requestLine, String body) {
+        // e.g. POST /erezept/Task/160.000.000.000.001.00/$activate HTTP/1.1
+        String[] parts = requestLine.split(" ");
+        String path = parts.length > 1 ? parts[1] : "";
+        if (path.endsWith("/Task/$create")) {
+            return create(body);
+        }
+        String[] segments = path.split("/");
+        if (segments.length >= 3 && "Task".equals(segments[segments.length - 3])) {
+            Task task = tasks.get(segments[segments.length - 2]);
+            if (task == null) {
+                return response(404, "Not Found", "");
+            }
+            String operation = segments[segments.length - 1];
+            if ("$activate".equals(operation)) {
+                task.setStatus(Task.TaskStatus.READY);
+                return response(200, "OK", fhirContext.newXmlParser().encodeResourceToString(task));
+            } else if ("$abort".equals(operation)) {
+                task.setStatus(Task.TaskStatus.CANCELLED);
+                return response(204, "No Content", "");
+            }
+        }
+        return response(404, "Not Found", "");
+    }
+
+    private String create(String body) {
+        Parameters parameters = fhirContext.newXmlParser().parseResource(Parameters.class, body);
+        String flowtype = parameters.getParameter().stream()
+            .filter(parameter -> "workflowType".equals(parameter.getName()))
+            .map(parameter -> (Coding) parameter.getValue())
+            .filter(coding -> FLOWTYPE_SYSTEM.equals(coding.getSystem()))
+            .map(Coding::getCode)
+            .findFirst().orElse("160");
+        int number = prescriptionNumber.incrementAndGet();
+        String prescriptionId = String.format("%s.000.000.%03d.%03d.00", flowtype, number / 1000 % 1000, number % 1000);
+
+        Task task = new Task();
+        task.setId(prescriptionId);
+        task.setStatus(Task.TaskStatus.DRAFT);
+        task.setIntent(Task.TaskIntent.ORDER);
+        task.addIdentifier().setSystem(PRESCRIPTION_ID_SYSTEM).setValue(prescriptionId);
+        task.addIdentifier().setSystem(ACCESS_CODE_SYSTEM)
+            .setValue(UUID.randomUUID().toString().replace("-", "") + UUID.randomUUID().toString().replace("-", ""));
+        tasks.put(prescriptionId, task);
+        return response(201, "Created", fhirContext.newXmlParser().encodeResourceToString(task));
+    }
+
+    private static String response(int status, String reason, String body) {
+        return "HTTP/1.1 " + status + " " + reason + "\r\n"
+            + "Content-Type: application/fhir+xml;charset=utf-8\r\n"
+            + "Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n"
+            + body;
+    }
+
+    /**
+     * Decrypts 0x01 || X || Y || IV || ciphertext with the private key of the VAU certificate.
+     */
+    private byte[] decrypt(byte[] message) throws InvalidCipherTextException {
+        if (message.length < 1 + 32 + 32 + 12 + 16 || message[0] != 0x01) {
+            throw new IllegalArgumentException("Invalid VAU message");
+        }
+        ECDomainParameters domain = new ECDomainParameters(BRAINPOOL_P256R1.getCurve(), BRAINPOOL_P256R1.getG(),
+            BRAINPOOL_P256R1.getN(), BRAINPOOL_P256R1.getH());
+        ECPublicKeyParameters clientKey = new ECPublicKeyParameters(BRAINPOOL_P256R1.getCurve().createPoint(
+            new BigInteger(1, Arrays.copyOfRange(message, 1, 33)),
+            new BigInteger(1, Arrays.copyOfRange(message, 33, 65))), domain);
+
+        ECDHBasicAgreement agreement = new ECDHBasicAgreement();
+        agreement.init(new ECPrivateKeyParameters(((BCECPrivateKey) vauCredentials.getPrivateKey()).getD(), domain));
+        // the x coordinate of the shared point, left padded to 32 bytes
+        byte[] sharedSecret = BigIntegers.asUnsignedByteArray(32, agreement.calculateAgreement(clientKey));
+
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(sharedSecret, new byte[0], "ecies-vau-transport".getBytes(StandardCharsets.UTF_8)));
+        byte[] key = new byte[16];
+        hkdf.generateBytes(key, 0, key.length);
+
+        return aesGcm(false, key, Arrays.copyOfRange(message, 65, 77), Arrays.copyOfRange(message, 77, message.length));
+    }
+
+    private static byte[] aesGcm(boolean encrypt, byte[] key, byte[] nonce, byte[] input)
+        throws InvalidCipherTextException {
+        GCMBlockCipher cipher = new GCMBlockCipher(new AESEngine());
+        cipher.init(encrypt, new AEADParameters(new KeyParameter(key), 128, nonce));
+        byte[] output = new byte[cipher.getOutputSize(input.length)];
+        int length = cipher.processBytes(input, 0, input.length, output, 0);
+        length += cipher.doFinal(output, length);
+        return length == output.length ? output : Arrays.copyOf(output, length);
+    }
+}
@@ -0,0 +1,89 @@
+package health.ere.ps.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency and error injection of one simulated service. The values can be changed while the
+ * simulator runs, e.g. to let a load test see a slow connector after some minutes.
+ *
+ * Defaults are read from the system properties ere.simulator.&lt;service&gt;.latency-ms,
+ * ere.simulator.&lt;service&gt;.jitter-ms, ere.simulator.&lt;service&gt;.error-rate and
+ * ere.simulator.&lt;service&gt;.error-status, e.g. ere.simulator.connector.latency-ms=200.
+ */
+public class ServiceBehaviour {
+
+    private final String service;
+    private volatile long latencyMs;
+    private volatile long jitterMs;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+
+    public ServiceBehaviour(String service) {
+        this.service = service;
+        String prefix = "ere.simulator." + service + ".";
+        latencyMs = Long.getLong(prefix + "latency-ms", 0L);
+        jitterMs = Long.getLong(prefix + "jitter-ms", 0L);
+        errorRate = Double.parseDouble(System.getProperty(prefix + "error-rate", "0"));
+        errorStatus = Integer.getInteger(prefix + "error-status", 503);
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public long getLatencyMs() {
+        return latencyMs;
+    }
+
+    /**
+     * Every request waits latencyMs plus a random value between 0 and jitterMs.
+     */
+    public ServiceBehaviour setLatency(long latencyMs, long jitterMs) {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        return this;
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * Share of the requests between 0 and 1 that fail. The connector answers them with a
+     * SOAP fault, the IDP and the prescription service with errorStatus.
+     */
+    public ServiceBehaviour setErrorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("error rate has to be between 0 and 1 but was " + errorRate);
+        }
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public ServiceBehaviour setErrorStatus(int errorStatus) {
+        this.errorStatus = errorStatus;
+        return this;
+    }
+
+    public ServiceBehaviour reset() {
+        latencyMs = 0;
+        jitterMs = 0;
+        errorRate = 0;
+        errorStatus = 503;
+        return this;
+    }
+
+    long nextDelayMs() {
+        long jitter = jitterMs;
+        return latencyMs + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+    }
+
+    boolean nextFails() {
+        double rate = errorRate;
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
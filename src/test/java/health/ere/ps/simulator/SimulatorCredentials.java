@@ -0,0 +1,120 @@
+package health.ere.ps.simulator;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.jose4j.jws.EcdsaUsingShaAlgorithm;
+
+/**
+ * A brainpoolP256r1 key pair with a self signed certificate. The simulators use it for the
+ * cards of the connector, the keys of the IDP and the VAU certificate.
+ */
+public class SimulatorCredentials {
+
+    static {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private final KeyPair keyPair;
+    private final X509Certificate certificate;
+
+    private SimulatorCredentials(KeyPair keyPair, X509Certificate certificate) {
+        this.keyPair = keyPair;
+        this.certificate = certificate;
+    }
+
+    public static SimulatorCredentials create(String commonName) {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC", BouncyCastleProvider.PROVIDER_NAME);
+            keyPairGenerator.initialize(new ECGenParameterSpec("brainpoolP256r1"), secureRandom);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            X500Name name = new X500Name("CN=" + commonName + ",O=ere.health Simulator,C=DE");
+            Instant now = Instant.now();
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name,
+                BigInteger.valueOf(now.toEpochMilli()), Date.from(now.minus(Duration.ofDays(1))),
+                Date.from(now.plus(Duration.ofDays(365))), name, keyPair.getPublic());
+            X509Certificate certificate = new JcaX509CertificateConverter()
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withECDSA")
+                    .setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(keyPair.getPrivate())));
+            return new SimulatorCredentials(keyPair, certificate);
+        } catch (GeneralSecurityException | OperatorCreationException e) {
+            throw new IllegalStateException("Could not create credentials for " + commonName, e);
+        }
+    }
+
+    public KeyPair getKeyPair() {
+        return keyPair;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return keyPair.getPrivate();
+    }
+
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * Signs a SHA-256 hash like ExternalAuthenticate of a card. The signature is returned as
+     * R || S, the format of a JWS signature.
+     */
+    public byte[] signHash(byte[] hash) {
+        try {
+            Signature signature = Signature.getInstance("NONEwithECDSA", BouncyCastleProvider.PROVIDER_NAME);
+            signature.initSign(keyPair.getPrivate(), secureRandom);
+            signature.update(hash);
+            return EcdsaUsingShaAlgorithm.convertDerToConcatenated(signature.sign(), 64);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Could not sign hash", e);
+        }
+    }
+
+    /**
+     * Creates an enveloping CMS signature of the document, like SignDocument with
+     * IncludeEContent of a connector that does not add revocation info.
+     */
+    public byte[] signCades(byte[] document) {
+        try {
+            CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+            generator.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(
+                new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build())
+                .build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                    .build(keyPair.getPrivate()), certificate));
+            generator.addCertificates(new JcaCertStore(List.of(certificate)));
+            return generator.generate(new CMSProcessableByteArray(document), true).getEncoded();
+        } catch (GeneralSecurityException | OperatorCreationException | CMSException | IOException e) {
+            throw new IllegalStateException("Could not sign document", e);
+        }
+    }
+}
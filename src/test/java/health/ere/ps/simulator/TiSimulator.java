@@ -0,0 +1,144 @@
+package health.ere.ps.simulator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import health.ere.ps.simulator.connector.ConnectorSimulator;
+
+/**
+ * The services of the telematics infrastructure the app talks to when it creates a
+ * prescription: connector, IDP and prescription service. All of them run in one HTTP server
+ * on localhost, so tests and load tests do not need a Titus or RU access.
+ *
+ * Latency and errors can be injected per service with {@link ServiceBehaviour}, either in the
+ * test or with the system properties ere.simulator.connector.latency-ms,
+ * ere.simulator.idp.error-rate, ere.simulator.prescription-service.jitter-ms etc.
+ */
+public class TiSimulator {
+
+    private static final Logger log = Logger.getLogger(TiSimulator.class.getName());
+
+    private final ConnectorSimulator connector = new ConnectorSimulator();
+    private final IdpSimulator idp = new IdpSimulator();
+    private final PrescriptionServiceSimulator prescriptionService = new PrescriptionServiceSimulator();
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Creates a simulator that listens on a free port.
+     */
+    public TiSimulator() {
+        this(0);
+    }
+
+    public TiSimulator(int port) {
+        this.port = port;
+    }
+
+    public synchronized TiSimulator start() throws IOException {
+        if (server != null) {
+            return this;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ti-simulator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        connector.start(server, "/connector", getBaseUrl() + "/connector");
+        idp.start(server, "/idp", getIdpUrl());
+        prescriptionService.start(server, "/erezept");
+        server.start();
+        log.info("TI simulator listening on " + getBaseUrl());
+        return this;
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        connector.stop();
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public String getConnectorUrl() {
+        return getBaseUrl() + "/connector";
+    }
+
+    public String getIdpUrl() {
+        return getBaseUrl() + "/idp";
+    }
+
+    public String getPrescriptionServiceUrl() {
+        return getBaseUrl() + "/erezept";
+    }
+
+    public ConnectorSimulator getConnector() {
+        return connector;
+    }
+
+    public IdpSimulator getIdp() {
+        return idp;
+    }
+
+    public PrescriptionServiceSimulator getPrescriptionService() {
+        return prescriptionService;
+    }
+
+    /**
+     * Sets latency and error injection of all services back to the configured values.
+     */
+    public void reset() {
+        connector.getBehaviour().reset();
+        idp.getBehaviour().reset();
+        prescriptionService.getBehaviour().reset();
+    }
+
+    /**
+     * The configuration that points the app to this simulator.
+     */
+    public Map<String, String> getConfigOverrides() {
+        Map<String, String> config = new HashMap<>();
+        config.put("connector.base-uri", getConnectorUrl());
+        config.put("connector.version", "PTV4+");
+        config.put("connector.crypt", "ECC");
+        config.put("connector.mandant-id", "Mandant1");
+        config.put("connector.workplace-id", "Workplace1");
+        config.put("connector.client-system-id", "ClientID1");
+        config.put("connector.user-id", "User1");
+        config.put("connector.verify-hostname", "false");
+        config.put("idp.base.url", getIdpUrl());
+        config.put("idp.client.id", "gematikTestPs");
+        config.put("idp.auth.request.redirect.url", "http://test-ps.gematik.de/erezept");
+        config.put("ere.workflow-service.prescription.server.url", getPrescriptionServiceUrl());
+        config.put("ere-workflow-service.vau.enable", "true");
+        return config;
+    }
+
+    /**
+     * Runs the simulator on the given port (default 8090) until the process is stopped, e.g.
+     * for a development instance or a load test of the app.
+     */
+    public static void main(String[] args) throws IOException {
+        TiSimulator simulator = new TiSimulator(args.length > 0 ? Integer.parseInt(args[0]) : 8090).start();
+        simulator.getConfigOverrides().forEach((key, value) -> System.out.println(key + "=" + value));
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+    }
+}
@@ -0,0 +1,67 @@
+package health.ere.ps.simulator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.inject.Inject;
+
+import org.hl7.fhir.r4.model.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.exception.connector.ConnectorCardsException;
+import health.ere.ps.profile.SimulatorTestProfile;
+import health.ere.ps.service.connector.cards.ConnectorCardsService;
+import health.ere.ps.service.gematik.ERezeptWorkflowService;
+import health.ere.ps.simulator.connector.ConnectorSimulator;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+
+@QuarkusTest
+@TestProfile(SimulatorTestProfile.class)
+public class TiSimulatorTest {
+
+    @Inject
+    ERezeptWorkflowService eRezeptWorkflowService;
+    @Inject
+    ConnectorCardsService connectorCardsService;
+
+    @AfterEach
+    void resetSimulator() {
+        SimulatorTestProfile.getSimulator().reset();
+    }
+
+    @Test
+    void testCreateAndAbortTask() {
+        // logs in at the IDP with the SMC-B of the connector and calls the prescription service through the VAU
+        Task task = eRezeptWorkflowService.createERezeptTask(true, null, "160");
+
+        String prescriptionId = task.getIdElement().getIdPart();
+        assertNotNull(SimulatorTestProfile.getSimulator().getPrescriptionService().getTasks().get(prescriptionId));
+        assertEquals(Task.TaskStatus.DRAFT, task.getStatus());
+
+        String accessCode = task.getIdentifier().stream()
+            .filter(identifier -> "https://gematik.de/fhir/NamingSystem/AccessCode".equals(identifier.getSystem()))
+            .findFirst().orElseThrow().getValue();
+        eRezeptWorkflowService.abortERezeptTask(prescriptionId, accessCode);
+        assertEquals(Task.TaskStatus.CANCELLED,
+            SimulatorTestProfile.getSimulator().getPrescriptionService().getTasks().get(prescriptionId).getStatus());
+    }
+
+    @Test
+    void testCardHandleWithLatency() throws ConnectorCardsException {
+        SimulatorTestProfile.getSimulator().getConnector().getBehaviour().setLatency(50, 10);
+
+        assertEquals(ConnectorSimulator.SMCB_CARD_HANDLE,
+            connectorCardsService.getConnectorCardHandle(ConnectorCardsService.CardHandleType.SMC_B));
+    }
+
+    @Test
+    void testConnectorFault() {
+        SimulatorTestProfile.getSimulator().getConnector().getBehaviour().setErrorRate(1.0);
+
+        assertThrows(ConnectorCardsException.class,
+            () -> connectorCardsService.getConnectorCardHandle(ConnectorCardsService.CardHandleType.HBA));
+    }
+}
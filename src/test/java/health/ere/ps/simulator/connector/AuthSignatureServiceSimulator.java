@@ -0,0 +1,41 @@
+package health.ere.ps.simulator.connector;
+
+import javax.jws.WebService;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureServicePortType;
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.signatureservice.v7.BinaryDocumentType;
+import de.gematik.ws.conn.signatureservice.v7.ExternalAuthenticate;
+import oasis.names.tc.dss._1_0.core.schema.Base64Signature;
+import oasis.names.tc.dss._1_0.core.schema.SignatureObject;
+
+/**
+ * Signs the hash with the key of the card, the signature is returned as R || S like an ECC
+ * SMC-B does it.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.authsignatureservice.wsdl.v7.AuthSignatureServicePortType",
+    serviceName = "AuthSignatureService", portName = "AuthSignatureServicePort",
+    targetNamespace = "http://ws.gematik.de/conn/AuthSignatureService/WSDL/v7.4")
+public class AuthSignatureServiceSimulator implements AuthSignatureServicePortType {
+
+    private final ConnectorSimulator connector;
+
+    public AuthSignatureServiceSimulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public void externalAuthenticate(String cardHandle, ContextType context,
+                                     ExternalAuthenticate.OptionalInputs optionalInputs, BinaryDocumentType binaryString,
+                                     Holder<Status> status, Holder<SignatureObject> signatureObject) {
+        Base64Signature signature = new Base64Signature();
+        signature.setType("urn:bsi:tr:03111:ecdsa");
+        signature.setValue(connector.getCredentials(cardHandle).signHash(binaryString.getBase64Data().getValue()));
+        SignatureObject result = new SignatureObject();
+        result.setBase64Signature(signature);
+        status.value = ConnectorSimulator.ok();
+        signatureObject.value = result;
+    }
+}
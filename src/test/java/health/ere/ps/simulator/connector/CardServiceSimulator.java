@@ -0,0 +1,69 @@
+package health.ere.ps.simulator.connector;
+
+import java.math.BigInteger;
+
+import javax.jws.WebService;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.cardservice.v8.AuthorizeSmc;
+import de.gematik.ws.conn.cardservice.v8.AuthorizeSmcResponse;
+import de.gematik.ws.conn.cardservice.v8.PinStatusEnum;
+import de.gematik.ws.conn.cardservice.wsdl.v8.CardServicePortType;
+import de.gematik.ws.conn.cardservicecommon.v2.PinResultEnum;
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+
+/**
+ * The PIN of every card is verified, every PIN operation succeeds.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.cardservice.wsdl.v8.CardServicePortType",
+    serviceName = "CardService", portName = "CardServicePort",
+    targetNamespace = "http://ws.gematik.de/conn/CardService/WSDL/v8.1")
+public class CardServiceSimulator implements CardServicePortType {
+
+    private final ConnectorSimulator connector;
+
+    public CardServiceSimulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public void verifyPin(ContextType context, String cardHandle, String pinTyp, Holder<Status> status,
+                          Holder<PinResultEnum> pinResult, Holder<BigInteger> leftTries) {
+        pinOk(cardHandle, status, pinResult, leftTries);
+    }
+
+    @Override
+    public void changePin(ContextType context, String cardHandle, String pinTyp, Holder<Status> status,
+                          Holder<PinResultEnum> pinResult, Holder<BigInteger> leftTries) {
+        pinOk(cardHandle, status, pinResult, leftTries);
+    }
+
+    @Override
+    public void unblockPin(ContextType context, String cardHandle, String pinTyp, Boolean setNewPin,
+                           Holder<Status> status, Holder<PinResultEnum> pinResult, Holder<BigInteger> leftTries) {
+        pinOk(cardHandle, status, pinResult, leftTries);
+    }
+
+    @Override
+    public void getPinStatus(ContextType context, String cardHandle, String pinTyp, Holder<Status> status,
+                             Holder<PinStatusEnum> pinStatus, Holder<BigInteger> leftTries) {
+        connector.getCredentials(cardHandle);
+        status.value = ConnectorSimulator.ok();
+        pinStatus.value = PinStatusEnum.VERIFIED;
+        leftTries.value = BigInteger.valueOf(3);
+    }
+
+    @Override
+    public AuthorizeSmcResponse authorizeSMC(AuthorizeSmc parameter) {
+        throw new UnsupportedOperationException("AuthorizeSMC is not simulated");
+    }
+
+    private void pinOk(String cardHandle, Holder<Status> status, Holder<PinResultEnum> pinResult,
+                       Holder<BigInteger> leftTries) {
+        connector.getCredentials(cardHandle);
+        status.value = ConnectorSimulator.ok();
+        pinResult.value = PinResultEnum.OK;
+        leftTries.value = BigInteger.valueOf(3);
+    }
+}
@@ -0,0 +1,74 @@
+package health.ere.ps.simulator.connector;
+
+import java.security.cert.CertificateEncodingException;
+import java.util.List;
+
+import javax.jws.WebService;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.certificateservice.v6.CertificateExpirationType;
+import de.gematik.ws.conn.certificateservice.v6.ReadCardCertificate;
+import de.gematik.ws.conn.certificateservice.v6.VerificationResultType;
+import de.gematik.ws.conn.certificateservice.v6.VerifyCertificateResponse;
+import de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateServicePortType;
+import de.gematik.ws.conn.certificateservicecommon.v2.CertRefEnum;
+import de.gematik.ws.conn.certificateservicecommon.v2.X509DataInfoListType;
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+
+/**
+ * Every card has one key, all requested certificate references return its certificate.
+ * Every certificate is valid.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.certificateservice.wsdl.v6.CertificateServicePortType",
+    serviceName = "CertificateService", portName = "CertificateServicePort",
+    targetNamespace = "http://ws.gematik.de/conn/CertificateService/WSDL/v6.0")
+public class CertificateServiceSimulator implements CertificateServicePortType {
+
+    private final ConnectorSimulator connector;
+
+    public CertificateServiceSimulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public void readCardCertificate(String cardHandle, ContextType context, ReadCardCertificate.CertRefList certRefList,
+                                    Holder<Status> status, Holder<X509DataInfoListType> x509DataInfoList) {
+        byte[] certificate;
+        try {
+            certificate = connector.getCredentials(cardHandle).getCertificate().getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        X509DataInfoListType list = new X509DataInfoListType();
+        for (CertRefEnum certRef : certRefList.getCertRef()) {
+            X509DataInfoListType.X509DataInfo.X509Data x509Data = new X509DataInfoListType.X509DataInfo.X509Data();
+            x509Data.setX509Certificate(certificate);
+            X509DataInfoListType.X509DataInfo x509DataInfo = new X509DataInfoListType.X509DataInfo();
+            x509DataInfo.setCertRef(certRef);
+            x509DataInfo.setX509Data(x509Data);
+            list.getX509DataInfo().add(x509DataInfo);
+        }
+        status.value = ConnectorSimulator.ok();
+        x509DataInfoList.value = list;
+    }
+
+    @Override
+    public void verifyCertificate(ContextType context, byte[] x509Certificate, XMLGregorianCalendar verificationTime,
+                                  Holder<Status> status,
+                                  Holder<VerifyCertificateResponse.VerificationStatus> verificationStatus,
+                                  Holder<VerifyCertificateResponse.RoleList> roleList) {
+        VerifyCertificateResponse.VerificationStatus valid = new VerifyCertificateResponse.VerificationStatus();
+        valid.setVerificationResult(VerificationResultType.VALID);
+        status.value = ConnectorSimulator.ok();
+        verificationStatus.value = valid;
+        roleList.value = new VerifyCertificateResponse.RoleList();
+    }
+
+    @Override
+    public void checkCertificateExpiration(String cardHandle, ContextType context, Holder<Status> status,
+                                           Holder<List<CertificateExpirationType>> certificateExpiration) {
+        throw new UnsupportedOperationException("CheckCertificateExpiration is not simulated");
+    }
+}
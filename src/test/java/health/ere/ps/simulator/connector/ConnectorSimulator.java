@@ -0,0 +1,212 @@
+package health.ere.ps.simulator.connector;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.Duration;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.ws.Endpoint;
+
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.conn.cardservicecommon.v2.CardTypeType;
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import health.ere.ps.simulator.BehaviourFilter;
+import health.ere.ps.simulator.Exchanges;
+import health.ere.ps.simulator.ServiceBehaviour;
+import health.ere.ps.simulator.SimulatorCredentials;
+
+/**
+ * A connector with an SMC-B and an HBA. It announces its services in connector.sds and
+ * serves EventService, CardService, CertificateService, AuthSignatureService,
+ * SignatureService 7.4 and 7.5.5 and VSDService as SOAP endpoints below the base path.
+ *
+ * The cards sign with generated brainpoolP256r1 keys, so ExternalAuthenticate and
+ * SignDocument return real signatures that fit the certificates of ReadCardCertificate.
+ */
+public class ConnectorSimulator {
+
+    public static final String SMCB_CARD_HANDLE = "SMC-B-1";
+    public static final String HBA_CARD_HANDLE = "HBA-1";
+    public static final String SMCB_CARD_HOLDER_NAME = "Praxis Dr. Simulator";
+    public static final String HBA_CARD_HOLDER_NAME = "Dr. Simulator";
+
+    private final ServiceBehaviour behaviour = new ServiceBehaviour("connector");
+    private final Map<String, CardInfoType> cards = new LinkedHashMap<>();
+    private final Map<String, SimulatorCredentials> credentials = new LinkedHashMap<>();
+    private final Map<String, Boolean> comfortSignature = new LinkedHashMap<>();
+    private final AtomicInteger jobNumber = new AtomicInteger();
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private volatile String productType = "PTV4+";
+    private String basePath;
+    private String baseUrl;
+
+    public ConnectorSimulator() {
+        addCard(SMCB_CARD_HANDLE, CardTypeType.SMC_B, SMCB_CARD_HOLDER_NAME, "80276883110000095711", 1);
+        addCard(HBA_CARD_HANDLE, CardTypeType.HBA, HBA_CARD_HOLDER_NAME, "80276001011699901102", 2);
+    }
+
+    private void addCard(String cardHandle, CardTypeType cardType, String cardHolderName, String iccsn, int slot) {
+        CardInfoType card = new CardInfoType();
+        card.setCardHandle(cardHandle);
+        card.setCardType(cardType);
+        card.setCardHolderName(cardHolderName);
+        card.setIccsn(iccsn);
+        card.setCtId("CT-1");
+        card.setSlotId(BigInteger.valueOf(slot));
+        card.setInsertTime(now());
+        cards.put(cardHandle, card);
+        credentials.put(cardHandle, SimulatorCredentials.create(cardHolderName));
+    }
+
+    /**
+     * Publishes connector.sds and the SOAP endpoints below basePath, e.g. /connector.
+     */
+    public void start(HttpServer server, String basePath, String baseUrl) {
+        this.basePath = basePath;
+        this.baseUrl = baseUrl;
+        HttpContext sds = server.createContext(basePath + "/connector.sds", this::connectorSds);
+        sds.getFilters().add(new BehaviourFilter(behaviour, false));
+
+        publish(server, "EventService", new EventServiceSimulator(this));
+        publish(server, "CardService", new CardServiceSimulator(this));
+        publish(server, "CertificateService", new CertificateServiceSimulator(this));
+        publish(server, "AuthSignatureService", new AuthSignatureServiceSimulator(this));
+        publish(server, "SignatureService_V7_4", new SignatureServiceSimulator(this));
+        publish(server, "SignatureService_V7_5", new SignatureServiceV755Simulator(this));
+        publish(server, "VSDService", new VSDServiceSimulator());
+    }
+
+    private void publish(HttpServer server, String service, Object implementor) {
+        HttpContext context = server.createContext(basePath + "/ws/" + service);
+        Endpoint endpoint = Endpoint.create(implementor);
+        endpoint.publish(context);
+        context.getFilters().add(new BehaviourFilter(behaviour, true));
+        endpoints.add(endpoint);
+    }
+
+    public void stop() {
+        endpoints.forEach(Endpoint::stop);
+        endpoints.clear();
+    }
+
+    private void connectorSds(HttpExchange exchange) throws IOException {
+        String ws = baseUrl + "/ws/";
+        StringBuilder services = new StringBuilder();
+        service(services, "EventService", "7.2.0", ws + "EventService");
+        service(services, "CardService", "8.1.2", ws + "CardService");
+        service(services, "CertificateService", "6.0.1", ws + "CertificateService");
+        service(services, "AuthSignatureService", "7.4.1", ws + "AuthSignatureService");
+        // PTV4 connectors use the first version, PTV4+ connectors the 7.5 version
+        services.append("<SI:Service Name=\"SignatureService\"><SI:Versions>")
+            .append(version("7.4.1", ws + "SignatureService_V7_4"))
+            .append(version("7.5.5", ws + "SignatureService_V7_5"))
+            .append("</SI:Versions></SI:Service>");
+        service(services, "VSDService", "5.2.0", ws + "VSDService");
+
+        String sds = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<ConnectorServices xmlns=\"http://ws.gematik.de/conn/ServiceDirectory/v3.1\""
+            + " xmlns:SI=\"http://ws.gematik.de/conn/ServiceInformation/v2.0\""
+            + " xmlns:PI=\"http://ws.gematik.de/int/version/ProductInformation/v1.1\">"
+            + "<PI:ProductInformation><PI:InformationDate>2021-06-01T00:00:00</PI:InformationDate>"
+            + "<PI:ProductTypeInformation><PI:ProductType>Konnektor</PI:ProductType>"
+            + "<PI:ProductTypeVersion>4.0.0</PI:ProductTypeVersion></PI:ProductTypeInformation>"
+            + "<PI:ProductIdentification><PI:ProductVendorID>ERE</PI:ProductVendorID>"
+            + "<PI:ProductCode>SIM</PI:ProductCode></PI:ProductIdentification>"
+            + "<PI:ProductMiscellaneous><PI:ProductVendorName>ere.health</PI:ProductVendorName>"
+            + "<PI:ProductName>Simulator " + productType + "</PI:ProductName></PI:ProductMiscellaneous>"
+            + "</PI:ProductInformation>"
+            + "<TLSMandatory>false</TLSMandatory><ClientAutMandatory>false</ClientAutMandatory>"
+            + "<SI:ServiceInformation>" + services + "</SI:ServiceInformation>"
+            + "</ConnectorServices>";
+        Exchanges.send(exchange, 200, "application/xml; charset=utf-8", sds);
+    }
+
+    private static void service(StringBuilder services, String name, String version, String location) {
+        services.append("<SI:Service Name=\"").append(name).append("\"><SI:Versions>")
+            .append(version(version, location))
+            .append("</SI:Versions></SI:Service>");
+    }
+
+    private static String version(String version, String location) {
+        return "<SI:Version TargetNamespace=\"http://ws.gematik.de/conn/simulator\" Version=\"" + version + "\">"
+            + "<SI:EndpointTLS Location=\"" + location + "\"/></SI:Version>";
+    }
+
+    public ServiceBehaviour getBehaviour() {
+        return behaviour;
+    }
+
+    /**
+     * The product type in connector.sds, PTV4+ lets the app use SignatureService 7.5.5,
+     * PTV4 SignatureService 7.4.
+     */
+    public void setProductType(String productType) {
+        this.productType = productType;
+    }
+
+    public List<CardInfoType> getCards() {
+        return new ArrayList<>(cards.values());
+    }
+
+    CardInfoType getCard(String cardHandle) {
+        return cards.get(cardHandle);
+    }
+
+    public SimulatorCredentials getCredentials(String cardHandle) {
+        SimulatorCredentials cardCredentials = credentials.get(cardHandle);
+        if (cardCredentials == null) {
+            throw new IllegalArgumentException("Unknown card handle " + cardHandle);
+        }
+        return cardCredentials;
+    }
+
+    String nextJobNumber() {
+        return String.format("SIM-%03d", jobNumber.incrementAndGet() % 1000);
+    }
+
+    synchronized boolean isComfortSignatureActive(String cardHandle) {
+        return comfortSignature.getOrDefault(cardHandle, false);
+    }
+
+    synchronized void setComfortSignatureActive(String cardHandle, boolean active) {
+        comfortSignature.put(cardHandle, active);
+    }
+
+    synchronized void deactivateAllComfortSignatures() {
+        comfortSignature.clear();
+    }
+
+    static Status ok() {
+        Status status = new Status();
+        status.setResult("OK");
+        return status;
+    }
+
+    static Duration duration(String lexicalRepresentation) {
+        try {
+            return DatatypeFactory.newInstance().newDuration(lexicalRepresentation);
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static XMLGregorianCalendar now() {
+        try {
+            return DatatypeFactory.newInstance().newXMLGregorianCalendar(new GregorianCalendar());
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
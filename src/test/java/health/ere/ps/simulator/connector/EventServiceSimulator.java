@@ -0,0 +1,84 @@
+package health.ere.ps.simulator.connector;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import javax.jws.WebService;
+import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.cardservice.v8.CardInfoType;
+import de.gematik.ws.conn.cardservice.v8.Cards;
+import de.gematik.ws.conn.cardterminalinfo.v8.CardTerminalInfoType;
+import de.gematik.ws.conn.connectorcommon.v5.Connector;
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.eventservice.v7.GetCardTerminals;
+import de.gematik.ws.conn.eventservice.v7.GetCardTerminalsResponse;
+import de.gematik.ws.conn.eventservice.v7.GetCards;
+import de.gematik.ws.conn.eventservice.v7.GetCardsResponse;
+import de.gematik.ws.conn.eventservice.v7.GetSubscription;
+import de.gematik.ws.conn.eventservice.v7.GetSubscriptionResponse;
+import de.gematik.ws.conn.eventservice.v7.RenewSubscriptionsResponse;
+import de.gematik.ws.conn.eventservice.v7.SubscriptionType;
+import de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType;
+
+@WebService(endpointInterface = "de.gematik.ws.conn.eventservice.wsdl.v7.EventServicePortType",
+    serviceName = "EventService", portName = "EventServicePort",
+    targetNamespace = "http://ws.gematik.de/conn/EventService/WSDL/v7.2")
+public class EventServiceSimulator implements EventServicePortType {
+
+    private final ConnectorSimulator connector;
+
+    public EventServiceSimulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public GetCardsResponse getCards(GetCards parameter) {
+        Cards cards = new Cards();
+        for (CardInfoType card : connector.getCards()) {
+            if (parameter.getCardType() == null || parameter.getCardType() == card.getCardType()) {
+                cards.getCard().add(card);
+            }
+        }
+        GetCardsResponse response = new GetCardsResponse();
+        response.setStatus(ConnectorSimulator.ok());
+        response.setCards(cards);
+        return response;
+    }
+
+    @Override
+    public void subscribe(ContextType context, SubscriptionType subscription, Holder<Status> status,
+                          Holder<String> subscriptionID, Holder<XMLGregorianCalendar> terminationTime) {
+        throw new UnsupportedOperationException("Subscribe is not simulated");
+    }
+
+    @Override
+    public Status unsubscribe(ContextType context, String subscriptionID, String eventTo) {
+        throw new UnsupportedOperationException("Unsubscribe is not simulated");
+    }
+
+    @Override
+    public GetSubscriptionResponse getSubscription(GetSubscription parameter) {
+        throw new UnsupportedOperationException("GetSubscription is not simulated");
+    }
+
+    @Override
+    public void getResourceInformation(ContextType context, String ctId, BigInteger slotId, String iccsn,
+                                       String cardHandle, Holder<Status> status, Holder<CardInfoType> card,
+                                       Holder<CardTerminalInfoType> cardTerminal, Holder<Connector> connectorInfo) {
+        throw new UnsupportedOperationException("GetResourceInformation is not simulated");
+    }
+
+    @Override
+    public GetCardTerminalsResponse getCardTerminals(GetCardTerminals parameter) {
+        throw new UnsupportedOperationException("GetCardTerminals is not simulated");
+    }
+
+    @Override
+    public void renewSubscriptions(ContextType context, List<String> subscriptionID, Holder<Status> status,
+                                   Holder<RenewSubscriptionsResponse.SubscribeRenewals> subscribeRenewals) {
+        throw new UnsupportedOperationException("RenewSubscriptions is not simulated");
+    }
+}
@@ -0,0 +1,73 @@
+package health.ere.ps.simulator.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jws.WebService;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.signatureservice.v7.DocumentType;
+import de.gematik.ws.conn.signatureservice.v7.SignRequest;
+import de.gematik.ws.conn.signatureservice.v7.SignResponse;
+import de.gematik.ws.conn.signatureservice.v7.VerificationResultType;
+import de.gematik.ws.conn.signatureservice.v7.VerifyDocument;
+import de.gematik.ws.conn.signatureservice.v7.VerifyDocumentResponse;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740;
+import oasis.names.tc.dss._1_0.core.schema.Base64Signature;
+import oasis.names.tc.dss._1_0.core.schema.SignatureObject;
+
+/**
+ * SignatureService 7.4 of PTV4 connectors. Every document of a job is signed with CAdES.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV740",
+    serviceName = "SignatureServiceV7_4_0", portName = "SignatureServicePortV7_4_0",
+    targetNamespace = "http://ws.gematik.de/conn/SignatureService/WSDL/v7.4")
+public class SignatureServiceSimulator implements SignatureServicePortTypeV740 {
+
+    private final ConnectorSimulator connector;
+
+    public SignatureServiceSimulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public String getJobNumber(ContextType context) {
+        return connector.nextJobNumber();
+    }
+
+    @Override
+    public List<SignResponse> signDocument(String cardHandle, ContextType context, String tvMode, String jobNumber,
+                                           List<SignRequest> signRequest) {
+        List<SignResponse> responses = new ArrayList<>();
+        for (SignRequest request : signRequest) {
+            Base64Signature signature = new Base64Signature();
+            signature.setType("urn:ietf:rfc:5652");
+            signature.setValue(connector.getCredentials(cardHandle)
+                .signCades(request.getDocument().getBase64Data().getValue()));
+            SignatureObject signatureObject = new SignatureObject();
+            signatureObject.setBase64Signature(signature);
+
+            SignResponse response = new SignResponse();
+            response.setRequestID(request.getRequestID());
+            response.setStatus(ConnectorSimulator.ok());
+            response.setSignatureObject(signatureObject);
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    @Override
+    public void verifyDocument(ContextType context, String tvMode, VerifyDocument.OptionalInputs optionalInputs,
+                               DocumentType document, SignatureObject signatureObject, boolean includeRevocationInfo,
+                               Holder<Status> status, Holder<VerificationResultType> verificationResult,
+                               Holder<VerifyDocumentResponse.OptionalOutputs> optionalOutputs) {
+        throw new UnsupportedOperationException("VerifyDocument is not simulated");
+    }
+
+    @Override
+    public Status stopSignature(ContextType context, String jobNumber) {
+        return ConnectorSimulator.ok();
+    }
+}
@@ -0,0 +1,113 @@
+package health.ere.ps.simulator.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jws.WebService;
+import javax.xml.datatype.Duration;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.connectorcommon.v5.Status;
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.signatureservice.v7_5_5.ComfortSignatureStatusEnum;
+import de.gematik.ws.conn.signatureservice.v7_5_5.DocumentType;
+import de.gematik.ws.conn.signatureservice.v7_5_5.SignRequest;
+import de.gematik.ws.conn.signatureservice.v7_5_5.SessionInfo;
+import de.gematik.ws.conn.signatureservice.v7_5_5.SignResponse;
+import de.gematik.ws.conn.signatureservice.v7_5_5.SignatureModeEnum;
+import de.gematik.ws.conn.signatureservice.v7_5_5.VerificationResultType;
+import de.gematik.ws.conn.signatureservice.v7_5_5.VerifyDocument;
+import de.gematik.ws.conn.signatureservice.v7_5_5.VerifyDocumentResponse;
+import de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755;
+import oasis.names.tc.dss._1_0.core.schema.Base64Signature;
+import oasis.names.tc.dss._1_0.core.schema.SignatureObject;
+
+/**
+ * SignatureService 7.5.5 of PTV4+ connectors. Every document of a job is signed with CAdES,
+ * comfort signature can be switched on and off per card.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.signatureservice.wsdl.v7.SignatureServicePortTypeV755",
+    serviceName = "SignatureServiceV7_5_5", portName = "SignatureServicePortTypeV7_5_5",
+    targetNamespace = "http://ws.gematik.de/conn/SignatureService/WSDL/v7.5")
+public class SignatureServiceV755Simulator implements SignatureServicePortTypeV755 {
+
+    private final ConnectorSimulator connector;
+
+    public SignatureServiceV755Simulator(ConnectorSimulator connector) {
+        this.connector = connector;
+    }
+
+    @Override
+    public String getJobNumber(ContextType context) {
+        return connector.nextJobNumber();
+    }
+
+    @Override
+    public List<SignResponse> signDocument(String cardHandle, String crypt, ContextType context, String tvMode,
+                                           String jobNumber, List<SignRequest> signRequest) {
+        List<SignResponse> responses = new ArrayList<>();
+        for (SignRequest request : signRequest) {
+            Base64Signature signature = new Base64Signature();
+            signature.setType("urn:ietf:rfc:5652");
+            signature.setValue(connector.getCredentials(cardHandle)
+                .signCades(request.getDocument().getBase64Data().getValue()));
+            SignatureObject signatureObject = new SignatureObject();
+            signatureObject.setBase64Signature(signature);
+
+            SignResponse response = new SignResponse();
+            response.setRequestID(request.getRequestID());
+            response.setStatus(ConnectorSimulator.ok());
+            response.setSignatureObject(signatureObject);
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    @Override
+    public void verifyDocument(ContextType context, String tvMode, VerifyDocument.OptionalInputs optionalInputs,
+                               DocumentType document, SignatureObject signatureObject, boolean includeRevocationInfo,
+                               Holder<Status> status, Holder<VerificationResultType> verificationResult,
+                               Holder<VerifyDocumentResponse.OptionalOutputs> optionalOutputs) {
+        throw new UnsupportedOperationException("VerifyDocument is not simulated");
+    }
+
+    @Override
+    public Status stopSignature(ContextType context, String jobNumber) {
+        return ConnectorSimulator.ok();
+    }
+
+    @Override
+    public void activateComfortSignature(String cardHandle, ContextType context, Holder<Status> status,
+                                         Holder<SignatureModeEnum> signatureMode) {
+        connector.getCredentials(cardHandle);
+        connector.setComfortSignatureActive(cardHandle, true);
+        status.value = ConnectorSimulator.ok();
+        signatureMode.value = SignatureModeEnum.COMFORT;
+    }
+
+    @Override
+    public Status deactivateComfortSignature(List<String> cardHandle) {
+        if (cardHandle.isEmpty()) {
+            connector.deactivateAllComfortSignatures();
+        }
+        cardHandle.forEach(handle -> connector.setComfortSignatureActive(handle, false));
+        return ConnectorSimulator.ok();
+    }
+
+    @Override
+    public void getSignatureMode(String cardHandle, ContextType context, Holder<Status> status,
+                                 Holder<ComfortSignatureStatusEnum> comfortSignatureStatus,
+                                 Holder<Integer> comfortSignatureMax, Holder<Duration> comfortSignatureTimer,
+                                 Holder<SessionInfo> sessionInfo) {
+        boolean active = connector.isComfortSignatureActive(cardHandle);
+        status.value = ConnectorSimulator.ok();
+        comfortSignatureStatus.value = active ? ComfortSignatureStatusEnum.ENABLED : ComfortSignatureStatusEnum.DISABLED;
+        comfortSignatureMax.value = 250;
+        comfortSignatureTimer.value = ConnectorSimulator.duration("PT24H");
+        SessionInfo session = new SessionInfo();
+        session.setSignatureMode(active ? SignatureModeEnum.COMFORT : SignatureModeEnum.PIN);
+        session.setCountRemaining(active ? 250 : 0);
+        session.setTimeRemaining(ConnectorSimulator.duration(active ? "PT24H" : "PT0S"));
+        sessionInfo.value = session;
+    }
+}
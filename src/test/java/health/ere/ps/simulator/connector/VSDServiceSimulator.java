@@ -0,0 +1,67 @@
+package health.ere.ps.simulator.connector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import javax.jws.WebService;
+import javax.xml.ws.Holder;
+
+import de.gematik.ws.conn.connectorcontext.v2.ContextType;
+import de.gematik.ws.conn.vsds.vsdservice.v5.VSDServicePortType;
+import de.gematik.ws.conn.vsds.vsdservice.v5.VSDStatusType;
+
+/**
+ * Returns the same insurant for every eGK. Like a real connector the data is gzip compressed.
+ */
+@WebService(endpointInterface = "de.gematik.ws.conn.vsds.vsdservice.v5.VSDServicePortType",
+    serviceName = "VSDService", portName = "VSDServicePort",
+    targetNamespace = "http://ws.gematik.de/conn/vsds/VSDService/v5.2")
+public class VSDServiceSimulator implements VSDServicePortType {
+
+    private static final String PERSOENLICHE_VERSICHERTENDATEN = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<UC_PersoenlicheVersichertendatenXML CDM_VERSION=\"5.2.0\" xmlns=\"http://ws.gematik.de/fa/vsdm/vsd/v5.2\">"
+        + "<Versicherter><Versicherten_ID>X110000001</Versicherten_ID><Person>"
+        + "<Geburtsdatum>19700101</Geburtsdatum><Vorname>Max</Vorname><Nachname>Simulator</Nachname>"
+        + "<Geschlecht>M</Geschlecht><StrassenAdresse><Postleitzahl>10115</Postleitzahl><Ort>Berlin</Ort>"
+        + "<Land><Wohnsitzlaendercode>D</Wohnsitzlaendercode></Land><Strasse>Simulatorweg</Strasse>"
+        + "<Hausnummer>1</Hausnummer></StrassenAdresse></Person></Versicherter>"
+        + "</UC_PersoenlicheVersichertendatenXML>";
+    private static final String ALLGEMEINE_VERSICHERUNGSDATEN = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<UC_AllgemeineVersicherungsdatenXML CDM_VERSION=\"5.2.0\" xmlns=\"http://ws.gematik.de/fa/vsdm/vsd/v5.2\">"
+        + "<Versicherter><Versicherungsschutz><Beginn>20200101</Beginn><Kostentraeger>"
+        + "<Kostentraegerkennung>109500969</Kostentraegerkennung><Kostentraegerlaendercode>D</Kostentraegerlaendercode>"
+        + "<Name>Simulator Krankenkasse</Name></Kostentraeger></Versicherungsschutz>"
+        + "<Zusatzinfos><ZusatzinfosGKV><Versichertenart>1</Versichertenart></ZusatzinfosGKV></Zusatzinfos>"
+        + "</Versicherter></UC_AllgemeineVersicherungsdatenXML>";
+    private static final String GESCHUETZTE_VERSICHERTENDATEN = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<UC_GeschuetzteVersichertendatenXML CDM_VERSION=\"5.2.0\" xmlns=\"http://ws.gematik.de/fa/vsdm/vsd/v5.2\">"
+        + "<Zuzahlungsstatus><Status>0</Status></Zuzahlungsstatus></UC_GeschuetzteVersichertendatenXML>";
+
+    @Override
+    public void readVSD(String ehcHandle, String hpcHandle, boolean performOnlineCheck, boolean readOnlineReceipt,
+                        ContextType context, Holder<byte[]> persoenlicheVersichertendaten,
+                        Holder<byte[]> allgemeineVersicherungsdaten, Holder<byte[]> geschuetzteVersichertendaten,
+                        Holder<VSDStatusType> vsdStatus, Holder<byte[]> pruefungsnachweis) {
+        persoenlicheVersichertendaten.value = gzip(PERSOENLICHE_VERSICHERTENDATEN);
+        allgemeineVersicherungsdaten.value = gzip(ALLGEMEINE_VERSICHERUNGSDATEN);
+        geschuetzteVersichertendaten.value = gzip(GESCHUETZTE_VERSICHERTENDATEN);
+        VSDStatusType status = new VSDStatusType();
+        status.setStatus("0");
+        status.setVersion("5.2.0");
+        status.setTimestamp(ConnectorSimulator.now());
+        vsdStatus.value = status;
+        pruefungsnachweis.value = null;
+    }
+
+    private static byte[] gzip(String xml) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(xml.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
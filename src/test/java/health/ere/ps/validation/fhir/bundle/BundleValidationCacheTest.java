@@ -0,0 +1,54 @@
+package health.ere.ps.validation.fhir.bundle;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.StringReader;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Test;
+
+class BundleValidationCacheTest {
+
+    private static JsonValue parse(String json) {
+        return Json.createReader(new StringReader(json)).readValue();
+    }
+
+    @Test
+    void testKeyIgnoresKeyOrderAndWhitespace() {
+        JsonValue bundle1 = parse("{\"resourceType\":\"Bundle\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]},\"id\":\"1\"}");
+        JsonValue bundle2 = parse("{ \"id\" : \"1\",\n \"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]}, \"resourceType\":\"Bundle\"}");
+        JsonValue bundle3 = parse("{\"resourceType\":\"Bundle\",\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]},\"id\":\"2\"}");
+
+        assertEquals(BundleValidationCache.key(bundle1), BundleValidationCache.key(bundle2));
+        assertNotEquals(BundleValidationCache.key(bundle1), BundleValidationCache.key(bundle3));
+        assertEquals("https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2", BundleValidationCache.getProfile(bundle1));
+    }
+
+    @Test
+    void testKeyContainsProfileVersion() {
+        JsonValue bundle102 = parse("{\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2\"]}}");
+        JsonValue bundle101 = parse("{\"meta\":{\"profile\":[\"https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.1\"]}}");
+        assertNotEquals(BundleValidationCache.key(bundle101), BundleValidationCache.key(bundle102));
+        assertEquals("unknown", BundleValidationCache.getProfile(parse("{}")));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        BundleValidationCache cache = new BundleValidationCache(2);
+        JsonObject valid = Json.createObjectBuilder().add("valid", true).build();
+        cache.put("a", valid);
+        cache.put("b", valid);
+        cache.get("a");
+        cache.put("c", valid);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.size());
+    }
+}
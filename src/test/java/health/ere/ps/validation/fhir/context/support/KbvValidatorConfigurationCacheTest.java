@@ -0,0 +1,68 @@
+package health.ere.ps.validation.fhir.context.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.CodeSystem;
+import org.hl7.fhir.r4.model.StructureDefinition;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ca.uhn.fhir.context.FhirContext;
+
+class KbvValidatorConfigurationCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFingerprintChangesWithContent() throws IOException {
+        Path configDir = Files.createDirectory(tempDir.resolve("config"));
+        Files.writeString(configDir.resolve("KBV_CS_ERP_Test.xml"), "<CodeSystem/>", StandardCharsets.UTF_8);
+        String fingerprint1 = KbvValidatorConfigurationCache.fingerprint(configDir);
+
+        assertEquals(fingerprint1, KbvValidatorConfigurationCache.fingerprint(configDir));
+
+        Files.writeString(configDir.resolve("KBV_CS_ERP_Test.xml"), "<CodeSystem></CodeSystem>", StandardCharsets.UTF_8);
+        String fingerprint2 = KbvValidatorConfigurationCache.fingerprint(configDir);
+        assertNotEquals(fingerprint1, fingerprint2);
+
+        Files.writeString(configDir.resolve("KBV_VS_ERP_Test.xml"), "<ValueSet/>", StandardCharsets.UTF_8);
+        assertNotEquals(fingerprint2, KbvValidatorConfigurationCache.fingerprint(configDir));
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        FhirContext ctx = FhirContext.forR4();
+        KbvValidatorConfigurationCache cache = new KbvValidatorConfigurationCache(ctx,
+                tempDir.resolve("cache").resolve("kbv-validator-cache.ndjson.gz"));
+
+        assertNull(cache.read("fingerprint"));
+
+        StructureDefinition structureDefinition = new StructureDefinition();
+        structureDefinition.setUrl("https://fhir.kbv.de/StructureDefinition/KBV_PR_ERP_Bundle|1.0.2");
+        structureDefinition.getSnapshot().addElement().setPath("Bundle");
+        CodeSystem codeSystem = new CodeSystem();
+        codeSystem.setUrl("https://fhir.kbv.de/CodeSystem/KBV_CS_ERP_Section_Type");
+
+        cache.write("fingerprint", List.of(structureDefinition, codeSystem));
+
+        assertNull(cache.read("other-fingerprint"));
+        List<IBaseResource> resources = cache.read("fingerprint");
+        assertEquals(2, resources.size());
+        assertTrue(resources.get(0) instanceof StructureDefinition);
+        StructureDefinition cachedStructureDefinition = (StructureDefinition) resources.get(0);
+        assertEquals(structureDefinition.getUrl(), cachedStructureDefinition.getUrl());
+        assertEquals("Bundle", cachedStructureDefinition.getSnapshot().getElementFirstRep().getPath());
+        assertEquals(codeSystem.getUrl(), ((CodeSystem) resources.get(1)).getUrl());
+    }
+}
@@ -3,6 +3,7 @@ package health.ere.ps.vau;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 import org.apache.http.HttpException;
@@ -24,10 +25,10 @@ class VAUEngineTest {
         "\n"+
         "<OperationOutcome xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"http://hl7.org/fhir/StructureDefinition/OperationOutcome\"/></meta><issue><severity value=\"error\"/><code value=\"unknown\"/><details><text value=\"Access Token Error: Expired!\"/></details></issue></OperationOutcome>";
         VAUEngine vauEngine = new VAUEngine("");
-        vauEngine.requestid = "1c51e243bf3f657b8f9d0034e30aac40";
-        HttpResponse res = vauEngine.extractHttpResponse(testResponse);
+        vauEngine.requestid.set("1c51e243bf3f657b8f9d0034e30aac40");
+        HttpResponse res = vauEngine.extractHttpResponse(testResponse.getBytes(StandardCharsets.UTF_8));
         assertEquals(401, res.getStatusLine().getStatusCode());
         assertEquals("application/fhir+xml", res.getFirstHeader("content-type").getValue());
-        assertEquals("<OperationOutcome xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"http://hl7.org/fhir/StructureDefinition/OperationOutcome\"/></meta><issue><severity value=\"error\"/><code value=\"unknown\"/><details><text value=\"Access Token Error: Expired!\"/></details></issue></OperationOutcome>", new String(res.getEntity().getContent().readAllBytes()));
+        assertEquals("<OperationOutcome xmlns=\"http://hl7.org/fhir\"><meta><profile value=\"http://hl7.org/fhir/StructureDefinition/OperationOutcome\"/></meta><issue><severity value=\"error\"/><code value=\"unknown\"/><details><text value=\"Access Token Error: Expired!\"/></details></issue></OperationOutcome>", new String(res.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8));
     }
 }
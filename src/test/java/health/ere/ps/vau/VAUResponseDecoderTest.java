@@ -0,0 +1,73 @@
+package health.ere.ps.vau;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.junit.jupiter.api.Test;
+
+class VAUResponseDecoderTest {
+
+    private static final String REQUEST_ID = "1c51e243bf3f657b8f9d0034e30aac40";
+
+    @Test
+    void testDecodeWithCrLfAndUtf8Body() throws IOException, HttpException {
+        String body = "<Task xmlns=\"http://hl7.org/fhir\"><note><text value=\"Müller, 2× täglich\"/></note></Task>\r\n\r\nend";
+        byte[] response = ("1 " + REQUEST_ID + " HTTP/1.1 201 Created\r\n"
+            + "Content-Type: application/fhir+xml;charset=utf-8\r\n"
+            + "Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body)
+            .getBytes(StandardCharsets.UTF_8);
+
+        HttpResponse res = VAUResponseDecoder.decode(response, REQUEST_ID);
+
+        assertEquals(201, res.getStatusLine().getStatusCode());
+        assertEquals("Created", res.getStatusLine().getReasonPhrase());
+        assertEquals(2, res.getAllHeaders().length);
+        assertEquals(StandardCharsets.UTF_8, ContentType.get(res.getEntity()).getCharset());
+        assertEquals(body, new String(res.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testDecodeWithOffsetAndEmptyBody() throws IOException, HttpException {
+        byte[] response = ("xx1 " + REQUEST_ID + " HTTP/1.1 204 No Content\n\nyy").getBytes(StandardCharsets.US_ASCII);
+
+        HttpResponse res = VAUResponseDecoder.decode(response, 2, response.length - 4, REQUEST_ID);
+
+        assertEquals(204, res.getStatusLine().getStatusCode());
+        assertEquals(0, res.getEntity().getContentLength());
+        assertEquals(StandardCharsets.UTF_8, ContentType.get(res.getEntity()).getCharset());
+    }
+
+    @Test
+    void testDecodeRejectsOtherRequestIdAndMissingHeaderEnd() {
+        byte[] otherRequestId = ("1 " + REQUEST_ID.replace('1', '2') + " HTTP/1.1 200 OK\r\n\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        assertThrows(RuntimeException.class, () -> VAUResponseDecoder.decode(otherRequestId, REQUEST_ID));
+
+        byte[] noHeaderEnd = ("1 " + REQUEST_ID + " HTTP/1.1 200 OK\r\nContent-Length: 0\r\n")
+            .getBytes(StandardCharsets.US_ASCII);
+        assertThrows(RuntimeException.class, () -> VAUResponseDecoder.decode(noHeaderEnd, REQUEST_ID));
+
+        byte[] noRequestId = "1 HTTP/1.1 200 OK\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(RuntimeException.class, () -> VAUResponseDecoder.decode(noRequestId, REQUEST_ID));
+    }
+
+    @Test
+    void testReadEncrypted() throws IOException {
+        byte[] data = new byte[20000];
+        Arrays.fill(data, (byte) 7);
+
+        assertArrayEquals(data, VAUResponseDecoder.readEncrypted(new ByteArrayInputStream(data), data.length));
+        assertArrayEquals(data, VAUResponseDecoder.readEncrypted(new ByteArrayInputStream(data), -1));
+        assertThrows(IOException.class,
+            () -> VAUResponseDecoder.readEncrypted(new ByteArrayInputStream(data), data.length + 1));
+    }
+}
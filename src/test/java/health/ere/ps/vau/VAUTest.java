@@ -1,12 +1,16 @@
 package health.ere.ps.vau;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.KeyStore;
+import java.util.Arrays;
 import java.util.logging.LogManager;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -16,9 +20,12 @@ import javax.xml.bind.DatatypeConverter;
 import javax.xml.ws.BindingProvider;
 
 import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.params.ECDomainParameters;
 import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
 import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.params.HKDFParameters;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -104,6 +111,36 @@ public class VAUTest {
         VAU.decryptWithKey(DatatypeConverter.parseHexBinary(cipherText), DatatypeConverter.parseHexBinary(ase128));
     }
 
+    @Test
+    public void testEncryptWithEphemeralKeyAndDecryptAsVAU() throws Exception {
+        ECDomainParameters ecDomain = VAU.getECDomain();
+        BigInteger vauPrivateKey = new BigInteger(EccPrivateKey, 16);
+        ECPoint vauPublicKey = ecDomain.getG().multiply(vauPrivateKey).normalize();
+        VAU vau = new VAU();
+        vau.useVauPublicKey(new KeyCoords(vauPublicKey.getAffineXCoord().toBigInteger(),
+                vauPublicKey.getAffineYCoord().toBigInteger()));
+        byte[] message = ("1 " + Message + " äöü").getBytes(StandardCharsets.UTF_8);
+
+        byte[] encrypted = vau.encrypt(message);
+
+        assertEquals(1 + 32 + 32 + 12 + message.length + 16, encrypted.length);
+        assertEquals(0x01, encrypted[0]);
+        ECPoint ephemeralPublicKey = VAU.x9EC.getCurve().createPoint(
+                new BigInteger(1, Arrays.copyOfRange(encrypted, 1, 33)),
+                new BigInteger(1, Arrays.copyOfRange(encrypted, 33, 65)));
+        byte[] sharedSecret = ephemeralPublicKey.multiply(vauPrivateKey).normalize().getAffineXCoord().getEncoded();
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(sharedSecret, new byte[0], "ecies-vau-transport".getBytes()));
+        byte[] aesKey = new byte[16];
+        hkdf.generateBytes(aesKey, 0, aesKey.length);
+
+        // IV || cipher text || tag is read in place behind the public key
+        assertArrayEquals(message, VAU.decryptWithKey(encrypted, 65, encrypted.length - 65, aesKey));
+        // the second request uses a new ephemeral key
+        assertFalse(Arrays.equals(Arrays.copyOfRange(encrypted, 1, 65),
+                Arrays.copyOfRange(vau.encrypt(message), 1, 65)));
+    }
+
     @Test
     public void testMake32ByteLong() throws Exception {
         byte[] bLength32 = new byte[] {
@@ -0,0 +1,56 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.model.pdf.ERezeptDocument;
+
+class BinaryAttachmentEncoderTest {
+
+    @Test
+    void testEncodeSplitsAttachmentsIntoChunks() {
+        byte[] pdf = new byte[25];
+        for (int i = 0; i < pdf.length; i++) {
+            pdf[i] = (byte) i;
+        }
+        ERezeptDocument document = new ERezeptDocument(List.of(), pdf);
+
+        List<Object> frames = new BinaryAttachmentEncoder(10).encode("ERezeptWithDocuments", List.of(document), "1");
+
+        assertEquals(4, frames.size());
+        String text = (String) frames.get(0);
+        assertFalse(text.contains("\n"));
+        JsonObject message = Json.createReader(new StringReader(text)).readObject();
+        assertEquals("ERezeptWithDocuments", message.getString("type"));
+        assertEquals(1, message.getInt("attachments"));
+        JsonObject reference = message.getJsonArray("payload").getJsonObject(0).getJsonObject("pdfDocument");
+        assertEquals(25, reference.getInt("size"));
+        UUID id = UUID.fromString(reference.getString("attachmentId"));
+
+        byte[] reassembled = new byte[25];
+        int offset = 0;
+        for (int i = 1; i < frames.size(); i++) {
+            assertTrue(frames.get(i) instanceof ByteBuffer);
+            ByteBuffer frame = (ByteBuffer) frames.get(i);
+            assertEquals(id, new UUID(frame.getLong(), frame.getLong()));
+            assertEquals(i - 1, frame.getInt());
+            assertEquals(3, frame.getInt());
+            int length = frame.remaining();
+            frame.get(reassembled, offset, length);
+            offset += length;
+        }
+        assertArrayEquals(pdf, reassembled);
+    }
+}
@@ -0,0 +1,113 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint.Async;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import health.ere.ps.websocket.SessionOutbox.Priority;
+
+class SessionOutboxTest {
+
+    Session session;
+    Async async;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        async = mock(Async.class);
+        when(session.getAsyncRemote()).thenReturn(async);
+        when(session.getId()).thenReturn("1");
+    }
+
+    @Test
+    void testRepliesBeforeNotifications() {
+        SessionOutbox outbox = new SessionOutbox(session, 10, 1000, 5);
+        outbox.offer("first", Priority.REPLY, "error");
+        outbox.offer("notification", Priority.NOTIFICATION, "error");
+        outbox.offer("reply", Priority.REPLY, "error");
+        assertEquals(2, outbox.getQueueDepth());
+
+        ArgumentCaptor<Object> messages = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<SendHandler> handlers = ArgumentCaptor.forClass(SendHandler.class);
+        verify(async, times(1)).sendObject(messages.capture(), handlers.capture());
+        handlers.getValue().onResult(new SendResult());
+        verify(async, times(2)).sendObject(messages.capture(), handlers.capture());
+        handlers.getValue().onResult(new SendResult());
+        verify(async, times(3)).sendObject(messages.capture(), handlers.capture());
+
+        List<Object> sent = messages.getAllValues();
+        assertEquals("first", sent.get(0));
+        assertEquals("reply", sent.get(sent.size() - 2));
+        assertEquals("notification", sent.get(sent.size() - 1));
+    }
+
+    @Test
+    void testNotificationsAreCoalescedByKey() {
+        SessionOutbox outbox = new SessionOutbox(session, 10, 1000, 5);
+        outbox.offer("in flight", Priority.REPLY, "error");
+        outbox.offer("a1", Priority.NOTIFICATION, "a", "error");
+        outbox.offer("b", Priority.NOTIFICATION, "b", "error");
+        assertTrue(outbox.offer("a2", Priority.NOTIFICATION, "a", "error"));
+        // equal notifications without a key are both sent
+        outbox.offer("c", Priority.NOTIFICATION, "error");
+        outbox.offer("c", Priority.NOTIFICATION, "error");
+        assertEquals(4, outbox.getQueueDepth());
+        assertEquals(1, outbox.getCoalescedNotifications());
+        assertEquals(0, outbox.getDroppedNotifications());
+
+        ArgumentCaptor<SendHandler> handlers = ArgumentCaptor.forClass(SendHandler.class);
+        for (int i = 1; i <= 5; i++) {
+            verify(async, times(i)).sendObject(any(), handlers.capture());
+            handlers.getValue().onResult(new SendResult());
+        }
+        ArgumentCaptor<Object> messages = ArgumentCaptor.forClass(Object.class);
+        verify(async, times(5)).sendObject(messages.capture(), any(SendHandler.class));
+        assertEquals(List.of("in flight", "b", "a2", "c", "c"), messages.getAllValues());
+    }
+
+    @Test
+    void testOldestNotificationsAreDropped() {
+        SessionOutbox outbox = new SessionOutbox(session, 10, 1000, 2);
+        outbox.offer("in flight", Priority.REPLY, "error");
+        outbox.offer("a", Priority.NOTIFICATION, "error");
+        outbox.offer("b", Priority.NOTIFICATION, "error");
+        outbox.offer("c", Priority.NOTIFICATION, "error");
+        assertEquals(2, outbox.getQueueDepth());
+        assertEquals(1, outbox.getDroppedNotifications());
+        assertEquals(0, outbox.getCoalescedNotifications());
+    }
+
+    @Test
+    void testNotificationsAreDroppedWhenOverLimit() throws IOException {
+        SessionOutbox outbox = new SessionOutbox(session, 2, 1000, 5);
+        outbox.offer("in flight", Priority.REPLY, "error");
+        outbox.offer("n1", Priority.NOTIFICATION, "error");
+        outbox.offer("n2", Priority.NOTIFICATION, "error");
+        assertTrue(outbox.offer("r1", Priority.REPLY, "error"));
+        assertEquals(1, outbox.getQueueDepth());
+        assertEquals(2, outbox.getDroppedNotifications());
+
+        outbox.offer("r2", Priority.REPLY, "error");
+        assertFalse(outbox.offer("r3", Priority.REPLY, "error"));
+        assertTrue(outbox.isClosed());
+        verify(session).close(any(CloseReason.class));
+    }
+}
@@ -0,0 +1,109 @@
+package health.ere.ps.websocket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import health.ere.ps.websocket.WebsocketMessageDispatcher.MessageEnvelope;
+
+class WebsocketMessageDispatcherTest {
+
+    @Test
+    void testParseEnvelope() {
+        MessageEnvelope envelope = WebsocketMessageDispatcher.parseEnvelope(
+            "{\"payload\": [[{\"type\": \"nested\"}]], \"runtimeConfig\": {\"id\": \"x\"}, \"type\": \"ValidateBundles\", \"id\": \"1234\"}");
+        assertEquals("ValidateBundles", envelope.getType());
+        assertEquals("1234", envelope.getId());
+    }
+
+    @Test
+    void testParseEnvelopeWithoutId() {
+        MessageEnvelope envelope = WebsocketMessageDispatcher.parseEnvelope("{\"type\": \"RequestSettings\"}");
+        assertEquals("RequestSettings", envelope.getType());
+        assertNull(envelope.getId());
+    }
+
+    @Test
+    void testParseEnvelopeInvalidJson() {
+        assertThrows(RuntimeException.class, () -> WebsocketMessageDispatcher.parseEnvelope("asdasdsad"));
+    }
+
+    @Test
+    void testDispatchRejectsWhenQueueIsFull() throws InterruptedException {
+        WebsocketMessageDispatcher dispatcher = new WebsocketMessageDispatcher();
+        dispatcher.validationThreads = 1;
+        dispatcher.validationQueueSize = 1;
+        dispatcher.init();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            dispatcher.dispatch("session-1", "ValidateBundles", () -> {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            started.await(5, TimeUnit.SECONDS);
+            dispatcher.dispatch("session-1", "ValidateBundles", () -> { });
+            assertEquals(1, dispatcher.getQueueDepth(WebsocketMessageDispatcher.Lane.VALIDATION));
+            assertThrows(RejectedExecutionException.class, () -> dispatcher.dispatch("session-1", "ValidateBundles", () -> { }));
+            // other lanes are not affected
+            dispatcher.dispatch("session-1", "GetCards", () -> { });
+        } finally {
+            release.countDown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void testMessagesOfOneSessionAreHandledInOrder() throws InterruptedException {
+        WebsocketMessageDispatcher dispatcher = new WebsocketMessageDispatcher();
+        dispatcher.defaultThreads = 4;
+        dispatcher.init();
+
+        List<String> handled = new CopyOnWriteArrayList<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch otherSessionHandled = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        try {
+            dispatcher.dispatch("session-1", "GetCards", () -> {
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                handled.add("first");
+            });
+            firstStarted.await(5, TimeUnit.SECONDS);
+            dispatcher.dispatch("session-1", "RequestSettings", () -> {
+                handled.add("second");
+                done.countDown();
+            });
+            // other sessions are not blocked by the first message
+            dispatcher.dispatch("session-2", "GetCards", otherSessionHandled::countDown);
+            assertTrue(otherSessionHandled.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of(), handled);
+
+            releaseFirst.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("first", "second"), handled);
+        } finally {
+            releaseFirst.countDown();
+            dispatcher.shutdown();
+        }
+    }
+}
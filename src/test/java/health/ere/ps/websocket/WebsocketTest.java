@@ -1,8 +1,10 @@
 package health.ere.ps.websocket;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -78,6 +80,7 @@ class WebsocketTest {
     Async mockedAsync = mock(Async.class);
 
     when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    websocket.onOpen(mockedSession);
 
     websocket.onMessage("asdasdsad", mockedSession);
 
@@ -92,4 +95,20 @@ class WebsocketTest {
     assertEquals("Exception", exceptionObject.getString("type"));
 
   }
+
+  @Test
+  void testReplyAfterCloseIsDiscarded() {
+    Websocket websocket = new Websocket();
+    Session mockedSession = mock(Session.class);
+    Async mockedAsync = mock(Async.class);
+    when(mockedSession.getId()).thenReturn("closed-session");
+    when(mockedSession.getAsyncRemote()).thenReturn(mockedAsync);
+    websocket.onOpen(mockedSession);
+    websocket.onClose(mockedSession);
+
+    websocket.send(mockedSession, "reply", SessionOutbox.Priority.REPLY, "Unable to send reply");
+
+    assertFalse(Websocket.getOutboxQueueDepths().containsKey("closed-session"));
+    verify(mockedAsync, never()).sendObject(any(), any(SendHandler.class));
+  }
 }